@@ -78,6 +78,12 @@ public class FrescoFrameCache implements BitmapFrameCache {
     return mAnimatedFrameCache.contains(frameNumber);
   }
 
+  @Override
+  public boolean willCacheFrame(int frameNumber) {
+    // Prepared frames are handed to the animated frame cache, which decides what to evict
+    return true;
+  }
+
   @Override
   public synchronized int getSizeInBytes() {
     // This currently does not include the size of the animated frame cache
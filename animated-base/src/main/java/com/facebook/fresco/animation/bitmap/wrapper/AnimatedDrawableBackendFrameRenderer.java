@@ -11,20 +11,33 @@ package com.facebook.fresco.animation.bitmap.wrapper;
 import javax.annotation.Nullable;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Rect;
 
+import com.facebook.common.logging.FLog;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
 import com.facebook.imagepipeline.animated.impl.AnimatedImageCompositor;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.common.TooManyBitmapsException;
 
 /**
  * {@link BitmapFrameRenderer} that wraps around an {@link AnimatedDrawableBackend}.
+ *
+ * <p> If a {@link PlatformBitmapFactory} is given, snapshot frames that are composited while
+ * rendering a later frame are copied to the {@link BitmapFrameCache} when it would keep them, so
+ * that rendering the frames after them does not have to start from the previous key frame again.
  */
 public class AnimatedDrawableBackendFrameRenderer implements BitmapFrameRenderer {
 
+  private static final Class<?> TAG = AnimatedDrawableBackendFrameRenderer.class;
+
   private final BitmapFrameCache mBitmapFrameCache;
+  private final @Nullable PlatformBitmapFactory mPlatformBitmapFactory;
 
   private AnimatedDrawableBackend mAnimatedDrawableBackend;
   private AnimatedImageCompositor mAnimatedImageCompositor;
@@ -33,7 +46,12 @@ public class AnimatedDrawableBackendFrameRenderer implements BitmapFrameRenderer
       new AnimatedImageCompositor.Callback() {
         @Override
         public void onIntermediateResult(int frameNumber, Bitmap bitmap) {
-          // We currently don't cache intermediate bitmaps here
+          // We only cache snapshot frames, which bound the work needed to render later frames
+          if (mPlatformBitmapFactory != null &&
+              mAnimatedImageCompositor.getFrameIndex().isSnapshotFrame(frameNumber) &&
+              mBitmapFrameCache.willCacheFrame(frameNumber)) {
+            cacheSnapshot(frameNumber, bitmap);
+          }
         }
 
         @Nullable
@@ -46,7 +64,19 @@ public class AnimatedDrawableBackendFrameRenderer implements BitmapFrameRenderer
   public AnimatedDrawableBackendFrameRenderer(
       BitmapFrameCache bitmapFrameCache,
       AnimatedDrawableBackend animatedDrawableBackend) {
+    this(bitmapFrameCache, animatedDrawableBackend, null);
+  }
+
+  /**
+   * @param platformBitmapFactory if not null, the factory the copies of the snapshot frames are
+   *     allocated with
+   */
+  public AnimatedDrawableBackendFrameRenderer(
+      BitmapFrameCache bitmapFrameCache,
+      AnimatedDrawableBackend animatedDrawableBackend,
+      @Nullable PlatformBitmapFactory platformBitmapFactory) {
     mBitmapFrameCache = bitmapFrameCache;
+    mPlatformBitmapFactory = platformBitmapFactory;
     mAnimatedDrawableBackend = animatedDrawableBackend;
 
     mAnimatedImageCompositor = new AnimatedImageCompositor(mAnimatedDrawableBackend, mCallback);
@@ -76,4 +106,38 @@ public class AnimatedDrawableBackendFrameRenderer implements BitmapFrameRenderer
     mAnimatedImageCompositor.renderFrame(frameNumber, targetBitmap);
     return true;
   }
+
+  /**
+   * Gets the number of frames that had to be composited for the last rendered frame.
+   *
+   * @return the number of composited frames
+   */
+  public int getLastCompositedFrameCount() {
+    return mAnimatedImageCompositor.getLastCompositedFrameCount();
+  }
+
+  private void cacheSnapshot(int frameNumber, Bitmap bitmap) {
+    // The compositor keeps drawing into the bitmap, so we have to copy it
+    final CloseableReference<Bitmap> snapshotReference;
+    try {
+      snapshotReference = mPlatformBitmapFactory.createBitmap(
+          bitmap.getWidth(),
+          bitmap.getHeight(),
+          bitmap.getConfig());
+    } catch (TooManyBitmapsException e) {
+      FLog.w(TAG, e, "Could not copy snapshot frame %d", frameNumber);
+      return;
+    }
+    try {
+      final Bitmap snapshot = snapshotReference.get();
+      snapshot.eraseColor(Color.TRANSPARENT);
+      new Canvas(snapshot).drawBitmap(bitmap, 0, 0, null);
+      mBitmapFrameCache.onFramePrepared(
+          frameNumber,
+          snapshotReference,
+          BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    } finally {
+      snapshotReference.close();
+    }
+  }
 }
@@ -11,9 +11,13 @@ package com.facebook.fresco.animation.factory;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.os.Build;
 
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.executors.DefaultSerialExecutorService;
@@ -22,6 +26,8 @@ import com.facebook.common.executors.UiThreadImmediateExecutorService;
 import com.facebook.common.internal.DoNotStrip;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.time.RealtimeSinceBootClock;
+import com.facebook.fresco.animation.bitmap.cache.FrameCacheBudget;
+import com.facebook.fresco.animation.bitmap.preparation.FrameDecodeScheduler;
 import com.facebook.fresco.animation.drawable.AnimatedDrawable2;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
 import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
@@ -32,7 +38,7 @@ import com.facebook.imagepipeline.animated.impl.AnimatedDrawableBackendImpl;
 import com.facebook.imagepipeline.animated.impl.AnimatedDrawableBackendProvider;
 import com.facebook.imagepipeline.animated.util.AnimatedDrawableUtil;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
-import com.facebook.imagepipeline.cache.CountingMemoryCache;
+import com.facebook.imagepipeline.cache.CountingCache;
 import com.facebook.imagepipeline.common.ImageDecodeOptions;
 import com.facebook.imagepipeline.core.ExecutorSupplier;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
@@ -49,10 +55,12 @@ import com.facebook.imagepipeline.image.QualityInfo;
 public class AnimatedFactoryV2Impl implements AnimatedFactory {
 
   private static final int NUMBER_OF_FRAMES_TO_PREPARE = 3;
+  // Animation frames can use up to a quarter of the bitmap memory cache size
+  private static final int FRAME_CACHE_BUDGET_DIVISOR = 4;
 
   private final PlatformBitmapFactory mPlatformBitmapFactory;
   private final ExecutorSupplier mExecutorSupplier;
-  private final CountingMemoryCache<CacheKey, CloseableImage> mBackingCache;
+  private final CountingCache<CacheKey, CloseableImage> mBackingCache;
 
   private @Nullable AnimatedImageFactory mAnimatedImageFactory;
   private @Nullable AnimatedDrawableBackendProvider mAnimatedDrawableBackendProvider;
@@ -63,7 +71,7 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
   public AnimatedFactoryV2Impl(
       PlatformBitmapFactory platformBitmapFactory,
       ExecutorSupplier executorSupplier,
-      CountingMemoryCache<CacheKey, CloseableImage> backingCache) {
+      CountingCache<CacheKey, CloseableImage> backingCache) {
     mPlatformBitmapFactory = platformBitmapFactory;
     mExecutorSupplier = executorSupplier;
     mBackingCache = backingCache;
@@ -73,7 +81,11 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
   @Override
   public DrawableFactory getAnimatedDrawableFactory(Context context) {
     if (mAnimatedDrawableFactory == null) {
-      mAnimatedDrawableFactory = createDrawableFactory();
+      FrameCacheBudget frameCacheBudget = createFrameCacheBudget();
+      if (context != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+        registerTrimMemoryCallbacks(context, frameCacheBudget);
+      }
+      mAnimatedDrawableFactory = createDrawableFactory(frameCacheBudget);
     }
     return mAnimatedDrawableFactory;
   }
@@ -106,7 +118,8 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
     };
   }
 
-  private ExperimentalBitmapAnimationDrawableFactory createDrawableFactory() {
+  private ExperimentalBitmapAnimationDrawableFactory createDrawableFactory(
+      FrameCacheBudget frameCacheBudget) {
     Supplier<Integer> cachingStrategySupplier = new Supplier<Integer>() {
       @Override
       public Integer get() {
@@ -124,6 +137,12 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
       }
     };
 
+    // Frames of all animations are prepared by their deadline on the same executor
+    final FrameDecodeScheduler frameDecodeScheduler = new FrameDecodeScheduler(
+        serialExecutorServiceForFramePreparing,
+        UiThreadImmediateExecutorService.getInstance(),
+        RealtimeSinceBootClock.get());
+
     return new ExperimentalBitmapAnimationDrawableFactory(
         getAnimatedDrawableBackendProvider(),
         UiThreadImmediateExecutorService.getInstance(),
@@ -132,7 +151,36 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
         mPlatformBitmapFactory,
         mBackingCache,
         cachingStrategySupplier,
-        numberOfFramesToPrepareSupplier);
+        numberOfFramesToPrepareSupplier,
+        frameDecodeScheduler,
+        frameCacheBudget);
+  }
+
+  private FrameCacheBudget createFrameCacheBudget() {
+    return new FrameCacheBudget(
+        mBackingCache.getMaxSizeInBytes() / FRAME_CACHE_BUDGET_DIVISOR,
+        RealtimeSinceBootClock.get());
+  }
+
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  private static void registerTrimMemoryCallbacks(
+      Context context,
+      final FrameCacheBudget frameCacheBudget) {
+    context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+      @Override
+      public void onTrimMemory(int level) {
+        frameCacheBudget.onTrimMemory(level);
+      }
+
+      @Override
+      public void onConfigurationChanged(Configuration newConfig) {
+      }
+
+      @Override
+      public void onLowMemory() {
+        frameCacheBudget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+      }
+    });
   }
 
   private AnimatedDrawableUtil getAnimatedDrawableUtil() {
@@ -9,6 +9,8 @@
 
 package com.facebook.fresco.animation.factory;
 
+import javax.annotation.Nullable;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -22,16 +24,21 @@ import com.facebook.common.time.MonotonicClock;
 import com.facebook.imagepipeline.drawable.DrawableFactory;
 import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.backend.AnimationBackendDelegateWithInactivityCheck;
+import com.facebook.fresco.animation.backend.AnimationInformation;
 import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
+import com.facebook.fresco.animation.bitmap.cache.AdaptiveFrameCache;
+import com.facebook.fresco.animation.bitmap.cache.FrameCacheBudget;
 import com.facebook.fresco.animation.bitmap.cache.FrescoFrameCache;
 import com.facebook.fresco.animation.bitmap.cache.KeepLastFrameCache;
 import com.facebook.fresco.animation.bitmap.cache.NoOpCache;
+import com.facebook.fresco.animation.bitmap.preparation.AdaptiveBitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparer;
 import com.facebook.fresco.animation.bitmap.preparation.DefaultBitmapFramePreparer;
 import com.facebook.fresco.animation.bitmap.preparation.FixedNumberBitmapFramePreparationStrategy;
+import com.facebook.fresco.animation.bitmap.preparation.FrameDecodeScheduler;
 import com.facebook.fresco.animation.bitmap.wrapper.AnimatedDrawableBackendAnimationInformation;
 import com.facebook.fresco.animation.bitmap.wrapper.AnimatedDrawableBackendFrameRenderer;
 import com.facebook.fresco.animation.drawable.AnimatedDrawable2;
@@ -41,7 +48,7 @@ import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
 import com.facebook.imagepipeline.animated.impl.AnimatedDrawableBackendProvider;
 import com.facebook.imagepipeline.animated.impl.AnimatedFrameCache;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
-import com.facebook.imagepipeline.cache.CountingMemoryCache;
+import com.facebook.imagepipeline.cache.CountingCache;
 import com.facebook.imagepipeline.image.CloseableAnimatedImage;
 import com.facebook.imagepipeline.image.CloseableImage;
 
@@ -55,15 +62,24 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
   public static final int CACHING_STRATEGY_FRESCO_CACHE = 1;
   public static final int CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING = 2;
   public static final int CACHING_STRATEGY_KEEP_LAST_CACHE = 3;
+  /**
+   * Uses an {@link AdaptiveFrameCache} with the {@link FrameCacheBudget} of the factory, or
+   * {@link #CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING} if the factory has no budget.
+   */
+  public static final int CACHING_STRATEGY_ADAPTIVE = 4;
 
   private final AnimatedDrawableBackendProvider mAnimatedDrawableBackendProvider;
   private final ScheduledExecutorService mScheduledExecutorServiceForUiThread;
   private final ExecutorService mExecutorServiceForFramePreparing;
   private final MonotonicClock mMonotonicClock;
   private final PlatformBitmapFactory mPlatformBitmapFactory;
-  private final CountingMemoryCache<CacheKey, CloseableImage> mBackingCache;
+  private final CountingCache<CacheKey, CloseableImage> mBackingCache;
   private final Supplier<Integer> mCachingStrategySupplier;
   private final Supplier<Integer> mNumberOfFramesToPrepareSupplier;
+  @Nullable
+  private final FrameDecodeScheduler mFrameDecodeScheduler;
+  @Nullable
+  private final FrameCacheBudget mFrameCacheBudget;
 
   public ExperimentalBitmapAnimationDrawableFactory(
       AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
@@ -71,9 +87,39 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
       ExecutorService executorServiceForFramePreparing,
       MonotonicClock monotonicClock,
       PlatformBitmapFactory platformBitmapFactory,
-      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      CountingCache<CacheKey, CloseableImage> backingCache,
       Supplier<Integer> cachingStrategySupplier,
       Supplier<Integer> numberOfFramesToPrepareSupplier) {
+    this(
+        animatedDrawableBackendProvider,
+        scheduledExecutorServiceForUiThread,
+        executorServiceForFramePreparing,
+        monotonicClock,
+        platformBitmapFactory,
+        backingCache,
+        cachingStrategySupplier,
+        numberOfFramesToPrepareSupplier,
+        null,
+        null);
+  }
+
+  /**
+   * @param frameDecodeScheduler if not null, the scheduler that the frames of all animations are
+   *     prepared with instead of the executor for frame preparing
+   * @param frameCacheBudget if not null, the budget shared by all animations that use
+   *     {@link #CACHING_STRATEGY_ADAPTIVE}
+   */
+  public ExperimentalBitmapAnimationDrawableFactory(
+      AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
+      ScheduledExecutorService scheduledExecutorServiceForUiThread,
+      ExecutorService executorServiceForFramePreparing,
+      MonotonicClock monotonicClock,
+      PlatformBitmapFactory platformBitmapFactory,
+      CountingCache<CacheKey, CloseableImage> backingCache,
+      Supplier<Integer> cachingStrategySupplier,
+      Supplier<Integer> numberOfFramesToPrepareSupplier,
+      @Nullable FrameDecodeScheduler frameDecodeScheduler,
+      @Nullable FrameCacheBudget frameCacheBudget) {
     mAnimatedDrawableBackendProvider = animatedDrawableBackendProvider;
     mScheduledExecutorServiceForUiThread = scheduledExecutorServiceForUiThread;
     mExecutorServiceForFramePreparing = executorServiceForFramePreparing;
@@ -82,6 +128,8 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
     mBackingCache = backingCache;
     mCachingStrategySupplier = cachingStrategySupplier;
     mNumberOfFramesToPrepareSupplier = numberOfFramesToPrepareSupplier;
+    mFrameDecodeScheduler = frameDecodeScheduler;
+    mFrameCacheBudget = frameCacheBudget;
   }
 
   @Override
@@ -100,22 +148,30 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
     AnimatedDrawableBackend animatedDrawableBackend =
         createAnimatedDrawableBackend(animatedImageResult);
 
-    BitmapFrameCache bitmapFrameCache = createBitmapFrameCache(animatedImageResult);
-    BitmapFrameRenderer bitmapFrameRenderer =
-        new AnimatedDrawableBackendFrameRenderer(bitmapFrameCache, animatedDrawableBackend);
+    AnimationInformation animationInformation =
+        new AnimatedDrawableBackendAnimationInformation(animatedDrawableBackend);
+
+    BitmapFrameCache bitmapFrameCache =
+        createBitmapFrameCache(animatedImageResult, animationInformation);
+    BitmapFrameRenderer bitmapFrameRenderer = new AnimatedDrawableBackendFrameRenderer(
+        bitmapFrameCache,
+        animatedDrawableBackend,
+        mPlatformBitmapFactory);
 
     int numberOfFramesToPrefetch = mNumberOfFramesToPrepareSupplier.get();
     BitmapFramePreparationStrategy bitmapFramePreparationStrategy = null;
     BitmapFramePreparer bitmapFramePreparer = null;
     if (numberOfFramesToPrefetch > 0) {
-      bitmapFramePreparationStrategy = new FixedNumberBitmapFramePreparationStrategy();
+      bitmapFramePreparationStrategy = bitmapFrameCache instanceof AdaptiveFrameCache
+          ? new AdaptiveBitmapFramePreparationStrategy((AdaptiveFrameCache) bitmapFrameCache)
+          : new FixedNumberBitmapFramePreparationStrategy();
       bitmapFramePreparer = createBitmapFramePreparer(bitmapFrameRenderer);
     }
 
     BitmapAnimationBackend bitmapAnimationBackend = new BitmapAnimationBackend(
         mPlatformBitmapFactory,
         bitmapFrameCache,
-        new AnimatedDrawableBackendAnimationInformation(animatedDrawableBackend),
+        animationInformation,
         bitmapFrameRenderer,
         bitmapFramePreparationStrategy,
         bitmapFramePreparer);
@@ -127,6 +183,13 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
   }
 
   private BitmapFramePreparer createBitmapFramePreparer(BitmapFrameRenderer bitmapFrameRenderer) {
+    if (mFrameDecodeScheduler != null) {
+      return new DefaultBitmapFramePreparer(
+          mPlatformBitmapFactory,
+          bitmapFrameRenderer,
+          Bitmap.Config.ARGB_8888,
+          mFrameDecodeScheduler);
+    }
     return new DefaultBitmapFramePreparer(
         mPlatformBitmapFactory,
         bitmapFrameRenderer,
@@ -141,8 +204,15 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
     return mAnimatedDrawableBackendProvider.get(animatedImageResult, initialBounds);
   }
 
-  private BitmapFrameCache createBitmapFrameCache(AnimatedImageResult animatedImageResult) {
+  private BitmapFrameCache createBitmapFrameCache(
+      AnimatedImageResult animatedImageResult,
+      AnimationInformation animationInformation) {
     switch (mCachingStrategySupplier.get()) {
+      case CACHING_STRATEGY_ADAPTIVE:
+        if (mFrameCacheBudget != null) {
+          return new AdaptiveFrameCache(animationInformation, mFrameCacheBudget, mMonotonicClock);
+        }
+        return new FrescoFrameCache(createAnimatedFrameCache(animatedImageResult), false);
       case CACHING_STRATEGY_FRESCO_CACHE:
         return new FrescoFrameCache(createAnimatedFrameCache(animatedImageResult), true);
       case CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING:
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.animated.base;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.BlendOperation;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.DisposalMethod;
+
+/**
+ * Precomputed compositing information for the frames of an {@link AnimatedImage}, so that a frame
+ * can be rendered without inspecting the frames before it.
+ *
+ * <p> For each frame, the index knows whether it is a key frame, which can be rendered on its own,
+ * whether it is required to render the frames after it, and the frame that compositing has to
+ * start at if none of the frames before it are cached.
+ *
+ * <p> The index also picks snapshot frames at regular intervals between key frames. A snapshot is
+ * worth caching as a full frame: once it is cached, rendering any of the frames after it only
+ * composites the frames since the snapshot instead of the frames since the last key frame.
+ */
+public class AnimatedImageFrameIndex {
+
+  /**
+   * The default number of composited frames between two snapshot frames.
+   */
+  public static final int DEFAULT_SNAPSHOT_INTERVAL = 8;
+
+  private final boolean[] mKeyFrames;
+  private final boolean[] mRequiredFrames;
+  private final boolean[] mSnapshotFrames;
+  private final int[] mCompositingStartFrames;
+
+  /**
+   * Creates the index for the frames of an image with the default snapshot interval.
+   *
+   * @param image the image
+   * @return the index
+   */
+  public static AnimatedImageFrameIndex forAnimatedImage(AnimatedImage image) {
+    final AnimatedDrawableFrameInfo[] frameInfos =
+        new AnimatedDrawableFrameInfo[image.getFrameCount()];
+    for (int i = 0; i < frameInfos.length; i++) {
+      frameInfos[i] = image.getFrameInfo(i);
+    }
+    return new AnimatedImageFrameIndex(
+        frameInfos,
+        image.getWidth(),
+        image.getHeight(),
+        DEFAULT_SNAPSHOT_INTERVAL);
+  }
+
+  /**
+   * Creates the index for the frames of a backend with the default snapshot interval.
+   *
+   * @param animatedDrawableBackend the backend
+   * @return the index
+   */
+  public static AnimatedImageFrameIndex forAnimatedDrawableBackend(
+      AnimatedDrawableBackend animatedDrawableBackend) {
+    final AnimatedDrawableFrameInfo[] frameInfos =
+        new AnimatedDrawableFrameInfo[animatedDrawableBackend.getFrameCount()];
+    for (int i = 0; i < frameInfos.length; i++) {
+      frameInfos[i] = animatedDrawableBackend.getFrameInfo(i);
+    }
+    return new AnimatedImageFrameIndex(
+        frameInfos,
+        animatedDrawableBackend.getWidth(),
+        animatedDrawableBackend.getHeight(),
+        DEFAULT_SNAPSHOT_INTERVAL);
+  }
+
+  /**
+   * @param frameInfos the frame infos of all frames, in image coordinates
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param snapshotInterval the number of composited frames between two snapshot frames
+   */
+  public AnimatedImageFrameIndex(
+      AnimatedDrawableFrameInfo[] frameInfos,
+      int width,
+      int height,
+      int snapshotInterval) {
+    Preconditions.checkArgument(snapshotInterval > 0);
+    final int frameCount = frameInfos.length;
+    mKeyFrames = new boolean[frameCount];
+    mRequiredFrames = new boolean[frameCount];
+    mSnapshotFrames = new boolean[frameCount];
+    mCompositingStartFrames = new int[frameCount];
+
+    // The frame compositing starts at for the frame after the current one if it is not a key
+    // frame and none of the frames before it are cached
+    int nextStartFrame = 0;
+    for (int i = 0; i < frameCount; i++) {
+      final AnimatedDrawableFrameInfo frameInfo = frameInfos[i];
+      final boolean fullFrame = isFullFrame(frameInfo, width, height);
+      mKeyFrames[i] = i == 0 ||
+          (frameInfo.blendOperation == BlendOperation.NO_BLEND && fullFrame) ||
+          (frameInfos[i - 1].disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND &&
+              isFullFrame(frameInfos[i - 1], width, height));
+      mCompositingStartFrames[i] = mKeyFrames[i] ? i : nextStartFrame;
+
+      final DisposalMethod disposalMethod = frameInfo.disposalMethod;
+      if (disposalMethod == DisposalMethod.DISPOSE_DO_NOT ||
+          (disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND && !fullFrame)) {
+        // The frame is required to render the next frame
+        mRequiredFrames[i] = true;
+        nextStartFrame = mCompositingStartFrames[i];
+        final int compositedFrames = i - nextStartFrame;
+        mSnapshotFrames[i] = compositedFrames > 0 && compositedFrames % snapshotInterval == 0;
+      } else if (disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND) {
+        // The frame covers the whole image and is disposed, so the next frame starts from scratch
+        nextStartFrame = i + 1;
+      } else if (disposalMethod != DisposalMethod.DISPOSE_TO_PREVIOUS) {
+        // The disposal method is not specified, so we stop at this frame
+        nextStartFrame = i;
+      }
+      // Frames disposed to previous are skipped
+    }
+  }
+
+  public int getFrameCount() {
+    return mKeyFrames.length;
+  }
+
+  /**
+   * Gets whether the frame can be rendered without compositing the frames before it.
+   *
+   * @param frameNumber the frame number
+   * @return true if the frame is a key frame
+   */
+  public boolean isKeyFrame(int frameNumber) {
+    return mKeyFrames[frameNumber];
+  }
+
+  /**
+   * Gets whether the frame has to be rendered to render the frame after it. Only the cached
+   * bitmaps of required frames can be used to start compositing from.
+   *
+   * @param frameNumber the frame number
+   * @return true if the frame is required to render the next frame
+   */
+  public boolean isRequiredFrame(int frameNumber) {
+    return mRequiredFrames[frameNumber];
+  }
+
+  /**
+   * Gets whether the full frame should be cached when it is composited to render a later frame.
+   *
+   * @param frameNumber the frame number
+   * @return true if the frame is a snapshot frame
+   */
+  public boolean isSnapshotFrame(int frameNumber) {
+    return mSnapshotFrames[frameNumber];
+  }
+
+  /**
+   * Gets the first frame that has to be composited to render the given frame if none of the
+   * frames before it are cached.
+   *
+   * @param frameNumber the frame number
+   * @return the frame to start compositing at
+   */
+  public int getCompositingStartFrame(int frameNumber) {
+    return mCompositingStartFrames[frameNumber];
+  }
+
+  private static boolean isFullFrame(AnimatedDrawableFrameInfo frameInfo, int width, int height) {
+    return frameInfo.xOffset == 0 &&
+        frameInfo.yOffset == 0 &&
+        frameInfo.width == width &&
+        frameInfo.height == height;
+  }
+}
@@ -28,17 +28,20 @@ public class AnimatedImageResult {
   private final int mFrameForPreview;
   private @Nullable CloseableReference<Bitmap> mPreviewBitmap;
   private @Nullable List<CloseableReference<Bitmap>> mDecodedFrames;
+  private final @Nullable AnimatedImageFrameIndex mFrameIndex;
 
   AnimatedImageResult(AnimatedImageResultBuilder builder) {
     mImage = Preconditions.checkNotNull(builder.getImage());
     mFrameForPreview = builder.getFrameForPreview();
     mPreviewBitmap = builder.getPreviewBitmap();
     mDecodedFrames = builder.getDecodedFrames();
+    mFrameIndex = builder.getFrameIndex();
   }
 
   private AnimatedImageResult(AnimatedImage image) {
     mImage = Preconditions.checkNotNull(image);
     mFrameForPreview = 0;
+    mFrameIndex = null;
   }
 
   /**
@@ -80,6 +83,16 @@ public class AnimatedImageResult {
     return mFrameForPreview;
   }
 
+  /**
+   * Gets the compositing index of the frames of the image. This will only return non-null if the
+   * index was built at decode time.
+   *
+   * @return the index or null if there is none
+   */
+  public @Nullable AnimatedImageFrameIndex getFrameIndex() {
+    return mFrameIndex;
+  }
+
   /**
    * Gets a decoded frame. This will only return non-null if the {@code ImageDecodeOptions}
    * were configured to decode all frames at decode time.
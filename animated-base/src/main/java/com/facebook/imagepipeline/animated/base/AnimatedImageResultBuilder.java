@@ -24,6 +24,7 @@ public class AnimatedImageResultBuilder {
   private CloseableReference<Bitmap> mPreviewBitmap;
   private List<CloseableReference<Bitmap>> mDecodedFrames;
   private int mFrameForPreview;
+  private AnimatedImageFrameIndex mFrameIndex;
 
   AnimatedImageResultBuilder(AnimatedImage image) {
     mImage = image;
@@ -103,6 +104,27 @@ public class AnimatedImageResultBuilder {
     return this;
   }
 
+  /**
+   * Gets the compositing index of the frames of the image.
+   *
+   * @return the index or null if none was set
+   */
+  public AnimatedImageFrameIndex getFrameIndex() {
+    return mFrameIndex;
+  }
+
+  /**
+   * Sets the compositing index of the frames of the image, which is shared by all the
+   * compositors that render the image.
+   *
+   * @param frameIndex the index
+   * @return this builder
+   */
+  public AnimatedImageResultBuilder setFrameIndex(AnimatedImageFrameIndex frameIndex) {
+    mFrameIndex = frameIndex;
+    return this;
+  }
+
   /**
    * Builds the {@link AnimatedImageResult}. The preview bitmap and the decoded frames are closed
    * after build is called, so this should not be called more than once or those fields will be lost
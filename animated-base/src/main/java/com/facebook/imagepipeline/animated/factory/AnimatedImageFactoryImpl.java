@@ -22,6 +22,7 @@ import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
 import com.facebook.imagepipeline.animated.base.AnimatedImage;
+import com.facebook.imagepipeline.animated.base.AnimatedImageFrameIndex;
 import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
 import com.facebook.imagepipeline.animated.impl.AnimatedDrawableBackendProvider;
 import com.facebook.imagepipeline.animated.impl.AnimatedImageCompositor;
@@ -147,6 +148,7 @@ public class AnimatedImageFactoryImpl implements AnimatedImageFactory {
           .setPreviewBitmap(previewBitmap)
           .setFrameForPreview(frameForPreview)
           .setDecodedFrames(decodedFrames)
+          .setFrameIndex(AnimatedImageFrameIndex.forAnimatedImage(image))
           .build();
       return new CloseableAnimatedImage(animatedImageResult);
     } finally {
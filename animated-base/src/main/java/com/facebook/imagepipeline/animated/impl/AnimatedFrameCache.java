@@ -21,6 +21,7 @@ import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Objects;
 import com.facebook.common.internal.VisibleForTesting;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.cache.CountingCache;
 import com.facebook.imagepipeline.cache.CountingMemoryCache;
 import com.facebook.imagepipeline.image.CloseableImage;
 
@@ -80,14 +81,14 @@ public class AnimatedFrameCache {
   }
 
   private final CacheKey mImageCacheKey;
-  private final CountingMemoryCache<CacheKey, CloseableImage> mBackingCache;
+  private final CountingCache<CacheKey, CloseableImage> mBackingCache;
   private final CountingMemoryCache.EntryStateObserver<CacheKey> mEntryStateObserver;
   @GuardedBy("this")
   private final LinkedHashSet<CacheKey> mFreeItemsPool;
 
   public AnimatedFrameCache(
       CacheKey imageCacheKey,
-      final CountingMemoryCache<CacheKey, CloseableImage> backingCache) {
+      final CountingCache<CacheKey, CloseableImage> backingCache) {
     mImageCacheKey = imageCacheKey;
     mBackingCache = backingCache;
     mFreeItemsPool = new LinkedHashSet<>();
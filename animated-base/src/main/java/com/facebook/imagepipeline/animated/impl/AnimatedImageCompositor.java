@@ -22,6 +22,8 @@ import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.BlendOperation;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.DisposalMethod;
 import com.facebook.imagepipeline.animated.base.AnimatedImage;
+import com.facebook.imagepipeline.animated.base.AnimatedImageFrameIndex;
+import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
 
 /**
  * Contains the logic for compositing the frames of an {@link AnimatedImage}. Animated image
@@ -29,6 +31,10 @@ import com.facebook.imagepipeline.animated.base.AnimatedImage;
  * being blended on a previous frame in order to render the full frame. This class encapsulates
  * the behavior to be able to render any frame of the image. Designed to work with a cache
  * via a Callback.
+ *
+ * <p> The compositing decisions come from the {@link AnimatedImageFrameIndex} of the image, which
+ * is built once at decode time. Caching the intermediate results of its snapshot frames bounds
+ * the number of frames composited to render any frame.
  */
 public class AnimatedImageCompositor {
 
@@ -63,6 +69,11 @@ public class AnimatedImageCompositor {
   private final AnimatedDrawableBackend mAnimatedDrawableBackend;
   private final Callback mCallback;
   private final Paint mTransparentFillPaint;
+  private final AnimatedImageFrameIndex mFrameIndex;
+
+  private int mLastCompositedFrameCount;
+  private long mTotalCompositedFrameCount;
+  private int mRenderedFrameCount;
 
   public AnimatedImageCompositor(
       AnimatedDrawableBackend animatedDrawableBackend,
@@ -73,6 +84,17 @@ public class AnimatedImageCompositor {
     mTransparentFillPaint.setColor(Color.TRANSPARENT);
     mTransparentFillPaint.setStyle(Paint.Style.FILL);
     mTransparentFillPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    mFrameIndex = getFrameIndex(animatedDrawableBackend);
+  }
+
+  /**
+   * Gets the compositing index of the frames. Intermediate results of its snapshot frames are
+   * worth caching.
+   *
+   * @return the frame index
+   */
+  public AnimatedImageFrameIndex getFrameIndex() {
+    return mFrameIndex;
   }
 
   /**
@@ -87,9 +109,9 @@ public class AnimatedImageCompositor {
 
     // If blending is required, prepare the canvas with the nearest cached frame.
     int nextIndex;
-    if (!isKeyFrame(frameNumber)) {
+    if (!mFrameIndex.isKeyFrame(frameNumber)) {
       // Blending is required. nextIndex points to the next index to render onto the canvas.
-      nextIndex = prepareCanvasWithClosestCachedFrame(frameNumber - 1, canvas);
+      nextIndex = prepareCanvasWithClosestCachedFrame(frameNumber, canvas);
     } else {
       // Blending isn't required. Start at the frame we're trying to render.
       nextIndex = frameNumber;
@@ -97,6 +119,7 @@ public class AnimatedImageCompositor {
 
     // Iterate from nextIndex to the frame number just preceding the one we're trying to render
     // and composite them in order according to the Disposal Method.
+    int compositedFrameCount = 1;
     for (int index = nextIndex; index < frameNumber; index++) {
       AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(index);
       DisposalMethod disposalMethod = frameInfo.disposalMethod;
@@ -107,6 +130,7 @@ public class AnimatedImageCompositor {
         disposeToBackground(canvas, frameInfo);
       }
       mAnimatedDrawableBackend.renderFrame(index, canvas);
+      compositedFrameCount++;
       mCallback.onIntermediateResult(index, bitmap);
       if (disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND) {
         disposeToBackground(canvas, frameInfo);
@@ -119,70 +143,80 @@ public class AnimatedImageCompositor {
     }
     // Finally, we render the current frame. We don't dispose it.
     mAnimatedDrawableBackend.renderFrame(frameNumber, canvas);
+
+    mLastCompositedFrameCount = compositedFrameCount;
+    mTotalCompositedFrameCount += compositedFrameCount;
+    mRenderedFrameCount++;
   }
 
   /**
-   * Return value for {@link #isFrameNeededForRendering} used in the compositing logic.
+   * Gets the number of frames that had to be composited for the last call to
+   * {@link #renderFrame}, including the rendered frame itself. Only should be called on the
+   * rendering thread.
+   *
+   * @return the number of composited frames or 0 if no frame has been rendered yet
    */
-  private enum FrameNeededResult {
-    /** The frame is required to render the next frame */
-    REQUIRED,
-
-    /** The frame is not required to render the next frame. */
-    NOT_REQUIRED,
+  public int getLastCompositedFrameCount() {
+    return mLastCompositedFrameCount;
+  }
 
-    /** Skip this frame and keep going. Used for GIF's DISPOSE_TO_PREVIOUS */
-    SKIP,
+  /**
+   * Gets the average number of frames composited per call to {@link #renderFrame}. Only should
+   * be called on the rendering thread.
+   *
+   * @return the average number of composited frames or 0 if no frame has been rendered yet
+   */
+  public float getAverageCompositedFrameCount() {
+    return mRenderedFrameCount == 0
+        ? 0
+        : (float) mTotalCompositedFrameCount / mRenderedFrameCount;
+  }
 
-    /** Stop processing at this frame. This means the image didn't specify the disposal method */
-    ABORT
+  /**
+   * Gets the number of calls to {@link #renderFrame}. Only should be called on the rendering
+   * thread.
+   *
+   * @return the number of rendered frames
+   */
+  public int getRenderedFrameCount() {
+    return mRenderedFrameCount;
   }
 
   /**
    * Given a frame number, prepares the canvas to render based on the nearest cached frame
-   * at or before the frame. On return the canvas will be prepared as if the nearest cached
+   * before the frame. On return the canvas will be prepared as if the nearest cached
    * frame had been rendered and disposed. The returned index is the next frame that needs to be
    * composited onto the canvas.
    *
-   * @param previousFrameNumber the frame number that is ones less than the one we're rendering
+   * <p> Only the frames since the compositing start frame of the index are looked up in the
+   * cache, so this is proportional to the distance to the closest cached snapshot frame.
+   *
+   * @param frameNumber the frame number we're rendering
    * @param canvas the canvas to prepare
    * @return the index of the the next frame to process
    */
-  private int prepareCanvasWithClosestCachedFrame(int previousFrameNumber, Canvas canvas) {
-    for (int index = previousFrameNumber; index >= 0; index--) {
-      FrameNeededResult neededResult = isFrameNeededForRendering(index);
-      switch (neededResult) {
-        case REQUIRED:
+  private int prepareCanvasWithClosestCachedFrame(int frameNumber, Canvas canvas) {
+    final int startFrame = mFrameIndex.getCompositingStartFrame(frameNumber);
+    for (int index = frameNumber - 1; index >= startFrame; index--) {
+      if (!mFrameIndex.isRequiredFrame(index)) {
+        // Keep going.
+        continue;
+      }
+      CloseableReference<Bitmap> startBitmap = mCallback.getCachedBitmap(index);
+      if (startBitmap != null) {
+        try {
           AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(index);
-          CloseableReference<Bitmap> startBitmap = mCallback.getCachedBitmap(index);
-          if (startBitmap != null) {
-            try {
-              canvas.drawBitmap(startBitmap.get(), 0, 0, null);
-              if (frameInfo.disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND) {
-                disposeToBackground(canvas, frameInfo);
-              }
-              return index + 1;
-            } finally {
-              startBitmap.close();
-            }
-          } else {
-            if (isKeyFrame(index)) {
-              return index;
-            } else {
-              // Keep going.
-              break;
-            }
+          canvas.drawBitmap(startBitmap.get(), 0, 0, null);
+          if (frameInfo.disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND) {
+            disposeToBackground(canvas, frameInfo);
           }
-        case NOT_REQUIRED:
           return index + 1;
-        case ABORT:
-          return index;
-        case SKIP:
-        default:
-          // Keep going.
+        } finally {
+          startBitmap.close();
+        }
       }
     }
-    return 0;
+    return startFrame;
   }
 
   private void disposeToBackground(Canvas canvas, AnimatedDrawableFrameInfo frameInfo) {
@@ -194,53 +228,15 @@ public class AnimatedImageCompositor {
         mTransparentFillPaint);
   }
 
-  /**
-   * Returns whether the specified frame is needed for rendering the next frame. This is part of
-   * the compositing logic. See {@link FrameNeededResult} for more info about the results.
-   *
-   * @param index the frame to check
-   * @return whether the frame is required taking into account special conditions
-   */
-  private FrameNeededResult isFrameNeededForRendering(int index) {
-    AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(index);
-    DisposalMethod disposalMethod = frameInfo.disposalMethod;
-    if (disposalMethod == DisposalMethod.DISPOSE_DO_NOT) {
-      // Need this frame so keep going.
-      return FrameNeededResult.REQUIRED;
-    } else if (disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND) {
-      if (isFullFrame(frameInfo)) {
-        // The frame covered the whole image and we're disposing to background,
-        // so we don't even need to draw this frame.
-        return FrameNeededResult.NOT_REQUIRED;
-      } else {
-        // We need to draw the image. Then erase the part the previous frame covered.
-        // So keep going.
-        return FrameNeededResult.REQUIRED;
-      }
-    } else if (disposalMethod == DisposalMethod.DISPOSE_TO_PREVIOUS) {
-      return FrameNeededResult.SKIP;
-    } else {
-      return FrameNeededResult.ABORT;
+  private static AnimatedImageFrameIndex getFrameIndex(
+      AnimatedDrawableBackend animatedDrawableBackend) {
+    AnimatedImageResult animatedImageResult = animatedDrawableBackend.getAnimatedImageResult();
+    AnimatedImageFrameIndex frameIndex =
+        animatedImageResult != null ? animatedImageResult.getFrameIndex() : null;
+    if (frameIndex == null) {
+      // The index has not been built at decode time
+      frameIndex = AnimatedImageFrameIndex.forAnimatedDrawableBackend(animatedDrawableBackend);
     }
-  }
-
-  private boolean isKeyFrame(int index) {
-    if (index == 0) {
-      return true;
-    }
-    AnimatedDrawableFrameInfo currFrameInfo = mAnimatedDrawableBackend.getFrameInfo(index);
-    AnimatedDrawableFrameInfo prevFrameInfo = mAnimatedDrawableBackend.getFrameInfo(index - 1);
-    if (currFrameInfo.blendOperation == BlendOperation.NO_BLEND && isFullFrame(currFrameInfo)) {
-      return true;
-    } else
-      return prevFrameInfo.disposalMethod == DisposalMethod.DISPOSE_TO_BACKGROUND
-          && isFullFrame(prevFrameInfo);
-  }
-
-  private boolean isFullFrame(AnimatedDrawableFrameInfo frameInfo) {
-    return frameInfo.xOffset == 0 &&
-            frameInfo.yOffset == 0 &&
-            frameInfo.width == mAnimatedDrawableBackend.getRenderedWidth() &&
-            frameInfo.height == mAnimatedDrawableBackend.getRenderedHeight();
+    return frameIndex;
   }
 }
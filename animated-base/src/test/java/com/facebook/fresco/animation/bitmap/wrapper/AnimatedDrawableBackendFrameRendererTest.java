@@ -11,9 +11,14 @@ package com.facebook.fresco.animation.bitmap.wrapper;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo;
+import com.facebook.imagepipeline.animated.base.AnimatedImageFrameIndex;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -23,8 +28,11 @@ import org.robolectric.RobolectricTestRunner;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -33,17 +41,23 @@ import static org.mockito.Mockito.when;
 @RunWith(RobolectricTestRunner.class)
 public class AnimatedDrawableBackendFrameRendererTest {
 
+  private static final int FRAME_COUNT = 10;
+
   private AnimatedDrawableBackendFrameRenderer mAnimatedDrawableBackendFrameRenderer;
   private AnimatedDrawableBackend mAnimatedDrawableBackend;
   private BitmapFrameCache mBitmapFrameCache;
+  private PlatformBitmapFactory mPlatformBitmapFactory;
 
   @Before
   public void setup() {
     mAnimatedDrawableBackend = mock(AnimatedDrawableBackend.class);
+    when(mAnimatedDrawableBackend.getFrameCount()).thenReturn(FRAME_COUNT);
     mBitmapFrameCache = mock(BitmapFrameCache.class);
+    mPlatformBitmapFactory = mock(PlatformBitmapFactory.class);
     mAnimatedDrawableBackendFrameRenderer = new AnimatedDrawableBackendFrameRenderer(
         mBitmapFrameCache,
-        mAnimatedDrawableBackend);
+        mAnimatedDrawableBackend,
+        mPlatformBitmapFactory);
   }
 
   @Test
@@ -87,4 +101,66 @@ public class AnimatedDrawableBackendFrameRendererTest {
 
     assertThat(rendered).isTrue();
   }
+
+  @Test
+  public void testRenderFrameCachesSnapshotFrames() {
+    final int snapshotFrame = AnimatedImageFrameIndex.DEFAULT_SNAPSHOT_INTERVAL;
+    setupPartialFrames();
+    when(mBitmapFrameCache.willCacheFrame(anyInt())).thenReturn(true);
+    when(mPlatformBitmapFactory.createBitmap(100, 100, Bitmap.Config.ARGB_8888)).thenReturn(
+        CloseableReference.of(
+            Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888),
+            mock(ResourceReleaser.class)));
+    Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+
+    mAnimatedDrawableBackendFrameRenderer.renderFrame(snapshotFrame + 1, bitmap);
+
+    verify(mPlatformBitmapFactory).createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    verify(mBitmapFrameCache).onFramePrepared(
+        eq(snapshotFrame),
+        any(CloseableReference.class),
+        eq(BitmapAnimationBackend.FRAME_TYPE_CREATED));
+    verify(mBitmapFrameCache, never()).onFramePrepared(
+        eq(snapshotFrame - 1),
+        any(CloseableReference.class),
+        anyInt());
+    assertThat(mAnimatedDrawableBackendFrameRenderer.getLastCompositedFrameCount())
+        .isEqualTo(snapshotFrame + 2);
+  }
+
+  @Test
+  public void testRenderFrameDoesNotCopySnapshotFramesTheCacheWouldDrop() {
+    final int snapshotFrame = AnimatedImageFrameIndex.DEFAULT_SNAPSHOT_INTERVAL;
+    setupPartialFrames();
+    when(mBitmapFrameCache.willCacheFrame(anyInt())).thenReturn(false);
+    Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+
+    mAnimatedDrawableBackendFrameRenderer.renderFrame(snapshotFrame + 1, bitmap);
+
+    verify(mBitmapFrameCache).willCacheFrame(snapshotFrame);
+    verifyZeroInteractions(mPlatformBitmapFactory);
+    verify(mBitmapFrameCache, never()).onFramePrepared(
+        anyInt(),
+        any(CloseableReference.class),
+        anyInt());
+  }
+
+  private void setupPartialFrames() {
+    when(mAnimatedDrawableBackend.getWidth()).thenReturn(100);
+    when(mAnimatedDrawableBackend.getHeight()).thenReturn(100);
+    when(mAnimatedDrawableBackend.getFrameInfo(anyInt())).thenReturn(
+        new AnimatedDrawableFrameInfo(
+            0,
+            0,
+            0,
+            50,
+            50,
+            AnimatedDrawableFrameInfo.BlendOperation.BLEND_WITH_PREVIOUS,
+            AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_DO_NOT));
+    // The frame index is built when the compositor is created
+    mAnimatedDrawableBackendFrameRenderer = new AnimatedDrawableBackendFrameRenderer(
+        mBitmapFrameCache,
+        mAnimatedDrawableBackend,
+        mPlatformBitmapFactory);
+  }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.animated.base;
+
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.BlendOperation;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.DisposalMethod;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests {@link AnimatedImageFrameIndex}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AnimatedImageFrameIndexTest {
+
+  private static final int WIDTH = 100;
+  private static final int HEIGHT = 100;
+  private static final int SNAPSHOT_INTERVAL = 4;
+
+  @Test
+  public void testOnlyFirstFrameIsKeyFrameForPartialFrames() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(2, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(3, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(4, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(5, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(6, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(7, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(8, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(9, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.getFrameCount()).isEqualTo(10);
+    assertThat(frameIndex.isKeyFrame(0)).isTrue();
+    for (int i = 1; i < 10; i++) {
+      assertThat(frameIndex.isKeyFrame(i)).isFalse();
+      assertThat(frameIndex.isRequiredFrame(i)).isTrue();
+      assertThat(frameIndex.getCompositingStartFrame(i)).isEqualTo(0);
+      assertThat(frameIndex.isSnapshotFrame(i)).isEqualTo(i % SNAPSHOT_INTERVAL == 0);
+    }
+  }
+
+  @Test
+  public void testFullFrameWithoutBlendingIsKeyFrame() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_DO_NOT),
+        createFullFrame(2, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(3, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(4, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(5, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(6, DisposalMethod.DISPOSE_DO_NOT),
+        createFullFrame(7, BlendOperation.BLEND_WITH_PREVIOUS, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.isKeyFrame(2)).isTrue();
+    assertThat(frameIndex.getCompositingStartFrame(2)).isEqualTo(2);
+    assertThat(frameIndex.getCompositingStartFrame(3)).isEqualTo(2);
+    assertThat(frameIndex.isKeyFrame(7)).isFalse();
+    assertThat(frameIndex.getCompositingStartFrame(7)).isEqualTo(2);
+    assertThat(frameIndex.isSnapshotFrame(4)).isFalse();
+    assertThat(frameIndex.isSnapshotFrame(6)).isTrue();
+  }
+
+  @Test
+  public void testFrameAfterFullFrameDisposedToBackgroundIsKeyFrame() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_DO_NOT),
+        createFullFrame(
+            2,
+            BlendOperation.BLEND_WITH_PREVIOUS,
+            DisposalMethod.DISPOSE_TO_BACKGROUND),
+        createPartialFrame(3, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.isKeyFrame(2)).isFalse();
+    assertThat(frameIndex.isRequiredFrame(2)).isFalse();
+    assertThat(frameIndex.isKeyFrame(3)).isTrue();
+    assertThat(frameIndex.getCompositingStartFrame(3)).isEqualTo(3);
+  }
+
+  @Test
+  public void testPartialFrameDisposedToBackgroundIsRequired() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_TO_BACKGROUND),
+        createPartialFrame(2, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.isRequiredFrame(1)).isTrue();
+    assertThat(frameIndex.isKeyFrame(2)).isFalse();
+    assertThat(frameIndex.getCompositingStartFrame(2)).isEqualTo(0);
+  }
+
+  @Test
+  public void testSkipsFramesDisposedToPrevious() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(2, DisposalMethod.DISPOSE_TO_PREVIOUS),
+        createPartialFrame(3, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.isRequiredFrame(2)).isFalse();
+    assertThat(frameIndex.getCompositingStartFrame(3)).isEqualTo(0);
+  }
+
+  @Test
+  public void testStopsAtFrameWithoutDisposalMethod() {
+    AnimatedImageFrameIndex frameIndex = createFrameIndex(
+        createFullFrame(0, BlendOperation.NO_BLEND, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(1, DisposalMethod.DISPOSE_DO_NOT),
+        createPartialFrame(2, null),
+        createPartialFrame(3, DisposalMethod.DISPOSE_DO_NOT));
+
+    assertThat(frameIndex.isRequiredFrame(2)).isFalse();
+    assertThat(frameIndex.getCompositingStartFrame(3)).isEqualTo(2);
+  }
+
+  private static AnimatedImageFrameIndex createFrameIndex(
+      AnimatedDrawableFrameInfo... frameInfos) {
+    return new AnimatedImageFrameIndex(frameInfos, WIDTH, HEIGHT, SNAPSHOT_INTERVAL);
+  }
+
+  private static AnimatedDrawableFrameInfo createFullFrame(
+      int frameNumber,
+      BlendOperation blendOperation,
+      DisposalMethod disposalMethod) {
+    return new AnimatedDrawableFrameInfo(
+        frameNumber,
+        0,
+        0,
+        WIDTH,
+        HEIGHT,
+        blendOperation,
+        disposalMethod);
+  }
+
+  private static AnimatedDrawableFrameInfo createPartialFrame(
+      int frameNumber,
+      DisposalMethod disposalMethod) {
+    return new AnimatedDrawableFrameInfo(
+        frameNumber,
+        10,
+        10,
+        WIDTH / 2,
+        HEIGHT / 2,
+        BlendOperation.BLEND_WITH_PREVIOUS,
+        disposalMethod);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.animated.impl;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.BlendOperation;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo.DisposalMethod;
+import com.facebook.imagepipeline.animated.base.AnimatedImageFrameIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link AnimatedImageCompositor}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AnimatedImageCompositorTest {
+
+  private static final int FRAME_COUNT = 12;
+  private static final int WIDTH = 10;
+  private static final int HEIGHT = 10;
+
+  @Mock public AnimatedDrawableBackend mAnimatedDrawableBackend;
+  @Mock public AnimatedImageCompositor.Callback mCallback;
+  @Mock public ResourceReleaser<Bitmap> mBitmapReleaser;
+
+  private Bitmap mBitmap;
+  private AnimatedImageCompositor mAnimatedImageCompositor;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    when(mAnimatedDrawableBackend.getFrameCount()).thenReturn(FRAME_COUNT);
+    when(mAnimatedDrawableBackend.getWidth()).thenReturn(WIDTH);
+    when(mAnimatedDrawableBackend.getHeight()).thenReturn(HEIGHT);
+    when(mAnimatedDrawableBackend.getFrameInfo(0)).thenReturn(
+        new AnimatedDrawableFrameInfo(
+            0,
+            0,
+            0,
+            WIDTH,
+            HEIGHT,
+            BlendOperation.NO_BLEND,
+            DisposalMethod.DISPOSE_DO_NOT));
+    for (int i = 1; i < FRAME_COUNT; i++) {
+      when(mAnimatedDrawableBackend.getFrameInfo(i)).thenReturn(
+          new AnimatedDrawableFrameInfo(
+              i,
+              1,
+              1,
+              WIDTH / 2,
+              HEIGHT / 2,
+              BlendOperation.BLEND_WITH_PREVIOUS,
+              DisposalMethod.DISPOSE_DO_NOT));
+    }
+    mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    mAnimatedImageCompositor = new AnimatedImageCompositor(mAnimatedDrawableBackend, mCallback);
+  }
+
+  @Test
+  public void testRenderKeyFrame() {
+    mAnimatedImageCompositor.renderFrame(0, mBitmap);
+
+    verify(mAnimatedDrawableBackend).renderFrame(eq(0), any(Canvas.class));
+    verify(mCallback, never()).getCachedBitmap(anyInt());
+    assertThat(mAnimatedImageCompositor.getLastCompositedFrameCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRenderFrameWithoutCachedFrames() {
+    mAnimatedImageCompositor.renderFrame(10, mBitmap);
+
+    for (int i = 0; i <= 10; i++) {
+      verify(mAnimatedDrawableBackend).renderFrame(eq(i), any(Canvas.class));
+    }
+    for (int i = 0; i < 10; i++) {
+      verify(mCallback).onIntermediateResult(i, mBitmap);
+    }
+    assertThat(mAnimatedImageCompositor.getLastCompositedFrameCount()).isEqualTo(11);
+  }
+
+  @Test
+  public void testRenderFrameFromCachedSnapshot() {
+    final int snapshotFrame = AnimatedImageFrameIndex.DEFAULT_SNAPSHOT_INTERVAL;
+    assertThat(mAnimatedImageCompositor.getFrameIndex().isSnapshotFrame(snapshotFrame)).isTrue();
+    when(mCallback.getCachedBitmap(snapshotFrame)).thenReturn(
+        CloseableReference.of(
+            Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888),
+            mBitmapReleaser));
+
+    mAnimatedImageCompositor.renderFrame(snapshotFrame + 2, mBitmap);
+
+    verify(mCallback, times(2)).getCachedBitmap(anyInt());
+    verify(mCallback).getCachedBitmap(snapshotFrame + 1);
+    verify(mCallback).getCachedBitmap(snapshotFrame);
+    verify(mAnimatedDrawableBackend, never()).renderFrame(eq(0), any(Canvas.class));
+    verify(mAnimatedDrawableBackend).renderFrame(eq(snapshotFrame + 1), any(Canvas.class));
+    verify(mAnimatedDrawableBackend).renderFrame(eq(snapshotFrame + 2), any(Canvas.class));
+    verify(mBitmapReleaser).release(any(Bitmap.class));
+    assertThat(mAnimatedImageCompositor.getLastCompositedFrameCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testAverageCompositedFrameCount() {
+    assertThat(mAnimatedImageCompositor.getAverageCompositedFrameCount()).isEqualTo(0f);
+
+    mAnimatedImageCompositor.renderFrame(0, mBitmap);
+    mAnimatedImageCompositor.renderFrame(2, mBitmap);
+
+    assertThat(mAnimatedImageCompositor.getRenderedFrameCount()).isEqualTo(2);
+    assertThat(mAnimatedImageCompositor.getAverageCompositedFrameCount()).isEqualTo(2f);
+  }
+}
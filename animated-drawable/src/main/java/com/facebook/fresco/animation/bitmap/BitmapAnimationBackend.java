@@ -27,6 +27,7 @@ import com.facebook.fresco.animation.backend.AnimationBackendDelegateWithInactiv
 import com.facebook.fresco.animation.backend.AnimationInformation;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparer;
+import com.facebook.fresco.animation.bitmap.preparation.DeadlineBitmapFramePreparer;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 
 import static java.lang.annotation.RetentionPolicy.SOURCE;
@@ -267,6 +268,10 @@ public class BitmapAnimationBackend implements AnimationBackend,
 
   @Override
   public void clear() {
+    // Frames that are still being prepared would fill the cache again
+    if (mBitmapFramePreparer instanceof DeadlineBitmapFramePreparer) {
+      ((DeadlineBitmapFramePreparer) mBitmapFramePreparer).cancelFrames(this);
+    }
     mBitmapFrameCache.clear();
   }
 
@@ -77,6 +77,16 @@ public interface BitmapFrameCache {
    */
   boolean contains(int frameNumber);
 
+  /**
+   * Check whether the cache would keep a frame that is prepared for the given frame number.
+   * Callers can use this to avoid allocating and rendering frames the cache would drop.
+   *
+   * @param frameNumber the frame number to check
+   * @return true if the frame would be cached by
+   *     {@link #onFramePrepared(int, CloseableReference, int)}
+   */
+  boolean willCacheFrame(int frameNumber);
+
   /**
    * @return the size in bytes of all cached data
    */
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.cache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.logging.FLog;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import com.facebook.imageutils.BitmapUtil;
+
+/**
+ * Bitmap frame cache that adapts the number of frames it keeps to the animation and to the memory
+ * available for it.
+ *
+ * <p> Animations whose frames all fit in the share of the cache of the {@link FrameCacheBudget},
+ * like short looping stickers, are cached entirely so that each frame is only rendered once. For
+ * other animations, the cache keeps a sliding window of the frames after the last rendered one.
+ * The window is large enough to hide the measured time it takes to render a frame, but never
+ * exceeds the share of the budget. The last rendered frame is always kept to be used as fallback.
+ *
+ * <p> The frames of the window can be prepared ahead of time with
+ * {@link com.facebook.fresco.animation.bitmap.preparation.AdaptiveBitmapFramePreparationStrategy}.
+ */
+public class AdaptiveFrameCache implements BitmapFrameCache {
+
+  private static final Class<?> TAG = AdaptiveFrameCache.class;
+
+  @VisibleForTesting
+  static final int DEFAULT_FRAMES_TO_PREPARE = 3;
+
+  private static final int FRAME_NUMBER_UNSET = -1;
+  private static final long RENDER_START_TIME_UNSET = -1;
+
+  private final FrameCacheBudget mFrameCacheBudget;
+  private final MonotonicClock mMonotonicClock;
+  private final int mFrameCount;
+  private final long mAverageFrameDurationMs;
+
+  @GuardedBy("this")
+  private final SparseArray<CloseableReference<Bitmap>> mCachedFrames;
+  @GuardedBy("this")
+  private final long[] mRenderStartTimesMs;
+  @GuardedBy("this")
+  private int mLastRenderedFrameNumber = FRAME_NUMBER_UNSET;
+  @GuardedBy("this")
+  private int mFrameSizeInBytes;
+  @GuardedBy("this")
+  private long mAverageRenderTimeMs = -1;
+  @GuardedBy("this")
+  private int mSizeInBytes;
+
+  @Nullable
+  private FrameCacheListener mFrameCacheListener;
+
+  public AdaptiveFrameCache(
+      AnimationInformation animationInformation,
+      FrameCacheBudget frameCacheBudget,
+      MonotonicClock monotonicClock) {
+    mFrameCacheBudget = frameCacheBudget;
+    mMonotonicClock = monotonicClock;
+    mFrameCount = Math.max(animationInformation.getFrameCount(), 0);
+    long loopDurationMs = 0;
+    for (int i = 0; i < mFrameCount; i++) {
+      loopDurationMs += animationInformation.getFrameDurationMs(i);
+    }
+    mAverageFrameDurationMs = mFrameCount == 0 ? 0 : loopDurationMs / mFrameCount;
+    mCachedFrames = new SparseArray<>();
+    mRenderStartTimesMs = new long[mFrameCount];
+    Arrays.fill(mRenderStartTimesMs, RENDER_START_TIME_UNSET);
+  }
+
+  /**
+   * Gets the number of frames after the last rendered frame that should be cached.
+   *
+   * @return the frame count minus one if all the frames can be cached, otherwise the size of the
+   *     sliding window
+   */
+  public synchronized int getNumberOfFramesToPrepare() {
+    if (mFrameCount <= 1) {
+      return 0;
+    }
+    if (mFrameSizeInBytes <= 0) {
+      // Nothing has been rendered yet
+      return Math.min(DEFAULT_FRAMES_TO_PREPARE, mFrameCount - 1);
+    }
+    final int affordableFrames = mFrameCacheBudget.getShareInBytes(this) / mFrameSizeInBytes;
+    if (affordableFrames >= mFrameCount) {
+      return mFrameCount - 1;
+    }
+    int framesToHideRenderTime = 1;
+    if (mAverageRenderTimeMs > 0 && mAverageFrameDurationMs > 0) {
+      framesToHideRenderTime += (int) (mAverageRenderTimeMs / mAverageFrameDurationMs);
+    }
+    // The last rendered frame is kept in addition to the window
+    return Math.max(0, Math.min(framesToHideRenderTime, affordableFrames - 1));
+  }
+
+  @Nullable
+  @Override
+  public synchronized CloseableReference<Bitmap> getCachedFrame(int frameNumber) {
+    return CloseableReference.cloneOrNull(mCachedFrames.get(frameNumber));
+  }
+
+  @Nullable
+  @Override
+  public synchronized CloseableReference<Bitmap> getFallbackFrame(int frameNumber) {
+    if (mLastRenderedFrameNumber == FRAME_NUMBER_UNSET) {
+      return null;
+    }
+    return CloseableReference.cloneOrNull(mCachedFrames.get(mLastRenderedFrameNumber));
+  }
+
+  @Nullable
+  @Override
+  public synchronized CloseableReference<Bitmap> getBitmapToReuseForFrame(
+      int frameNumber,
+      int width,
+      int height) {
+    // The frame is about to be rendered, which is timed until the frame is handed back to us.
+    if (frameNumber >= 0 && frameNumber < mFrameCount) {
+      mRenderStartTimesMs[frameNumber] = mMonotonicClock.now();
+    }
+    // Cached frames can still be drawn while another frame is rendered, so they are not reused
+    return null;
+  }
+
+  @Override
+  public synchronized boolean contains(int frameNumber) {
+    return CloseableReference.isValid(mCachedFrames.get(frameNumber));
+  }
+
+  @Override
+  public synchronized boolean willCacheFrame(int frameNumber) {
+    if (contains(frameNumber)) {
+      return false;
+    }
+    if (mLastRenderedFrameNumber != FRAME_NUMBER_UNSET &&
+        getDistanceFromLastRenderedFrame(frameNumber) > getNumberOfFramesToPrepare()) {
+      return false;
+    }
+    // The size of the frames is only known once one has been cached
+    return mFrameSizeInBytes <= 0 ||
+        mSizeInBytes + mFrameSizeInBytes <= mFrameCacheBudget.getShareInBytes(this);
+  }
+
+  @Override
+  public synchronized int getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (int i = mCachedFrames.size() - 1; i >= 0; i--) {
+      evictFrameAt(i);
+    }
+    mLastRenderedFrameNumber = FRAME_NUMBER_UNSET;
+  }
+
+  @Override
+  public synchronized void onFrameRendered(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    onRenderFinished(frameNumber, frameType);
+    mLastRenderedFrameNumber = frameNumber;
+    if (!contains(frameNumber)) {
+      // The last rendered frame is the fallback frame, so it is always kept
+      cacheFrame(frameNumber, bitmapReference, true);
+    }
+    evictFramesOutsideOfWindow();
+  }
+
+  @Override
+  public synchronized void onFramePrepared(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    onRenderFinished(frameNumber, frameType);
+    if (contains(frameNumber) ||
+        (mLastRenderedFrameNumber != FRAME_NUMBER_UNSET &&
+            getDistanceFromLastRenderedFrame(frameNumber) > getNumberOfFramesToPrepare())) {
+      return;
+    }
+    cacheFrame(frameNumber, bitmapReference, false);
+  }
+
+  @Override
+  public void setFrameCacheListener(FrameCacheListener frameCacheListener) {
+    mFrameCacheListener = frameCacheListener;
+  }
+
+  /**
+   * Evicts frames for a memory trim event, starting with the frames that are drawn last. The last
+   * rendered frame is only evicted if all frames have to be.
+   *
+   * @param trimRatio the ratio of the cached bytes to evict
+   */
+  synchronized void trim(double trimRatio) {
+    if (trimRatio >= 1) {
+      clear();
+      return;
+    }
+    final int targetSizeInBytes = (int) (mSizeInBytes * (1 - trimRatio));
+    while (mSizeInBytes > targetSizeInBytes) {
+      int farthestFrameIndex = -1;
+      int farthestFrameDistance = 0;
+      for (int i = 0; i < mCachedFrames.size(); i++) {
+        int distance = getDistanceFromLastRenderedFrame(mCachedFrames.keyAt(i));
+        if (distance > farthestFrameDistance) {
+          farthestFrameIndex = i;
+          farthestFrameDistance = distance;
+        }
+      }
+      if (farthestFrameIndex < 0) {
+        return;
+      }
+      evictFrameAt(farthestFrameIndex);
+    }
+  }
+
+  @GuardedBy("this")
+  private void onRenderFinished(int frameNumber, @BitmapAnimationBackend.FrameType int frameType) {
+    if (frameNumber < 0 || frameNumber >= mFrameCount) {
+      return;
+    }
+    final long renderStartTimeMs = mRenderStartTimesMs[frameNumber];
+    mRenderStartTimesMs[frameNumber] = RENDER_START_TIME_UNSET;
+    if (renderStartTimeMs == RENDER_START_TIME_UNSET ||
+        (frameType != BitmapAnimationBackend.FRAME_TYPE_REUSED &&
+            frameType != BitmapAnimationBackend.FRAME_TYPE_CREATED)) {
+      return;
+    }
+    final long renderTimeMs = mMonotonicClock.now() - renderStartTimeMs;
+    mAverageRenderTimeMs = mAverageRenderTimeMs < 0
+        ? renderTimeMs
+        : (3 * mAverageRenderTimeMs + renderTimeMs) / 4;
+  }
+
+  @GuardedBy("this")
+  private void cacheFrame(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      boolean force) {
+    if (!CloseableReference.isValid(bitmapReference)) {
+      return;
+    }
+    final int sizeInBytes = BitmapUtil.getSizeInBytes(bitmapReference.get());
+    mFrameSizeInBytes = sizeInBytes;
+    if (!mFrameCacheBudget.reserve(this, sizeInBytes, force)) {
+      FLog.v(TAG, "Frame %d does not fit in the budget", frameNumber);
+      return;
+    }
+    mCachedFrames.put(frameNumber, bitmapReference.clone());
+    mSizeInBytes += sizeInBytes;
+    if (mFrameCacheListener != null) {
+      mFrameCacheListener.onFrameCached(this, frameNumber);
+    }
+  }
+
+  @GuardedBy("this")
+  private void evictFramesOutsideOfWindow() {
+    final int framesToPrepare = getNumberOfFramesToPrepare();
+    for (int i = mCachedFrames.size() - 1; i >= 0; i--) {
+      if (getDistanceFromLastRenderedFrame(mCachedFrames.keyAt(i)) > framesToPrepare) {
+        evictFrameAt(i);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void evictFrameAt(int index) {
+    final int frameNumber = mCachedFrames.keyAt(index);
+    final CloseableReference<Bitmap> bitmapReference = mCachedFrames.valueAt(index);
+    mCachedFrames.removeAt(index);
+    final int sizeInBytes = BitmapUtil.getSizeInBytes(bitmapReference.get());
+    CloseableReference.closeSafely(bitmapReference);
+    mSizeInBytes -= sizeInBytes;
+    mFrameCacheBudget.release(this, sizeInBytes);
+    if (mFrameCacheListener != null) {
+      mFrameCacheListener.onFrameEvicted(this, frameNumber);
+    }
+  }
+
+  /**
+   * @return the number of frames from the last rendered frame to the given frame, or 0 if no
+   *     frame has been rendered
+   */
+  @GuardedBy("this")
+  private int getDistanceFromLastRenderedFrame(int frameNumber) {
+    if (mLastRenderedFrameNumber == FRAME_NUMBER_UNSET || mFrameCount == 0) {
+      return 0;
+    }
+    return (frameNumber - mLastRenderedFrameNumber + mFrameCount) % mFrameCount;
+  }
+}
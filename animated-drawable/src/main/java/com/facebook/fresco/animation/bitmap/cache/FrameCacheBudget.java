@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.cache;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ComponentCallbacks2;
+
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.time.MonotonicClock;
+
+/**
+ * Byte budget for the frames of {@link AdaptiveFrameCache}s, shared between all the animations
+ * that use it.
+ *
+ * <p> Caches reserve the size of each frame they keep and release it when the frame is evicted.
+ * The budget is split evenly between the caches that hold frames.
+ *
+ * <p> Memory trim events evict frames from all the caches. If the app is still in the foreground,
+ * the budget is also lowered by the suggested trim ratio for {@link #TRIM_DURATION_MS}, so that
+ * the frames are not cached again right away.
+ */
+@ThreadSafe
+public class FrameCacheBudget implements MemoryTrimmable {
+
+  @VisibleForTesting
+  static final long TRIM_DURATION_MS = 30 * 1000;
+
+  private final int mMaxSizeInBytes;
+  private final MonotonicClock mMonotonicClock;
+
+  @GuardedBy("this")
+  private final Map<AdaptiveFrameCache, Integer> mReservedSizes;
+  @GuardedBy("this")
+  private int mSizeInBytes;
+  @GuardedBy("this")
+  private double mTrimRatio;
+  @GuardedBy("this")
+  private long mTrimEndMs;
+
+  /**
+   * @param maxSizeInBytes the size of the budget
+   * @param monotonicClock the clock used to restore the budget after a trim
+   */
+  public FrameCacheBudget(int maxSizeInBytes, MonotonicClock monotonicClock) {
+    mMaxSizeInBytes = maxSizeInBytes;
+    mMonotonicClock = monotonicClock;
+    mReservedSizes = new HashMap<>();
+  }
+
+  /**
+   * @return the total size of the frames cached with this budget
+   */
+  public synchronized int getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  /**
+   * @return the number of caches that hold frames
+   */
+  public synchronized int getCacheCount() {
+    return mReservedSizes.size();
+  }
+
+  /**
+   * Gets the share of the budget of the given cache, which is the same for all caches that hold
+   * frames, including the given one.
+   */
+  public synchronized int getShareInBytes(AdaptiveFrameCache cache) {
+    final int cacheCount = mReservedSizes.size() + (mReservedSizes.containsKey(cache) ? 0 : 1);
+    return getLimitInBytes() / cacheCount;
+  }
+
+  /**
+   * Reserves the size of a frame for the given cache.
+   *
+   * @param force whether to reserve the size even if it exceeds the share of the cache
+   * @return true if the size has been reserved
+   */
+  synchronized boolean reserve(AdaptiveFrameCache cache, int sizeInBytes, boolean force) {
+    final int reservedSize = getReservedSize(cache);
+    if (!force && reservedSize + sizeInBytes > getShareInBytes(cache)) {
+      return false;
+    }
+    mReservedSizes.put(cache, reservedSize + sizeInBytes);
+    mSizeInBytes += sizeInBytes;
+    return true;
+  }
+
+  /**
+   * Releases the size of a frame the given cache evicted.
+   */
+  synchronized void release(AdaptiveFrameCache cache, int sizeInBytes) {
+    final int reservedSize = getReservedSize(cache);
+    final int releasedSize = Math.min(reservedSize, sizeInBytes);
+    if (reservedSize - releasedSize > 0) {
+      mReservedSizes.put(cache, reservedSize - releasedSize);
+    } else {
+      mReservedSizes.remove(cache);
+    }
+    mSizeInBytes -= releasedSize;
+  }
+
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    final double trimRatio = trimType.getSuggestedTrimRatio();
+    final List<AdaptiveFrameCache> caches;
+    synchronized (this) {
+      if (trimRatio < 1) {
+        mTrimRatio = trimRatio;
+        mTrimEndMs = mMonotonicClock.now() + TRIM_DURATION_MS;
+      }
+      caches = new ArrayList<>(mReservedSizes.keySet());
+    }
+    for (AdaptiveFrameCache cache : caches) {
+      cache.trim(trimRatio);
+    }
+  }
+
+  /**
+   * Trims the cached frames for the given level of
+   * {@link ComponentCallbacks2#onTrimMemory(int)}.
+   */
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      trim(MemoryTrimType.OnAppBackgrounded);
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      trim(MemoryTrimType.OnSystemLowMemoryWhileAppInForeground);
+    }
+  }
+
+  @GuardedBy("this")
+  private int getReservedSize(AdaptiveFrameCache cache) {
+    final Integer reservedSize = mReservedSizes.get(cache);
+    return reservedSize == null ? 0 : reservedSize;
+  }
+
+  @GuardedBy("this")
+  private int getLimitInBytes() {
+    long limit = mMaxSizeInBytes;
+    if (mTrimEndMs > mMonotonicClock.now()) {
+      limit = (long) (limit * (1 - mTrimRatio));
+    }
+    return (int) limit;
+  }
+}
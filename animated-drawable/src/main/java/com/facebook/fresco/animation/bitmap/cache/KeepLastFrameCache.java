@@ -66,6 +66,12 @@ public class KeepLastFrameCache implements BitmapFrameCache {
     return frameNumber == mLastFrameNumber && CloseableReference.isValid(mLastBitmapReference);
   }
 
+  @Override
+  public boolean willCacheFrame(int frameNumber) {
+    // Only the last rendered frame is kept
+    return false;
+  }
+
   @Override
   public synchronized int getSizeInBytes() {
     return mLastBitmapReference == null
@@ -47,6 +47,12 @@ public class NoOpCache implements BitmapFrameCache {
     return false;
   }
 
+  @Override
+  public boolean willCacheFrame(int frameNumber) {
+    // Does not cache anything
+    return false;
+  }
+
   @Override
   public int getSizeInBytes() {
     return 0;
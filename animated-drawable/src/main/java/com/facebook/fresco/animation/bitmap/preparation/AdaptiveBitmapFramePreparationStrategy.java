@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import com.facebook.fresco.animation.bitmap.cache.AdaptiveFrameCache;
+
+/**
+ * Frame preparation strategy that prepares the frames an {@link AdaptiveFrameCache} keeps after
+ * the last drawn frame, so that the number of prepared frames follows the size of its window.
+ */
+public class AdaptiveBitmapFramePreparationStrategy
+    extends FixedNumberBitmapFramePreparationStrategy {
+
+  private final AdaptiveFrameCache mAdaptiveFrameCache;
+
+  public AdaptiveBitmapFramePreparationStrategy(AdaptiveFrameCache adaptiveFrameCache) {
+    mAdaptiveFrameCache = adaptiveFrameCache;
+  }
+
+  @Override
+  protected int getFramesToPrepare() {
+    return mAdaptiveFrameCache.getNumberOfFramesToPrepare();
+  }
+}
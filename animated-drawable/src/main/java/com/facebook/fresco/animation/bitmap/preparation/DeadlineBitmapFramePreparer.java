@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import com.facebook.fresco.animation.backend.AnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+
+/**
+ * Bitmap frame preparer that takes into account when the frames are drawn.
+ */
+public interface DeadlineBitmapFramePreparer extends BitmapFramePreparer {
+
+  /**
+   * Prepare the frame with the given frame number, like
+   * {@link #prepareFrame(BitmapFrameCache, AnimationBackend, int)}, before it is drawn.
+   *
+   * @param bitmapFrameCache the cache to notify for prepared frames
+   * @param animationBackend the backend to prepare frames for
+   * @param frameNumber the frame number to prepare
+   * @param dueInMs the time until the frame is drawn
+   * @return true if the frame could be scheduled for preparation
+   */
+  boolean prepareFrame(
+      BitmapFrameCache bitmapFrameCache,
+      AnimationBackend animationBackend,
+      int frameNumber,
+      long dueInMs);
+
+  /**
+   * Cancel the preparation of the frames of the given backend that have not been prepared yet,
+   * for example because the animation is not drawn anymore.
+   *
+   * @param animationBackend the backend to cancel frames for
+   */
+  void cancelFrames(AnimationBackend animationBackend);
+}
@@ -8,6 +8,8 @@
  */
 package com.facebook.fresco.animation.bitmap.preparation;
 
+import javax.annotation.Nullable;
+
 import java.util.concurrent.ExecutorService;
 
 import android.graphics.Bitmap;
@@ -22,18 +24,22 @@ import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 
 /**
- * Default bitmap frame preparer that uses the given {@link ExecutorService} to schedule jobs.
+ * Default bitmap frame preparer that uses the given {@link ExecutorService} or
+ * {@link FrameDecodeScheduler} to schedule jobs.
  * An instance of this class can be shared between multiple animated images.
  */
 public class DefaultBitmapFramePreparer
-    implements BitmapFramePreparer {
+    implements DeadlineBitmapFramePreparer {
 
   private static final Class<?> TAG = DefaultBitmapFramePreparer.class;
 
   private final PlatformBitmapFactory mPlatformBitmapFactory;
   private final BitmapFrameRenderer mBitmapFrameRenderer;
   private final Bitmap.Config mBitmapConfig;
+  @Nullable
   private final ExecutorService mExecutorService;
+  @Nullable
+  private final FrameDecodeScheduler mFrameDecodeScheduler;
   private final SparseArray<Runnable> mPendingFrameDecodeJobs;
 
   public DefaultBitmapFramePreparer(
@@ -41,10 +47,32 @@ public class DefaultBitmapFramePreparer
       BitmapFrameRenderer bitmapFrameRenderer,
       Bitmap.Config bitmapConfig,
       ExecutorService executorService) {
+    this(platformBitmapFactory, bitmapFrameRenderer, bitmapConfig, executorService, null);
+  }
+
+  /**
+   * Creates a preparer that decodes frames with the given {@link FrameDecodeScheduler}, which is
+   * usually shared between all animated images.
+   */
+  public DefaultBitmapFramePreparer(
+      PlatformBitmapFactory platformBitmapFactory,
+      BitmapFrameRenderer bitmapFrameRenderer,
+      Bitmap.Config bitmapConfig,
+      FrameDecodeScheduler frameDecodeScheduler) {
+    this(platformBitmapFactory, bitmapFrameRenderer, bitmapConfig, null, frameDecodeScheduler);
+  }
+
+  private DefaultBitmapFramePreparer(
+      PlatformBitmapFactory platformBitmapFactory,
+      BitmapFrameRenderer bitmapFrameRenderer,
+      Bitmap.Config bitmapConfig,
+      @Nullable ExecutorService executorService,
+      @Nullable FrameDecodeScheduler frameDecodeScheduler) {
     mPlatformBitmapFactory = platformBitmapFactory;
     mBitmapFrameRenderer = bitmapFrameRenderer;
     mBitmapConfig = bitmapConfig;
     mExecutorService = executorService;
+    mFrameDecodeScheduler = frameDecodeScheduler;
     mPendingFrameDecodeJobs = new SparseArray<>();
   }
 
@@ -53,6 +81,19 @@ public class DefaultBitmapFramePreparer
       BitmapFrameCache bitmapFrameCache,
       AnimationBackend animationBackend,
       int frameNumber) {
+    return prepareFrame(
+        bitmapFrameCache,
+        animationBackend,
+        frameNumber,
+        FrameDecodeScheduler.NO_DEADLINE);
+  }
+
+  @Override
+  public boolean prepareFrame(
+      BitmapFrameCache bitmapFrameCache,
+      AnimationBackend animationBackend,
+      int frameNumber,
+      long dueInMs) {
     // Create a unique ID to identify the frame for the given backend.
     int frameId = getUniqueId(animationBackend, frameNumber);
     synchronized (mPendingFrameDecodeJobs) {
@@ -66,24 +107,40 @@ public class DefaultBitmapFramePreparer
         FLog.v(TAG, "Frame %d is cached already.", frameNumber);
         return true;
       }
-      Runnable frameDecodeRunnable = new FrameDecodeRunnable(
+      FrameDecodeRunnable frameDecodeRunnable = new FrameDecodeRunnable(
           animationBackend,
           bitmapFrameCache,
           frameNumber,
           frameId);
       mPendingFrameDecodeJobs.put(frameId, frameDecodeRunnable);
-      mExecutorService.execute(frameDecodeRunnable);
+      if (mFrameDecodeScheduler != null) {
+        mFrameDecodeScheduler.schedule(
+            animationBackend,
+            frameNumber,
+            dueInMs,
+            frameDecodeRunnable);
+      } else {
+        mExecutorService.execute(frameDecodeRunnable);
+      }
     }
     return true;
   }
 
+  @Override
+  public void cancelFrames(AnimationBackend animationBackend) {
+    // Jobs that have been passed to an executor cannot be cancelled
+    if (mFrameDecodeScheduler != null) {
+      mFrameDecodeScheduler.cancel(animationBackend);
+    }
+  }
+
   private static int getUniqueId(AnimationBackend backend, int frameNumber) {
     int result = backend.hashCode();
     result = 31 * result + frameNumber;
     return result;
   }
 
-  private class FrameDecodeRunnable implements Runnable {
+  private class FrameDecodeRunnable implements FrameDecodeScheduler.FrameTask {
 
     private final BitmapFrameCache mBitmapFrameCache;
     private final AnimationBackend mAnimationBackend;
@@ -117,9 +174,19 @@ public class DefaultBitmapFramePreparer
           FLog.e(TAG, "Could not prepare frame %d.", mFrameNumber);
         }
       } finally {
-        synchronized (mPendingFrameDecodeJobs) {
-          mPendingFrameDecodeJobs.remove(mHashCode);
-        }
+        removePendingJob();
+      }
+    }
+
+    @Override
+    public void onCancel() {
+      FLog.v(TAG, "Cancelled decode job for frame %d", mFrameNumber);
+      removePendingJob();
+    }
+
+    private void removePendingJob() {
+      synchronized (mPendingFrameDecodeJobs) {
+        mPendingFrameDecodeJobs.remove(mHashCode);
       }
     }
 
@@ -13,7 +13,10 @@ import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 
 /**
- * Frame preparation strategy to prepare the next n frames
+ * Frame preparation strategy to prepare the next n frames.
+ *
+ * If the preparer is a {@link DeadlineBitmapFramePreparer}, it is told when each frame is drawn,
+ * assuming that the last drawn frame has just been drawn.
  */
 public class FixedNumberBitmapFramePreparationStrategy
     implements BitmapFramePreparationStrategy {
@@ -37,18 +40,44 @@ public class FixedNumberBitmapFramePreparationStrategy
       BitmapFrameCache bitmapFrameCache,
       AnimationBackend animationBackend,
       int lastDrawnFrameNumber) {
-    for (int i = 1; i <= mFramesToPrepare; i++) {
+    final DeadlineBitmapFramePreparer deadlineBitmapFramePreparer =
+        bitmapFramePreparer instanceof DeadlineBitmapFramePreparer
+            ? (DeadlineBitmapFramePreparer) bitmapFramePreparer
+            : null;
+    final int framesToPrepare = getFramesToPrepare();
+    long dueInMs = 0;
+    for (int i = 1; i <= framesToPrepare; i++) {
       int nextFrameNumber = (lastDrawnFrameNumber + i) % animationBackend.getFrameCount();
       if (FLog.isLoggable(FLog.VERBOSE)) {
         FLog.v(TAG, "Preparing frame %d, last drawn: %d", nextFrameNumber, lastDrawnFrameNumber);
       }
-      if (!bitmapFramePreparer.prepareFrame(
-          bitmapFrameCache,
-          animationBackend,
-          nextFrameNumber)) {
+      final boolean prepared;
+      if (deadlineBitmapFramePreparer != null) {
+        // The frame is drawn once all the frames before it have been shown
+        int previousFrameNumber = (lastDrawnFrameNumber + i - 1) % animationBackend.getFrameCount();
+        dueInMs += animationBackend.getFrameDurationMs(previousFrameNumber);
+        prepared = deadlineBitmapFramePreparer.prepareFrame(
+            bitmapFrameCache,
+            animationBackend,
+            nextFrameNumber,
+            dueInMs);
+      } else {
+        prepared = bitmapFramePreparer.prepareFrame(
+            bitmapFrameCache,
+            animationBackend,
+            nextFrameNumber);
+      }
+      if (!prepared) {
         // We cannot prepare more frames, so we return early
         return;
       }
     }
   }
+
+  /**
+   * @return the number of frames to prepare after the last drawn frame
+   */
+  protected int getFramesToPrepare() {
+    return mFramesToPrepare;
+  }
 }
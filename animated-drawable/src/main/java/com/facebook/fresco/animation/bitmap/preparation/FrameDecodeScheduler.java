@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.logging.FLog;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.fresco.animation.backend.AnimationBackend;
+
+/**
+ * Frame decode scheduler that can be shared between all animated images in order to prepare
+ * their frames on a single executor.
+ *
+ * <p> Frames are decoded in the order of their presentation deadlines, regardless of the
+ * animation they belong to, so that the frames that are drawn next are prepared first. Frames
+ * whose deadline has passed before they could be decoded are dropped and reported to the
+ * {@link FrameDropListener}, and the pending frames of an animation that is not drawn anymore can
+ * be cancelled with {@link #cancel(AnimationBackend)}.
+ *
+ * <p> The time spent decoding frames is limited to a budget per vsync interval. Once it is used
+ * up, decoding resumes at the start of the next interval, which leaves the executor to other work
+ * in the meantime.
+ */
+@ThreadSafe
+public class FrameDecodeScheduler {
+
+  /**
+   * Deadline of frames that are not due at a given time. These frames are decoded after all the
+   * frames with a deadline and are never dropped.
+   */
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  public static final int DEFAULT_VSYNC_INTERVAL_MS = 16;
+  public static final int DEFAULT_DECODE_BUDGET_PER_VSYNC_INTERVAL_MS = 10;
+
+  private static final Class<?> TAG = FrameDecodeScheduler.class;
+
+  /**
+   * Decode work for a frame.
+   */
+  public interface FrameTask extends Runnable {
+
+    /**
+     * Called instead of {@link #run()} if the frame has been dropped or cancelled.
+     */
+    void onCancel();
+  }
+
+  public interface FrameDropListener {
+
+    /**
+     * Called when a frame has been dropped because its deadline passed before it was decoded.
+     *
+     * @param animationBackend the backend the frame belongs to
+     * @param frameNumber the dropped frame number
+     * @param lateByMs how long ago the deadline of the frame passed
+     */
+    void onFrameDropped(AnimationBackend animationBackend, int frameNumber, long lateByMs);
+  }
+
+  private final ExecutorService mExecutorService;
+  private final ScheduledExecutorService mScheduledExecutorService;
+  private final MonotonicClock mMonotonicClock;
+  private final int mVsyncIntervalMs;
+  private final int mDecodeBudgetPerVsyncIntervalMs;
+
+  @GuardedBy("this")
+  private final PriorityQueue<ScheduledFrame> mScheduledFrames;
+  @GuardedBy("this")
+  private long mSequenceNumber;
+  @GuardedBy("this")
+  private boolean mDecodeScheduled;
+  @GuardedBy("this")
+  private long mVsyncIntervalStartMs;
+  @GuardedBy("this")
+  private long mDecodeTimeInVsyncIntervalMs;
+  @GuardedBy("this")
+  private int mDroppedFrameCount;
+
+  @Nullable
+  private volatile FrameDropListener mFrameDropListener;
+
+  private final Runnable mDecodeRunnable = new Runnable() {
+    @Override
+    public void run() {
+      decodeFrames();
+    }
+  };
+
+  private final Runnable mResumeDecodingRunnable = new Runnable() {
+    @Override
+    public void run() {
+      mExecutorService.execute(mDecodeRunnable);
+    }
+  };
+
+  public FrameDecodeScheduler(
+      ExecutorService executorService,
+      ScheduledExecutorService scheduledExecutorService,
+      MonotonicClock monotonicClock) {
+    this(
+        executorService,
+        scheduledExecutorService,
+        monotonicClock,
+        DEFAULT_VSYNC_INTERVAL_MS,
+        DEFAULT_DECODE_BUDGET_PER_VSYNC_INTERVAL_MS);
+  }
+
+  /**
+   * @param executorService the executor to decode frames on
+   * @param scheduledExecutorService the executor used to resume decoding once the decode budget of
+   *     a vsync interval has been used up
+   * @param monotonicClock the clock that deadlines are measured with
+   * @param vsyncIntervalMs the length of a vsync interval
+   * @param decodeBudgetPerVsyncIntervalMs the time frames can be decoded for in a vsync interval
+   */
+  public FrameDecodeScheduler(
+      ExecutorService executorService,
+      ScheduledExecutorService scheduledExecutorService,
+      MonotonicClock monotonicClock,
+      int vsyncIntervalMs,
+      int decodeBudgetPerVsyncIntervalMs) {
+    Preconditions.checkArgument(vsyncIntervalMs > 0);
+    Preconditions.checkArgument(decodeBudgetPerVsyncIntervalMs > 0);
+    mExecutorService = executorService;
+    mScheduledExecutorService = scheduledExecutorService;
+    mMonotonicClock = monotonicClock;
+    mVsyncIntervalMs = vsyncIntervalMs;
+    mDecodeBudgetPerVsyncIntervalMs = decodeBudgetPerVsyncIntervalMs;
+    mScheduledFrames = new PriorityQueue<>();
+  }
+
+  public void setFrameDropListener(@Nullable FrameDropListener frameDropListener) {
+    mFrameDropListener = frameDropListener;
+  }
+
+  /**
+   * Schedules the decode work of a frame.
+   *
+   * @param animationBackend the backend the frame belongs to
+   * @param frameNumber the frame number
+   * @param dueInMs the time until the frame is drawn, or {@link #NO_DEADLINE}
+   * @param frameTask the decode work
+   */
+  public void schedule(
+      AnimationBackend animationBackend,
+      int frameNumber,
+      long dueInMs,
+      FrameTask frameTask) {
+    final boolean executeDecode;
+    synchronized (this) {
+      long deadlineMs = dueInMs == NO_DEADLINE ? NO_DEADLINE : mMonotonicClock.now() + dueInMs;
+      mScheduledFrames.add(
+          new ScheduledFrame(
+              animationBackend,
+              frameNumber,
+              deadlineMs,
+              mSequenceNumber++,
+              frameTask));
+      executeDecode = !mDecodeScheduled;
+      mDecodeScheduled = true;
+    }
+    if (executeDecode) {
+      mExecutorService.execute(mDecodeRunnable);
+    }
+  }
+
+  /**
+   * Cancels all the frames scheduled for the given backend that have not been decoded yet.
+   *
+   * @param animationBackend the backend to cancel frames for
+   */
+  public void cancel(AnimationBackend animationBackend) {
+    List<ScheduledFrame> cancelledFrames = null;
+    synchronized (this) {
+      Iterator<ScheduledFrame> iterator = mScheduledFrames.iterator();
+      while (iterator.hasNext()) {
+        ScheduledFrame scheduledFrame = iterator.next();
+        if (scheduledFrame.mAnimationBackend == animationBackend) {
+          iterator.remove();
+          if (cancelledFrames == null) {
+            cancelledFrames = new ArrayList<>();
+          }
+          cancelledFrames.add(scheduledFrame);
+        }
+      }
+    }
+    if (cancelledFrames != null) {
+      for (ScheduledFrame scheduledFrame : cancelledFrames) {
+        scheduledFrame.mFrameTask.onCancel();
+      }
+    }
+  }
+
+  public synchronized int getScheduledFrameCount() {
+    return mScheduledFrames.size();
+  }
+
+  /**
+   * @return the number of frames dropped because their deadline passed
+   */
+  public synchronized int getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  private void decodeFrames() {
+    boolean completed = false;
+    try {
+      while (true) {
+        final ScheduledFrame scheduledFrame;
+        final long nowMs;
+        long resumeInMs = -1;
+        synchronized (this) {
+          scheduledFrame = mScheduledFrames.peek();
+          if (scheduledFrame == null) {
+            mDecodeScheduled = false;
+            completed = true;
+            return;
+          }
+          nowMs = mMonotonicClock.now();
+          if (scheduledFrame.mDeadlineMs >= nowMs && !hasDecodeBudget(nowMs)) {
+            resumeInMs = mVsyncIntervalStartMs + mVsyncIntervalMs - nowMs;
+          } else {
+            mScheduledFrames.poll();
+          }
+        }
+        if (resumeInMs >= 0) {
+          // The decode budget of this vsync interval is used up, so we continue in the next one
+          mScheduledExecutorService.schedule(
+              mResumeDecodingRunnable,
+              resumeInMs,
+              TimeUnit.MILLISECONDS);
+          completed = true;
+          return;
+        }
+        if (scheduledFrame.mDeadlineMs < nowMs) {
+          onFrameDropped(scheduledFrame, nowMs - scheduledFrame.mDeadlineMs);
+        } else {
+          decodeFrame(scheduledFrame);
+        }
+      }
+    } finally {
+      if (!completed) {
+        // A frame task failed, the remaining frames will be decoded once a frame is scheduled
+        synchronized (this) {
+          mDecodeScheduled = false;
+        }
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private boolean hasDecodeBudget(long nowMs) {
+    if (nowMs >= mVsyncIntervalStartMs + mVsyncIntervalMs) {
+      mVsyncIntervalStartMs = nowMs;
+      mDecodeTimeInVsyncIntervalMs = 0;
+    }
+    return mDecodeTimeInVsyncIntervalMs < mDecodeBudgetPerVsyncIntervalMs;
+  }
+
+  private void decodeFrame(ScheduledFrame scheduledFrame) {
+    final long startMs = mMonotonicClock.now();
+    try {
+      scheduledFrame.mFrameTask.run();
+    } finally {
+      final long decodeTimeMs = mMonotonicClock.now() - startMs;
+      synchronized (this) {
+        mDecodeTimeInVsyncIntervalMs += decodeTimeMs;
+      }
+    }
+  }
+
+  private void onFrameDropped(ScheduledFrame scheduledFrame, long lateByMs) {
+    synchronized (this) {
+      mDroppedFrameCount++;
+    }
+    FLog.v(TAG, "Dropped frame %d, late by %d ms", scheduledFrame.mFrameNumber, lateByMs);
+    scheduledFrame.mFrameTask.onCancel();
+    FrameDropListener frameDropListener = mFrameDropListener;
+    if (frameDropListener != null) {
+      frameDropListener.onFrameDropped(
+          scheduledFrame.mAnimationBackend,
+          scheduledFrame.mFrameNumber,
+          lateByMs);
+    }
+  }
+
+  private static class ScheduledFrame implements Comparable<ScheduledFrame> {
+
+    private final AnimationBackend mAnimationBackend;
+    private final int mFrameNumber;
+    private final long mDeadlineMs;
+    private final long mSequenceNumber;
+    private final FrameTask mFrameTask;
+
+    ScheduledFrame(
+        AnimationBackend animationBackend,
+        int frameNumber,
+        long deadlineMs,
+        long sequenceNumber,
+        FrameTask frameTask) {
+      mAnimationBackend = animationBackend;
+      mFrameNumber = frameNumber;
+      mDeadlineMs = deadlineMs;
+      mSequenceNumber = sequenceNumber;
+      mFrameTask = frameTask;
+    }
+
+    @Override
+    public int compareTo(ScheduledFrame other) {
+      if (mDeadlineMs != other.mDeadlineMs) {
+        return mDeadlineMs < other.mDeadlineMs ? -1 : 1;
+      }
+      // Frames with the same deadline are decoded in the order they have been scheduled
+      return mSequenceNumber < other.mSequenceNumber
+          ? -1
+          : (mSequenceNumber == other.mSequenceNumber ? 0 : 1);
+    }
+  }
+}
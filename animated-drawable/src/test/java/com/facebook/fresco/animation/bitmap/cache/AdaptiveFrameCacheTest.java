@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.graphics.Bitmap;
+
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import com.facebook.imagepipeline.testing.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link AdaptiveFrameCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveFrameCacheTest {
+
+  private static final int FRAME_SIZE = 100;
+  private static final int FRAME_DURATION_MS = 10;
+
+  @Mock public AnimationInformation mAnimationInformation;
+  @Mock public ResourceReleaser<Bitmap> mBitmapReleaser;
+
+  private FakeClock mFakeClock;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    mFakeClock = new FakeClock();
+    when(mAnimationInformation.getFrameDurationMs(anyInt())).thenReturn(FRAME_DURATION_MS);
+  }
+
+  @Test
+  public void testCachesAllFramesIfTheyFitInBudget() {
+    AdaptiveFrameCache cache = createCache(5, 1000);
+
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    assertThat(cache.getNumberOfFramesToPrepare()).isEqualTo(4);
+    for (int i = 1; i < 5; i++) {
+      cache.onFramePrepared(i, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    }
+    cache.onFrameRendered(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CACHED);
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(cache.contains(i)).isTrue();
+    }
+    assertThat(cache.getSizeInBytes()).isEqualTo(5 * FRAME_SIZE);
+  }
+
+  @Test
+  public void testKeepsSlidingWindowIfFramesDoNotFitInBudget() {
+    AdaptiveFrameCache cache = createCache(10, 350);
+
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    assertThat(cache.getNumberOfFramesToPrepare()).isEqualTo(1);
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    cache.onFramePrepared(2, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    assertThat(cache.contains(1)).isTrue();
+    assertThat(cache.contains(2)).isFalse();
+
+    cache.onFrameRendered(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CACHED);
+
+    assertThat(cache.contains(0)).isFalse();
+    assertThat(cache.contains(1)).isTrue();
+    assertThat(cache.getSizeInBytes()).isEqualTo(FRAME_SIZE);
+  }
+
+  @Test
+  public void testWillCacheFramesInWindow() {
+    AdaptiveFrameCache cache = createCache(10, 350);
+    assertThat(cache.willCacheFrame(5)).isTrue();
+
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    assertThat(cache.willCacheFrame(0)).isFalse();
+    assertThat(cache.willCacheFrame(1)).isTrue();
+    assertThat(cache.willCacheFrame(2)).isFalse();
+
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    assertThat(cache.willCacheFrame(1)).isFalse();
+  }
+
+  @Test
+  public void testWindowCoversMeasuredRenderTime() {
+    AdaptiveFrameCache cache = createCache(10, 650);
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    cache.getBitmapToReuseForFrame(1, 10, 10);
+    mFakeClock.incrementBy(25);
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    // Rendering takes as long as showing 2.5 frames
+    assertThat(cache.getNumberOfFramesToPrepare()).isEqualTo(3);
+  }
+
+  @Test
+  public void testWindowIsLimitedByBudget() {
+    AdaptiveFrameCache cache = createCache(10, 250);
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    cache.getBitmapToReuseForFrame(1, 10, 10);
+    mFakeClock.incrementBy(100);
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    assertThat(cache.getNumberOfFramesToPrepare()).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeepsLastRenderedFrameAsFallback() {
+    AdaptiveFrameCache cache = createCache(10, 50);
+    CloseableReference<Bitmap> frame = createFrame();
+
+    cache.onFrameRendered(3, frame, BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    assertThat(cache.getNumberOfFramesToPrepare()).isEqualTo(0);
+    CloseableReference<Bitmap> fallbackFrame = cache.getFallbackFrame(4);
+    assertThat(fallbackFrame.get()).isSameAs(frame.get());
+    fallbackFrame.close();
+  }
+
+  @Test
+  public void testTrimEvictsFramesDrawnLast() {
+    AdaptiveFrameCache cache = createCache(10, 1000);
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    cache.onFramePrepared(2, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    cache.onFramePrepared(3, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+
+    cache.trim(0.5);
+
+    assertThat(cache.contains(0)).isTrue();
+    assertThat(cache.contains(1)).isTrue();
+    assertThat(cache.contains(2)).isFalse();
+    assertThat(cache.contains(3)).isFalse();
+
+    cache.trim(1);
+
+    assertThat(cache.contains(0)).isFalse();
+    assertThat(cache.getSizeInBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testClearReleasesBudget() {
+    FrameCacheBudget budget = new FrameCacheBudget(1000, mFakeClock);
+    AdaptiveFrameCache cache = createCache(5, budget);
+    cache.onFrameRendered(0, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    cache.onFramePrepared(1, createFrame(), BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    assertThat(budget.getSizeInBytes()).isEqualTo(2 * FRAME_SIZE);
+
+    cache.clear();
+
+    assertThat(budget.getSizeInBytes()).isEqualTo(0);
+    assertThat(budget.getCacheCount()).isEqualTo(0);
+    assertThat(cache.getFallbackFrame(0)).isNull();
+  }
+
+  private AdaptiveFrameCache createCache(int frameCount, int budgetSizeInBytes) {
+    return createCache(frameCount, new FrameCacheBudget(budgetSizeInBytes, mFakeClock));
+  }
+
+  private AdaptiveFrameCache createCache(int frameCount, FrameCacheBudget budget) {
+    when(mAnimationInformation.getFrameCount()).thenReturn(frameCount);
+    return new AdaptiveFrameCache(mAnimationInformation, budget, mFakeClock);
+  }
+
+  private CloseableReference<Bitmap> createFrame() {
+    Bitmap bitmap = mock(Bitmap.class);
+    when(bitmap.getAllocationByteCount()).thenReturn(FRAME_SIZE);
+    when(bitmap.getByteCount()).thenReturn(FRAME_SIZE);
+    when(bitmap.getRowBytes()).thenReturn(FRAME_SIZE);
+    when(bitmap.getHeight()).thenReturn(1);
+    return CloseableReference.of(bitmap, mBitmapReleaser);
+  }
+}
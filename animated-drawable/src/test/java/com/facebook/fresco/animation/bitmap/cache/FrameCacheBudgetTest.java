@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.content.ComponentCallbacks2;
+
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.imagepipeline.testing.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Tests {@link FrameCacheBudget}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FrameCacheBudgetTest {
+
+  private static final int MAX_SIZE = 1000;
+
+  private FakeClock mFakeClock;
+  private FrameCacheBudget mFrameCacheBudget;
+  private AdaptiveFrameCache mCache1;
+  private AdaptiveFrameCache mCache2;
+
+  @Before
+  public void setup() {
+    mFakeClock = new FakeClock();
+    mFrameCacheBudget = new FrameCacheBudget(MAX_SIZE, mFakeClock);
+    mCache1 = mock(AdaptiveFrameCache.class);
+    mCache2 = mock(AdaptiveFrameCache.class);
+  }
+
+  @Test
+  public void testSharesBudgetBetweenCaches() {
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE);
+
+    assertThat(mFrameCacheBudget.reserve(mCache1, 300, false)).isTrue();
+
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE);
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache2)).isEqualTo(MAX_SIZE / 2);
+    assertThat(mFrameCacheBudget.reserve(mCache2, 600, false)).isFalse();
+    assertThat(mFrameCacheBudget.reserve(mCache2, 400, false)).isTrue();
+    assertThat(mFrameCacheBudget.getCacheCount()).isEqualTo(2);
+    assertThat(mFrameCacheBudget.getSizeInBytes()).isEqualTo(700);
+
+    mFrameCacheBudget.release(mCache1, 300);
+
+    assertThat(mFrameCacheBudget.getCacheCount()).isEqualTo(1);
+    assertThat(mFrameCacheBudget.getSizeInBytes()).isEqualTo(400);
+  }
+
+  @Test
+  public void testForcedReservationExceedsShare() {
+    assertThat(mFrameCacheBudget.reserve(mCache1, 2 * MAX_SIZE, true)).isTrue();
+    assertThat(mFrameCacheBudget.getSizeInBytes()).isEqualTo(2 * MAX_SIZE);
+  }
+
+  @Test
+  public void testShareDoesNotShrinkWithReservations() {
+    assertThat(mFrameCacheBudget.reserve(mCache1, MAX_SIZE / 2, false)).isTrue();
+
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE);
+    assertThat(mFrameCacheBudget.reserve(mCache1, MAX_SIZE / 2, false)).isTrue();
+    assertThat(mFrameCacheBudget.reserve(mCache1, 1, false)).isFalse();
+  }
+
+  @Test
+  public void testTrimInForegroundLowersBudgetForAWhile() {
+    mFrameCacheBudget.reserve(mCache1, 300, false);
+
+    mFrameCacheBudget.trim(MemoryTrimType.OnSystemLowMemoryWhileAppInForeground);
+
+    verify(mCache1).trim(0.5);
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE / 2);
+    mFakeClock.incrementBy(FrameCacheBudget.TRIM_DURATION_MS);
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE);
+  }
+
+  @Test
+  public void testTrimInBackgroundClearsCaches() {
+    mFrameCacheBudget.reserve(mCache1, 300, false);
+
+    mFrameCacheBudget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    verify(mCache1).trim(1.0);
+    verifyZeroInteractions(mCache2);
+    assertThat(mFrameCacheBudget.getShareInBytes(mCache1)).isEqualTo(MAX_SIZE);
+  }
+}
@@ -18,6 +18,7 @@ import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 import com.facebook.imagepipeline.testing.FakeClock;
 import com.facebook.imagepipeline.testing.TestExecutorService;
+import com.facebook.imagepipeline.testing.TestScheduledExecutorService;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +29,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -209,6 +211,52 @@ public class DefaultBitmapFramePreparerTest {
     verifyZeroInteractions(mPlatformBitmapFactory);
   }
 
+  @Test
+  public void testPrepareFrame_withFrameDecodeScheduler_thenCacheFrame() {
+    DefaultBitmapFramePreparer bitmapFramePreparer = createPreparerWithFrameDecodeScheduler();
+    when(mBitmapFrameCache.getBitmapToReuseForFrame(
+        1,
+        BACKEND_INTRINSIC_WIDTH,
+        BACKEND_INTRINSIC_HEIGHT))
+        .thenReturn(mBitmapReference);
+    when(mBitmapFrameRenderer.renderFrame(1, mBitmap)).thenReturn(true);
+
+    bitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1, 100);
+    // Already scheduled
+    bitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1, 100);
+
+    mExecutorService.getScheduledQueue().runUntilIdle();
+
+    verify(mBitmapFrameRenderer).renderFrame(1, mBitmap);
+    verify(mBitmapFrameCache).onFramePrepared(
+        1,
+        mBitmapReference,
+        BitmapAnimationBackend.FRAME_TYPE_REUSED);
+  }
+
+  @Test
+  public void testCancelFrames_withFrameDecodeScheduler_thenFrameCanBePreparedAgain() {
+    DefaultBitmapFramePreparer bitmapFramePreparer = createPreparerWithFrameDecodeScheduler();
+
+    bitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1, 100);
+    bitmapFramePreparer.cancelFrames(mAnimationBackend);
+    mExecutorService.getScheduledQueue().runUntilIdle();
+
+    verify(mBitmapFrameCache).contains(1);
+    verify(mBitmapFrameCache, never()).getBitmapToReuseForFrame(
+        1,
+        BACKEND_INTRINSIC_WIDTH,
+        BACKEND_INTRINSIC_HEIGHT);
+
+    bitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1, 100);
+    mExecutorService.getScheduledQueue().runUntilIdle();
+
+    verify(mBitmapFrameCache).getBitmapToReuseForFrame(
+        1,
+        BACKEND_INTRINSIC_WIDTH,
+        BACKEND_INTRINSIC_HEIGHT);
+  }
+
   @Test
   public void testPrepareFrame_whenRenderingFails_thenDoNothing() {
     when(mBitmapFrameCache.getBitmapToReuseForFrame(
@@ -240,4 +288,15 @@ public class DefaultBitmapFramePreparerTest {
 
     verifyNoMoreInteractions(mBitmapFrameCache);
   }
+
+  private DefaultBitmapFramePreparer createPreparerWithFrameDecodeScheduler() {
+    TestScheduledExecutorService scheduledExecutorService =
+        new TestScheduledExecutorService(mFakeClock);
+    mExecutorService = scheduledExecutorService;
+    return new DefaultBitmapFramePreparer(
+        mPlatformBitmapFactory,
+        mBitmapFrameRenderer,
+        BITMAP_CONFIG,
+        new FrameDecodeScheduler(scheduledExecutorService, scheduledExecutorService, mFakeClock));
+  }
 }
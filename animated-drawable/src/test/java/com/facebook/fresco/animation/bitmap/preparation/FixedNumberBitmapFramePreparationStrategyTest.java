@@ -20,8 +20,10 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 /**
@@ -117,6 +119,35 @@ public class FixedNumberBitmapFramePreparationStrategyTest {
     verifyPrepareCalledForFramesInOrder(1, 2);
   }
 
+  @Test
+  public void testPrepareFrames_WithDeadlines() throws Exception {
+    DeadlineBitmapFramePreparer deadlineBitmapFramePreparer =
+        mock(DeadlineBitmapFramePreparer.class);
+    when(deadlineBitmapFramePreparer.prepareFrame(
+        eq(mBitmapFrameCache),
+        eq(mAnimationBackend),
+        anyInt(),
+        anyLong()))
+        .thenReturn(true);
+    when(mAnimationBackend.getFrameDurationMs(anyInt())).thenReturn(50);
+    when(mAnimationBackend.getFrameDurationMs(9)).thenReturn(100);
+
+    mBitmapFramePreparationStrategy.prepareFrames(
+        deadlineBitmapFramePreparer,
+        mBitmapFrameCache,
+        mAnimationBackend,
+        8);
+
+    InOrder inOrder = inOrder(deadlineBitmapFramePreparer);
+    inOrder.verify(deadlineBitmapFramePreparer)
+        .prepareFrame(mBitmapFrameCache, mAnimationBackend, 9, 50);
+    inOrder.verify(deadlineBitmapFramePreparer)
+        .prepareFrame(mBitmapFrameCache, mAnimationBackend, 0, 150);
+    inOrder.verify(deadlineBitmapFramePreparer)
+        .prepareFrame(mBitmapFrameCache, mAnimationBackend, 1, 200);
+    inOrder.verifyNoMoreInteractions();
+  }
+
   private void verifyPrepareCalledForFramesInOrder(int... frameNumbers) {
     InOrder inOrderBitmapFramePreparer = inOrder(mBitmapFramePreparer);
     for (int frameNumber : frameNumbers) {
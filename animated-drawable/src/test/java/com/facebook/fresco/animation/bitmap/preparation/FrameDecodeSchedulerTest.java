@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import com.facebook.fresco.animation.backend.AnimationBackend;
+import com.facebook.imagepipeline.testing.FakeClock;
+import com.facebook.imagepipeline.testing.TestScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Tests {@link FrameDecodeScheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FrameDecodeSchedulerTest {
+
+  private static final int VSYNC_INTERVAL_MS = 16;
+  private static final int DECODE_BUDGET_PER_VSYNC_INTERVAL_MS = 10;
+
+  @Mock public AnimationBackend mAnimationBackend1;
+  @Mock public AnimationBackend mAnimationBackend2;
+  @Mock public FrameDecodeScheduler.FrameDropListener mFrameDropListener;
+
+  private FakeClock mFakeClock;
+  private TestScheduledExecutorService mExecutorService;
+  private FrameDecodeScheduler mFrameDecodeScheduler;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    mFakeClock = new FakeClock();
+    mExecutorService = new TestScheduledExecutorService(mFakeClock);
+    mFrameDecodeScheduler = new FrameDecodeScheduler(
+        mExecutorService,
+        mExecutorService,
+        mFakeClock,
+        VSYNC_INTERVAL_MS,
+        DECODE_BUDGET_PER_VSYNC_INTERVAL_MS);
+    mFrameDecodeScheduler.setFrameDropListener(mFrameDropListener);
+  }
+
+  @Test
+  public void testDecodesFramesByDeadline() {
+    FrameDecodeScheduler.FrameTask task1 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task2 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task3 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task4 = mock(FrameDecodeScheduler.FrameTask.class);
+
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 1, 50, task1);
+    mFrameDecodeScheduler.schedule(mAnimationBackend2, 1, 10, task2);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 2, FrameDecodeScheduler.NO_DEADLINE, task3);
+    mFrameDecodeScheduler.schedule(mAnimationBackend2, 2, 30, task4);
+    assertThat(mExecutorService.getPendingCount()).isEqualTo(1);
+
+    mExecutorService.runUntilIdle();
+
+    InOrder inOrder = inOrder(task1, task2, task3, task4);
+    inOrder.verify(task2).run();
+    inOrder.verify(task4).run();
+    inOrder.verify(task1).run();
+    inOrder.verify(task3).run();
+    assertThat(mFrameDecodeScheduler.getScheduledFrameCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDropsFramesPastDeadline() {
+    FrameDecodeScheduler.FrameTask lateTask = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task = mock(FrameDecodeScheduler.FrameTask.class);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 3, 10, lateTask);
+    mFrameDecodeScheduler.schedule(mAnimationBackend2, 4, 100, task);
+
+    mFakeClock.incrementBy(25);
+
+    verify(lateTask, never()).run();
+    verify(lateTask).onCancel();
+    verify(mFrameDropListener).onFrameDropped(mAnimationBackend1, 3, 15);
+    verify(task).run();
+    assertThat(mFrameDecodeScheduler.getDroppedFrameCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCancelsFramesOfBackend() {
+    FrameDecodeScheduler.FrameTask task1 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task2 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task3 = mock(FrameDecodeScheduler.FrameTask.class);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 1, 10, task1);
+    mFrameDecodeScheduler.schedule(mAnimationBackend2, 1, 20, task2);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 2, 30, task3);
+
+    mFrameDecodeScheduler.cancel(mAnimationBackend1);
+    mExecutorService.runUntilIdle();
+
+    verify(task1).onCancel();
+    verify(task3).onCancel();
+    verify(task1, never()).run();
+    verify(task3, never()).run();
+    verify(task2).run();
+    verifyZeroInteractions(mFrameDropListener);
+  }
+
+  @Test
+  public void testResumesDecodingInNextVsyncIntervalWhenBudgetIsUsedUp() {
+    FrameDecodeScheduler.FrameTask task1 = createTaskTaking(6);
+    FrameDecodeScheduler.FrameTask task2 = createTaskTaking(6);
+    FrameDecodeScheduler.FrameTask task3 = mock(FrameDecodeScheduler.FrameTask.class);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 1, 100, task1);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 2, 100, task2);
+    mFrameDecodeScheduler.schedule(mAnimationBackend2, 1, 100, task3);
+
+    mExecutorService.runNextPendingCommand();
+
+    verify(task1).run();
+    verify(task2).run();
+    verify(task3, never()).run();
+    assertThat(mFrameDecodeScheduler.getScheduledFrameCount()).isEqualTo(1);
+
+    // The budget of 10 ms has been used up 12 ms into the vsync interval
+    mFakeClock.incrementBy(3);
+    verify(task3, never()).run();
+    mFakeClock.incrementBy(1);
+    verify(task3).run();
+    assertThat(mFrameDecodeScheduler.getScheduledFrameCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSchedulesDecodingAgainAfterQueueIsEmpty() {
+    FrameDecodeScheduler.FrameTask task1 = mock(FrameDecodeScheduler.FrameTask.class);
+    FrameDecodeScheduler.FrameTask task2 = mock(FrameDecodeScheduler.FrameTask.class);
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 1, 10, task1);
+    mExecutorService.runUntilIdle();
+    verify(task1).run();
+
+    mFrameDecodeScheduler.schedule(mAnimationBackend1, 2, 10, task2);
+    assertThat(mExecutorService.getPendingCount()).isEqualTo(1);
+    mExecutorService.runUntilIdle();
+    verify(task2).run();
+  }
+
+  private FrameDecodeScheduler.FrameTask createTaskTaking(final long decodeTimeMs) {
+    FrameDecodeScheduler.FrameTask task = mock(FrameDecodeScheduler.FrameTask.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        mFakeClock.incrementBy(decodeTimeMs);
+        return null;
+      }
+    }).when(task).run();
+    return task;
+  }
+}
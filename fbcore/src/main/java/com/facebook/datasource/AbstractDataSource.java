@@ -12,10 +12,11 @@ package com.facebook.datasource;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-
-import android.util.Pair;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.facebook.common.internal.Preconditions;
 
@@ -27,6 +28,11 @@ import com.facebook.common.internal.Preconditions;
  *
  * <p> Subclasses should override {@link #closeResult(T result)} if results need clean up
  *
+ * <p> The state is written under the lock of the data source, but it can be read without taking
+ * it. Subscribers that share an executor are notified by a single runnable per event, and
+ * progress updates are coalesced: while an update is waiting for its executor, further updates
+ * are not posted, as the subscribers read the latest progress when notified.
+ *
  * @param <T>
  */
 public abstract class AbstractDataSource<T> implements DataSource<T> {
@@ -44,58 +50,56 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
     FAILURE,
   }
 
-  @GuardedBy("this")
-  private DataSourceStatus mDataSourceStatus;
-  @GuardedBy("this")
-  private boolean mIsClosed;
-  @GuardedBy("this")
-  private @Nullable T mResult = null;
-  @GuardedBy("this")
-  private Throwable mFailureThrowable = null;
-  @GuardedBy("this")
-  private float mProgress = 0;
-  private final ConcurrentLinkedQueue<Pair<DataSubscriber<T>, Executor>> mSubscribers;
+  // written while holding the lock, read without it
+  private volatile DataSourceStatus mDataSourceStatus;
+  private volatile boolean mIsClosed;
+  private volatile @Nullable T mResult = null;
+  private volatile Throwable mFailureThrowable = null;
+  private volatile float mProgress = 0;
+
+  // subscribers grouped by executor, in the order of subscription
+  private final CopyOnWriteArrayList<ExecutorSubscribers> mSubscribers;
 
   protected AbstractDataSource() {
     mIsClosed = false;
     mDataSourceStatus = DataSourceStatus.IN_PROGRESS;
-    mSubscribers = new ConcurrentLinkedQueue<Pair<DataSubscriber<T>, Executor>>();
+    mSubscribers = new CopyOnWriteArrayList<>();
   }
 
   @Override
-  public synchronized boolean isClosed() {
+  public boolean isClosed() {
     return mIsClosed;
   }
 
   @Override
-  public synchronized boolean isFinished() {
+  public boolean isFinished() {
     return mDataSourceStatus != DataSourceStatus.IN_PROGRESS;
   }
 
   @Override
-  public synchronized boolean hasResult() {
+  public boolean hasResult() {
     return mResult != null;
   }
 
   @Override
   @Nullable
-  public synchronized T getResult() {
+  public T getResult() {
     return mResult;
   }
 
   @Override
-  public synchronized boolean hasFailed() {
+  public boolean hasFailed() {
     return mDataSourceStatus == DataSourceStatus.FAILURE;
   }
 
   @Override
   @Nullable
-  public synchronized Throwable getFailureCause() {
+  public Throwable getFailureCause() {
     return mFailureThrowable;
   }
 
   @Override
-  public synchronized float getProgress() {
+  public float getProgress() {
     return mProgress;
   }
 
@@ -145,7 +149,7 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
       }
 
       if (mDataSourceStatus == DataSourceStatus.IN_PROGRESS) {
-        mSubscribers.add(Pair.create(dataSubscriber, executor));
+        getOrAddExecutorSubscribers(executor).mDataSubscribers.add(dataSubscriber);
       }
 
       shouldNotify = hasResult() || isFinished() || wasCancelled();
@@ -156,11 +160,23 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
     }
   }
 
+  @GuardedBy("this")
+  private ExecutorSubscribers getOrAddExecutorSubscribers(Executor executor) {
+    for (ExecutorSubscribers executorSubscribers : mSubscribers) {
+      if (executorSubscribers.mExecutor == executor) {
+        return executorSubscribers;
+      }
+    }
+    ExecutorSubscribers executorSubscribers = new ExecutorSubscribers(executor);
+    mSubscribers.add(executorSubscribers);
+    return executorSubscribers;
+  }
+
   private void notifyDataSubscribers() {
     final boolean isFailure = hasFailed();
     final boolean isCancellation = wasCancelled();
-    for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
-      notifyDataSubscriber(pair.first, pair.second, isFailure, isCancellation);
+    for (ExecutorSubscribers executorSubscribers : mSubscribers) {
+      executorSubscribers.notifyDataSubscribers(isFailure, isCancellation);
     }
   }
 
@@ -184,7 +200,7 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
         });
   }
 
-  private synchronized boolean wasCancelled() {
+  private boolean wasCancelled() {
     return isClosed() && !isFinished();
   }
 
@@ -272,14 +288,15 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
           resultToClose = value;
           return false;
         } else {
-          if (isLast) {
-            mDataSourceStatus = DataSourceStatus.SUCCESS;
-            mProgress = 1;
-          }
+          // the status is written last, so that readers that see it finished see the result
           if (mResult != value) {
             resultToClose = mResult;
             mResult = value;
           }
+          if (isLast) {
+            mProgress = 1;
+            mDataSourceStatus = DataSourceStatus.SUCCESS;
+          }
           return true;
         }
       }
@@ -294,8 +311,8 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
     if (mIsClosed || mDataSourceStatus != DataSourceStatus.IN_PROGRESS) {
       return false;
     } else {
-      mDataSourceStatus = DataSourceStatus.FAILURE;
       mFailureThrowable = throwable;
+      mDataSourceStatus = DataSourceStatus.FAILURE;
       return true;
     }
   }
@@ -312,16 +329,84 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
   }
 
   protected void notifyProgressUpdate() {
-    for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
-      final DataSubscriber<T> subscriber = pair.first;
-      Executor executor = pair.second;
-      executor.execute(
+    for (ExecutorSubscribers executorSubscribers : mSubscribers) {
+      executorSubscribers.notifyProgressUpdate();
+    }
+  }
+
+  /**
+   * The subscribers that are notified on the same executor.
+   *
+   * <p> Also the runnable that delivers progress updates to them. At most one progress update is
+   * waiting for the executor at any time, and it delivers the progress at the time it runs.
+   *
+   * <p> A subscriber that throws does not keep the others from being notified. The first exception
+   * is rethrown once all of them are.
+   */
+  private class ExecutorSubscribers implements Runnable {
+
+    private final Executor mExecutor;
+    private final CopyOnWriteArrayList<DataSubscriber<T>> mDataSubscribers =
+        new CopyOnWriteArrayList<>();
+    private final AtomicBoolean mIsProgressUpdatePending = new AtomicBoolean();
+
+    private ExecutorSubscribers(Executor executor) {
+      mExecutor = executor;
+    }
+
+    private void notifyDataSubscribers(final boolean isFailure, final boolean isCancellation) {
+      // the subscribers added after this point are notified when they subscribe
+      final List<DataSubscriber<T>> dataSubscribers = new ArrayList<>(mDataSubscribers);
+      mExecutor.execute(
           new Runnable() {
             @Override
             public void run() {
-              subscriber.onProgressUpdate(AbstractDataSource.this);
+              RuntimeException firstException = null;
+              for (DataSubscriber<T> dataSubscriber : dataSubscribers) {
+                try {
+                  if (isFailure) {
+                    dataSubscriber.onFailure(AbstractDataSource.this);
+                  } else if (isCancellation) {
+                    dataSubscriber.onCancellation(AbstractDataSource.this);
+                  } else {
+                    dataSubscriber.onNewResult(AbstractDataSource.this);
+                  }
+                } catch (RuntimeException e) {
+                  if (firstException == null) {
+                    firstException = e;
+                  }
+                }
+              }
+              if (firstException != null) {
+                throw firstException;
+              }
             }
           });
     }
+
+    private void notifyProgressUpdate() {
+      if (mIsProgressUpdatePending.compareAndSet(false, true)) {
+        mExecutor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      // cleared first, so that updates made while notifying are posted again
+      mIsProgressUpdatePending.set(false);
+      RuntimeException firstException = null;
+      for (DataSubscriber<T> dataSubscriber : mDataSubscribers) {
+        try {
+          dataSubscriber.onProgressUpdate(AbstractDataSource.this);
+        } catch (RuntimeException e) {
+          if (firstException == null) {
+            firstException = e;
+          }
+        }
+      }
+      if (firstException != null) {
+        throw firstException;
+      }
+    }
   }
 }
@@ -19,6 +19,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import static com.facebook.datasource.DataSourceTestUtils.*;
 import static org.junit.Assert.*;
@@ -109,6 +110,64 @@ public class AbstractDataSourceTest {
     mDataSource.subscribe(mDataSubscriber2, mExecutor2);
   }
 
+  @Test
+  public void testProgressUpdatesAreCoalesced() {
+    mDataSource.subscribe(mDataSubscriber1, mExecutor1);
+    mDataSource.setProgress(0.1f);
+    mDataSource.setProgress(0.2f);
+    mDataSource.setProgress(0.3f);
+    verifyExecutor(mExecutor1);
+    verify(mDataSubscriber1).onProgressUpdate(mDataSource);
+    assertEquals(0.3f, mDataSource.getProgress(), 0);
+
+    reset(mExecutor1, mDataSubscriber1);
+    mDataSource.setProgress(0.4f);
+    verifyExecutor(mExecutor1);
+    verify(mDataSubscriber1).onProgressUpdate(mDataSource);
+  }
+
+  @Test
+  public void testSubscribersSharingAnExecutorAreNotifiedTogether() {
+    mDataSource.subscribe(mDataSubscriber1, mExecutor1);
+    mDataSource.subscribe(mDataSubscriber2, mExecutor1);
+    mDataSource.setResult(mock(Value.class), LAST);
+    verifyExecutor(mExecutor1);
+    InOrder inOrder = inOrder(mDataSubscriber1, mDataSubscriber2);
+    inOrder.verify(mDataSubscriber1).onNewResult(mDataSource);
+    inOrder.verify(mDataSubscriber2).onNewResult(mDataSource);
+  }
+
+  @Test
+  public void testThrowingSubscriberDoesNotKeepOthersFromBeingNotified() {
+    RuntimeException exception = new RuntimeException();
+    doThrow(exception).when(mDataSubscriber1).onNewResult(mDataSource);
+    mDataSource.subscribe(mDataSubscriber1, mExecutor1);
+    mDataSource.subscribe(mDataSubscriber2, mExecutor1);
+    mDataSource.setResult(mock(Value.class), LAST);
+    try {
+      verifyExecutor(mExecutor1);
+      fail();
+    } catch (RuntimeException e) {
+      assertSame(exception, e);
+    }
+    verify(mDataSubscriber2).onNewResult(mDataSource);
+  }
+
+  @Test
+  public void testSubscriberAddedAfterNotificationIsPostedIsNotifiedOnce() {
+    mDataSource.subscribe(mDataSubscriber1, mExecutor1);
+    mDataSource.setResult(mock(Value.class), INTERMEDIATE);
+    // subscribes before the notification of the result runs, and is notified on its own
+    mDataSource.subscribe(mDataSubscriber2, mExecutor1);
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(mExecutor1, times(2)).execute(captor.capture());
+    for (Runnable runnable : captor.getAllValues()) {
+      runnable.run();
+    }
+    verify(mDataSubscriber1).onNewResult(mDataSource);
+    verify(mDataSubscriber2).onNewResult(mDataSource);
+  }
+
   @Test
   public void testInitialState() {
     verifyState(mDataSource, NOT_CLOSED, NOT_FINISHED, WITHOUT_RESULT, null, NOT_FAILED, null);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.internal.Supplier;
+import com.facebook.common.internal.Suppliers;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation benchmark for the notifications of {@link AbstractDataSource}: simulates the load of
+ * an image through an {@link IncreasingQualityDataSourceSupplier}, with several subscribers on
+ * the UI thread, and counts the runnables posted to the UI thread. Each posted runnable is one
+ * allocation and one hop to the UI thread. Posting one runnable per subscriber and per event
+ * would cost the number of events times the number of subscribers; the counts are printed so that
+ * they can be compared.
+ *
+ * <p> It is not part of the unit test run, {@link DataSourceNotificationTest} checks the same
+ * behavior: remove the {@link Ignore} annotation locally to run it.
+ */
+@Ignore("Benchmark, run it manually")
+@RunWith(RobolectricTestRunner.class)
+public class DataSourceNotificationBenchmarkTest {
+
+  // e.g. the controller, an image perf listener and a prefetch tracker
+  private static final int UI_SUBSCRIBER_COUNT = 3;
+  private static final int PROGRESS_UPDATE_COUNT = 40;
+  // number of progress updates that happen between two turns of the UI thread
+  private static final int PROGRESS_UPDATES_PER_TURN = 4;
+
+  @Test
+  public void testImageLoad() {
+    final SimpleDataSource<Object> lowResDataSource = SimpleDataSource.create();
+    final SimpleDataSource<Object> highResDataSource = SimpleDataSource.create();
+    List<Supplier<DataSource<Object>>> suppliers = Arrays.asList(
+        Suppliers.<DataSource<Object>>of(highResDataSource),
+        Suppliers.<DataSource<Object>>of(lowResDataSource));
+    DataSource<Object> dataSource =
+        IncreasingQualityDataSourceSupplier.create(suppliers).get();
+
+    QueueingExecutor uiExecutor = new QueueingExecutor();
+    CountingDataSubscriber eventCounter = new CountingDataSubscriber();
+    dataSource.subscribe(eventCounter, CallerThreadExecutor.getInstance());
+    List<CountingDataSubscriber> uiSubscribers = new ArrayList<>();
+    for (int i = 0; i < UI_SUBSCRIBER_COUNT; i++) {
+      CountingDataSubscriber subscriber = new CountingDataSubscriber();
+      uiSubscribers.add(subscriber);
+      dataSource.subscribe(subscriber, uiExecutor);
+    }
+
+    lowResDataSource.setResult(new Object());
+    uiExecutor.runQueued();
+    for (int i = 1; i <= PROGRESS_UPDATE_COUNT; i++) {
+      highResDataSource.setProgress((float) i / (PROGRESS_UPDATE_COUNT + 1));
+      if (i % PROGRESS_UPDATES_PER_TURN == 0) {
+        uiExecutor.runQueued();
+      }
+    }
+    highResDataSource.setResult(new Object());
+    uiExecutor.runQueued();
+
+    final int eventCount = eventCounter.mCallbackCount;
+    final int perSubscriberRunnableCount = eventCount * UI_SUBSCRIBER_COUNT;
+    System.out.println(String.format(
+        (Locale) null,
+        "%d events, %d subscribers: %d runnables posted, %d with one runnable per subscriber",
+        eventCount,
+        UI_SUBSCRIBER_COUNT,
+        uiExecutor.mExecuteCount,
+        perSubscriberRunnableCount));
+
+    assertTrue(dataSource.isFinished());
+    assertTrue(uiExecutor.mExecuteCount * UI_SUBSCRIBER_COUNT < perSubscriberRunnableCount);
+    for (CountingDataSubscriber subscriber : uiSubscribers) {
+      // all the subscribers see the final result, and only skip superseded progress updates
+      assertEquals(2, subscriber.mNewResultCount);
+      assertEquals(
+          PROGRESS_UPDATE_COUNT / PROGRESS_UPDATES_PER_TURN,
+          subscriber.mProgressUpdateCount);
+    }
+    dataSource.close();
+  }
+
+  /**
+   * Queues the runnables until {@link #runQueued()}, like the looper of the UI thread.
+   */
+  private static class QueueingExecutor implements Executor {
+
+    private final List<Runnable> mQueue = new ArrayList<>();
+    private int mExecuteCount;
+
+    @Override
+    public void execute(Runnable runnable) {
+      mExecuteCount++;
+      mQueue.add(runnable);
+    }
+
+    private void runQueued() {
+      List<Runnable> queue = new ArrayList<>(mQueue);
+      mQueue.clear();
+      for (Runnable runnable : queue) {
+        runnable.run();
+      }
+    }
+  }
+
+  private static class CountingDataSubscriber implements DataSubscriber<Object> {
+
+    private int mCallbackCount;
+    private int mNewResultCount;
+    private int mProgressUpdateCount;
+
+    @Override
+    public void onNewResult(DataSource<Object> dataSource) {
+      mCallbackCount++;
+      mNewResultCount++;
+    }
+
+    @Override
+    public void onFailure(DataSource<Object> dataSource) {
+      mCallbackCount++;
+    }
+
+    @Override
+    public void onCancellation(DataSource<Object> dataSource) {
+      mCallbackCount++;
+    }
+
+    @Override
+    public void onProgressUpdate(DataSource<Object> dataSource) {
+      mCallbackCount++;
+      mProgressUpdateCount++;
+    }
+  }
+}
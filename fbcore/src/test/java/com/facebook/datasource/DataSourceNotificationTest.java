@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.internal.Supplier;
+import com.facebook.common.internal.Suppliers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the notifications of {@link AbstractDataSource} through the load of an image with an
+ * {@link IncreasingQualityDataSourceSupplier}, with several subscribers on the UI thread: the
+ * subscribers that share an executor share the runnables posted to it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataSourceNotificationTest {
+
+  // e.g. the controller, an image perf listener and a prefetch tracker
+  private static final int UI_SUBSCRIBER_COUNT = 3;
+  private static final int PROGRESS_UPDATE_COUNT = 40;
+  // number of progress updates that happen between two turns of the UI thread
+  private static final int PROGRESS_UPDATES_PER_TURN = 4;
+
+  @Test
+  public void testSubscribersOnTheSameExecutorShareRunnables() {
+    final SimpleDataSource<Object> lowResDataSource = SimpleDataSource.create();
+    final SimpleDataSource<Object> highResDataSource = SimpleDataSource.create();
+    List<Supplier<DataSource<Object>>> suppliers = Arrays.asList(
+        Suppliers.<DataSource<Object>>of(highResDataSource),
+        Suppliers.<DataSource<Object>>of(lowResDataSource));
+    DataSource<Object> dataSource =
+        IncreasingQualityDataSourceSupplier.create(suppliers).get();
+
+    QueueingExecutor uiExecutor = new QueueingExecutor();
+    CountingDataSubscriber eventCounter = new CountingDataSubscriber();
+    dataSource.subscribe(eventCounter, CallerThreadExecutor.getInstance());
+    List<CountingDataSubscriber> uiSubscribers = new ArrayList<>();
+    for (int i = 0; i < UI_SUBSCRIBER_COUNT; i++) {
+      CountingDataSubscriber subscriber = new CountingDataSubscriber();
+      uiSubscribers.add(subscriber);
+      dataSource.subscribe(subscriber, uiExecutor);
+    }
+
+    lowResDataSource.setResult(new Object());
+    uiExecutor.runQueued();
+    for (int i = 1; i <= PROGRESS_UPDATE_COUNT; i++) {
+      highResDataSource.setProgress((float) i / (PROGRESS_UPDATE_COUNT + 1));
+      if (i % PROGRESS_UPDATES_PER_TURN == 0) {
+        uiExecutor.runQueued();
+      }
+    }
+    highResDataSource.setResult(new Object());
+    uiExecutor.runQueued();
+
+    assertTrue(dataSource.isFinished());
+    // each runnable notifies all the subscribers, and superseded progress updates are skipped
+    assertTrue(uiExecutor.mExecuteCount < eventCounter.mCallbackCount);
+    for (CountingDataSubscriber subscriber : uiSubscribers) {
+      assertEquals(uiExecutor.mExecuteCount, subscriber.mCallbackCount);
+      assertEquals(2, subscriber.mNewResultCount);
+      assertEquals(
+          PROGRESS_UPDATE_COUNT / PROGRESS_UPDATES_PER_TURN,
+          subscriber.mProgressUpdateCount);
+    }
+    dataSource.close();
+  }
+
+  /**
+   * Queues the runnables until {@link #runQueued()}, like the looper of the UI thread.
+   */
+  private static class QueueingExecutor implements Executor {
+
+    private final List<Runnable> mQueue = new ArrayList<>();
+    private int mExecuteCount;
+
+    @Override
+    public void execute(Runnable runnable) {
+      mExecuteCount++;
+      mQueue.add(runnable);
+    }
+
+    private void runQueued() {
+      List<Runnable> queue = new ArrayList<>(mQueue);
+      mQueue.clear();
+      for (Runnable runnable : queue) {
+        runnable.run();
+      }
+    }
+  }
+
+  private static class CountingDataSubscriber implements DataSubscriber<Object> {
+
+    private int mCallbackCount;
+    private int mNewResultCount;
+    private int mProgressUpdateCount;
+
+    @Override
+    public void onNewResult(DataSource<Object> dataSource) {
+      mCallbackCount++;
+      mNewResultCount++;
+    }
+
+    @Override
+    public void onFailure(DataSource<Object> dataSource) {
+      mCallbackCount++;
+    }
+
+    @Override
+    public void onCancellation(DataSource<Object> dataSource) {
+      mCallbackCount++;
+    }
+
+    @Override
+    public void onProgressUpdate(DataSource<Object> dataSource) {
+      mCallbackCount++;
+      mProgressUpdateCount++;
+    }
+  }
+}
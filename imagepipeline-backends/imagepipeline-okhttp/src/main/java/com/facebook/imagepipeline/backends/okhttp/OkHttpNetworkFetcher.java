@@ -13,12 +13,14 @@ import android.net.Uri;
 import android.os.Looper;
 import android.os.SystemClock;
 import com.facebook.common.logging.FLog;
+import com.facebook.imagepipeline.common.BytesRange;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.producers.BaseNetworkFetcher;
 import com.facebook.imagepipeline.producers.BaseProducerContextCallbacks;
 import com.facebook.imagepipeline.producers.Consumer;
 import com.facebook.imagepipeline.producers.FetchState;
 import com.facebook.imagepipeline.producers.ProducerContext;
+import com.facebook.imagepipeline.request.ImageRequest;
 import com.squareup.okhttp.CacheControl;
 import com.squareup.okhttp.Call;
 import com.squareup.okhttp.OkHttpClient;
@@ -82,12 +84,21 @@ public class OkHttpNetworkFetcher extends
     final Uri uri = fetchState.getUri();
 
     try {
-      Request request = new Request.Builder()
+      final Request.Builder requestBuilder = new Request.Builder()
         .cacheControl(new CacheControl.Builder().noStore().build())
         .url(uri.toString())
-        .get()
-        .build();
-      fetchWithRequest(fetchState, callback, request);
+        .get();
+
+      final ImageRequest imageRequest = fetchState.getContext().getImageRequest();
+      final BytesRange bytesRange = imageRequest.getBytesRange();
+      if (bytesRange != null) {
+        requestBuilder.addHeader("Range", bytesRange.toHttpRangeHeaderValue());
+        if (imageRequest.getBytesRangeValidator() != null) {
+          requestBuilder.addHeader("If-Range", imageRequest.getBytesRangeValidator());
+        }
+      }
+
+      fetchWithRequest(fetchState, callback, requestBuilder.build());
     } catch (Exception e) {
       // handle error while creating the request
       callback.onFailure(e);
@@ -132,6 +143,16 @@ public class OkHttpNetworkFetcher extends
                 return;
               }
 
+              BytesRange responseRange =
+                  BytesRange.fromContentRangeHeader(response.header("Content-Range"));
+              if (responseRange != null) {
+                fetchState.setResponseBytesRange(responseRange);
+                fetchState.setOnNewResultStatusFlags(Consumer.IS_PARTIAL_RESULT);
+              }
+              fetchState.setResponseValidator(getResponseValidator(
+                  response.header("ETag"),
+                  response.header("Last-Modified")));
+
               long contentLength = body.contentLength();
               if (contentLength < 0) {
                 contentLength = 0;
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.backends.okhttp3;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.core.PrioritizedExecutorService;
+import com.facebook.imagepipeline.producers.BaseProducerContextCallbacks;
+import com.facebook.imagepipeline.producers.ProducerContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Schedules the calls of {@link OkHttpNetworkFetcher} before handing them to OkHttp, whose
+ * dispatcher starts them in submission order regardless of the priority of the requests.
+ *
+ * <p> At most a pre-configured number of calls per host are in flight. When a call completes, the
+ * pending call of the highest rank for a host with room is started, where the rank is read from
+ * the {@link ProducerContext} at that time, see {@link PrioritizedExecutorService#getRank}.
+ * Prefetches thus wait for the requests of visible images, and a change of priority reorders the
+ * pending calls. Prefetches also never take the last free slot of a host, so that a request for a
+ * visible image can always start without waiting for a prefetch to complete.
+ *
+ * <p> The limit should not exceed the maximum number of requests per host of the dispatcher of the
+ * client, otherwise the calls are queued again there.
+ */
+@ThreadSafe
+public class OkHttpFetchScheduler {
+
+  private final int mMaxRequestsPerHost;
+
+  @GuardedBy("this")
+  private final List<PendingCall> mPendingCalls = new ArrayList<>();
+  @GuardedBy("this")
+  private final Map<String, Integer> mRunningCallsPerHost = new HashMap<>();
+
+  /**
+   * @param maxRequestsPerHost the maximum number of calls in flight per host
+   */
+  public OkHttpFetchScheduler(int maxRequestsPerHost) {
+    Preconditions.checkArgument(maxRequestsPerHost > 0);
+    mMaxRequestsPerHost = maxRequestsPerHost;
+  }
+
+  /**
+   * Schedules a call. The callback is notified as if the call had been enqueued directly, also
+   * when the call is cancelled with {@link #cancel} before it was started.
+   */
+  public void enqueue(Call call, ProducerContext context, Callback callback) {
+    final PendingCall pendingCall = new PendingCall(call, context, callback);
+    synchronized (this) {
+      mPendingCalls.add(pendingCall);
+    }
+    context.addCallbacks(
+        new BaseProducerContextCallbacks() {
+          @Override
+          public void onIsPrefetchChanged() {
+            promoteCalls();
+          }
+
+          @Override
+          public void onPriorityChanged() {
+            promoteCalls();
+          }
+        });
+    promoteCalls();
+  }
+
+  /**
+   * Cancels a call, whether it was started already or not.
+   */
+  public void cancel(Call call) {
+    PendingCall cancelledCall = null;
+    synchronized (this) {
+      for (int i = 0; i < mPendingCalls.size(); i++) {
+        if (mPendingCalls.get(i).mCall == call) {
+          cancelledCall = mPendingCalls.remove(i);
+          break;
+        }
+      }
+    }
+    call.cancel();
+    if (cancelledCall != null) {
+      cancelledCall.mCallback.onFailure(call, new IOException("Canceled"));
+    }
+  }
+
+  public synchronized int getPendingCallCount() {
+    return mPendingCalls.size();
+  }
+
+  /**
+   * Starts the pending calls of the highest rank for as long as their hosts have room.
+   */
+  private void promoteCalls() {
+    List<PendingCall> callsToStart = new ArrayList<>();
+    synchronized (this) {
+      PendingCall pendingCall;
+      while ((pendingCall = pollHighestRankWithRoom()) != null) {
+        String host = pendingCall.getHost();
+        mRunningCallsPerHost.put(host, getRunningCallCount(host) + 1);
+        callsToStart.add(pendingCall);
+      }
+    }
+    for (int i = 0; i < callsToStart.size(); i++) {
+      final PendingCall pendingCall = callsToStart.get(i);
+      pendingCall.mCall.enqueue(
+          new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+              try {
+                pendingCall.mCallback.onResponse(call, response);
+              } finally {
+                onCallFinished(pendingCall);
+              }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+              try {
+                pendingCall.mCallback.onFailure(call, e);
+              } finally {
+                onCallFinished(pendingCall);
+              }
+            }
+          });
+    }
+  }
+
+  private void onCallFinished(PendingCall pendingCall) {
+    synchronized (this) {
+      String host = pendingCall.getHost();
+      int runningCalls = getRunningCallCount(host) - 1;
+      if (runningCalls > 0) {
+        mRunningCallsPerHost.put(host, runningCalls);
+      } else {
+        mRunningCallsPerHost.remove(host);
+      }
+    }
+    promoteCalls();
+  }
+
+  /**
+   * Removes the pending call of the highest rank among the ones that can be started now. Among
+   * calls of the same rank, the first one scheduled is returned.
+   */
+  @GuardedBy("this")
+  private PendingCall pollHighestRankWithRoom() {
+    int bestIndex = -1;
+    int bestRank = Integer.MIN_VALUE;
+    for (int i = 0; i < mPendingCalls.size(); i++) {
+      PendingCall pendingCall = mPendingCalls.get(i);
+      boolean isPrefetch = pendingCall.mContext.isPrefetch();
+      // prefetches leave the last slot of a host to the requests of visible images
+      int maxRunningCalls =
+          isPrefetch && mMaxRequestsPerHost > 1 ? mMaxRequestsPerHost - 1 : mMaxRequestsPerHost;
+      if (getRunningCallCount(pendingCall.getHost()) >= maxRunningCalls) {
+        continue;
+      }
+      int rank = PrioritizedExecutorService.getRank(
+          pendingCall.mContext.getPriority(),
+          isPrefetch);
+      if (rank > bestRank) {
+        bestRank = rank;
+        bestIndex = i;
+      }
+    }
+    return bestIndex >= 0 ? mPendingCalls.remove(bestIndex) : null;
+  }
+
+  @GuardedBy("this")
+  private int getRunningCallCount(String host) {
+    Integer count = mRunningCallsPerHost.get(host);
+    return count == null ? 0 : count;
+  }
+
+  private static class PendingCall {
+    private final Call mCall;
+    private final ProducerContext mContext;
+    private final Callback mCallback;
+
+    private PendingCall(Call call, ProducerContext context, Callback callback) {
+      mCall = call;
+      mContext = context;
+      mCallback = callback;
+    }
+
+    private String getHost() {
+      return mCall.request().url().host();
+    }
+  }
+}
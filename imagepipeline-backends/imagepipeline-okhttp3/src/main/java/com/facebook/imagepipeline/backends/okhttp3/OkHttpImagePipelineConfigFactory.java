@@ -23,4 +23,20 @@ public class OkHttpImagePipelineConfigFactory {
     return ImagePipelineConfig.newBuilder(context)
         .setNetworkFetcher(new OkHttpNetworkFetcher(okHttpClient));
   }
+
+  /**
+   * Gets a builder whose network fetcher starts the calls in order of priority, with at most
+   * {@code maxRequestsPerHost} calls in flight per host, see {@link OkHttpFetchScheduler}.
+   */
+  public static ImagePipelineConfig.Builder newBuilder(
+      Context context,
+      OkHttpClient okHttpClient,
+      int maxRequestsPerHost) {
+    return ImagePipelineConfig.newBuilder(context)
+        .setNetworkFetcher(
+            new OkHttpNetworkFetcher(
+                okHttpClient,
+                okHttpClient.dispatcher().executorService(),
+                new OkHttpFetchScheduler(maxRequestsPerHost)));
+  }
 }
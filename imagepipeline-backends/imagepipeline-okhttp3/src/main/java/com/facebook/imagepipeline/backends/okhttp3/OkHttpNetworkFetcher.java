@@ -20,10 +20,12 @@ import com.facebook.imagepipeline.producers.BaseProducerContextCallbacks;
 import com.facebook.imagepipeline.producers.Consumer;
 import com.facebook.imagepipeline.producers.FetchState;
 import com.facebook.imagepipeline.producers.ProducerContext;
+import com.facebook.imagepipeline.request.ImageRequest;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
 import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
@@ -59,6 +61,8 @@ public class OkHttpNetworkFetcher extends
 
   private Executor mCancellationExecutor;
 
+  private final @Nullable OkHttpFetchScheduler mScheduler;
+
   /**
    * @param okHttpClient client to use
    */
@@ -72,8 +76,23 @@ public class OkHttpNetworkFetcher extends
    * cancellation is requested from the UI Thread
    */
   public OkHttpNetworkFetcher(Call.Factory callFactory, Executor cancellationExecutor) {
+    this(callFactory, cancellationExecutor, null);
+  }
+
+  /**
+   * @param callFactory custom {@link Call.Factory} for fetching image from the network
+   * @param cancellationExecutor executor on which fetching cancellation is performed if
+   * cancellation is requested from the UI Thread
+   * @param scheduler if not null, the calls are started in order of priority by this scheduler
+   * instead of being enqueued right away
+   */
+  public OkHttpNetworkFetcher(
+      Call.Factory callFactory,
+      Executor cancellationExecutor,
+      @Nullable OkHttpFetchScheduler scheduler) {
     mCallFactory = callFactory;
     mCancellationExecutor = cancellationExecutor;
+    mScheduler = scheduler;
   }
 
   @Override
@@ -94,9 +113,13 @@ public class OkHttpNetworkFetcher extends
           .url(uri.toString())
           .get();
 
-      final BytesRange bytesRange = fetchState.getContext().getImageRequest().getBytesRange();
+      final ImageRequest imageRequest = fetchState.getContext().getImageRequest();
+      final BytesRange bytesRange = imageRequest.getBytesRange();
       if (bytesRange != null) {
         requestBuilder.addHeader("Range", bytesRange.toHttpRangeHeaderValue());
+        if (imageRequest.getBytesRangeValidator() != null) {
+          requestBuilder.addHeader("If-Range", imageRequest.getBytesRangeValidator());
+        }
       }
 
       fetchWithRequest(fetchState, callback, requestBuilder.build());
@@ -132,18 +155,18 @@ public class OkHttpNetworkFetcher extends
           @Override
           public void onCancellationRequested() {
             if (Looper.myLooper() != Looper.getMainLooper()) {
-              call.cancel();
+              cancel(call);
             } else {
               mCancellationExecutor.execute(new Runnable() {
                 @Override public void run() {
-                  call.cancel();
+                  cancel(call);
                 }
               });
             }
           }
         });
 
-    call.enqueue(
+    final okhttp3.Callback responseCallback =
         new okhttp3.Callback() {
           @Override
           public void onResponse(Call call, Response response) throws IOException {
@@ -164,6 +187,9 @@ public class OkHttpNetworkFetcher extends
                 fetchState.setResponseBytesRange(responseRange);
                 fetchState.setOnNewResultStatusFlags(Consumer.IS_PARTIAL_RESULT);
               }
+              fetchState.setResponseValidator(getResponseValidator(
+                  response.header("ETag"),
+                  response.header("Last-Modified")));
 
               long contentLength = body.contentLength();
               if (contentLength < 0) {
@@ -185,7 +211,21 @@ public class OkHttpNetworkFetcher extends
           public void onFailure(Call call, IOException e) {
             handleException(call, e, callback);
           }
-        });
+        };
+
+    if (mScheduler != null) {
+      mScheduler.enqueue(call, fetchState.getContext(), responseCallback);
+    } else {
+      call.enqueue(responseCallback);
+    }
+  }
+
+  private void cancel(Call call) {
+    if (mScheduler != null) {
+      mScheduler.cancel(call);
+    } else {
+      call.cancel();
+    }
   }
 
   /**
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.backends.okhttp3;
+
+import com.facebook.imagepipeline.common.Priority;
+import com.facebook.imagepipeline.producers.ProducerContext;
+import com.facebook.imagepipeline.producers.ProducerContextCallbacks;
+import java.io.IOException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link OkHttpFetchScheduler}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OkHttpFetchSchedulerTest {
+
+  private static final String HOST_A = "a.example.com";
+  private static final String HOST_B = "b.example.com";
+
+  private Callback mCallback;
+
+  @Before
+  public void setUp() {
+    mCallback = mock(Callback.class);
+  }
+
+  @Test
+  public void testLimitsCallsPerHost() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(2);
+    Call a1 = newCall(HOST_A);
+    Call a2 = newCall(HOST_A);
+    Call a3 = newCall(HOST_A);
+    Call b1 = newCall(HOST_B);
+    scheduler.enqueue(a1, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(a2, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(a3, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(b1, newContext(Priority.HIGH, false), mCallback);
+
+    assertStarted(a1);
+    assertStarted(a2);
+    assertNotStarted(a3);
+    // the other host has its own limit
+    assertStarted(b1);
+    assertEquals(1, scheduler.getPendingCallCount());
+
+    fail(a1);
+    assertStarted(a3);
+    assertEquals(0, scheduler.getPendingCallCount());
+  }
+
+  @Test
+  public void testStartsHighestPriorityFirst() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call running = newCall(HOST_A);
+    Call low = newCall(HOST_A);
+    Call high = newCall(HOST_A);
+    Call medium = newCall(HOST_A);
+    Call prefetch = newCall(HOST_A);
+    scheduler.enqueue(running, newContext(Priority.MEDIUM, false), mCallback);
+    scheduler.enqueue(prefetch, newContext(Priority.HIGH, true), mCallback);
+    scheduler.enqueue(low, newContext(Priority.LOW, false), mCallback);
+    scheduler.enqueue(high, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(medium, newContext(Priority.MEDIUM, false), mCallback);
+    assertStarted(running);
+    assertEquals(4, scheduler.getPendingCallCount());
+
+    succeed(running);
+    assertStarted(high);
+    assertNotStarted(medium);
+    fail(high);
+    assertStarted(medium);
+    assertNotStarted(low);
+    fail(medium);
+    assertStarted(low);
+    // prefetches wait for all the other requests
+    assertNotStarted(prefetch);
+    fail(low);
+    assertStarted(prefetch);
+  }
+
+  @Test
+  public void testPriorityChangeReordersPendingCalls() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call running = newCall(HOST_A);
+    Call first = newCall(HOST_A);
+    Call second = newCall(HOST_A);
+    ProducerContext secondContext = newContext(Priority.LOW, false);
+    scheduler.enqueue(running, newContext(Priority.MEDIUM, false), mCallback);
+    scheduler.enqueue(first, newContext(Priority.LOW, false), mCallback);
+    scheduler.enqueue(second, secondContext, mCallback);
+
+    when(secondContext.getPriority()).thenReturn(Priority.HIGH);
+    getCallbacks(secondContext).onPriorityChanged();
+    // no slot is free, the change only reorders the pending calls
+    assertNotStarted(second);
+
+    fail(running);
+    assertStarted(second);
+    assertNotStarted(first);
+  }
+
+  @Test
+  public void testPrefetchesLeaveLastSlot() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(2);
+    Call prefetch1 = newCall(HOST_A);
+    Call prefetch2 = newCall(HOST_A);
+    Call visible = newCall(HOST_A);
+    scheduler.enqueue(prefetch1, newContext(Priority.HIGH, true), mCallback);
+    scheduler.enqueue(prefetch2, newContext(Priority.HIGH, true), mCallback);
+    assertStarted(prefetch1);
+    assertNotStarted(prefetch2);
+
+    scheduler.enqueue(visible, newContext(Priority.LOW, false), mCallback);
+    assertStarted(visible);
+    assertNotStarted(prefetch2);
+  }
+
+  @Test
+  public void testPrefetchBecomingVisibleTakesLastSlot() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(2);
+    Call prefetch1 = newCall(HOST_A);
+    Call prefetch2 = newCall(HOST_A);
+    ProducerContext context2 = newContext(Priority.HIGH, true);
+    scheduler.enqueue(prefetch1, newContext(Priority.HIGH, true), mCallback);
+    scheduler.enqueue(prefetch2, context2, mCallback);
+    assertNotStarted(prefetch2);
+
+    when(context2.isPrefetch()).thenReturn(false);
+    getCallbacks(context2).onIsPrefetchChanged();
+    assertStarted(prefetch2);
+  }
+
+  @Test
+  public void testPrefetchTakesOnlySlot() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call prefetch = newCall(HOST_A);
+    scheduler.enqueue(prefetch, newContext(Priority.HIGH, true), mCallback);
+    assertStarted(prefetch);
+  }
+
+  @Test
+  public void testCancelPendingCall() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call running = newCall(HOST_A);
+    Call pending = newCall(HOST_A);
+    scheduler.enqueue(running, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(pending, newContext(Priority.HIGH, false), mCallback);
+
+    scheduler.cancel(pending);
+    verify(pending).cancel();
+    verify(mCallback).onFailure(same(pending), any(IOException.class));
+    assertEquals(0, scheduler.getPendingCallCount());
+
+    fail(running);
+    assertNotStarted(pending);
+  }
+
+  @Test
+  public void testCancelRunningCall() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call running = newCall(HOST_A);
+    Call pending = newCall(HOST_A);
+    scheduler.enqueue(running, newContext(Priority.HIGH, false), mCallback);
+    scheduler.enqueue(pending, newContext(Priority.HIGH, false), mCallback);
+
+    scheduler.cancel(running);
+    verify(running).cancel();
+    // OkHttp notifies the failure of a started call, which then frees its slot
+    verify(mCallback, never()).onFailure(same(running), any(IOException.class));
+    assertNotStarted(pending);
+    fail(running);
+    verify(mCallback).onFailure(same(running), any(IOException.class));
+    assertStarted(pending);
+  }
+
+  @Test
+  public void testForwardsResponse() throws Exception {
+    OkHttpFetchScheduler scheduler = new OkHttpFetchScheduler(1);
+    Call call = newCall(HOST_A);
+    scheduler.enqueue(call, newContext(Priority.HIGH, false), mCallback);
+
+    Response response = newResponse(call);
+    getStartedCallback(call).onResponse(call, response);
+    verify(mCallback).onResponse(call, response);
+  }
+
+  private static Call newCall(String host) {
+    Call call = mock(Call.class);
+    when(call.request()).thenReturn(
+        new Request.Builder().url("http://" + host + "/image.jpg").build());
+    return call;
+  }
+
+  private static ProducerContext newContext(Priority priority, boolean isPrefetch) {
+    ProducerContext context = mock(ProducerContext.class);
+    when(context.getPriority()).thenReturn(priority);
+    when(context.isPrefetch()).thenReturn(isPrefetch);
+    return context;
+  }
+
+  private static ProducerContextCallbacks getCallbacks(ProducerContext context) {
+    ArgumentCaptor<ProducerContextCallbacks> captor =
+        ArgumentCaptor.forClass(ProducerContextCallbacks.class);
+    verify(context).addCallbacks(captor.capture());
+    return captor.getValue();
+  }
+
+  private static Callback getStartedCallback(Call call) {
+    ArgumentCaptor<Callback> captor = ArgumentCaptor.forClass(Callback.class);
+    verify(call).enqueue(captor.capture());
+    return captor.getValue();
+  }
+
+  private static void assertStarted(Call call) {
+    verify(call).enqueue(any(Callback.class));
+  }
+
+  private static void assertNotStarted(Call call) {
+    verify(call, never()).enqueue(any(Callback.class));
+  }
+
+  private static Response newResponse(Call call) {
+    return new Response.Builder()
+        .request(call.request())
+        .protocol(Protocol.HTTP_1_1)
+        .code(200)
+        .message("OK")
+        .build();
+  }
+
+  private static void succeed(Call call) throws IOException {
+    getStartedCallback(call).onResponse(call, newResponse(call));
+  }
+
+  private static void fail(Call call) {
+    getStartedCallback(call).onFailure(call, new IOException());
+  }
+}
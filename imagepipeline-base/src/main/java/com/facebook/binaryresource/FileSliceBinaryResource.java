@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.binaryresource;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.facebook.common.internal.Preconditions;
+
+/*
+ * Implementation of BinaryResource based on a range of bytes of a file, read with positional
+ * reads on a shared channel. @see BinaryResource for more details.
+ */
+public class FileSliceBinaryResource implements BinaryResource {
+  private final File mFile;
+  private final FileChannel mChannel;
+  private final long mOffset;
+  private final int mSize;
+
+  public FileSliceBinaryResource(File file, FileChannel channel, long offset, int size) {
+    Preconditions.checkArgument(offset >= 0 && size >= 0);
+    mFile = Preconditions.checkNotNull(file);
+    mChannel = Preconditions.checkNotNull(channel);
+    mOffset = offset;
+    mSize = size;
+  }
+
+  public File getFile() {
+    return mFile;
+  }
+
+  public FileChannel getChannel() {
+    return mChannel;
+  }
+
+  /**
+   * @return the position of the first byte of the resource in the file
+   */
+  public long getOffset() {
+    return mOffset;
+  }
+
+  @Override
+  public InputStream openStream() throws IOException {
+    return new SliceInputStream();
+  }
+
+  @Override
+  public long size() {
+    return mSize;
+  }
+
+  @Override
+  public byte[] read() throws IOException {
+    byte[] bytes = new byte[mSize];
+    readFully(ByteBuffer.wrap(bytes), mOffset);
+    return bytes;
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = mChannel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of " + mFile);
+      }
+      position += read;
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == null || !(obj instanceof FileSliceBinaryResource)) {
+      return false;
+    }
+    FileSliceBinaryResource that = (FileSliceBinaryResource) obj;
+    return mFile.equals(that.mFile) && mOffset == that.mOffset && mSize == that.mSize;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * mFile.hashCode() + (int) (mOffset ^ (mOffset >>> 32));
+  }
+
+  /**
+   * Reads the slice with positional reads, so that several streams can share the channel.
+   */
+  private class SliceInputStream extends InputStream {
+    private int mPosition;
+    private int mMark;
+
+    @Override
+    public int read() throws IOException {
+      byte[] oneByte = new byte[1];
+      return read(oneByte, 0, 1) < 0 ? -1 : oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (mPosition >= mSize) {
+        return -1;
+      }
+      int count = Math.min(length, mSize - mPosition);
+      readFully(ByteBuffer.wrap(buffer, offset, count), mOffset + mPosition);
+      mPosition += count;
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.min(Math.max(count, 0), mSize - mPosition);
+      mPosition += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return mSize - mPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+      mMark = mPosition;
+    }
+
+    @Override
+    public void reset() {
+      mPosition = mMark;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.facebook.common.internal.Preconditions;
+
+/**
+ * A counting Bloom filter of strings. It never gives a false negative: if {@link #mightContain}
+ * returns false, the string was not added, or it was removed as many times as it was added. It
+ * can give false positives, at a rate that grows with the number of strings in the filter.
+ *
+ * <p> Each counter takes one byte. A counter that reaches its maximum value is never decremented
+ * again, as it can't tell how many more strings share it; this only makes the filter less precise.
+ */
+@ThreadSafe
+class CountingBloomFilter {
+
+  private static final int NUM_HASHES = 4;
+  private static final int MAX_COUNT = 0xFF;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final byte[] mCounters;
+  private final int mMask;
+
+  /**
+   * @param numCounters the number of counters, a power of two. The false positive rate is about 2%
+   *     when there are an eighth as many strings in the filter as counters.
+   */
+  CountingBloomFilter(int numCounters) {
+    Preconditions.checkArgument(numCounters > 0 && (numCounters & (numCounters - 1)) == 0);
+    mCounters = new byte[numCounters];
+    mMask = numCounters - 1;
+  }
+
+  synchronized void add(String value) {
+    long hash = hash(value);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      int index = index(hash, i);
+      int count = mCounters[index] & 0xFF;
+      if (count < MAX_COUNT) {
+        mCounters[index] = (byte) (count + 1);
+      }
+    }
+  }
+
+  /**
+   * Removes a string. The string must have been added, otherwise other strings may be removed.
+   */
+  synchronized void remove(String value) {
+    long hash = hash(value);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      int index = index(hash, i);
+      int count = mCounters[index] & 0xFF;
+      if (count > 0 && count < MAX_COUNT) {
+        mCounters[index] = (byte) (count - 1);
+      }
+    }
+  }
+
+  synchronized boolean mightContain(String value) {
+    long hash = hash(value);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      if (mCounters[index(hash, i)] == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Derives the i-th position from the two halves of the hash, see Kirsch and Mitzenmacher, "Less
+   * Hashing, Same Performance".
+   */
+  private int index(long hash, int i) {
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32) | 1;
+    return (hash1 + i * hash2) & mMask;
+  }
+
+  /**
+   * 64-bit FNV-1a hash of the characters of the string.
+   */
+  private static long hash(String value) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
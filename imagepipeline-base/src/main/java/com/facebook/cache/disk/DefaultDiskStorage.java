@@ -87,6 +87,12 @@ public class DefaultDiskStorage implements DiskStorage {
   private final CacheErrorLogger mCacheErrorLogger;
   private final Clock mClock;
 
+  /**
+   * If not null, keeps track of the content files so that listing them doesn't need to walk the
+   * directories
+   */
+  private final @Nullable DiskStorageJournal mJournal;
+
   /**
    * Instantiates a ShardedDiskStorage that will use the directory to save a map between
    * keys and files. The version is very important if clients change the format
@@ -101,6 +107,18 @@ public class DefaultDiskStorage implements DiskStorage {
       File rootDirectory,
       int version,
       CacheErrorLogger cacheErrorLogger) {
+    this(rootDirectory, version, cacheErrorLogger, false);
+  }
+
+  /**
+   * @param journalEnabled if true, the content files are recorded in a journal, and the directory
+   *     is only walked when that journal is missing or corrupted
+   */
+  public DefaultDiskStorage(
+      File rootDirectory,
+      int version,
+      CacheErrorLogger cacheErrorLogger,
+      boolean journalEnabled) {
     Preconditions.checkNotNull(rootDirectory);
 
     mRootDirectory = rootDirectory;
@@ -112,11 +130,16 @@ public class DefaultDiskStorage implements DiskStorage {
     // the ideal would be asking mSharding its name, but it's created receiving the directory
     mVersionDirectory = new File(mRootDirectory, getVersionSubdirectoryName(version));
     mCacheErrorLogger = cacheErrorLogger;
-    recreateDirectoryIfVersionChanges();
+    boolean recreated = recreateDirectoryIfVersionChanges();
     mClock = SystemClock.get();
+    mJournal = journalEnabled ? new DiskStorageJournal(mVersionDirectory, cacheErrorLogger) : null;
+    if (mJournal != null && recreated) {
+      // nothing to walk, the journal can start empty
+      mJournal.reset();
+    }
   }
 
-  private static boolean isExternal(File directory, CacheErrorLogger cacheErrorLogger) {
+  static boolean isExternal(File directory, CacheErrorLogger cacheErrorLogger) {
     boolean state = false;
     String appCacheDirPath = null;
 
@@ -180,8 +203,9 @@ public class DefaultDiskStorage implements DiskStorage {
    * in the same dir, and Samsung's RFS has a bug that after the 13.000th creation fails.
    * So if cache is not already in expected version let's destroy everything
    * (if not in expected version... there's nothing to reuse here anyway).
+   * @return true if the directory was recreated
    */
-  private void recreateDirectoryIfVersionChanges() {
+  private boolean recreateDirectoryIfVersionChanges() {
     boolean recreateBase = false;
     if (!mRootDirectory.exists()) {
       recreateBase = true;
@@ -202,6 +226,7 @@ public class DefaultDiskStorage implements DiskStorage {
             null);
       }
     }
+    return recreateBase;
   }
 
   private static class IncompleteFileException extends IOException {
@@ -314,6 +339,9 @@ public class DefaultDiskStorage implements DiskStorage {
     }
 
     private boolean isExpectedFile(File file) {
+      if (mJournal != null && mJournal.isJournalFile(file)) {
+        return true;
+      }
       FileInfo info = getShardFileInfo(file);
       if (info == null) {
         return false;
@@ -336,6 +364,9 @@ public class DefaultDiskStorage implements DiskStorage {
   @Override
   public void purgeUnexpectedResources() {
     FileTree.walkFileTree(mRootDirectory, new PurgingVisitor());
+    if (mJournal != null) {
+      mJournal.flush();
+    }
   }
 
   /**
@@ -372,6 +403,9 @@ public class DefaultDiskStorage implements DiskStorage {
 
     try {
       File file = info.createTempFile(parent);
+      if (mJournal != null) {
+        mJournal.onInsertStarted(resourceId);
+      }
       return new InserterImpl(resourceId, file);
     } catch (IOException ioe) {
       mCacheErrorLogger.logError(
@@ -387,9 +421,16 @@ public class DefaultDiskStorage implements DiskStorage {
   public BinaryResource getResource(String resourceId, Object debugInfo) {
     final File file = getContentFileFor(resourceId);
     if (file.exists()) {
-      file.setLastModified(mClock.now());
+      long now = mClock.now();
+      file.setLastModified(now);
+      if (mJournal != null) {
+        mJournal.onTouched(resourceId, now);
+      }
       return FileBinaryResource.createOrNull(file);
     }
+    if (mJournal != null) {
+      mJournal.onRemoved(resourceId);
+    }
     return null;
   }
 
@@ -413,7 +454,11 @@ public class DefaultDiskStorage implements DiskStorage {
     File contentFile = getContentFileFor(resourceId);
     boolean exists = contentFile.exists();
     if (touch && exists) {
-      contentFile.setLastModified(mClock.now());
+      long now = mClock.now();
+      contentFile.setLastModified(now);
+      if (mJournal != null) {
+        mJournal.onTouched(resourceId, now);
+      }
     }
     return exists;
   }
@@ -423,12 +468,20 @@ public class DefaultDiskStorage implements DiskStorage {
     // it should be one entry return by us :)
     EntryImpl entryImpl = (EntryImpl) entry;
     FileBinaryResource resource = entryImpl.getResource();
-    return doRemove(resource.getFile());
+    long removedSize = doRemove(resource.getFile());
+    if (mJournal != null && removedSize >= 0) {
+      mJournal.onRemoved(entry.getId());
+    }
+    return removedSize;
   }
 
   @Override
   public long remove(final String resourceId) {
-    return doRemove(getContentFileFor(resourceId));
+    long removedSize = doRemove(getContentFileFor(resourceId));
+    if (mJournal != null && removedSize >= 0) {
+      mJournal.onRemoved(resourceId);
+    }
+    return removedSize;
   }
 
   private long doRemove(final File contentFile) {
@@ -446,6 +499,9 @@ public class DefaultDiskStorage implements DiskStorage {
 
   public void clearAll() {
     FileTree.deleteContents(mRootDirectory);
+    if (mJournal != null) {
+      mJournal.reset();
+    }
   }
 
   @Override
@@ -478,7 +534,7 @@ public class DefaultDiskStorage implements DiskStorage {
     return new DiskDumpInfoEntry(path, type, entryImpl.getSize(), firstBits);
   }
 
-  private String typeOfBytes(byte[] bytes) {
+  static String typeOfBytes(byte[] bytes) {
     if (bytes.length >= 2) {
       if (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xD8) {
         return "jpg";
@@ -500,9 +556,50 @@ public class DefaultDiskStorage implements DiskStorage {
    * <p>This list is immutable.
    */
   public List<Entry> getEntries() throws IOException {
+    if (mJournal != null) {
+      List<Entry> entries = getEntriesFromJournal(mJournal);
+      if (entries != null) {
+        return entries;
+      }
+    }
     EntriesCollector collector = new EntriesCollector();
     FileTree.walkFileTree(mVersionDirectory, collector);
-    return collector.getEntries();
+    List<Entry> entries = collector.getEntries();
+    if (mJournal != null) {
+      mJournal.rebuild(entries);
+    }
+    return entries;
+  }
+
+  /**
+   * Lists the entries recorded in the journal, after resolving the inserts that were interrupted
+   * the last time it was used.
+   *
+   * @return the entries, or null if the journal is not valid
+   */
+  private @Nullable List<Entry> getEntriesFromJournal(DiskStorageJournal journal) {
+    for (String resourceId : journal.getPendingIds()) {
+      File file = getContentFileFor(resourceId);
+      if (file.exists()) {
+        journal.onInsertCommitted(resourceId, file.length(), file.lastModified());
+      } else {
+        journal.onRemoved(resourceId);
+      }
+    }
+    List<DiskStorageJournal.Record> records = journal.getRecords();
+    if (records == null) {
+      return null;
+    }
+    List<Entry> entries = new ArrayList<>(records.size());
+    for (DiskStorageJournal.Record record : records) {
+      entries.add(
+          new EntryImpl(
+              record.resourceId,
+              getContentFileFor(record.resourceId),
+              record.size,
+              record.timestamp));
+    }
+    return Collections.unmodifiableList(entries);
   }
 
   /**
@@ -516,11 +613,15 @@ public class DefaultDiskStorage implements DiskStorage {
     private long timestamp;
 
     private EntryImpl(String id, File cachedFile) {
+      this(id, cachedFile, -1, -1);
+    }
+
+    private EntryImpl(String id, File cachedFile, long size, long timestamp) {
       Preconditions.checkNotNull(cachedFile);
       this.id = Preconditions.checkNotNull(id);
       this.resource = FileBinaryResource.createOrNull(cachedFile);
-      this.size = -1;
-      this.timestamp = -1;
+      this.size = size;
+      this.timestamp = timestamp;
     }
 
     @Override
@@ -652,6 +753,9 @@ public class DefaultDiskStorage implements DiskStorage {
     @VisibleForTesting
     /* package protected*/ final File mTemporaryFile;
 
+    // Number of bytes written by writeData, -1 if unknown
+    private long mLength = -1;
+
     public InserterImpl(String resourceId, File temporaryFile) {
       mResourceId = resourceId;
       mTemporaryFile = temporaryFile;
@@ -690,6 +794,7 @@ public class DefaultDiskStorage implements DiskStorage {
       if (mTemporaryFile.length() != length) {
         throw new IncompleteFileException(length, mTemporaryFile.length());
       }
+      mLength = length;
     }
 
     @Override
@@ -719,8 +824,15 @@ public class DefaultDiskStorage implements DiskStorage {
             re);
         throw re;
       }
+      long now = mClock.now();
       if (targetFile.exists()) {
-        targetFile.setLastModified(mClock.now());
+        targetFile.setLastModified(now);
+      }
+      if (mJournal != null) {
+        mJournal.onInsertCommitted(
+            mResourceId,
+            mLength >= 0 ? mLength : targetFile.length(),
+            now);
       }
       return FileBinaryResource.createOrNull(targetFile);
     }
@@ -44,6 +44,10 @@ public class DiskCacheConfig {
   private final DiskTrimmableRegistry mDiskTrimmableRegistry;
   private final Context mContext;
   private final boolean mIndexPopulateAtStartupEnabled;
+  private final boolean mEvictionInBackgroundEnabled;
+  private final boolean mJournalEnabled;
+  private final boolean mPackedStorageEnabled;
+  private final boolean mNegativeLookupFilterEnabled;
 
   private DiskCacheConfig(Builder builder) {
     mVersion = builder.mVersion;
@@ -68,6 +72,10 @@ public class DiskCacheConfig {
             builder.mDiskTrimmableRegistry;
     mContext = builder.mContext;
     mIndexPopulateAtStartupEnabled = builder.mIndexPopulateAtStartupEnabled;
+    mEvictionInBackgroundEnabled = builder.mEvictionInBackgroundEnabled;
+    mJournalEnabled = builder.mJournalEnabled;
+    mPackedStorageEnabled = builder.mPackedStorageEnabled;
+    mNegativeLookupFilterEnabled = builder.mNegativeLookupFilterEnabled;
   }
 
   public int getVersion() {
@@ -118,6 +126,22 @@ public class DiskCacheConfig {
     return mIndexPopulateAtStartupEnabled;
   }
 
+  public boolean getEvictionInBackgroundEnabled() {
+    return mEvictionInBackgroundEnabled;
+  }
+
+  public boolean getJournalEnabled() {
+    return mJournalEnabled;
+  }
+
+  public boolean getPackedStorageEnabled() {
+    return mPackedStorageEnabled;
+  }
+
+  public boolean getNegativeLookupFilterEnabled() {
+    return mNegativeLookupFilterEnabled;
+  }
+
   /**
    * Create a new builder.
    *
@@ -145,6 +169,10 @@ public class DiskCacheConfig {
     private CacheEventListener mCacheEventListener;
     private DiskTrimmableRegistry mDiskTrimmableRegistry;
     private boolean mIndexPopulateAtStartupEnabled;
+    private boolean mEvictionInBackgroundEnabled;
+    private boolean mJournalEnabled;
+    private boolean mPackedStorageEnabled;
+    private boolean mNegativeLookupFilterEnabled;
 
     private final @Nullable Context mContext;
 
@@ -253,6 +281,46 @@ public class DiskCacheConfig {
       return this;
     }
 
+    /**
+     * Whether the evictions needed when inserting are done in the background instead of before the
+     * insert. The cache can then briefly exceed its size limit, but inserts never wait for an
+     * eviction pass.
+     */
+    public Builder setEvictionInBackgroundEnabled(boolean evictionInBackgroundEnabled) {
+      mEvictionInBackgroundEnabled = evictionInBackgroundEnabled;
+      return this;
+    }
+
+    /**
+     * Whether the cache keeps a journal of its files, so that it doesn't have to list and stat
+     * all of them at startup and when recalculating its size. The directory is then only walked
+     * if the journal is missing or corrupted.
+     */
+    public Builder setJournalEnabled(boolean journalEnabled) {
+      mJournalEnabled = journalEnabled;
+      return this;
+    }
+
+    /**
+     * Whether the resources are packed into a few large files instead of one file each, see
+     * {@link PackedDiskStorage}. This suits caches of small images, such as the small image disk
+     * cache.
+     */
+    public Builder setPackedStorageEnabled(boolean packedStorageEnabled) {
+      mPackedStorageEnabled = packedStorageEnabled;
+      return this;
+    }
+
+    /**
+     * Whether the cache keeps a filter of the resources on disk that tells, without any file system
+     * access, that a key is definitely not cached. Lookups of images that were never downloaded
+     * then skip the disk read entirely.
+     */
+    public Builder setNegativeLookupFilterEnabled(boolean negativeLookupFilterEnabled) {
+      mNegativeLookupFilterEnabled = negativeLookupFilterEnabled;
+      return this;
+    }
+
     public DiskCacheConfig build() {
       Preconditions.checkState(
           mBaseDirectoryPathSupplier != null || mContext != null,
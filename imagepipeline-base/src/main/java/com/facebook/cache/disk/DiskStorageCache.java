@@ -19,11 +19,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
 
@@ -43,9 +46,19 @@ import com.facebook.common.time.SystemClock;
 
 /**
  * Cache that manages disk storage.
+ *
+ * <p> The in-memory index of the resources on disk is a concurrent set, so that it can be read
+ * without any lock. Reads from the storage don't take the cache lock either: that lock only
+ * serializes the changes to the cache, i.e. inserts, removals and size calculations. Evictions
+ * take the lock for a small batch of removals at a time, and can optionally run in the background,
+ * so that neither readers nor writers wait for a whole eviction pass.
+ *
+ * <p> Optionally, a counting Bloom filter of the resources on disk tells that a key is definitely
+ * not cached without touching the file system. It is rebuilt whenever the storage is listed and
+ * is kept up to date by the inserts and removals, which all happen under the lock.
  */
 @ThreadSafe
-public class DiskStorageCache implements FileCache, DiskTrimmable {
+public class DiskStorageCache implements FileCache, NegativeLookupCache, DiskTrimmable {
 
   private static final Class<?> TAG = DiskStorageCache.class;
 
@@ -60,6 +73,13 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   private static final double TRIMMING_LOWER_BOUND = 0.02;
   private static final long UNINITIALIZED = -1;
   private static final String SHARED_PREFS_FILENAME_PREFIX = "disk_entries_list";
+  // Number of independently locked shards of the resource index
+  private static final int INDEX_CONCURRENCY_LEVEL = 16;
+  // Number of entries removed while holding the lock during an eviction
+  @VisibleForTesting static final int EVICTION_BATCH_SIZE = 16;
+  // Number of counters of the negative lookup filter, 32 KB for about 4000 entries at 2% false
+  // positives
+  private static final int NEGATIVE_LOOKUP_FILTER_SIZE = 1 << 15;
 
   private final long mLowDiskSpaceCacheSizeLimit;
   private final long mDefaultCacheSizeLimit;
@@ -68,8 +88,7 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
 
   private final CacheEventListener mCacheEventListener;
 
-  @GuardedBy("mLock")
-  // All resourceId stored on disk (if any).
+  // All resourceId stored on disk (if any). Concurrent, can be read without holding mLock.
   @VisibleForTesting final Set<String> mResourceIndex;
 
   private long mCacheSizeLastUpdateTime;
@@ -90,8 +109,28 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   // synchronization object.
   private final Object mLock = new Object();
 
+  // Serializes the eviction passes. Must not be acquired while holding mLock.
+  private final Object mEvictionLock = new Object();
+
+  // If not null, the evictions triggered by inserts are done there instead of before the insert
+  private final @Nullable Executor mEvictionExecutor;
+  private final AtomicBoolean mEvictionScheduled = new AtomicBoolean();
+
   private boolean mIndexReady;
 
+  private final boolean mNegativeLookupFilterEnabled;
+
+  // Every resourceId stored on disk, and possibly some that aren't. Null until the storage was
+  // listed once. Only changed while holding mLock, so that it never misses a resource on disk.
+  private volatile @Nullable CountingBloomFilter mNegativeLookupFilter;
+
+  // Number of inserts committed so far. Only changed while holding mLock.
+  private volatile int mInsertCount;
+
+  // Resources read or written since the current eviction pass listed the storage, null if there
+  // is no eviction pass running. Set and cleared while holding mEvictionLock.
+  private volatile @Nullable Set<String> mAccessedDuringEviction;
+
   /**
    * Stats about the cache - currently size of the cache (in bytes) and number of items in
    * the cache
@@ -160,6 +199,66 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       final Context context,
       final Executor executorForBackgrountInit,
       boolean indexPopulateAtStartupEnabled) {
+    this(
+        diskStorage,
+        entryEvictionComparatorSupplier,
+        params,
+        cacheEventListener,
+        cacheErrorLogger,
+        diskTrimmableRegistry,
+        context,
+        executorForBackgrountInit,
+        indexPopulateAtStartupEnabled,
+        null);
+  }
+
+  /**
+   * @param evictionExecutor if not null, the evictions needed when inserting are done on this
+   *     executor, instead of on the inserting thread before the insert
+   */
+  public DiskStorageCache(
+      DiskStorage diskStorage,
+      EntryEvictionComparatorSupplier entryEvictionComparatorSupplier,
+      Params params,
+      CacheEventListener cacheEventListener,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable DiskTrimmableRegistry diskTrimmableRegistry,
+      final Context context,
+      final Executor executorForBackgrountInit,
+      boolean indexPopulateAtStartupEnabled,
+      @Nullable Executor evictionExecutor) {
+    this(
+        diskStorage,
+        entryEvictionComparatorSupplier,
+        params,
+        cacheEventListener,
+        cacheErrorLogger,
+        diskTrimmableRegistry,
+        context,
+        executorForBackgrountInit,
+        indexPopulateAtStartupEnabled,
+        evictionExecutor,
+        false);
+  }
+
+  /**
+   * @param evictionExecutor if not null, the evictions needed when inserting are done on this
+   *     executor, instead of on the inserting thread before the insert
+   * @param negativeLookupFilterEnabled whether to keep a filter of the resources on disk that
+   *     answers {@link #isKeyAbsentSync} once the storage has been listed
+   */
+  public DiskStorageCache(
+      DiskStorage diskStorage,
+      EntryEvictionComparatorSupplier entryEvictionComparatorSupplier,
+      Params params,
+      CacheEventListener cacheEventListener,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable DiskTrimmableRegistry diskTrimmableRegistry,
+      final Context context,
+      final Executor executorForBackgrountInit,
+      boolean indexPopulateAtStartupEnabled,
+      @Nullable Executor evictionExecutor,
+      boolean negativeLookupFilterEnabled) {
     this.mLowDiskSpaceCacheSizeLimit = params.mLowDiskSpaceCacheSizeLimit;
     this.mDefaultCacheSizeLimit = params.mDefaultCacheSizeLimit;
     this.mCacheSizeLimit = params.mDefaultCacheSizeLimit;
@@ -185,8 +284,11 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     this.mClock = SystemClock.get();
 
     mIndexPopulateAtStartupEnabled = indexPopulateAtStartupEnabled;
+    mEvictionExecutor = evictionExecutor;
+    mNegativeLookupFilterEnabled = negativeLookupFilterEnabled;
 
-    this.mResourceIndex = new HashSet<>();
+    this.mResourceIndex = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>(16, 0.75f, INDEX_CONCURRENCY_LEVEL));
 
     if (mIndexPopulateAtStartupEnabled) {
       mCountDownLatch = new CountDownLatch(1);
@@ -253,27 +355,34 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     String resourceId = null;
     SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
         .setCacheKey(key);
+    // read before the lookup, so that a miss doesn't undo the index update of a concurrent insert
+    final int insertCount = mInsertCount;
     try {
-      synchronized (mLock) {
-        BinaryResource resource = null;
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          cacheEvent.setResourceId(resourceId);
-          resource = mStorage.getResource(resourceId, key);
-          if (resource != null) {
-            break;
-          }
+      // The storage is read without the lock, a concurrent eviction can at worst make this a miss
+      BinaryResource resource = null;
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        cacheEvent.setResourceId(resourceId);
+        resource = mStorage.getResource(resourceId, key);
+        if (resource != null) {
+          break;
         }
-        if (resource == null) {
-          mCacheEventListener.onMiss(cacheEvent);
-          mResourceIndex.remove(resourceId);
-        } else {
-          mCacheEventListener.onHit(cacheEvent);
-          mResourceIndex.add(resourceId);
+      }
+      if (resource == null) {
+        mCacheEventListener.onMiss(cacheEvent);
+        synchronized (mLock) {
+          // the resource may have been inserted since it was looked up
+          if (mInsertCount == insertCount) {
+            mResourceIndex.remove(resourceId);
+          }
         }
-        return resource;
+      } else {
+        mCacheEventListener.onHit(cacheEvent);
+        mResourceIndex.add(resourceId);
+        onResourceAccessed(resourceId);
       }
+      return resource;
     } catch (IOException ioe) {
       mCacheErrorLogger.logError(
           CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
@@ -302,17 +411,16 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   public boolean probe(final CacheKey key) {
     String resourceId = null;
     try {
-      synchronized (mLock) {
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          if (mStorage.touch(resourceId, key)) {
-            mResourceIndex.add(resourceId);
-            return true;
-          }
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        if (mStorage.touch(resourceId, key)) {
+          mResourceIndex.add(resourceId);
+          onResourceAccessed(resourceId);
+          return true;
         }
-        return false;
       }
+      return false;
     } catch (IOException e) {
       SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
           .setCacheKey(key)
@@ -345,7 +453,13 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       String resourceId) throws IOException {
     synchronized (mLock) {
       BinaryResource resource = inserter.commit(key);
+      mInsertCount++;
       mResourceIndex.add(resourceId);
+      onResourceAccessed(resourceId);
+      CountingBloomFilter filter = mNegativeLookupFilter;
+      if (filter != null) {
+        filter.add(resourceId);
+      }
       mCacheStats.increment(resource.size(), 1);
       return resource;
     }
@@ -358,11 +472,8 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
         .setCacheKey(key);
     mCacheEventListener.onWriteAttempt(cacheEvent);
-    String resourceId;
-    synchronized (mLock) {
-      // for multiple resource ids associated with the same image, we only write one file
-      resourceId = CacheKeyUtil.getFirstResourceId(key);
-    }
+    // for multiple resource ids associated with the same image, we only write one file
+    String resourceId = CacheKeyUtil.getFirstResourceId(key);
     cacheEvent.setResourceId(resourceId);
     try {
       // getting the file is synchronized
@@ -398,7 +509,9 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
         List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
         for (int i = 0; i < resourceIds.size(); i++) {
           resourceId = resourceIds.get(i);
-          mStorage.remove(resourceId);
+          if (mStorage.remove(resourceId) > 0) {
+            onResourceRemoved(resourceId);
+          }
           mResourceIndex.remove(resourceId);
         }
       } catch (IOException e) {
@@ -419,20 +532,32 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   @Override
   public long clearOldEntries(long cacheExpirationMs) {
     long oldestRemainingEntryAgeMs = 0L;
-    synchronized (mLock) {
+    synchronized (mEvictionLock) {
+      startEvictionPass();
       try {
         long now = mClock.now();
         Collection<DiskStorage.Entry> allEntries = mStorage.getEntries();
-        final long cacheSizeBeforeClearance = mCacheStats.getSize();
-        int itemsRemovedCount = 0;
-        long itemsRemovedSize = 0L;
+        List<DiskStorage.Entry> staleEntries = new ArrayList<>();
         for (DiskStorage.Entry entry : allEntries) {
           // entry age of zero is disallowed.
           long entryAgeMs = Math.max(1, Math.abs(now - entry.getTimestamp()));
           if (entryAgeMs >= cacheExpirationMs) {
+            if (!isEntryAccessedSinceListed(entry)) {
+              staleEntries.add(entry);
+            }
+          } else {
+            oldestRemainingEntryAgeMs = Math.max(oldestRemainingEntryAgeMs, entryAgeMs);
+          }
+        }
+        synchronized (mLock) {
+          final long cacheSizeBeforeClearance = mCacheStats.getSize();
+          int itemsRemovedCount = 0;
+          long itemsRemovedSize = 0L;
+          for (DiskStorage.Entry entry : staleEntries) {
             long entryRemovedSize = mStorage.remove(entry);
             mResourceIndex.remove(entry.getId());
             if (entryRemovedSize > 0) {
+              onResourceRemoved(entry.getId());
               itemsRemovedCount++;
               itemsRemovedSize += entryRemovedSize;
               SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
@@ -443,14 +568,12 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
               mCacheEventListener.onEviction(cacheEvent);
               cacheEvent.recycle();
             }
-          } else {
-            oldestRemainingEntryAgeMs = Math.max(oldestRemainingEntryAgeMs, entryAgeMs);
           }
-        }
-        mStorage.purgeUnexpectedResources();
-        if (itemsRemovedCount > 0) {
-          maybeUpdateFileCacheSize();
-          mCacheStats.increment(-itemsRemovedSize, -itemsRemovedCount);
+          mStorage.purgeUnexpectedResources();
+          if (itemsRemovedCount > 0) {
+            maybeUpdateFileCacheSize();
+            mCacheStats.increment(-itemsRemovedSize, -itemsRemovedCount);
+          }
         }
       } catch (IOException ioe) {
         mCacheErrorLogger.logError(
@@ -458,48 +581,82 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
             TAG,
             "clearOldEntries: " + ioe.getMessage(),
             ioe);
+      } finally {
+        endEvictionPass();
       }
     }
     return oldestRemainingEntryAgeMs;
   }
 
+  /**
+   * Evicts files if the cache size has exceeded its limits, either right away or, if there is an
+   * eviction executor, in the background.
+   */
+  private void maybeEvictFilesInCacheDir() throws IOException {
+    if (mEvictionExecutor == null) {
+      evictFilesInCacheDirIfNeeded();
+      return;
+    }
+    if (mEvictionScheduled.compareAndSet(false, true)) {
+      mEvictionExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              mEvictionScheduled.set(false);
+              try {
+                evictFilesInCacheDirIfNeeded();
+              } catch (IOException ioe) {
+                // already logged by evictAboveSize
+              }
+            }
+          });
+    }
+  }
+
   /**
    * Test if the cache size has exceeded its limits, and if so, evict some files.
    * It also calls maybeUpdateFileCacheSize
-   *
-   * This method uses mLock for synchronization purposes.
    */
-  private void maybeEvictFilesInCacheDir() throws IOException {
-    synchronized (mLock) {
-      boolean calculatedRightNow = maybeUpdateFileCacheSize();
+  private void evictFilesInCacheDirIfNeeded() throws IOException {
+    synchronized (mEvictionLock) {
+      final long desiredSize;
+      synchronized (mLock) {
+        boolean calculatedRightNow = maybeUpdateFileCacheSize();
 
-      // Update the size limit (mCacheSizeLimit)
-      updateFileCacheSizeLimit();
+        // Update the size limit (mCacheSizeLimit)
+        updateFileCacheSizeLimit();
 
-      long cacheSize = mCacheStats.getSize();
-      // If we are going to evict force a recalculation of the size
-      // (except if it was already calculated!)
-      if (cacheSize > mCacheSizeLimit && !calculatedRightNow) {
-        mCacheStats.reset();
-        maybeUpdateFileCacheSize();
+        long cacheSize = mCacheStats.getSize();
+        // If we are going to evict force a recalculation of the size
+        // (except if it was already calculated!)
+        if (cacheSize > mCacheSizeLimit && !calculatedRightNow) {
+          mCacheStats.reset();
+          maybeUpdateFileCacheSize();
+        }
+
+        if (cacheSize <= mCacheSizeLimit) {
+          return;
+        }
+        desiredSize = mCacheSizeLimit * 9 / 10; // 90%
       }
 
       // If size has exceeded the size limit, evict some files
-      if (cacheSize > mCacheSizeLimit) {
-      evictAboveSize(
-          mCacheSizeLimit * 9 / 10,
-          CacheEventListener.EvictionReason.CACHE_FULL); // 90%
-      }
+      evictAboveSize(desiredSize, CacheEventListener.EvictionReason.CACHE_FULL);
     }
   }
 
-  @GuardedBy("mLock")
+  /**
+   * Evicts entries until the cache size falls below the desired size. The lock is only held while
+   * removing a batch of {@link #EVICTION_BATCH_SIZE} entries, so that other operations can
+   * proceed between the batches.
+   */
+  @GuardedBy("mEvictionLock")
   private void evictAboveSize(
       long desiredSize,
       CacheEventListener.EvictionReason reason) throws IOException {
-    Collection<DiskStorage.Entry> entries;
+    startEvictionPass();
     try {
-      entries = getSortedEntries(mStorage.getEntries());
+      removeEntriesAboveSize(getSortedEntries(mStorage.getEntries()), desiredSize, reason);
     } catch (IOException ioe) {
       mCacheErrorLogger.logError(
           CacheErrorLogger.CacheErrorCategory.EVICTION,
@@ -507,33 +664,88 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
           "evictAboveSize: " + ioe.getMessage(),
           ioe);
       throw ioe;
+    } finally {
+      endEvictionPass();
     }
+  }
 
+  @GuardedBy("mEvictionLock")
+  private void removeEntriesAboveSize(
+      Collection<DiskStorage.Entry> entries,
+      long desiredSize,
+      CacheEventListener.EvictionReason reason) throws IOException {
     long cacheSizeBeforeClearance = mCacheStats.getSize();
     long deleteSize = cacheSizeBeforeClearance - desiredSize;
-    int itemCount = 0;
     long sumItemSizes = 0L;
-    for (DiskStorage.Entry entry: entries) {
-      if (sumItemSizes > (deleteSize)) {
-        break;
+    Iterator<DiskStorage.Entry> iterator = entries.iterator();
+    List<DiskStorage.Entry> batch = new ArrayList<>(EVICTION_BATCH_SIZE);
+    while (sumItemSizes <= deleteSize && iterator.hasNext()) {
+      // the batch is picked before taking the lock
+      batch.clear();
+      while (batch.size() < EVICTION_BATCH_SIZE && iterator.hasNext()) {
+        DiskStorage.Entry entry = iterator.next();
+        if (!isEntryAccessedSinceListed(entry)) {
+          batch.add(entry);
+        }
       }
-      long deletedSize = mStorage.remove(entry);
-      mResourceIndex.remove(entry.getId());
-      if (deletedSize > 0) {
-        itemCount++;
-        sumItemSizes += deletedSize;
-        SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
-            .setResourceId(entry.getId())
-            .setEvictionReason(reason)
-            .setItemSize(deletedSize)
-            .setCacheSize(cacheSizeBeforeClearance - sumItemSizes)
-            .setCacheLimit(desiredSize);
-        mCacheEventListener.onEviction(cacheEvent);
-        cacheEvent.recycle();
+      synchronized (mLock) {
+        for (int i = 0; i < batch.size() && sumItemSizes <= deleteSize; i++) {
+          DiskStorage.Entry entry = batch.get(i);
+          long deletedSize = mStorage.remove(entry);
+          mResourceIndex.remove(entry.getId());
+          if (deletedSize > 0) {
+            onResourceRemoved(entry.getId());
+            sumItemSizes += deletedSize;
+            mCacheStats.increment(-deletedSize, -1);
+            SettableCacheEvent cacheEvent = SettableCacheEvent.obtain()
+                .setResourceId(entry.getId())
+                .setEvictionReason(reason)
+                .setItemSize(deletedSize)
+                .setCacheSize(cacheSizeBeforeClearance - sumItemSizes)
+                .setCacheLimit(desiredSize);
+            mCacheEventListener.onEviction(cacheEvent);
+            cacheEvent.recycle();
+          }
+        }
       }
     }
-    mCacheStats.increment(-sumItemSizes, -itemCount);
-    mStorage.purgeUnexpectedResources();
+    synchronized (mLock) {
+      mStorage.purgeUnexpectedResources();
+    }
+  }
+
+  /**
+   * Starts recording the resources that are read or written, before an eviction pass lists the
+   * storage.
+   */
+  @GuardedBy("mEvictionLock")
+  private void startEvictionPass() {
+    mAccessedDuringEviction = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>(16, 0.75f, INDEX_CONCURRENCY_LEVEL));
+  }
+
+  @GuardedBy("mEvictionLock")
+  private void endEvictionPass() {
+    mAccessedDuringEviction = null;
+  }
+
+  private void onResourceAccessed(String resourceId) {
+    Set<String> accessed = mAccessedDuringEviction;
+    if (accessed != null) {
+      accessed.add(resourceId);
+    }
+  }
+
+  /**
+   * Checks whether the entry was read or written again after it was listed. The eviction passes
+   * work on a listing that reads and inserts don't wait for, so such an entry is not the one the
+   * listing was sorted by anymore and is skipped. This is an in-memory lookup, the storage isn't
+   * asked for the current timestamp: its timestamps can be coarser than the listing order.
+   */
+  @GuardedBy("mEvictionLock")
+  private boolean isEntryAccessedSinceListed(DiskStorage.Entry entry) {
+    Set<String> accessed = mAccessedDuringEviction;
+    return accessed != null && accessed.contains(entry.getId());
   }
 
   /**
@@ -596,6 +808,9 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       try {
         mStorage.clearAll();
         mResourceIndex.clear();
+        if (mNegativeLookupFilterEnabled) {
+          mNegativeLookupFilter = new CountingBloomFilter(NEGATIVE_LOOKUP_FILTER_SIZE);
+        }
         mCacheEventListener.onCleared();
       } catch (IOException ioe) {
         mCacheErrorLogger.logError(
@@ -608,56 +823,88 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     }
   }
 
+  /**
+   * Checks the in-memory index only, without taking any lock, so this never waits for file system
+   * operations.
+   */
   @Override
   public boolean hasKeySync(CacheKey key) {
-    synchronized (mLock) {
-      String resourceId = null;
-      List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-      for (int i = 0; i< resourceIds.size(); i++) {
-        resourceId = resourceIds.get(i);
-        if (mResourceIndex.contains(resourceId)) {
-          return true;
-        }
+    String resourceId = null;
+    List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+    for (int i = 0; i< resourceIds.size(); i++) {
+      resourceId = resourceIds.get(i);
+      if (mResourceIndex.contains(resourceId)) {
+        return true;
       }
+    }
+    return false;
+  }
+
+  /**
+   * Checks the negative lookup filter only, without taking any lock. Always false if the filter is
+   * disabled or if the storage hasn't been listed yet.
+   */
+  @Override
+  public boolean isKeyAbsentSync(CacheKey key) {
+    CountingBloomFilter filter = mNegativeLookupFilter;
+    if (filter == null) {
       return false;
     }
+    List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+    for (int i = 0; i < resourceIds.size(); i++) {
+      if (filter.mightContain(resourceIds.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes a resource from the negative lookup filter. Only call it for resources that were on
+   * disk: removing a resource that was never added could hide another one.
+   */
+  @GuardedBy("mLock")
+  private void onResourceRemoved(String resourceId) {
+    CountingBloomFilter filter = mNegativeLookupFilter;
+    if (filter != null) {
+      filter.remove(resourceId);
+    }
   }
 
   @Override
   public boolean hasKey(final CacheKey key) {
-    synchronized (mLock) {
-      if (hasKeySync(key)) {
-        return true;
-      }
-      try {
-        String resourceId = null;
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          if (mStorage.contains(resourceId, key)) {
-            mResourceIndex.add(resourceId);
-            return true;
-          }
+    if (hasKeySync(key)) {
+      return true;
+    }
+    try {
+      String resourceId = null;
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        if (mStorage.contains(resourceId, key)) {
+          mResourceIndex.add(resourceId);
+          return true;
         }
-        return false;
-      } catch (IOException e) {
-        return false;
       }
+      return false;
+    } catch (IOException e) {
+      return false;
     }
   }
 
   @Override
   public void trimToMinimum() {
+    final double trimRatio;
     synchronized (mLock) {
       maybeUpdateFileCacheSize();
       long cacheSize = mCacheStats.getSize();
       if (mCacheSizeLimitMinimum <= 0 || cacheSize <= 0 || cacheSize < mCacheSizeLimitMinimum) {
         return;
       }
-      double trimRatio = 1 - (double) mCacheSizeLimitMinimum / (double) cacheSize;
-      if (trimRatio > TRIMMING_LOWER_BOUND) {
-        trimBy(trimRatio);
-      }
+      trimRatio = 1 - (double) mCacheSizeLimitMinimum / (double) cacheSize;
+    }
+    if (trimRatio > TRIMMING_LOWER_BOUND) {
+      trimBy(trimRatio);
     }
   }
 
@@ -667,13 +914,16 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   }
 
   private void trimBy(final double trimRatio) {
-    synchronized (mLock) {
+    synchronized (mEvictionLock) {
       try {
-        // Force update the ground truth if we are about to evict
-        mCacheStats.reset();
-        maybeUpdateFileCacheSize();
-        long cacheSize = mCacheStats.getSize();
-        long newMaxBytesInFiles = cacheSize - (long) (trimRatio * cacheSize);
+        final long newMaxBytesInFiles;
+        synchronized (mLock) {
+          // Force update the ground truth if we are about to evict
+          mCacheStats.reset();
+          maybeUpdateFileCacheSize();
+          long cacheSize = mCacheStats.getSize();
+          newMaxBytesInFiles = cacheSize - (long) (trimRatio * cacheSize);
+        }
         evictAboveSize(
             newMaxBytesInFiles,
             CacheEventListener.EvictionReason.CACHE_MANAGER_TRIMMED);
@@ -721,11 +971,18 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     } else {
       tempResourceIndex = null;
     }
+    // rebuilt from scratch, so that the resources removed by other means don't linger in it
+    CountingBloomFilter negativeLookupFilter = mNegativeLookupFilterEnabled
+        ? new CountingBloomFilter(NEGATIVE_LOOKUP_FILTER_SIZE)
+        : null;
     try {
       Collection<DiskStorage.Entry> entries = mStorage.getEntries();
       for (DiskStorage.Entry entry: entries) {
         count++;
         size += entry.getSize();
+        if (negativeLookupFilter != null) {
+          negativeLookupFilter.add(entry.getId());
+        }
 
         //Check if any files have a future timestamp, beyond our threshold
         if (entry.getTimestamp() > timeThreshold) {
@@ -748,11 +1005,13 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       }
       if (mCacheStats.getCount() != count || mCacheStats.getSize() != size) {
         if (mIndexPopulateAtStartupEnabled && mResourceIndex != tempResourceIndex) {
-          mResourceIndex.clear();
+          // update the index in place, so that concurrent readers never see it empty
+          mResourceIndex.retainAll(tempResourceIndex);
           mResourceIndex.addAll(tempResourceIndex);
         }
         mCacheStats.set(size, count);
       }
+      mNegativeLookupFilter = negativeLookupFilter;
     } catch (IOException ioe) {
       mCacheErrorLogger.logError(
           CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.facebook.cache.common.CacheErrorLogger;
+import com.facebook.common.file.FileUtils;
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.VisibleForTesting;
+
+/**
+ * Append-only journal of the content files of a {@link DefaultDiskStorage}, so that the entries
+ * can be listed without walking the cache directory and stat-ing every file.
+ *
+ * <p> Every change to the storage is recorded: insert started, insert committed (with the size
+ * and timestamp of the file), and removed. The journal is read once, and then kept up to date in
+ * memory. Starts and removals are appended right away, before the storage changes the files.
+ * Commits and touches only mark the entry as dirty, so that reads don't write to the journal; the
+ * dirty entries are appended as commit records with the next start or removal, or when
+ * {@link #flush()} is called. Losing them in a crash is harmless: a lost touch only makes the
+ * entry look older, and an insert whose commit was lost is still pending. When the journal has
+ * grown too large compared to the number of entries it is rewritten with one record per entry.
+ * An insert that was started but not committed when the journal was read is reported as pending,
+ * and the storage has to check its file.
+ *
+ * <p> If the journal is missing or can't be parsed, or if a write to it fails, it is discarded
+ * and {@link #getRecords()} returns null until {@link #rebuild} is called with the result of a
+ * directory walk.
+ */
+@ThreadSafe
+class DiskStorageJournal {
+
+  private static final Class<?> TAG = DiskStorageJournal.class;
+
+  @VisibleForTesting static final String JOURNAL_FILE_NAME = "journal";
+  @VisibleForTesting static final String JOURNAL_TEMP_FILE_NAME = "journal.tmp";
+
+  private static final int MAGIC = 0x46444a31; // "FDJ1"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final byte OP_INSERT_STARTED = 'S';
+  private static final byte OP_INSERT_COMMITTED = 'C';
+  // Only read, for the journals written before touches were folded into commit records
+  private static final byte OP_TOUCHED = 'T';
+  private static final byte OP_REMOVED = 'R';
+
+  // The journal is compacted when it has more records than this, and more than twice its entries
+  @VisibleForTesting static final int COMPACTION_MIN_RECORD_COUNT = 2000;
+
+  /**
+   * The latest known size and timestamp of a content file.
+   */
+  static class Record {
+    public final String resourceId;
+    public final long size;
+    public final long timestamp;
+
+    Record(String resourceId, long size, long timestamp) {
+      this.resourceId = resourceId;
+      this.size = size;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private final File mJournalFile;
+  private final File mJournalTempFile;
+  private final CacheErrorLogger mCacheErrorLogger;
+
+  @GuardedBy("this")
+  private boolean mLoaded;
+  // null if the journal is not valid and needs to be rebuilt
+  @GuardedBy("this")
+  private @Nullable Map<String, Record> mRecords;
+  // ids whose insert was started but not committed when the journal was read
+  @GuardedBy("this")
+  private final Set<String> mPendingIds = new HashSet<>();
+  // ids whose record changed in memory since it was last written
+  @GuardedBy("this")
+  private final Set<String> mDirtyIds = new LinkedHashSet<>();
+  @GuardedBy("this")
+  private int mRecordCount;
+  @GuardedBy("this")
+  private @Nullable FileOutputStream mWriter;
+
+  DiskStorageJournal(File directory, CacheErrorLogger cacheErrorLogger) {
+    mJournalFile = new File(directory, JOURNAL_FILE_NAME);
+    mJournalTempFile = new File(directory, JOURNAL_TEMP_FILE_NAME);
+    mCacheErrorLogger = cacheErrorLogger;
+  }
+
+  /**
+   * @return true if the file is one of the journal's, that must not be purged from the storage
+   */
+  boolean isJournalFile(File file) {
+    return file.equals(mJournalFile) || file.equals(mJournalTempFile);
+  }
+
+  /**
+   * Gets the committed entries, compacting the journal first if needed.
+   *
+   * @return the records, or null if the journal is not valid and the entries have to be found by
+   *     walking the directory
+   */
+  synchronized @Nullable List<Record> getRecords() {
+    ensureLoaded();
+    if (mRecords == null) {
+      return null;
+    }
+    flushDirtyRecords();
+    if (mRecords == null) {
+      return null;
+    }
+    if (mRecordCount > COMPACTION_MIN_RECORD_COUNT && mRecordCount > 2 * mRecords.size()) {
+      compact();
+      if (mRecords == null) {
+        return null;
+      }
+    }
+    return new ArrayList<>(mRecords.values());
+  }
+
+  /**
+   * Gets the ids of the inserts that were started but not committed before the journal was read.
+   * The storage should check their files, and report them as committed or removed.
+   */
+  synchronized Collection<String> getPendingIds() {
+    ensureLoaded();
+    return new ArrayList<>(mPendingIds);
+  }
+
+  /**
+   * Replaces the content of the journal with the given entries, found by walking the directory.
+   */
+  synchronized void rebuild(Collection<DiskStorage.Entry> entries) {
+    mLoaded = true;
+    mPendingIds.clear();
+    mDirtyIds.clear();
+    mRecords = new LinkedHashMap<>();
+    for (DiskStorage.Entry entry : entries) {
+      mRecords.put(
+          entry.getId(),
+          new Record(entry.getId(), entry.getSize(), entry.getTimestamp()));
+    }
+    compact();
+  }
+
+  /**
+   * Must be called before the file of the insert is created, so that the insert is pending if
+   * its commit record is lost.
+   */
+  synchronized void onInsertStarted(String resourceId) {
+    ensureLoaded();
+    if (mRecords != null) {
+      flushDirtyRecords();
+      append(OP_INSERT_STARTED, resourceId, 0, 0);
+    }
+  }
+
+  synchronized void onInsertCommitted(String resourceId, long size, long timestamp) {
+    ensureLoaded();
+    mPendingIds.remove(resourceId);
+    if (mRecords != null) {
+      mRecords.put(resourceId, new Record(resourceId, size, timestamp));
+      mDirtyIds.add(resourceId);
+    }
+  }
+
+  synchronized void onTouched(String resourceId, long timestamp) {
+    ensureLoaded();
+    if (mRecords != null) {
+      Record record = mRecords.get(resourceId);
+      if (record != null) {
+        mRecords.put(resourceId, new Record(resourceId, record.size, timestamp));
+        mDirtyIds.add(resourceId);
+      }
+    }
+  }
+
+  synchronized void onRemoved(String resourceId) {
+    ensureLoaded();
+    mPendingIds.remove(resourceId);
+    mDirtyIds.remove(resourceId);
+    if (mRecords != null && mRecords.remove(resourceId) != null) {
+      flushDirtyRecords();
+      if (mRecords != null) {
+        append(OP_REMOVED, resourceId, 0, 0);
+      }
+    }
+  }
+
+  /**
+   * Appends the commits and touches that are only in memory. Called by the storage from its
+   * background maintenance, so that they are not lost if nothing else is written for a while.
+   */
+  synchronized void flush() {
+    if (mLoaded && mRecords != null) {
+      flushDirtyRecords();
+    }
+  }
+
+  /**
+   * Forgets all the entries, after the storage has been cleared.
+   */
+  synchronized void reset() {
+    closeWriter();
+    mJournalFile.delete();
+    mJournalTempFile.delete();
+    mLoaded = true;
+    mPendingIds.clear();
+    mDirtyIds.clear();
+    mRecords = new LinkedHashMap<>();
+    mRecordCount = 0;
+  }
+
+  @VisibleForTesting
+  synchronized int getRecordCount() {
+    return mRecordCount;
+  }
+
+  @GuardedBy("this")
+  private void ensureLoaded() {
+    if (mLoaded) {
+      return;
+    }
+    mLoaded = true;
+    mRecords = null;
+    mPendingIds.clear();
+    mRecordCount = 0;
+    if (!mJournalFile.exists()) {
+      return;
+    }
+    Map<String, Record> records = new LinkedHashMap<>();
+    boolean truncated = false;
+    InputStream inputStream = null;
+    try {
+      inputStream = new BufferedInputStream(new FileInputStream(mJournalFile));
+      DataInputStream in = new DataInputStream(inputStream);
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unexpected journal header");
+      }
+      while (true) {
+        int op = in.read();
+        if (op == -1) {
+          break;
+        }
+        try {
+          readRecord((byte) op, in, records);
+        } catch (EOFException eofe) {
+          // the last record was not completely written, the others are still valid
+          truncated = true;
+          break;
+        }
+        mRecordCount++;
+      }
+    } catch (IOException ioe) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.READ_INVALID_ENTRY,
+          TAG,
+          "journal could not be read: " + ioe.getMessage(),
+          ioe);
+      mPendingIds.clear();
+      return;
+    } finally {
+      Closeables.closeQuietly(inputStream);
+    }
+    mRecords = records;
+    if (truncated) {
+      // don't append after a partial record
+      compact();
+    }
+  }
+
+  @GuardedBy("this")
+  private void readRecord(byte op, DataInputStream in, Map<String, Record> records)
+      throws IOException {
+    String resourceId = in.readUTF();
+    switch (op) {
+      case OP_INSERT_STARTED:
+        mPendingIds.add(resourceId);
+        break;
+      case OP_INSERT_COMMITTED:
+        long size = in.readLong();
+        long timestamp = in.readLong();
+        mPendingIds.remove(resourceId);
+        records.put(resourceId, new Record(resourceId, size, timestamp));
+        break;
+      case OP_TOUCHED:
+        long touchTimestamp = in.readLong();
+        Record record = records.get(resourceId);
+        if (record != null) {
+          records.put(resourceId, new Record(resourceId, record.size, touchTimestamp));
+        }
+        break;
+      case OP_REMOVED:
+        mPendingIds.remove(resourceId);
+        records.remove(resourceId);
+        break;
+      default:
+        throw new IOException("Unexpected journal record: " + op);
+    }
+  }
+
+  /**
+   * Appends a record, with a single write so that a crash can only lose or truncate the last one.
+   */
+  @GuardedBy("this")
+  private void append(byte op, String resourceId, long size, long timestamp) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      writeRecord(out, op, resourceId, size, timestamp);
+      write(bytes.toByteArray());
+      mRecordCount++;
+    } catch (IOException ioe) {
+      invalidate("append", ioe);
+    }
+  }
+
+  /**
+   * Appends a commit record for each dirty entry, with a single write.
+   */
+  @GuardedBy("this")
+  private void flushDirtyRecords() {
+    if (mDirtyIds.isEmpty()) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      int count = 0;
+      for (String resourceId : mDirtyIds) {
+        Record record = mRecords.get(resourceId);
+        if (record != null) {
+          writeRecord(out, OP_INSERT_COMMITTED, resourceId, record.size, record.timestamp);
+          count++;
+        }
+      }
+      mDirtyIds.clear();
+      write(bytes.toByteArray());
+      mRecordCount += count;
+    } catch (IOException ioe) {
+      invalidate("flush", ioe);
+    }
+  }
+
+  @GuardedBy("this")
+  private void write(byte[] records) throws IOException {
+    if (mWriter == null) {
+      boolean isNew = !mJournalFile.exists();
+      mWriter = openWriter(mJournalFile, true);
+      if (isNew) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeHeader(new DataOutputStream(bytes));
+        mWriter.write(bytes.toByteArray());
+      }
+    }
+    mWriter.write(records);
+  }
+
+  /**
+   * Rewrites the journal with one record per entry.
+   */
+  @GuardedBy("this")
+  private void compact() {
+    closeWriter();
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(openWriter(mJournalTempFile, false)));
+      writeHeader(out);
+      for (Record record : mRecords.values()) {
+        writeRecord(out, OP_INSERT_COMMITTED, record.resourceId, record.size, record.timestamp);
+      }
+      for (String resourceId : mPendingIds) {
+        writeRecord(out, OP_INSERT_STARTED, resourceId, 0, 0);
+      }
+      out.close();
+      out = null;
+      FileUtils.rename(mJournalTempFile, mJournalFile);
+      mDirtyIds.clear();
+      mRecordCount = mRecords.size() + mPendingIds.size();
+    } catch (IOException ioe) {
+      closeQuietly(out);
+      invalidate("compact", ioe);
+    }
+  }
+
+  @GuardedBy("this")
+  private FileOutputStream openWriter(File file, boolean append) throws FileNotFoundException {
+    // the directory is deleted when the storage is cleared
+    File directory = file.getParentFile();
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+    return new FileOutputStream(file, append);
+  }
+
+  @GuardedBy("this")
+  private void invalidate(String message, IOException ioe) {
+    mCacheErrorLogger.logError(
+        CacheErrorLogger.CacheErrorCategory.WRITE_INVALID_ENTRY,
+        TAG,
+        "journal " + message + ": " + ioe.getMessage(),
+        ioe);
+    closeWriter();
+    mJournalFile.delete();
+    mRecords = null;
+    mPendingIds.clear();
+    mDirtyIds.clear();
+    mRecordCount = 0;
+  }
+
+  @GuardedBy("this")
+  private void closeWriter() {
+    closeQuietly(mWriter);
+    mWriter = null;
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    try {
+      Closeables.close(closeable, true);
+    } catch (IOException ioe) {
+      // can't happen, the exception is swallowed
+    }
+  }
+
+  private static void writeHeader(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+  }
+
+  private static void writeRecord(
+      DataOutputStream out,
+      byte op,
+      String resourceId,
+      long size,
+      long timestamp) throws IOException {
+    out.writeByte(op);
+    out.writeUTF(resourceId);
+    if (op == OP_INSERT_COMMITTED) {
+      out.writeLong(size);
+      out.writeLong(timestamp);
+    }
+  }
+}
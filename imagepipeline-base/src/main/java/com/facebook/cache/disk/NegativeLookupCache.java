@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import com.facebook.cache.common.CacheKey;
+
+/**
+ * Optional interface of the {@link FileCache}s that can tell that a key is definitely not cached
+ * without touching the disk. The users of a file cache check for it with instanceof.
+ */
+public interface NegativeLookupCache {
+
+  /**
+   * Returns true if the key is definitely not in the cache.
+   *
+   * Not guaranteed to be correct the other way: the cache may not have this key even if this
+   * returns false. But if it returns true, it definitely doesn't have it.
+   *
+   * Avoids a disk read.
+   */
+  boolean isKeyAbsentSync(CacheKey key);
+}
@@ -0,0 +1,864 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.binaryresource.FileSliceBinaryResource;
+import com.facebook.cache.common.CacheErrorLogger;
+import com.facebook.cache.common.WriterCallback;
+import com.facebook.common.file.FileTree;
+import com.facebook.common.file.FileUtils;
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.Supplier;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.time.Clock;
+import com.facebook.common.time.SystemClock;
+import com.facebook.common.util.ByteConstants;
+
+/**
+ * Disk storage that appends the resources to a few large segment files, instead of using one file
+ * per resource. It is meant for caches of small resources, such as thumbnails, for which the
+ * per-file overhead of {@link DefaultDiskStorage} dominates.
+ *
+ * <p> Each segment is a log of records: a resource was put (with its data), touched or removed.
+ * New records are always appended to the last segment, and a new segment is started when it is
+ * full. The index of the resources is kept in memory, and rebuilt by reading the records of all
+ * the segments the first time the storage is used. Reads are positional reads of the segment
+ * files, so they don't need the storage lock.
+ *
+ * <p> Touches only update the access time in memory. They are appended as touch records in one
+ * write before the next put or remove, or when {@link #purgeUnexpectedResources()} is called, so
+ * that reads don't write to the segments. A touch lost in a crash only makes the resource look
+ * older.
+ *
+ * <p> Removed and overwritten resources leave dead space in their segment. When
+ * {@link #purgeUnexpectedResources()} is called, which the cache does in the background after
+ * evicting, every segment but the last one that is mostly dead is compacted, the deadest first:
+ * its live resources are appended to the last segment and the file is deleted. The remove records
+ * of a segment that is not the oldest one are appended again, since they can refer to a put in
+ * an older segment, and so are the access times of the resources its touch records refer to.
+ *
+ * <p> A resource that is being read while its segment is compacted can fail to be read, which is
+ * reported as an IOException.
+ */
+@ThreadSafe
+public class PackedDiskStorage implements DiskStorage {
+
+  private static final Class<?> TAG = PackedDiskStorage.class;
+
+  private static final String SEGMENT_FILE_EXTENSION = ".seg";
+  private static final String VERSION_PREFIX = "p1";
+
+  @VisibleForTesting static final long DEFAULT_MAX_SEGMENT_SIZE = 4 * ByteConstants.MB;
+
+  // A segment is compacted when more than this fraction of it is dead
+  private static final float COMPACTION_DEAD_RATIO = 0.5f;
+
+  private static final int RECORD_MAGIC = 0x504b5231; // "PKR1"
+  private static final byte OP_PUT = 'P';
+  private static final byte OP_TOUCH = 'T';
+  private static final byte OP_REMOVE = 'R';
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Supplier<File> mBaseDirectoryPathSupplier;
+  private final String mBaseDirectoryName;
+  private final int mVersion;
+  private final CacheErrorLogger mCacheErrorLogger;
+  private final long mMaxSegmentSize;
+  private final Clock mClock;
+
+  @GuardedBy("this")
+  private @Nullable File mRootDirectory;
+  @GuardedBy("this")
+  private @Nullable File mVersionDirectory;
+  @GuardedBy("this")
+  private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+  @GuardedBy("this")
+  private final Map<String, Location> mIndex = new HashMap<>();
+  // ids whose access time changed in memory since it was last written
+  @GuardedBy("this")
+  private final Set<String> mTouchedIds = new LinkedHashSet<>();
+
+  public PackedDiskStorage(
+      int version,
+      Supplier<File> baseDirectoryPathSupplier,
+      String baseDirectoryName,
+      CacheErrorLogger cacheErrorLogger) {
+    this(
+        version,
+        baseDirectoryPathSupplier,
+        baseDirectoryName,
+        cacheErrorLogger,
+        DEFAULT_MAX_SEGMENT_SIZE);
+  }
+
+  @VisibleForTesting
+  PackedDiskStorage(
+      int version,
+      Supplier<File> baseDirectoryPathSupplier,
+      String baseDirectoryName,
+      CacheErrorLogger cacheErrorLogger,
+      long maxSegmentSize) {
+    mVersion = version;
+    mBaseDirectoryPathSupplier = baseDirectoryPathSupplier;
+    mBaseDirectoryName = baseDirectoryName;
+    mCacheErrorLogger = cacheErrorLogger;
+    mMaxSegmentSize = maxSegmentSize;
+    mClock = SystemClock.get();
+  }
+
+  /**
+   * A segment file, and the accounting needed to decide when to compact it.
+   */
+  @VisibleForTesting
+  static class Segment {
+    public final int number;
+    public final File file;
+    private final RandomAccessFile mRandomAccessFile;
+    public final FileChannel channel;
+    // number of bytes of records written
+    public long size;
+    // number of bytes of data of the resources that are still in the index
+    public long liveBytes;
+
+    Segment(int number, File file) throws IOException {
+      this.number = number;
+      this.file = file;
+      mRandomAccessFile = new RandomAccessFile(file, "rw");
+      channel = mRandomAccessFile.getChannel();
+    }
+
+    float getDeadRatio() {
+      return size == 0 ? 0 : 1 - (float) liveBytes / size;
+    }
+
+    void close() {
+      try {
+        Closeables.close(mRandomAccessFile, true);
+      } catch (IOException ioe) {
+        // can't happen, the exception is swallowed
+      }
+    }
+  }
+
+  /**
+   * Where the data of a resource is, and when it was last accessed.
+   */
+  private static class Location {
+    public final Segment segment;
+    public final long offset;
+    public final int length;
+    public long timestamp;
+
+    Location(Segment segment, long offset, int length, long timestamp) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.timestamp = timestamp;
+    }
+
+    FileSliceBinaryResource getResource() {
+      return new FileSliceBinaryResource(segment.file, segment.channel, offset, length);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    try {
+      synchronized (this) {
+        ensureInitialized();
+      }
+      return true;
+    } catch (IOException ioe) {
+      return false;
+    }
+  }
+
+  @Override
+  public boolean isExternal() {
+    return DefaultDiskStorage.isExternal(
+        new File(mBaseDirectoryPathSupplier.get(), mBaseDirectoryName),
+        mCacheErrorLogger);
+  }
+
+  @Override
+  public String getStorageName() {
+    String directoryName =
+        new File(mBaseDirectoryPathSupplier.get(), mBaseDirectoryName).getAbsolutePath();
+    return "_" + directoryName.substring(directoryName.lastIndexOf('/') + 1)
+        + "_" + directoryName.hashCode();
+  }
+
+  @Override
+  public BinaryResource getResource(String resourceId, Object debugInfo) throws IOException {
+    synchronized (this) {
+      ensureInitialized();
+      Location location = mIndex.get(resourceId);
+      if (location == null) {
+        return null;
+      }
+      touch(resourceId, location);
+      return location.getResource();
+    }
+  }
+
+  @Override
+  public synchronized boolean contains(String resourceId, Object debugInfo) throws IOException {
+    ensureInitialized();
+    return mIndex.containsKey(resourceId);
+  }
+
+  @Override
+  public synchronized boolean touch(String resourceId, Object debugInfo) throws IOException {
+    ensureInitialized();
+    Location location = mIndex.get(resourceId);
+    if (location == null) {
+      return false;
+    }
+    touch(resourceId, location);
+    return true;
+  }
+
+  @VisibleForTesting
+  synchronized long getTimestamp(String resourceId) throws IOException {
+    ensureInitialized();
+    Location location = mIndex.get(resourceId);
+    return location == null ? -1 : location.timestamp;
+  }
+
+  @GuardedBy("this")
+  private void touch(String resourceId, Location location) {
+    location.timestamp = mClock.now();
+    mTouchedIds.add(resourceId);
+  }
+
+  /**
+   * Writes the pending touches, compacts the segments that are mostly dead, and deletes the
+   * unknown files.
+   */
+  @Override
+  public synchronized void purgeUnexpectedResources() {
+    try {
+      ensureInitialized();
+      flushTouches();
+      compactSegments();
+      flushTouches();
+      purgeUnexpectedFiles();
+    } catch (IOException ioe) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
+          TAG,
+          "purgeUnexpectedResources: " + ioe.getMessage(),
+          ioe);
+    }
+  }
+
+  @Override
+  public Inserter insert(String resourceId, Object debugInfo) throws IOException {
+    synchronized (this) {
+      ensureInitialized();
+    }
+    return new InserterImpl(resourceId);
+  }
+
+  @Override
+  public synchronized List<Entry> getEntries() throws IOException {
+    ensureInitialized();
+    List<Entry> entries = new ArrayList<>(mIndex.size());
+    for (Map.Entry<String, Location> entry : mIndex.entrySet()) {
+      Location location = entry.getValue();
+      entries.add(
+          new EntryImpl(entry.getKey(), location.getResource(), location.timestamp));
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  @Override
+  public long remove(Entry entry) throws IOException {
+    return remove(entry.getId());
+  }
+
+  @Override
+  public synchronized long remove(String resourceId) throws IOException {
+    ensureInitialized();
+    Location location = mIndex.remove(resourceId);
+    if (location == null) {
+      return 0;
+    }
+    location.segment.liveBytes -= location.length;
+    mTouchedIds.remove(resourceId);
+    flushTouches();
+    appendRecord(OP_REMOVE, resourceId, 0, null, 0);
+    return location.length;
+  }
+
+  @Override
+  public synchronized void clearAll() throws IOException {
+    closeSegments();
+    mIndex.clear();
+    mTouchedIds.clear();
+    if (mRootDirectory != null) {
+      FileTree.deleteContents(mRootDirectory);
+    }
+    mRootDirectory = null;
+    mVersionDirectory = null;
+  }
+
+  @Override
+  public DiskDumpInfo getDumpInfo() throws IOException {
+    DiskDumpInfo dumpInfo = new DiskDumpInfo();
+    for (Entry entry : getEntries()) {
+      FileSliceBinaryResource resource = (FileSliceBinaryResource) entry.getResource();
+      byte[] bytes = resource.read();
+      String type = DefaultDiskStorage.typeOfBytes(bytes);
+      String firstBits = "";
+      if (type.equals("undefined") && bytes.length >= 4) {
+        firstBits = String.format(
+            (Locale) null, "0x%02X 0x%02X 0x%02X 0x%02X", bytes[0], bytes[1], bytes[2], bytes[3]);
+      }
+      String path = resource.getFile().getPath() + "@" + resource.getOffset();
+      dumpInfo.entries.add(new DiskDumpInfoEntry(path, type, entry.getSize(), firstBits));
+      Integer count = dumpInfo.typeCounts.get(type);
+      dumpInfo.typeCounts.put(type, count == null ? 1 : count + 1);
+    }
+    return dumpInfo;
+  }
+
+  @VisibleForTesting
+  synchronized int getSegmentCount() {
+    return mSegments.size();
+  }
+
+  @VisibleForTesting
+  static String getVersionSubdirectoryName(int version) {
+    return String.format((Locale) null, "%s.%d", VERSION_PREFIX, version);
+  }
+
+  /**
+   * Creates the directories and reads the segments, the first time the storage is used or after
+   * it has been cleared.
+   */
+  @GuardedBy("this")
+  private void ensureInitialized() throws IOException {
+    if (mVersionDirectory != null) {
+      return;
+    }
+    File rootDirectory = new File(mBaseDirectoryPathSupplier.get(), mBaseDirectoryName);
+    File versionDirectory = new File(rootDirectory, getVersionSubdirectoryName(mVersion));
+    if (rootDirectory.exists() && !versionDirectory.exists()) {
+      // written with another version, nothing to reuse
+      FileTree.deleteRecursively(rootDirectory);
+    }
+    try {
+      FileUtils.mkdirs(versionDirectory);
+    } catch (FileUtils.CreateDirectoryException cde) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.WRITE_CREATE_DIR,
+          TAG,
+          "version directory could not be created: " + versionDirectory,
+          cde);
+      throw cde;
+    }
+    mRootDirectory = rootDirectory;
+    mVersionDirectory = versionDirectory;
+
+    File[] files = versionDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        int number = getSegmentNumber(file);
+        if (number >= 0) {
+          mSegments.put(number, new Segment(number, file));
+        }
+      }
+    }
+    for (Segment segment : mSegments.values()) {
+      readSegment(segment);
+    }
+  }
+
+  /**
+   * @return the number of the segment, or -1 if the file is not a segment
+   */
+  private static int getSegmentNumber(File file) {
+    String name = file.getName();
+    if (!name.endsWith(SEGMENT_FILE_EXTENSION)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(
+          name.substring(0, name.length() - SEGMENT_FILE_EXTENSION.length()));
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  /**
+   * Replays the records of the segment into the index. A segment that ends with an incomplete or
+   * invalid record is truncated after the last valid one.
+   */
+  @GuardedBy("this")
+  private void readSegment(Segment segment) throws IOException {
+    long fileLength = segment.file.length();
+    long position = 0;
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+    try {
+      while (position < fileLength) {
+        if (in.readInt() != RECORD_MAGIC) {
+          break;
+        }
+        byte op = in.readByte();
+        byte[] idBytes = new byte[in.readUnsignedShort()];
+        in.readFully(idBytes);
+        String resourceId = new String(idBytes, UTF_8);
+        long recordPosition = position;
+        position += 4 + 1 + 2 + idBytes.length;
+        if (op == OP_PUT) {
+          long timestamp = in.readLong();
+          int length = in.readInt();
+          position += 8 + 4;
+          if (length < 0 || position + length > fileLength) {
+            position = recordPosition;
+            break;
+          }
+          skipFully(in, length);
+          putInIndex(resourceId, new Location(segment, position, length, timestamp));
+          position += length;
+        } else if (op == OP_TOUCH) {
+          long timestamp = in.readLong();
+          position += 8;
+          Location location = mIndex.get(resourceId);
+          if (location != null) {
+            location.timestamp = timestamp;
+          }
+        } else if (op == OP_REMOVE) {
+          Location location = mIndex.remove(resourceId);
+          if (location != null) {
+            location.segment.liveBytes -= location.length;
+          }
+        } else {
+          position = recordPosition;
+          break;
+        }
+        segment.size = position;
+      }
+    } catch (EOFException eofe) {
+      // incomplete last record
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+    if (segment.size < fileLength) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.READ_INVALID_ENTRY,
+          TAG,
+          "segment " + segment.file + " truncated from " + fileLength + " to " + segment.size,
+          null);
+      segment.channel.truncate(segment.size);
+    }
+  }
+
+  private static void skipFully(DataInputStream in, int count) throws IOException {
+    while (count > 0) {
+      int skipped = in.skipBytes(count);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      count -= skipped;
+    }
+  }
+
+  @GuardedBy("this")
+  private void putInIndex(String resourceId, Location location) {
+    Location previous = mIndex.put(resourceId, location);
+    if (previous != null) {
+      previous.segment.liveBytes -= previous.length;
+    }
+    location.segment.liveBytes += location.length;
+  }
+
+  /**
+   * Appends a put record with the data.
+   */
+  @GuardedBy("this")
+  private Location put(String resourceId, long timestamp, byte[] data, int length)
+      throws IOException {
+    ensureInitialized();
+    mTouchedIds.remove(resourceId);
+    flushTouches();
+    long dataOffset = appendRecord(OP_PUT, resourceId, timestamp, data, length);
+    Location location = new Location(getLastSegment(), dataOffset, length, timestamp);
+    putInIndex(resourceId, location);
+    return location;
+  }
+
+  /**
+   * Appends a record to the last segment, starting a new segment if it's full.
+   *
+   * @return the position of the data of the record, if any
+   */
+  @GuardedBy("this")
+  private long appendRecord(
+      byte op,
+      String resourceId,
+      long timestamp,
+      @Nullable byte[] data,
+      int length) throws IOException {
+    byte[] idBytes = resourceId.getBytes(UTF_8);
+    int headerSize = getHeaderSize(op, idBytes);
+    ByteBuffer buffer = ByteBuffer.allocate(headerSize + (op == OP_PUT ? length : 0));
+    putRecord(buffer, op, idBytes, timestamp, data, length);
+    buffer.flip();
+    return write(buffer) + headerSize;
+  }
+
+  /**
+   * Appends a touch record for each resource whose access time is only in memory, with a single
+   * write.
+   */
+  @GuardedBy("this")
+  private void flushTouches() throws IOException {
+    if (mTouchedIds.isEmpty()) {
+      return;
+    }
+    List<byte[]> ids = new ArrayList<>(mTouchedIds.size());
+    List<Location> locations = new ArrayList<>(mTouchedIds.size());
+    int size = 0;
+    for (String resourceId : mTouchedIds) {
+      Location location = mIndex.get(resourceId);
+      if (location != null) {
+        byte[] idBytes = resourceId.getBytes(UTF_8);
+        ids.add(idBytes);
+        locations.add(location);
+        size += getHeaderSize(OP_TOUCH, idBytes);
+      }
+    }
+    mTouchedIds.clear();
+    if (ids.isEmpty()) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (int i = 0; i < ids.size(); i++) {
+      putRecord(buffer, OP_TOUCH, ids.get(i), locations.get(i).timestamp, null, 0);
+    }
+    buffer.flip();
+    write(buffer);
+  }
+
+  private static int getHeaderSize(byte op, byte[] idBytes) {
+    int headerSize = 4 + 1 + 2 + idBytes.length;
+    if (op == OP_PUT) {
+      headerSize += 8 + 4;
+    } else if (op == OP_TOUCH) {
+      headerSize += 8;
+    }
+    return headerSize;
+  }
+
+  private static void putRecord(
+      ByteBuffer buffer,
+      byte op,
+      byte[] idBytes,
+      long timestamp,
+      @Nullable byte[] data,
+      int length) {
+    buffer.putInt(RECORD_MAGIC);
+    buffer.put(op);
+    buffer.putShort((short) idBytes.length);
+    buffer.put(idBytes);
+    if (op == OP_PUT) {
+      buffer.putLong(timestamp);
+      buffer.putInt(length);
+      buffer.put(data, 0, length);
+    } else if (op == OP_TOUCH) {
+      buffer.putLong(timestamp);
+    }
+  }
+
+  /**
+   * Appends the records in the buffer to the last segment, starting a new segment if it's full.
+   *
+   * @return the position the records were written at
+   */
+  @GuardedBy("this")
+  private long write(ByteBuffer buffer) throws IOException {
+    Segment segment = getWritableSegment(buffer.remaining());
+    long position = segment.size;
+    try {
+      while (buffer.hasRemaining()) {
+        position += segment.channel.write(buffer, position);
+      }
+    } catch (IOException ioe) {
+      // don't leave a partial record that later appends would follow
+      segment.channel.truncate(segment.size);
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
+          TAG,
+          "appendRecord",
+          ioe);
+      throw ioe;
+    }
+    long recordsOffset = segment.size;
+    segment.size = position;
+    return recordsOffset;
+  }
+
+  @GuardedBy("this")
+  private Segment getLastSegment() {
+    return mSegments.lastEntry().getValue();
+  }
+
+  @GuardedBy("this")
+  private Segment getWritableSegment(int recordSize) throws IOException {
+    if (!mSegments.isEmpty()) {
+      Segment last = getLastSegment();
+      if (last.size == 0 || last.size + recordSize <= mMaxSegmentSize) {
+        return last;
+      }
+    }
+    int number = mSegments.isEmpty() ? 0 : mSegments.lastKey() + 1;
+    Segment segment = new Segment(
+        number,
+        new File(mVersionDirectory, number + SEGMENT_FILE_EXTENSION));
+    mSegments.put(number, segment);
+    return segment;
+  }
+
+  /**
+   * Compacts the segments, but the last one, that are mostly dead. The deadest are compacted first.
+   */
+  @GuardedBy("this")
+  private void compactSegments() throws IOException {
+    if (mSegments.size() < 2) {
+      return;
+    }
+    Segment last = getLastSegment();
+    List<Segment> segmentsToCompact = new ArrayList<>();
+    for (Segment segment : mSegments.values()) {
+      if (segment != last && segment.getDeadRatio() > COMPACTION_DEAD_RATIO) {
+        segmentsToCompact.add(segment);
+      }
+    }
+    Collections.sort(
+        segmentsToCompact,
+        new Comparator<Segment>() {
+          @Override
+          public int compare(Segment lhs, Segment rhs) {
+            return Float.compare(rhs.getDeadRatio(), lhs.getDeadRatio());
+          }
+        });
+    for (Segment segment : segmentsToCompact) {
+      compactSegment(segment);
+    }
+  }
+
+  /**
+   * Appends the live resources of the segment to the last segment, and deletes it. If there are
+   * older segments, the remove records of the segment are appended again, and the access times of
+   * the resources it has touch records for are marked to be written again.
+   */
+  @GuardedBy("this")
+  private void compactSegment(Segment segment) throws IOException {
+    Set<String> removedIds = new HashSet<>();
+    Set<String> touchedIds = new HashSet<>();
+    if (mSegments.firstKey() != segment.number) {
+      readRemovedAndTouchedIds(segment, removedIds, touchedIds);
+    }
+    List<Map.Entry<String, Location>> live = new ArrayList<>();
+    for (Map.Entry<String, Location> entry : mIndex.entrySet()) {
+      if (entry.getValue().segment == segment) {
+        live.add(entry);
+      }
+    }
+    for (Map.Entry<String, Location> entry : live) {
+      Location location = entry.getValue();
+      byte[] data = location.getResource().read();
+      put(entry.getKey(), location.timestamp, data, data.length);
+    }
+    for (String resourceId : removedIds) {
+      // a resource that was put again after it was removed must stay
+      if (!mIndex.containsKey(resourceId)) {
+        appendRecord(OP_REMOVE, resourceId, 0, null, 0);
+      }
+    }
+    for (String resourceId : touchedIds) {
+      if (mIndex.containsKey(resourceId)) {
+        mTouchedIds.add(resourceId);
+      }
+    }
+    mSegments.remove(segment.number);
+    segment.close();
+    if (!segment.file.delete()) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.DELETE_FILE,
+          TAG,
+          "segment could not be deleted: " + segment.file,
+          null);
+    }
+  }
+
+  /**
+   * Reads the ids of the remove and touch records of the segment.
+   */
+  private static void readRemovedAndTouchedIds(
+      Segment segment,
+      Set<String> removedIds,
+      Set<String> touchedIds) throws IOException {
+    long position = 0;
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+    try {
+      while (position < segment.size) {
+        in.readInt();
+        byte op = in.readByte();
+        byte[] idBytes = new byte[in.readUnsignedShort()];
+        in.readFully(idBytes);
+        position += 4 + 1 + 2 + idBytes.length;
+        if (op == OP_PUT) {
+          in.readLong();
+          int length = in.readInt();
+          skipFully(in, length);
+          position += 8 + 4 + length;
+        } else if (op == OP_TOUCH) {
+          in.readLong();
+          position += 8;
+          touchedIds.add(new String(idBytes, UTF_8));
+        } else {
+          removedIds.add(new String(idBytes, UTF_8));
+        }
+      }
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  @GuardedBy("this")
+  private void purgeUnexpectedFiles() {
+    File[] files = mRootDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.equals(mVersionDirectory)) {
+          FileTree.deleteRecursively(file);
+        }
+      }
+    }
+    files = mVersionDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!mSegments.containsKey(getSegmentNumber(file))) {
+          FileTree.deleteRecursively(file);
+        }
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void closeSegments() {
+    for (Iterator<Segment> iterator = mSegments.values().iterator(); iterator.hasNext(); ) {
+      iterator.next().close();
+      iterator.remove();
+    }
+  }
+
+  @VisibleForTesting
+  static class EntryImpl implements Entry {
+    private final String mId;
+    private final FileSliceBinaryResource mResource;
+    private final long mTimestamp;
+
+    EntryImpl(String id, FileSliceBinaryResource resource, long timestamp) {
+      mId = Preconditions.checkNotNull(id);
+      mResource = Preconditions.checkNotNull(resource);
+      mTimestamp = timestamp;
+    }
+
+    @Override
+    public String getId() {
+      return mId;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return mTimestamp;
+    }
+
+    @Override
+    public long getSize() {
+      return mResource.size();
+    }
+
+    @Override
+    public FileSliceBinaryResource getResource() {
+      return mResource;
+    }
+  }
+
+  /**
+   * Buffers the data in memory, so that it's written with a single append when committed.
+   */
+  private class InserterImpl implements Inserter {
+
+    private final String mResourceId;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+
+    InserterImpl(String resourceId) {
+      mResourceId = resourceId;
+    }
+
+    @Override
+    public void writeData(WriterCallback callback, Object debugInfo) throws IOException {
+      mBuffer.reset();
+      callback.write(mBuffer);
+    }
+
+    @Override
+    public BinaryResource commit(Object debugInfo) throws IOException {
+      byte[] data = mBuffer.toByteArray();
+      synchronized (PackedDiskStorage.this) {
+        return put(mResourceId, mClock.now(), data, data.length).getResource();
+      }
+    }
+
+    @Override
+    public boolean cleanUp() {
+      mBuffer.reset();
+      return true;
+    }
+  }
+}
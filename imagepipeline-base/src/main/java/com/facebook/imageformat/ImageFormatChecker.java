@@ -45,6 +45,14 @@ public class ImageFormatChecker {
     updateMaxHeaderLength();
   }
 
+  /**
+   * Returns whether custom format checkers are set. Only the default formats are detected
+   * otherwise.
+   */
+  public boolean hasCustomImageFormatCheckers() {
+    return mCustomImageFormatCheckers != null && !mCustomImageFormatCheckers.isEmpty();
+  }
+
   public ImageFormat determineImageFormat(final InputStream is) throws IOException {
     Preconditions.checkNotNull(is);
     final byte[] imageHeaderBytes = new byte[mMaxHeaderLength];
@@ -12,7 +12,7 @@ import java.lang.reflect.Constructor;
 
 import com.facebook.cache.common.CacheKey;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
-import com.facebook.imagepipeline.cache.CountingMemoryCache;
+import com.facebook.imagepipeline.cache.CountingCache;
 import com.facebook.imagepipeline.core.ExecutorSupplier;
 import com.facebook.imagepipeline.image.CloseableImage;
 
@@ -25,7 +25,7 @@ public class AnimatedFactoryProvider {
   public static AnimatedFactory getAnimatedFactory(
       PlatformBitmapFactory platformBitmapFactory,
       ExecutorSupplier executorSupplier,
-      CountingMemoryCache<CacheKey, CloseableImage> backingCache) {
+      CountingCache<CacheKey, CloseableImage> backingCache) {
     if (!sImplLoaded) {
       try {
         final Class<?> clazz =
@@ -33,7 +33,7 @@ public class AnimatedFactoryProvider {
         final Constructor<?> constructor = clazz.getConstructor(
             PlatformBitmapFactory.class,
             ExecutorSupplier.class,
-            CountingMemoryCache.class);
+            CountingCache.class);
         sImpl = (AnimatedFactory) constructor.newInstance(
             platformBitmapFactory,
             executorSupplier,
@@ -9,6 +9,8 @@
 
 package com.facebook.imagepipeline.cache;
 
+import javax.annotation.Nullable;
+
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.memory.MemoryTrimmableRegistry;
@@ -37,17 +39,9 @@ public class BitmapCountingMemoryCacheFactory {
      boolean isExternalCreatedBitmapLogEnabled,
      CountingMemoryCache.CacheTrimStrategy trimStrategy) {
 
-    ValueDescriptor<CloseableImage> valueDescriptor =
-        new ValueDescriptor<CloseableImage>() {
-          @Override
-          public int getSizeInBytes(CloseableImage value) {
-            return value.getSizeInBytes();
-          }
-        };
-
     CountingMemoryCache<CacheKey, CloseableImage> countingCache =
         new CountingMemoryCache<>(
-            valueDescriptor,
+            createValueDescriptor(),
             trimStrategy,
             bitmapMemoryCacheParamsSupplier,
             platformBitmapFactory,
@@ -57,4 +51,59 @@ public class BitmapCountingMemoryCacheFactory {
 
     return countingCache;
   }
+
+  /**
+   * Creates the bitmap counting memory cache.
+   *
+   * @param segmentCount the number of independently locked segments of the cache. If greater than
+   *     one, a {@link SegmentedCountingMemoryCache} is created
+   * @param evictionPolicySupplier supplies the eviction policy of the cache, or of each of its
+   *     segments. If null, the items are evicted in LRU order
+   */
+  public static CountingCache<CacheKey, CloseableImage> get(
+      Supplier<MemoryCacheParams> bitmapMemoryCacheParamsSupplier,
+      MemoryTrimmableRegistry memoryTrimmableRegistry,
+      PlatformBitmapFactory platformBitmapFactory,
+      boolean isExternalCreatedBitmapLogEnabled,
+      CountingMemoryCache.CacheTrimStrategy trimStrategy,
+      int segmentCount,
+      @Nullable Supplier<EvictionPolicy<CacheKey>> evictionPolicySupplier) {
+
+    ValueDescriptor<CloseableImage> valueDescriptor = createValueDescriptor();
+
+    CountingCache<CacheKey, CloseableImage> countingCache;
+    if (segmentCount > 1) {
+      countingCache =
+          new SegmentedCountingMemoryCache<>(
+              valueDescriptor,
+              trimStrategy,
+              bitmapMemoryCacheParamsSupplier,
+              platformBitmapFactory,
+              isExternalCreatedBitmapLogEnabled,
+              segmentCount,
+              evictionPolicySupplier);
+    } else {
+      countingCache =
+          new CountingMemoryCache<>(
+              valueDescriptor,
+              trimStrategy,
+              bitmapMemoryCacheParamsSupplier,
+              platformBitmapFactory,
+              isExternalCreatedBitmapLogEnabled,
+              evictionPolicySupplier);
+    }
+
+     memoryTrimmableRegistry.registerMemoryTrimmable(countingCache);
+
+    return countingCache;
+  }
+
+  private static ValueDescriptor<CloseableImage> createValueDescriptor() {
+    return new ValueDescriptor<CloseableImage>() {
+      @Override
+      public int getSizeInBytes(CloseableImage value) {
+        return value.getSizeInBytes();
+      }
+    };
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.references.CloseableReference;
+
+/**
+ * Memory cache that counts the clients of its items and only evicts the exclusively owned ones.
+ *
+ * <p> Implemented by {@link CountingMemoryCache}, which guards all of its items with a single
+ * lock, and by {@link SegmentedCountingMemoryCache}, which splits them into independently locked
+ * segments.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface CountingCache<K, V> extends MemoryCache<K, V>, MemoryTrimmable {
+
+  /**
+   * Caches the given key-value pair.
+   *
+   * <p> Important: the client should use the returned reference instead of the original one.
+   * It is the caller's responsibility to close the returned reference once not needed anymore.
+   *
+   * @return the new reference to be used, null if the value cannot be cached
+   */
+  @Nullable
+  CloseableReference<V> cache(
+      K key,
+      CloseableReference<V> valueRef,
+      @Nullable CountingMemoryCache.EntryStateObserver<K> observer);
+
+  /**
+   * Gets the value with the given key to be reused, or null if there is no such value.
+   *
+   * <p> The item can be reused only if it is exclusively owned by the cache.
+   */
+  @Nullable
+  CloseableReference<V> reuse(K key);
+
+  /** Removes all the items from the cache. */
+  void clear();
+
+  /**
+   * Check if an item with the given cache key is currently in the cache.
+   *
+   * @param key returns true if an item with the given key matches
+   * @return true is any items matches from the cache
+   */
+  boolean contains(K key);
+
+  /** Gets all the cached entries including the exclusively owned ones. Used by debugging tools. */
+  ArrayList<LinkedHashMap.Entry<K, CountingMemoryCache.Entry<K, V>>> getCachedEntries();
+
+  /**
+   * Gets the bitmaps created outside of the cache, if their creation is logged. Used by debugging
+   * tools.
+   */
+  Map<Bitmap, Object> getOtherEntries();
+
+  /** Gets the cache params (constraints) currently in use. */
+  MemoryCacheParams getMemoryCacheParams();
+
+  /** Gets the total number of all currently cached items. */
+  int getCount();
+
+  /** Gets the total size in bytes of all currently cached items. */
+  int getSizeInBytes();
+
+  /** Gets the maximum total size in bytes of the cached items. */
+  int getMaxSizeInBytes();
+
+  /** Gets the number of the cached items that are used by at least one client. */
+  int getInUseCount();
+
+  /** Gets the total size in bytes of the cached items that are used by at least one client. */
+  int getInUseSizeInBytes();
+
+  /** Gets the number of the exclusively owned items. */
+  int getEvictionQueueCount();
+
+  /** Gets the total size in bytes of the exclusively owned items. */
+  int getEvictionQueueSizeInBytes();
+
+  /** Gets the number of the items evicted so far, either to meet the constraints or by trimming. */
+  int getEvictionCount();
+
+  /** Gets the name of the policy deciding which items get evicted first. */
+  String getEvictionPolicyName();
+}
@@ -14,6 +14,7 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
@@ -25,7 +26,6 @@ import com.facebook.common.internal.Preconditions;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.internal.VisibleForTesting;
 import com.facebook.common.memory.MemoryTrimType;
-import com.facebook.common.memory.MemoryTrimmable;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.common.references.ResourceReleaser;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
@@ -45,7 +45,7 @@ import com.android.internal.util.Predicate;
  * @param <V> the value type
  */
 @ThreadSafe
-public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimmable {
+public class CountingMemoryCache<K, V> implements CountingCache<K, V> {
 
   /**
    * Interface used to specify the trimming strategy for the cache.
@@ -71,7 +71,7 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
    * The internal representation of a key-value pair stored by the cache.
    */
   @VisibleForTesting
-  static class Entry<K, V> {
+  public static class Entry<K, V> {
     public final K key;
     public final CloseableReference<V> valueRef;
     // The number of clients that reference the value.
@@ -122,6 +122,13 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
 
   private final CacheTrimStrategy mCacheTrimStrategy;
 
+  // Decides which of the exclusively owned items gets evicted first.
+  @GuardedBy("this")
+  private final EvictionPolicy<K> mEvictionPolicy;
+
+  @GuardedBy("this")
+  private int mEvictionCount;
+
   // Cache size constraints.
   private final Supplier<MemoryCacheParams> mMemoryCacheParamsSupplier;
   @GuardedBy("this")
@@ -135,10 +142,33 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
       Supplier<MemoryCacheParams> memoryCacheParamsSupplier,
       PlatformBitmapFactory platformBitmapFactory,
       boolean isExternalCreatedBitmapLogEnabled) {
+    this(
+        valueDescriptor,
+        cacheTrimStrategy,
+        memoryCacheParamsSupplier,
+        platformBitmapFactory,
+        isExternalCreatedBitmapLogEnabled,
+        null);
+  }
+
+  /**
+   * @param evictionPolicySupplier supplies the policy deciding which exclusively owned items get
+   *     evicted first, or null to evict them in LRU order
+   */
+  public CountingMemoryCache(
+      ValueDescriptor<V> valueDescriptor,
+      CacheTrimStrategy cacheTrimStrategy,
+      Supplier<MemoryCacheParams> memoryCacheParamsSupplier,
+      PlatformBitmapFactory platformBitmapFactory,
+      boolean isExternalCreatedBitmapLogEnabled,
+      @Nullable Supplier<EvictionPolicy<K>> evictionPolicySupplier) {
     mValueDescriptor = valueDescriptor;
     mExclusiveEntries = new CountingLruMap<>(wrapValueDescriptor(valueDescriptor));
     mCachedEntries = new CountingLruMap<>(wrapValueDescriptor(valueDescriptor));
     mCacheTrimStrategy = cacheTrimStrategy;
+    mEvictionPolicy = evictionPolicySupplier != null
+        ? evictionPolicySupplier.get()
+        : new LruEvictionPolicy<K>();
     mMemoryCacheParamsSupplier = memoryCacheParamsSupplier;
     mMemoryCacheParams = mMemoryCacheParamsSupplier.get();
     mLastCacheParamsCheck = SystemClock.uptimeMillis();
@@ -199,8 +229,9 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     CloseableReference<V> oldRefToClose = null;
     CloseableReference<V> clientRef = null;
     synchronized (this) {
+      mEvictionPolicy.onAccess(key);
       // remove the old item (if any) as it is stale now
-      oldExclusive = mExclusiveEntries.remove(key);
+      oldExclusive = removeExclusive(key);
       Entry<K, V> oldEntry = mCachedEntries.remove(key);
       if (oldEntry != null) {
         makeOrphan(oldEntry);
@@ -239,7 +270,8 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     Entry<K, V> oldExclusive;
     CloseableReference<V> clientRef = null;
     synchronized (this) {
-      oldExclusive = mExclusiveEntries.remove(key);
+      mEvictionPolicy.onAccess(key);
+      oldExclusive = removeExclusive(key);
       Entry<K, V> entry = mCachedEntries.get(key);
       if (entry != null) {
         clientRef = newClientReference(entry);
@@ -284,6 +316,7 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
   private synchronized boolean maybeAddToExclusives(Entry<K, V> entry) {
     if (!entry.isOrphan && entry.clientCount == 0) {
       mExclusiveEntries.put(entry.key, entry);
+      mEvictionPolicy.onExclusiveEntryAdded(entry.key);
       return true;
     }
     return false;
@@ -301,7 +334,7 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     boolean removed = false;
     Entry<K, V> oldExclusive = null;
     synchronized (this) {
-      oldExclusive = mExclusiveEntries.remove(key);
+      oldExclusive = removeExclusive(key);
       if (oldExclusive != null) {
         Entry<K, V> entry = mCachedEntries.remove(key);
         Preconditions.checkNotNull(entry);
@@ -329,6 +362,7 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     ArrayList<Entry<K, V>> oldEntries;
     synchronized (this) {
       oldExclusives = mExclusiveEntries.removeAll(predicate);
+      notifyExclusivesRemoved(oldExclusives);
       oldEntries = mCachedEntries.removeAll(predicate);
       makeOrphans(oldEntries);
     }
@@ -345,6 +379,7 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     ArrayList<Entry<K, V>> oldEntries;
     synchronized (this) {
       oldExclusives = mExclusiveEntries.clear();
+      notifyExclusivesRemoved(oldExclusives);
       oldEntries = mCachedEntries.clear();
       makeOrphans(oldEntries);
     }
@@ -374,6 +409,22 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     return mCachedEntries.contains(key);
   }
 
+  /** Gets all the cached entries including the exclusively owned ones. Used by debugging tools. */
+  @Override
+  public synchronized ArrayList<LinkedHashMap.Entry<K, Entry<K, V>>> getCachedEntries() {
+    return mCachedEntries.getMatchingEntries(null);
+  }
+
+  @Override
+  public synchronized Map<Bitmap, Object> getOtherEntries() {
+    return mOtherEntries;
+  }
+
+  @Override
+  public synchronized MemoryCacheParams getMemoryCacheParams() {
+    return mMemoryCacheParams;
+  }
+
   /** Trims the cache according to the specified trimming strategy and the given trim type. */
   @Override
   public void trim(MemoryTrimType trimType) {
@@ -441,13 +492,33 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     }
     ArrayList<Entry<K, V>> oldEntries = new ArrayList<>();
     while (mExclusiveEntries.getCount() > count || mExclusiveEntries.getSizeInBytes() > size) {
-      K key = mExclusiveEntries.getFirstKey();
-      mExclusiveEntries.remove(key);
+      K key = mEvictionPolicy.getEvictionCandidate(mExclusiveEntries);
+      if (key == null || !mExclusiveEntries.contains(key)) {
+        key = mExclusiveEntries.getFirstKey();
+      }
+      removeExclusive(key);
       oldEntries.add(mCachedEntries.remove(key));
+      mEvictionCount++;
     }
     return oldEntries;
   }
 
+  /** Removes the entry from the exclusively owned ones and notifies the eviction policy. */
+  @Nullable
+  private synchronized Entry<K, V> removeExclusive(K key) {
+    Entry<K, V> oldExclusive = mExclusiveEntries.remove(key);
+    if (oldExclusive != null) {
+      mEvictionPolicy.onExclusiveEntryRemoved(key);
+    }
+    return oldExclusive;
+  }
+
+  private synchronized void notifyExclusivesRemoved(ArrayList<Entry<K, V>> oldExclusives) {
+    for (Entry<K, V> oldExclusive : oldExclusives) {
+      mEvictionPolicy.onExclusiveEntryRemoved(oldExclusive.key);
+    }
+  }
+
   /**
    * Notifies the client that the cache no longer tracks the given items.
    *
@@ -529,6 +600,11 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
     return mCachedEntries.getSizeInBytes();
   }
 
+  /** Gets the maximum total size in bytes of the cached items. */
+  public synchronized int getMaxSizeInBytes() {
+    return mMemoryCacheParams.maxCacheSize;
+  }
+
   /** Gets the number of the cached items that are used by at least one client. */
   public synchronized int getInUseCount() {
     return mCachedEntries.getCount() - mExclusiveEntries.getCount();
@@ -548,4 +624,14 @@ public class CountingMemoryCache<K, V> implements MemoryCache<K, V>, MemoryTrimm
   public synchronized int getEvictionQueueSizeInBytes() {
     return mExclusiveEntries.getSizeInBytes();
   }
+
+  /** Gets the number of the items evicted so far, either to meet the constraints or by trimming. */
+  public synchronized int getEvictionCount() {
+    return mEvictionCount;
+  }
+
+  /** Gets the name of the policy deciding which items get evicted first. */
+  public String getEvictionPolicyName() {
+    return mEvictionPolicy.getName();
+  }
 }
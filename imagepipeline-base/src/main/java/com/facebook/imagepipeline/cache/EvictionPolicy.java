@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * Policy that decides which of the exclusively owned entries of a {@link CountingMemoryCache}
+ * gets evicted first.
+ *
+ * <p> All the methods are called while holding the lock that guards the exclusively owned
+ * entries, so implementations do not need to be thread-safe. A policy instance must not be shared
+ * between caches.
+ *
+ * @param <K> the key type
+ */
+public interface EvictionPolicy<K> {
+
+  /** Called whenever an item is requested from, or put into the cache. */
+  void onAccess(K key);
+
+  /** Called when the entry becomes exclusively owned by the cache, and thus viable for eviction. */
+  void onExclusiveEntryAdded(K key);
+
+  /** Called when the entry is no longer exclusively owned, either reused or removed. */
+  void onExclusiveEntryRemoved(K key);
+
+  /**
+   * Gets the key of the exclusively owned entry that should be evicted next.
+   *
+   * @param exclusiveEntries the exclusively owned entries, in the order they became exclusive
+   * @return the key of one of the given entries, or null if there are none
+   */
+  @Nullable
+  K getEvictionCandidate(CountingLruMap<K, ?> exclusiveEntries);
+
+  /** Gets a short name of the policy, used for reporting. */
+  String getName();
+}
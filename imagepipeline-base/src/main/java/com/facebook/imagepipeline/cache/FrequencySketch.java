@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+
+/**
+ * Count-min sketch estimating the access frequency of items, with 4-bit counters.
+ *
+ * <p> Each item is mapped to 4 counters, one per hash function, and its frequency is estimated as
+ * the minimum of those. All the counters are halved once the number of recorded accesses reaches
+ * ten times the expected number of items, so that the sketch forgets the old history.
+ */
+@NotThreadSafe
+public class FrequencySketch {
+
+  private static final long[] SEEDS = new long[] {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_FREQUENCY = 15;
+
+  private final long[] mTable;
+  private final int mTableMask;
+  private final int mSampleSize;
+  private int mSize;
+
+  /**
+   * @param expectedItems the expected number of distinct items the sketch needs to distinguish
+   */
+  public FrequencySketch(int expectedItems) {
+    Preconditions.checkArgument(expectedItems > 0);
+    int tableSize = Integer.highestOneBit(Math.max(expectedItems, 16) - 1) << 1;
+    mTable = new long[tableSize];
+    mTableMask = tableSize - 1;
+    mSampleSize = 10 * expectedItems;
+  }
+
+  /** Gets the estimated number of times the item with the given hash has been recorded. */
+  public int frequency(int itemHash) {
+    int hash = spread(itemHash);
+    int start = (hash & 3) << 2;
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((mTable[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Records an access of the item with the given hash. */
+  public void increment(int itemHash) {
+    int hash = spread(itemHash);
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++mSize >= mSampleSize) {
+      reset();
+    }
+  }
+
+  /** Halves all the counters. */
+  @VisibleForTesting
+  void reset() {
+    for (int i = 0; i < mTable.length; i++) {
+      mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+    }
+    mSize /= 2;
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((mTable[index] & mask) != mask) {
+      mTable[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return ((int) h) & mTableMask;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * Evicts the entry that has been exclusively owned for the longest time, i.e. the entry whose
+ * last client reference was closed first.
+ *
+ * <p> This is the default policy of {@link CountingMemoryCache}.
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+
+  @Override
+  public void onAccess(K key) {
+  }
+
+  @Override
+  public void onExclusiveEntryAdded(K key) {
+  }
+
+  @Override
+  public void onExclusiveEntryRemoved(K key) {
+  }
+
+  @Nullable
+  @Override
+  public K getEvictionCandidate(CountingLruMap<K, ?> exclusiveEntries) {
+    return exclusiveEntries.getFirstKey();
+  }
+
+  @Override
+  public String getName() {
+    return "lru";
+  }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.Supplier;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.cache.CountingMemoryCache.CacheTrimStrategy;
+import com.facebook.imagepipeline.cache.CountingMemoryCache.Entry;
+import com.facebook.imagepipeline.cache.CountingMemoryCache.EntryStateObserver;
+
+import com.android.internal.util.Predicate;
+
+/**
+ * {@link CountingCache} that splits its entries into a number of independently locked
+ * segments, chosen by the hash of the key.
+ *
+ * <p> Each segment keeps its own exclusive and cached LRU maps, so that lookups and releases of
+ * keys that live in different segments do not contend on the same lock. The size constraints
+ * given by {@link MemoryCacheParams} apply to the cache as a whole: the totals are kept in atomic
+ * counters and eviction only takes the lock of the segment that triggered it, falling back to the
+ * other segments one at a time if that segment alone cannot satisfy the constraints.
+ *
+ * <p> Since the constraints are checked without a global lock, concurrent insertions into
+ * different segments may exceed them transiently, until the next eviction pass.
+ *
+ * <p> Each segment has its own {@link EvictionPolicy}, so the eviction order is only maintained
+ * within a segment.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+@ThreadSafe
+public class SegmentedCountingMemoryCache<K, V> implements CountingCache<K, V> {
+
+  /**
+   * A single independently locked partition of the cache.
+   */
+  @VisibleForTesting
+  static class Segment<K, V> {
+
+    // Contains the items of this segment that are not being used by any client.
+    @GuardedBy("this")
+    final CountingLruMap<K, Entry<K, V>> mExclusiveEntries;
+
+    // Contains all the items of this segment including the exclusively owned ones.
+    @GuardedBy("this")
+    final CountingLruMap<K, Entry<K, V>> mCachedEntries;
+
+    @GuardedBy("this")
+    final EvictionPolicy<K> mEvictionPolicy;
+
+    // The counts last propagated to the global counters.
+    @GuardedBy("this")
+    private int mPublishedCachedCount;
+    @GuardedBy("this")
+    private int mPublishedCachedSize;
+    @GuardedBy("this")
+    private int mPublishedExclusiveCount;
+    @GuardedBy("this")
+    private int mPublishedExclusiveSize;
+
+    private Segment(
+        ValueDescriptor<Entry<K, V>> entryValueDescriptor,
+        EvictionPolicy<K> evictionPolicy) {
+      mExclusiveEntries = new CountingLruMap<>(entryValueDescriptor);
+      mCachedEntries = new CountingLruMap<>(entryValueDescriptor);
+      mEvictionPolicy = evictionPolicy;
+    }
+
+    /** Removes the entry from the exclusively owned ones and notifies the eviction policy. */
+    @Nullable
+    synchronized Entry<K, V> removeExclusive(K key) {
+      Entry<K, V> oldExclusive = mExclusiveEntries.remove(key);
+      if (oldExclusive != null) {
+        mEvictionPolicy.onExclusiveEntryRemoved(key);
+      }
+      return oldExclusive;
+    }
+
+    synchronized void notifyExclusivesRemoved(ArrayList<Entry<K, V>> oldExclusives) {
+      for (Entry<K, V> oldExclusive : oldExclusives) {
+        mEvictionPolicy.onExclusiveEntryRemoved(oldExclusive.key);
+      }
+    }
+
+    /** Removes the exclusively owned entry chosen by the eviction policy. */
+    synchronized Entry<K, V> evictNext() {
+      K key = mEvictionPolicy.getEvictionCandidate(mExclusiveEntries);
+      if (key == null || !mExclusiveEntries.contains(key)) {
+        key = mExclusiveEntries.getFirstKey();
+      }
+      removeExclusive(key);
+      return mCachedEntries.remove(key);
+    }
+  }
+
+  @VisibleForTesting
+  final Segment<K, V>[] mSegments;
+
+  @GuardedBy("this")
+  @VisibleForTesting
+  final Map<Bitmap, Object> mOtherEntries = new WeakHashMap<>();
+
+  private final ValueDescriptor<V> mValueDescriptor;
+  private final CacheTrimStrategy mCacheTrimStrategy;
+  private final Supplier<MemoryCacheParams> mMemoryCacheParamsSupplier;
+
+  private volatile MemoryCacheParams mCurrentParams;
+  private volatile long mLastParamsCheck;
+
+  // Totals across all the segments.
+  private final AtomicInteger mCachedCount = new AtomicInteger();
+  private final AtomicInteger mCachedSize = new AtomicInteger();
+  private final AtomicInteger mExclusiveCount = new AtomicInteger();
+  private final AtomicInteger mExclusiveSize = new AtomicInteger();
+  private final AtomicInteger mEvictionCount = new AtomicInteger();
+
+  public SegmentedCountingMemoryCache(
+      ValueDescriptor<V> valueDescriptor,
+      CacheTrimStrategy cacheTrimStrategy,
+      Supplier<MemoryCacheParams> memoryCacheParamsSupplier,
+      PlatformBitmapFactory platformBitmapFactory,
+      boolean isExternalCreatedBitmapLogEnabled,
+      int segmentCount) {
+    this(
+        valueDescriptor,
+        cacheTrimStrategy,
+        memoryCacheParamsSupplier,
+        platformBitmapFactory,
+        isExternalCreatedBitmapLogEnabled,
+        segmentCount,
+        null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public SegmentedCountingMemoryCache(
+      ValueDescriptor<V> valueDescriptor,
+      CacheTrimStrategy cacheTrimStrategy,
+      Supplier<MemoryCacheParams> memoryCacheParamsSupplier,
+      PlatformBitmapFactory platformBitmapFactory,
+      boolean isExternalCreatedBitmapLogEnabled,
+      int segmentCount,
+      @Nullable Supplier<EvictionPolicy<K>> evictionPolicySupplier) {
+    Preconditions.checkArgument(segmentCount > 0);
+    mValueDescriptor = valueDescriptor;
+    mCacheTrimStrategy = cacheTrimStrategy;
+    mMemoryCacheParamsSupplier = memoryCacheParamsSupplier;
+    mCurrentParams = memoryCacheParamsSupplier.get();
+    mLastParamsCheck = SystemClock.uptimeMillis();
+
+    ValueDescriptor<Entry<K, V>> entryValueDescriptor = new ValueDescriptor<Entry<K, V>>() {
+      @Override
+      public int getSizeInBytes(Entry<K, V> entry) {
+        return mValueDescriptor.getSizeInBytes(entry.valueRef.get());
+      }
+    };
+    mSegments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      EvictionPolicy<K> evictionPolicy = evictionPolicySupplier != null
+          ? evictionPolicySupplier.get()
+          : new LruEvictionPolicy<K>();
+      mSegments[i] = new Segment<>(entryValueDescriptor, evictionPolicy);
+    }
+
+    if (isExternalCreatedBitmapLogEnabled) {
+      platformBitmapFactory.setCreationListener(
+          new PlatformBitmapFactory.BitmapCreationObserver() {
+            @Override
+            public void onBitmapCreated(
+                Bitmap bitmap,
+                Object callerContext) {
+              synchronized (SegmentedCountingMemoryCache.this) {
+                mOtherEntries.put(bitmap, callerContext);
+              }
+            }
+          });
+    }
+  }
+
+  @VisibleForTesting
+  int getSegmentIndex(K key) {
+    int h = key.hashCode();
+    // spread the higher bits, as hash codes of the cache keys often differ only in those
+    h ^= (h >>> 16);
+    return (h & Integer.MAX_VALUE) % mSegments.length;
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    return mSegments[getSegmentIndex(key)];
+  }
+
+  @Override
+  public CloseableReference<V> cache(final K key, final CloseableReference<V> valueRef) {
+    return cache(key, valueRef, null);
+  }
+
+  @Override
+  public CloseableReference<V> cache(
+      final K key,
+      final CloseableReference<V> valueRef,
+      final EntryStateObserver<K> observer) {
+    Preconditions.checkNotNull(key);
+    Preconditions.checkNotNull(valueRef);
+
+    maybeUpdateCacheParams();
+
+    final Segment<K, V> segment = segmentFor(key);
+    Entry<K, V> oldExclusive;
+    CloseableReference<V> oldRefToClose = null;
+    CloseableReference<V> clientRef = null;
+    synchronized (segment) {
+      segment.mEvictionPolicy.onAccess(key);
+      // remove the old item (if any) as it is stale now
+      oldExclusive = segment.removeExclusive(key);
+      Entry<K, V> oldEntry = segment.mCachedEntries.remove(key);
+      if (oldEntry != null) {
+        makeOrphan(oldEntry);
+        oldRefToClose = referenceToClose(oldEntry);
+      }
+      publishCounts(segment);
+
+      if (canCacheNewValue(valueRef.get())) {
+        Entry<K, V> newEntry = Entry.of(key, valueRef, observer);
+        segment.mCachedEntries.put(key, newEntry);
+        clientRef = newClientReference(newEntry);
+        publishCounts(segment);
+      }
+    }
+    CloseableReference.closeSafely(oldRefToClose);
+    maybeNotifyExclusiveEntryRemoval(oldExclusive);
+
+    maybeEvictEntries(segment);
+    return clientRef;
+  }
+
+  /** Checks the cache constraints to determine whether the new value can be cached or not. */
+  private boolean canCacheNewValue(V value) {
+    final MemoryCacheParams params = mCurrentParams;
+    int newValueSize = mValueDescriptor.getSizeInBytes(value);
+    return (newValueSize <= params.maxCacheEntrySize) &&
+        (getInUseCount() <= params.maxCacheEntries - 1) &&
+        (getInUseSizeInBytes() <= params.maxCacheSize - newValueSize);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<V> get(final K key) {
+    Preconditions.checkNotNull(key);
+    final Segment<K, V> segment = segmentFor(key);
+    Entry<K, V> oldExclusive;
+    CloseableReference<V> clientRef = null;
+    synchronized (segment) {
+      segment.mEvictionPolicy.onAccess(key);
+      oldExclusive = segment.removeExclusive(key);
+      Entry<K, V> entry = segment.mCachedEntries.get(key);
+      if (entry != null) {
+        clientRef = newClientReference(entry);
+      }
+      publishCounts(segment);
+    }
+    maybeNotifyExclusiveEntryRemoval(oldExclusive);
+    maybeUpdateCacheParams();
+    maybeEvictEntries(segment);
+    return clientRef;
+  }
+
+  /**
+   * Creates a new reference for the client.
+   *
+   * <p> Must be called while holding the lock of the entry's segment.
+   */
+  private CloseableReference<V> newClientReference(final Entry<K, V> entry) {
+    increaseClientCount(entry);
+    return CloseableReference.of(
+        entry.valueRef.get(),
+        new ResourceReleaser<V>() {
+          @Override
+          public void release(V unused) {
+            releaseClientReference(entry);
+          }
+        });
+  }
+
+  /** Called when the client closes its reference. */
+  private void releaseClientReference(final Entry<K, V> entry) {
+    Preconditions.checkNotNull(entry);
+    final Segment<K, V> segment = segmentFor(entry.key);
+    boolean isExclusiveAdded = false;
+    CloseableReference<V> oldRefToClose;
+    synchronized (segment) {
+      decreaseClientCount(entry);
+      if (!entry.isOrphan && entry.clientCount == 0) {
+        segment.mExclusiveEntries.put(entry.key, entry);
+        segment.mEvictionPolicy.onExclusiveEntryAdded(entry.key);
+        publishCounts(segment);
+        isExclusiveAdded = true;
+      }
+      oldRefToClose = referenceToClose(entry);
+    }
+    CloseableReference.closeSafely(oldRefToClose);
+    if (isExclusiveAdded && entry.observer != null) {
+      entry.observer.onExclusivityChanged(entry.key, true);
+    }
+    maybeUpdateCacheParams();
+    maybeEvictEntries(segment);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<V> reuse(K key) {
+    Preconditions.checkNotNull(key);
+    final Segment<K, V> segment = segmentFor(key);
+    CloseableReference<V> clientRef = null;
+    Entry<K, V> oldExclusive;
+    synchronized (segment) {
+      oldExclusive = segment.removeExclusive(key);
+      if (oldExclusive != null) {
+        Entry<K, V> entry = segment.mCachedEntries.remove(key);
+        Preconditions.checkNotNull(entry);
+        Preconditions.checkState(entry.clientCount == 0);
+        // optimization: instead of cloning and then closing the original reference,
+        // we just do a move
+        clientRef = entry.valueRef;
+        publishCounts(segment);
+      }
+    }
+    maybeNotifyExclusiveEntryRemoval(oldExclusive);
+    return clientRef;
+  }
+
+  @Override
+  public int removeAll(Predicate<K> predicate) {
+    int removedCount = 0;
+    for (Segment<K, V> segment : mSegments) {
+      ArrayList<Entry<K, V>> oldExclusives;
+      ArrayList<Entry<K, V>> oldEntries;
+      synchronized (segment) {
+        oldExclusives = segment.mExclusiveEntries.removeAll(predicate);
+        segment.notifyExclusivesRemoved(oldExclusives);
+        oldEntries = segment.mCachedEntries.removeAll(predicate);
+        makeOrphans(oldEntries);
+        publishCounts(segment);
+      }
+      maybeClose(oldEntries);
+      maybeNotifyExclusiveEntryRemoval(oldExclusives);
+      removedCount += oldEntries.size();
+    }
+    maybeUpdateCacheParams();
+    maybeEvictEntries(mSegments[0]);
+    return removedCount;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment<K, V> segment : mSegments) {
+      ArrayList<Entry<K, V>> oldExclusives;
+      ArrayList<Entry<K, V>> oldEntries;
+      synchronized (segment) {
+        oldExclusives = segment.mExclusiveEntries.clear();
+        segment.notifyExclusivesRemoved(oldExclusives);
+        oldEntries = segment.mCachedEntries.clear();
+        makeOrphans(oldEntries);
+        publishCounts(segment);
+      }
+      maybeClose(oldEntries);
+      maybeNotifyExclusiveEntryRemoval(oldExclusives);
+    }
+    maybeUpdateCacheParams();
+  }
+
+  @Override
+  public boolean contains(Predicate<K> predicate) {
+    for (Segment<K, V> segment : mSegments) {
+      synchronized (segment) {
+        if (!segment.mCachedEntries.getMatchingEntries(predicate).isEmpty()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(K key) {
+    final Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.mCachedEntries.contains(key);
+    }
+  }
+
+  @Override
+  public ArrayList<LinkedHashMap.Entry<K, Entry<K, V>>> getCachedEntries() {
+    ArrayList<LinkedHashMap.Entry<K, Entry<K, V>>> cachedEntries = new ArrayList<>();
+    for (Segment<K, V> segment : mSegments) {
+      synchronized (segment) {
+        cachedEntries.addAll(segment.mCachedEntries.getMatchingEntries(null));
+      }
+    }
+    return cachedEntries;
+  }
+
+  /**
+   * Trims the cache according to the specified trimming strategy and the given trim type.
+   *
+   * <p> Every segment gives up the same fraction of its exclusively owned entries.
+   */
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    final double trimRatio = mCacheTrimStrategy.getTrimRatio(trimType);
+    int targetCacheSize = (int) (getSizeInBytes() * (1 - trimRatio));
+    int targetEvictionQueueSize = Math.max(0, targetCacheSize - getInUseSizeInBytes());
+    int evictionQueueSize = getEvictionQueueSizeInBytes();
+    double keepRatio = evictionQueueSize == 0
+        ? 1
+        : Math.min(1, (double) targetEvictionQueueSize / evictionQueueSize);
+    for (Segment<K, V> segment : mSegments) {
+      ArrayList<Entry<K, V>> oldEntries;
+      synchronized (segment) {
+        int targetSegmentSize = (int) (segment.mExclusiveEntries.getSizeInBytes() * keepRatio);
+        oldEntries = trimExclusivelyOwnedEntries(segment, Integer.MAX_VALUE, targetSegmentSize);
+        makeOrphans(oldEntries);
+        publishCounts(segment);
+      }
+      maybeClose(oldEntries);
+      maybeNotifyExclusiveEntryRemoval(oldEntries);
+    }
+    maybeUpdateCacheParams();
+    maybeEvictEntries(mSegments[0]);
+  }
+
+  /**
+   * Updates the cache params (constraints) if enough time has passed since the last update.
+   */
+  private void maybeUpdateCacheParams() {
+    final long interval = CountingMemoryCache.PARAMS_INTERCHECK_INTERVAL_MS;
+    if (mLastParamsCheck + interval > SystemClock.uptimeMillis()) {
+      return;
+    }
+    synchronized (this) {
+      if (mLastParamsCheck + interval > SystemClock.uptimeMillis()) {
+        return;
+      }
+      mLastParamsCheck = SystemClock.uptimeMillis();
+      mCurrentParams = mMemoryCacheParamsSupplier.get();
+    }
+  }
+
+  /**
+   * Removes the exclusively owned items until the cache constraints are met.
+   *
+   * <p> The eviction starts with the given segment and only moves on to the next segments if the
+   * constraints are still not met. Only one segment lock is held at a time.
+   *
+   * <p> This method invokes the external {@link CloseableReference#close} method,
+   * so it must not be called while holding any segment lock.
+   */
+  private void maybeEvictEntries(Segment<K, V> startSegment) {
+    if (!isEvictionNeeded()) {
+      return;
+    }
+    int startIndex = 0;
+    for (int i = 0; i < mSegments.length; i++) {
+      if (mSegments[i] == startSegment) {
+        startIndex = i;
+        break;
+      }
+    }
+    for (int i = 0; i < mSegments.length && isEvictionNeeded(); i++) {
+      Segment<K, V> segment = mSegments[(startIndex + i) % mSegments.length];
+      ArrayList<Entry<K, V>> oldEntries = null;
+      synchronized (segment) {
+        while (isEvictionNeeded() && segment.mExclusiveEntries.getCount() > 0) {
+          Entry<K, V> oldEntry = segment.evictNext();
+          mEvictionCount.incrementAndGet();
+          makeOrphan(oldEntry);
+          publishCounts(segment);
+          if (oldEntries == null) {
+            oldEntries = new ArrayList<>();
+          }
+          oldEntries.add(oldEntry);
+        }
+      }
+      maybeClose(oldEntries);
+      maybeNotifyExclusiveEntryRemoval(oldEntries);
+    }
+  }
+
+  /** Checks the global counters against the cache constraints. */
+  private boolean isEvictionNeeded() {
+    final MemoryCacheParams params = mCurrentParams;
+    int maxCount = Math.max(0, Math.min(
+        params.maxEvictionQueueEntries,
+        params.maxCacheEntries - getInUseCount()));
+    int maxSize = Math.max(0, Math.min(
+        params.maxEvictionQueueSize,
+        params.maxCacheSize - getInUseSizeInBytes()));
+    return mExclusiveCount.get() > maxCount || mExclusiveSize.get() > maxSize;
+  }
+
+  /**
+   * Removes the exclusively owned items of the segment until there is at most <code>count</code>
+   * of them and they occupy no more than <code>size</code> bytes.
+   *
+   * <p> Must be called while holding the segment lock.
+   */
+  @Nullable
+  private ArrayList<Entry<K, V>> trimExclusivelyOwnedEntries(
+      Segment<K, V> segment,
+      int count,
+      int size) {
+    count = Math.max(count, 0);
+    size = Math.max(size, 0);
+    // fast path without array allocation if no eviction is necessary
+    if (segment.mExclusiveEntries.getCount() <= count &&
+        segment.mExclusiveEntries.getSizeInBytes() <= size) {
+      return null;
+    }
+    ArrayList<Entry<K, V>> oldEntries = new ArrayList<>();
+    while (segment.mExclusiveEntries.getCount() > count ||
+        segment.mExclusiveEntries.getSizeInBytes() > size) {
+      oldEntries.add(segment.evictNext());
+      mEvictionCount.incrementAndGet();
+    }
+    return oldEntries;
+  }
+
+  /**
+   * Propagates the changes made to the segment's maps to the global counters.
+   *
+   * <p> Must be called while holding the segment lock.
+   */
+  private void publishCounts(Segment<K, V> segment) {
+    int cachedCount = segment.mCachedEntries.getCount();
+    int cachedSize = segment.mCachedEntries.getSizeInBytes();
+    int exclusiveCount = segment.mExclusiveEntries.getCount();
+    int exclusiveSize = segment.mExclusiveEntries.getSizeInBytes();
+    mCachedCount.addAndGet(cachedCount - segment.mPublishedCachedCount);
+    mCachedSize.addAndGet(cachedSize - segment.mPublishedCachedSize);
+    mExclusiveCount.addAndGet(exclusiveCount - segment.mPublishedExclusiveCount);
+    mExclusiveSize.addAndGet(exclusiveSize - segment.mPublishedExclusiveSize);
+    segment.mPublishedCachedCount = cachedCount;
+    segment.mPublishedCachedSize = cachedSize;
+    segment.mPublishedExclusiveCount = exclusiveCount;
+    segment.mPublishedExclusiveSize = exclusiveSize;
+  }
+
+  private void maybeClose(@Nullable ArrayList<Entry<K, V>> oldEntries) {
+    if (oldEntries != null) {
+      for (Entry<K, V> oldEntry : oldEntries) {
+        CloseableReference<V> refToClose;
+        synchronized (segmentFor(oldEntry.key)) {
+          refToClose = referenceToClose(oldEntry);
+        }
+        CloseableReference.closeSafely(refToClose);
+      }
+    }
+  }
+
+  private static <K, V> void maybeNotifyExclusiveEntryRemoval(
+      @Nullable ArrayList<Entry<K, V>> entries) {
+    if (entries != null) {
+      for (Entry<K, V> entry : entries) {
+        maybeNotifyExclusiveEntryRemoval(entry);
+      }
+    }
+  }
+
+  private static <K, V> void maybeNotifyExclusiveEntryRemoval(@Nullable Entry<K, V> entry) {
+    if (entry != null && entry.observer != null) {
+      entry.observer.onExclusivityChanged(entry.key, false);
+    }
+  }
+
+  private static <K, V> void makeOrphans(@Nullable ArrayList<Entry<K, V>> oldEntries) {
+    if (oldEntries != null) {
+      for (Entry<K, V> oldEntry : oldEntries) {
+        makeOrphan(oldEntry);
+      }
+    }
+  }
+
+  private static <K, V> void makeOrphan(Entry<K, V> entry) {
+    Preconditions.checkNotNull(entry);
+    Preconditions.checkState(!entry.isOrphan);
+    entry.isOrphan = true;
+  }
+
+  private static <K, V> void increaseClientCount(Entry<K, V> entry) {
+    Preconditions.checkNotNull(entry);
+    Preconditions.checkState(!entry.isOrphan);
+    entry.clientCount++;
+  }
+
+  private static <K, V> void decreaseClientCount(Entry<K, V> entry) {
+    Preconditions.checkNotNull(entry);
+    Preconditions.checkState(entry.clientCount > 0);
+    entry.clientCount--;
+  }
+
+  @Nullable
+  private static <K, V> CloseableReference<V> referenceToClose(Entry<K, V> entry) {
+    Preconditions.checkNotNull(entry);
+    return (entry.isOrphan && entry.clientCount == 0) ? entry.valueRef : null;
+  }
+
+  @Override
+  public synchronized Map<Bitmap, Object> getOtherEntries() {
+    return mOtherEntries;
+  }
+
+  @Override
+  public MemoryCacheParams getMemoryCacheParams() {
+    return mCurrentParams;
+  }
+
+  @Override
+  public int getCount() {
+    return mCachedCount.get();
+  }
+
+  @Override
+  public int getSizeInBytes() {
+    return mCachedSize.get();
+  }
+
+  @Override
+  public int getMaxSizeInBytes() {
+    return mCurrentParams.maxCacheSize;
+  }
+
+  @Override
+  public int getInUseCount() {
+    return mCachedCount.get() - mExclusiveCount.get();
+  }
+
+  @Override
+  public int getInUseSizeInBytes() {
+    return mCachedSize.get() - mExclusiveSize.get();
+  }
+
+  @Override
+  public int getEvictionQueueCount() {
+    return mExclusiveCount.get();
+  }
+
+  @Override
+  public int getEvictionQueueSizeInBytes() {
+    return mExclusiveSize.get();
+  }
+
+  @Override
+  public int getEvictionCount() {
+    return mEvictionCount.get();
+  }
+
+  /**
+   * Gets the name of the policy deciding which items get evicted first, followed by the number of
+   * segments. If the segments use different policies, all of their names are listed.
+   */
+  @Override
+  public String getEvictionPolicyName() {
+    final Set<String> names = new LinkedHashSet<>();
+    for (Segment<K, V> segment : mSegments) {
+      synchronized (segment) {
+        names.add(segment.mEvictionPolicy.getName());
+      }
+    }
+    final StringBuilder name = new StringBuilder();
+    for (String segmentPolicyName : names) {
+      if (name.length() > 0) {
+        name.append('/');
+      }
+      name.append(segmentPolicyName);
+    }
+    return name.append(" x").append(mSegments.length).toString();
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+
+/**
+ * W-TinyLFU eviction policy.
+ *
+ * <p> Entries that become exclusively owned enter a small LRU window. Once the window is over its
+ * share of the entries, its oldest entry has to compete with the oldest entry of the main area in
+ * order to be admitted: the one accessed less frequently according to a {@link FrequencySketch}
+ * gets evicted. This keeps frequently shown images, such as avatars and icons, from being flushed
+ * by a burst of images that are only shown once, e.g. during a fling through a long feed.
+ *
+ * <p> Entries that are in use by clients are not tracked by the policy. When they become
+ * exclusively owned again they re-enter the window, and it is their access frequency that gets
+ * them admitted back to the main area.
+ */
+@NotThreadSafe
+public class TinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+  private static final float DEFAULT_WINDOW_RATIO = 0.01f;
+
+  private final FrequencySketch mSketch;
+  private final float mWindowRatio;
+
+  @VisibleForTesting
+  final LinkedHashSet<K> mWindow = new LinkedHashSet<>();
+  @VisibleForTesting
+  final LinkedHashSet<K> mMain = new LinkedHashSet<>();
+
+  /**
+   * @param maxEntries the maximum number of entries expected in the cache, used to size the
+   *     frequency sketch
+   */
+  public TinyLfuEvictionPolicy(int maxEntries) {
+    this(maxEntries, DEFAULT_WINDOW_RATIO);
+  }
+
+  /**
+   * @param maxEntries the maximum number of entries expected in the cache, used to size the
+   *     frequency sketch
+   * @param windowRatio the share of the exclusively owned entries kept in the LRU window
+   */
+  public TinyLfuEvictionPolicy(int maxEntries, float windowRatio) {
+    Preconditions.checkArgument(windowRatio > 0 && windowRatio < 1);
+    mSketch = new FrequencySketch(maxEntries);
+    mWindowRatio = windowRatio;
+  }
+
+  @Override
+  public void onAccess(K key) {
+    mSketch.increment(key.hashCode());
+  }
+
+  @Override
+  public void onExclusiveEntryAdded(K key) {
+    mMain.remove(key);
+    mWindow.remove(key);
+    mWindow.add(key);
+  }
+
+  @Override
+  public void onExclusiveEntryRemoved(K key) {
+    if (!mWindow.remove(key)) {
+      mMain.remove(key);
+    }
+  }
+
+  @Nullable
+  @Override
+  public K getEvictionCandidate(CountingLruMap<K, ?> exclusiveEntries) {
+    int windowSize = getMaxWindowSize();
+    if (mMain.isEmpty()) {
+      // nothing to compete with, move the window overflow to the main area as it is
+      while (mWindow.size() > windowSize) {
+        mMain.add(removeFirst(mWindow));
+      }
+    }
+    if (mMain.isEmpty()) {
+      return mWindow.isEmpty() ? exclusiveEntries.getFirstKey() : mWindow.iterator().next();
+    }
+    K victim = mMain.iterator().next();
+    if (mWindow.size() <= windowSize) {
+      return victim;
+    }
+    K candidate = removeFirst(mWindow);
+    if (mSketch.frequency(candidate.hashCode()) > mSketch.frequency(victim.hashCode())) {
+      mMain.add(candidate);
+      return victim;
+    }
+    return candidate;
+  }
+
+  @Override
+  public String getName() {
+    return "w-tinylfu";
+  }
+
+  private int getMaxWindowSize() {
+    return Math.max(1, (int) ((mWindow.size() + mMain.size()) * mWindowRatio));
+  }
+
+  private static <K> K removeFirst(LinkedHashSet<K> set) {
+    Iterator<K> iterator = set.iterator();
+    K first = iterator.next();
+    iterator.remove();
+    return first;
+  }
+}
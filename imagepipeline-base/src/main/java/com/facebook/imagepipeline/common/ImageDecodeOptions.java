@@ -16,6 +16,7 @@ import android.graphics.Bitmap;
 
 import java.util.Locale;
 
+import com.facebook.common.internal.Objects;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
 
 /**
@@ -65,6 +66,12 @@ public class ImageDecodeOptions {
    */
   public final @Nullable ImageDecoder customImageDecoder;
 
+  /**
+   * Region of the image to decode, instead of the whole image. Only applied to JPEG, PNG and
+   * static WebP images.
+   */
+  public final @Nullable RegionDecodeOptions regionDecodeOptions;
+
   public ImageDecodeOptions(ImageDecodeOptionsBuilder b) {
     this.minDecodeIntervalMs = b.getMinDecodeIntervalMs();
     this.decodePreviewFrame = b.getDecodePreviewFrame();
@@ -73,6 +80,7 @@ public class ImageDecodeOptions {
     this.forceStaticImage = b.getForceStaticImage();
     this.bitmapConfig = b.getBitmapConfig();
     this.customImageDecoder = b.getCustomImageDecoder();
+    this.regionDecodeOptions = b.getRegionDecodeOptions();
   }
 
   /**
@@ -106,6 +114,7 @@ public class ImageDecodeOptions {
     if (forceStaticImage != that.forceStaticImage) return false;
     if (bitmapConfig != that.bitmapConfig) return false;
     if (customImageDecoder != that.customImageDecoder) return false;
+    if (!Objects.equal(regionDecodeOptions, that.regionDecodeOptions)) return false;
     return true;
   }
 
@@ -118,6 +127,7 @@ public class ImageDecodeOptions {
     result = 31 * result + (forceStaticImage ? 1 : 0);
     result = 31 * result + bitmapConfig.ordinal();
     result = 31 * result + (customImageDecoder != null ? customImageDecoder.hashCode() : 0);
+    result = 31 * result + (regionDecodeOptions != null ? regionDecodeOptions.hashCode() : 0);
     return result;
   }
 
@@ -125,13 +135,14 @@ public class ImageDecodeOptions {
   public String toString() {
     return String.format(
         (Locale) null,
-        "%d-%b-%b-%b-%b-%s-%s",
+        "%d-%b-%b-%b-%b-%s-%s-%s",
         minDecodeIntervalMs,
         decodePreviewFrame,
         useLastFrameForPreview,
         decodeAllFrames,
         forceStaticImage,
         bitmapConfig.name(),
-        customImageDecoder);
+        customImageDecoder,
+        regionDecodeOptions);
   }
 }
@@ -27,6 +27,7 @@ public class ImageDecodeOptionsBuilder {
   private boolean mForceStaticImage;
   private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
   private @Nullable ImageDecoder mCustomImageDecoder;
+  private @Nullable RegionDecodeOptions mRegionDecodeOptions;
 
   public ImageDecodeOptionsBuilder() {
   }
@@ -43,6 +44,7 @@ public class ImageDecodeOptionsBuilder {
     mDecodeAllFrames = options.decodeAllFrames;
     mForceStaticImage = options.forceStaticImage;
     mBitmapConfig = options.bitmapConfig;
+    mRegionDecodeOptions = options.regionDecodeOptions;
     return this;
   }
 
@@ -195,6 +197,29 @@ public class ImageDecodeOptionsBuilder {
     return this;
   }
 
+  /**
+   * Sets the region of the image to decode, and the sample size to decode it with. Only applied to
+   * JPEG, PNG and static WebP images, see {@link RegionDecodeOptions}.
+   *
+   * @param regionDecodeOptions the region to decode, or null to decode the whole image
+   * @return this builder
+   */
+  public ImageDecodeOptionsBuilder setRegionDecodeOptions(
+      @Nullable RegionDecodeOptions regionDecodeOptions) {
+    mRegionDecodeOptions = regionDecodeOptions;
+    return this;
+  }
+
+  /**
+   * Gets the region of the image to decode, if one has been set.
+   *
+   * @return the region to decode or null if not set
+   */
+  @Nullable
+  public RegionDecodeOptions getRegionDecodeOptions() {
+    return mRegionDecodeOptions;
+  }
+
   /**
    * Builds the immutable {@link ImageDecodeOptions} instance.
    *
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.common;
+
+import javax.annotation.concurrent.Immutable;
+
+import java.util.Locale;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.util.HashCodeUtil;
+
+/**
+ * Options for decoding a region of an image only.
+ *
+ * <p> Describes the region to decode, in pixels of the encoded image before any rotation, and the
+ * sample size to decode it with. The decoded bitmap is about (width / sampleSize) x
+ * (height / sampleSize) pixels, so that tiles of a very large image can be decoded at the level
+ * of detail they are displayed at.
+ */
+@Immutable
+public class RegionDecodeOptions {
+
+  /* left edge of the region (in pixels), inclusive */
+  public final int left;
+
+  /* top edge of the region (in pixels), inclusive */
+  public final int top;
+
+  /* right edge of the region (in pixels), exclusive */
+  public final int right;
+
+  /* bottom edge of the region (in pixels), exclusive */
+  public final int bottom;
+
+  /* power of 2 by which the region is downsampled */
+  public final int sampleSize;
+
+  public RegionDecodeOptions(int left, int top, int right, int bottom) {
+    this(left, top, right, bottom, 1);
+  }
+
+  public RegionDecodeOptions(int left, int top, int right, int bottom, int sampleSize) {
+    Preconditions.checkArgument(left >= 0 && top >= 0);
+    Preconditions.checkArgument(right > left && bottom > top);
+    Preconditions.checkArgument(sampleSize > 0 && (sampleSize & (sampleSize - 1)) == 0);
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+    this.sampleSize = sampleSize;
+  }
+
+  public int getWidth() {
+    return right - left;
+  }
+
+  public int getHeight() {
+    return bottom - top;
+  }
+
+  @Override
+  public int hashCode() {
+    return HashCodeUtil.hashCode(
+        left,
+        top,
+        right,
+        bottom,
+        sampleSize);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (!(other instanceof RegionDecodeOptions)) {
+      return false;
+    }
+    RegionDecodeOptions that = (RegionDecodeOptions) other;
+    return this.left == that.left &&
+        this.top == that.top &&
+        this.right == that.right &&
+        this.bottom == that.bottom &&
+        this.sampleSize == that.sampleSize;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        (Locale) null,
+        "[%d,%d][%d,%d]/%d",
+        left,
+        top,
+        right,
+        bottom,
+        sampleSize);
+  }
+}
@@ -32,13 +32,25 @@ public class DefaultExecutorSupplier implements ExecutorSupplier {
   private final Executor mLightWeightBackgroundExecutor;
 
   public DefaultExecutorSupplier(int numCpuBoundThreads) {
+    this(numCpuBoundThreads, false);
+  }
+
+  /**
+   * @param numCpuBoundThreads the number of threads of the CPU-bound thread pools
+   * @param prioritizeDecodes if true, pending decodes are started in order of priority instead of
+   *     in submission order, see {@link PrioritizedExecutorService}
+   */
+  public DefaultExecutorSupplier(int numCpuBoundThreads, boolean prioritizeDecodes) {
     ThreadFactory backgroundPriorityThreadFactory =
         new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND);
 
     mIoBoundExecutor = Executors.newFixedThreadPool(NUM_IO_BOUND_THREADS);
-    mDecodeExecutor = Executors.newFixedThreadPool(
+    Executor decodeThreadPool = Executors.newFixedThreadPool(
         numCpuBoundThreads,
         backgroundPriorityThreadFactory);
+    mDecodeExecutor = prioritizeDecodes ?
+        new PrioritizedExecutorService("decode", numCpuBoundThreads, decodeThreadPool) :
+        decodeThreadPool;
     mBackgroundExecutor = Executors.newFixedThreadPool(
         numCpuBoundThreads,
         backgroundPriorityThreadFactory);
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.core;
+
+import javax.annotation.Nullable;
+
+/**
+ * Observer of the tasks run by an {@link InstrumentedThreadPoolExecutor}, to tell how long tasks
+ * wait in the queue of an executor and how long they actually run.
+ *
+ * <p> Tasks implementing {@link RequestRunnable} are reported with the id of their request, so
+ * that, for example, a {@code RequestListener} can also implement this interface to tell whether
+ * a request is waiting for a thread or being worked on. Other tasks are reported with a null id.
+ *
+ * <p> Methods are called on the thread submitting or running the task. Implementations must be
+ * thread-safe and return quickly.
+ */
+public interface ExecutorObserver {
+
+  /**
+   * Called when a task is submitted, before it is added to the queue.
+   * @param executorName the name of the executor
+   * @param requestId the id of the request of the task, if known
+   * @param queueDepth the number of tasks already in the queue
+   */
+  void onTaskQueued(String executorName, @Nullable String requestId, int queueDepth);
+
+  /**
+   * Called when a task starts running.
+   * @param executorName the name of the executor
+   * @param requestId the id of the request of the task, if known
+   * @param waitTimeMs the time the task spent in the queue
+   */
+  void onTaskStarted(String executorName, @Nullable String requestId, long waitTimeMs);
+
+  /**
+   * Called when a task finishes running, whether successfully or not.
+   * @param executorName the name of the executor
+   * @param requestId the id of the request of the task, if known
+   * @param waitTimeMs the time the task spent in the queue
+   * @param runTimeMs the time the task spent running
+   */
+  void onTaskFinished(
+      String executorName,
+      @Nullable String requestId,
+      long waitTimeMs,
+      long runTimeMs);
+
+  /**
+   * Called when an adaptive executor changes the number of tasks it runs in parallel.
+   * @param executorName the name of the executor
+   * @param parallelism the new number of threads of the executor
+   */
+  void onParallelismChanged(String executorName, int parallelism);
+}
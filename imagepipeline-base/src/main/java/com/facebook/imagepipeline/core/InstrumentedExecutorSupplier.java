@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.core;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Process;
+
+import com.facebook.common.internal.Preconditions;
+
+/**
+ * Implementation of {@link ExecutorSupplier} made of {@link InstrumentedThreadPoolExecutor}s, to
+ * tell whether the tasks of the pipeline are waiting for a thread or actually working.
+ *
+ * <p> Compared to {@link DefaultExecutorSupplier}:
+ * <ul>
+ *   <li> disk reads and writes have separate thread pools, so that reads don't wait for writes
+ *   <li> the number of decode threads adapts to the time decodes wait, between half the number of
+ *   CPU-bound threads and all of them
+ *   <li> the tasks of requests are reported to the observer with the id of their request
+ * </ul>
+ *
+ * <p> Set it with {@code ImagePipelineConfig.Builder#setExecutorSupplier}.
+ */
+public class InstrumentedExecutorSupplier implements ExecutorSupplier {
+
+  public static final String LOCAL_STORAGE_READ = "local_storage_read";
+  public static final String LOCAL_STORAGE_WRITE = "local_storage_write";
+  public static final String DECODE = "decode";
+  public static final String BACKGROUND = "background";
+  public static final String LIGHTWEIGHT_BACKGROUND = "lightweight_background";
+
+  private static final int NUM_LOCAL_STORAGE_READ_THREADS = 2;
+  private static final int NUM_LOCAL_STORAGE_WRITE_THREADS = 1;
+  private static final int NUM_LIGHTWEIGHT_BACKGROUND_THREADS = 1;
+
+  private final InstrumentedThreadPoolExecutor mLocalStorageReadExecutor;
+  private final InstrumentedThreadPoolExecutor mLocalStorageWriteExecutor;
+  private final InstrumentedThreadPoolExecutor mDecodeThreadPool;
+  private final Executor mDecodeExecutor;
+  private final InstrumentedThreadPoolExecutor mBackgroundExecutor;
+  private final InstrumentedThreadPoolExecutor mLightWeightBackgroundExecutor;
+
+  public InstrumentedExecutorSupplier(int numCpuBoundThreads, @Nullable ExecutorObserver observer) {
+    this(numCpuBoundThreads, false, observer);
+  }
+
+  /**
+   * @param numCpuBoundThreads the maximum number of threads of the CPU-bound thread pools
+   * @param prioritizeDecodes if true, pending decodes are started in order of priority instead of
+   *     in submission order, see {@link PrioritizedExecutorService}. The wait times of the decode
+   *     executor then only include the wait for a thread, not the wait for more urgent decodes,
+   *     and they are reported without request ids.
+   * @param observer the observer of the tasks of all the executors, if any
+   */
+  public InstrumentedExecutorSupplier(
+      int numCpuBoundThreads,
+      boolean prioritizeDecodes,
+      @Nullable ExecutorObserver observer) {
+    Preconditions.checkArgument(numCpuBoundThreads > 0);
+    ThreadFactory backgroundPriorityThreadFactory =
+        new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND);
+    ThreadFactory defaultPriorityThreadFactory =
+        new PriorityThreadFactory(Process.THREAD_PRIORITY_DEFAULT);
+
+    mLocalStorageReadExecutor = new InstrumentedThreadPoolExecutor(
+        LOCAL_STORAGE_READ,
+        NUM_LOCAL_STORAGE_READ_THREADS,
+        NUM_LOCAL_STORAGE_READ_THREADS,
+        defaultPriorityThreadFactory,
+        observer);
+    mLocalStorageWriteExecutor = new InstrumentedThreadPoolExecutor(
+        LOCAL_STORAGE_WRITE,
+        NUM_LOCAL_STORAGE_WRITE_THREADS,
+        NUM_LOCAL_STORAGE_WRITE_THREADS,
+        backgroundPriorityThreadFactory,
+        observer);
+    mDecodeThreadPool = new InstrumentedThreadPoolExecutor(
+        DECODE,
+        Math.max(1, numCpuBoundThreads / 2),
+        numCpuBoundThreads,
+        backgroundPriorityThreadFactory,
+        observer);
+    mDecodeExecutor = prioritizeDecodes ?
+        new PrioritizedExecutorService(DECODE, numCpuBoundThreads, mDecodeThreadPool) :
+        mDecodeThreadPool;
+    mBackgroundExecutor = new InstrumentedThreadPoolExecutor(
+        BACKGROUND,
+        numCpuBoundThreads,
+        numCpuBoundThreads,
+        backgroundPriorityThreadFactory,
+        observer);
+    mLightWeightBackgroundExecutor = new InstrumentedThreadPoolExecutor(
+        LIGHTWEIGHT_BACKGROUND,
+        NUM_LIGHTWEIGHT_BACKGROUND_THREADS,
+        NUM_LIGHTWEIGHT_BACKGROUND_THREADS,
+        backgroundPriorityThreadFactory,
+        observer);
+  }
+
+  @Override
+  public Executor forLocalStorageRead() {
+    return mLocalStorageReadExecutor;
+  }
+
+  @Override
+  public Executor forLocalStorageWrite() {
+    return mLocalStorageWriteExecutor;
+  }
+
+  @Override
+  public Executor forDecode() {
+    return mDecodeExecutor;
+  }
+
+  @Override
+  public Executor forBackgroundTasks() {
+    return mBackgroundExecutor;
+  }
+
+  @Override
+  public Executor forLightweightBackgroundTasks() {
+    return mLightWeightBackgroundExecutor;
+  }
+
+  /**
+   * Gets the thread pools, to read their metrics.
+   */
+  public List<InstrumentedThreadPoolExecutor> getThreadPools() {
+    return Collections.unmodifiableList(Arrays.asList(
+        mLocalStorageReadExecutor,
+        mLocalStorageWriteExecutor,
+        mDecodeThreadPool,
+        mBackgroundExecutor,
+        mLightWeightBackgroundExecutor));
+  }
+}
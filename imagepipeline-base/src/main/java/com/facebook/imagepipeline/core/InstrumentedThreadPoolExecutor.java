@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.core;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.common.time.RealtimeSinceBootClock;
+
+/**
+ * A {@link ThreadPoolExecutor} with an unbounded queue that keeps track of how long its tasks wait
+ * and run, and reports them to an optional {@link ExecutorObserver}. Tasks implementing
+ * {@link RequestRunnable} are reported with the id of their request.
+ *
+ * <p> Tasks are never run on the submitting thread, so that submitting one never blocks, be it
+ * from the UI thread or from another executor of the pipeline.
+ *
+ * <p> If the minimum and maximum numbers of threads differ, the parallelism adapts to the time
+ * the tasks wait in the queue: a thread is added while the average wait is long, and one is
+ * removed while it is short.
+ */
+@ThreadSafe
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private static final long KEEP_ALIVE_TIME_MS = 1000;
+
+  // the average wait above which a thread is added, and below which a thread is removed
+  @VisibleForTesting static final long LONG_WAIT_TIME_MS = 32;
+  @VisibleForTesting static final long SHORT_WAIT_TIME_MS = 4;
+
+  // the number of tasks to run between two changes of the parallelism
+  @VisibleForTesting static final int ADJUSTMENT_INTERVAL = 8;
+
+  private final String mName;
+  private final int mMinThreads;
+  private final int mMaxThreads;
+  private final @Nullable ExecutorObserver mObserver;
+  private final MonotonicClock mClock;
+
+  private final AtomicLong mTotalWaitTimeMs = new AtomicLong();
+  private final AtomicLong mTotalRunTimeMs = new AtomicLong();
+
+  // exponential moving average of the wait times
+  @GuardedBy("this")
+  private float mAverageWaitTimeMs;
+  @GuardedBy("this")
+  private int mTasksSinceAdjustment;
+
+  /**
+   * @param name the name of the executor, for logging and reporting
+   * @param minThreads the number of threads to start with, and the lowest one to adapt to
+   * @param maxThreads the highest number of threads to adapt to
+   * @param threadFactory the factory of the threads
+   * @param observer the observer of the tasks, if any
+   */
+  public InstrumentedThreadPoolExecutor(
+      String name,
+      int minThreads,
+      int maxThreads,
+      ThreadFactory threadFactory,
+      @Nullable ExecutorObserver observer) {
+    this(
+        name,
+        minThreads,
+        maxThreads,
+        threadFactory,
+        observer,
+        RealtimeSinceBootClock.get());
+  }
+
+  @VisibleForTesting
+  InstrumentedThreadPoolExecutor(
+      String name,
+      int minThreads,
+      int maxThreads,
+      ThreadFactory threadFactory,
+      @Nullable ExecutorObserver observer,
+      MonotonicClock clock) {
+    // with an unbounded queue, the pool only grows when its core size is raised
+    super(
+        minThreads,
+        maxThreads,
+        KEEP_ALIVE_TIME_MS,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        threadFactory);
+    mName = name;
+    mMinThreads = minThreads;
+    mMaxThreads = maxThreads;
+    mObserver = observer;
+    mClock = Preconditions.checkNotNull(clock);
+  }
+
+  @Override
+  public void execute(Runnable runnable) {
+    Preconditions.checkNotNull(runnable);
+    final String requestId = runnable instanceof RequestRunnable ?
+        ((RequestRunnable) runnable).getRequestId() :
+        null;
+    if (mObserver != null) {
+      mObserver.onTaskQueued(mName, requestId, getQueue().size());
+    }
+    super.execute(new TimedRunnable(runnable, requestId, mClock.now()));
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * Gets the number of tasks waiting to be run.
+   */
+  public int getQueueDepth() {
+    return getQueue().size();
+  }
+
+  /**
+   * Gets the total time the finished tasks spent in the queue.
+   */
+  public long getTotalWaitTimeMs() {
+    return mTotalWaitTimeMs.get();
+  }
+
+  /**
+   * Gets the total time the finished tasks spent running.
+   */
+  public long getTotalRunTimeMs() {
+    return mTotalRunTimeMs.get();
+  }
+
+  private void onTaskFinished(@Nullable String requestId, long waitTimeMs, long runTimeMs) {
+    mTotalWaitTimeMs.addAndGet(waitTimeMs);
+    mTotalRunTimeMs.addAndGet(runTimeMs);
+    if (mObserver != null) {
+      mObserver.onTaskFinished(mName, requestId, waitTimeMs, runTimeMs);
+    }
+    if (mMinThreads < mMaxThreads) {
+      maybeAdjustParallelism(waitTimeMs);
+    }
+  }
+
+  private void maybeAdjustParallelism(long waitTimeMs) {
+    int parallelism;
+    synchronized (this) {
+      mAverageWaitTimeMs += (waitTimeMs - mAverageWaitTimeMs) / ADJUSTMENT_INTERVAL;
+      if (++mTasksSinceAdjustment < ADJUSTMENT_INTERVAL) {
+        return;
+      }
+      parallelism = getCorePoolSize();
+      if (mAverageWaitTimeMs > LONG_WAIT_TIME_MS && parallelism < mMaxThreads) {
+        parallelism++;
+      } else if (mAverageWaitTimeMs < SHORT_WAIT_TIME_MS && parallelism > mMinThreads) {
+        parallelism--;
+      } else {
+        return;
+      }
+      mTasksSinceAdjustment = 0;
+      setCorePoolSize(parallelism);
+    }
+    if (mObserver != null) {
+      mObserver.onParallelismChanged(mName, parallelism);
+    }
+  }
+
+  /**
+   * Wraps a task to measure the time it waits and runs.
+   */
+  private class TimedRunnable implements Runnable {
+    private final Runnable mRunnable;
+    private final @Nullable String mRequestId;
+    private final long mSubmitTimeMs;
+
+    private TimedRunnable(Runnable runnable, @Nullable String requestId, long submitTimeMs) {
+      mRunnable = runnable;
+      mRequestId = requestId;
+      mSubmitTimeMs = submitTimeMs;
+    }
+
+    @Override
+    public void run() {
+      final long startTimeMs = mClock.now();
+      final long waitTimeMs = startTimeMs - mSubmitTimeMs;
+      if (mObserver != null) {
+        mObserver.onTaskStarted(mName, mRequestId, waitTimeMs);
+      }
+      try {
+        mRunnable.run();
+      } finally {
+        onTaskFinished(mRequestId, waitTimeMs, mClock.now() - startTimeMs);
+      }
+    }
+  }
+}
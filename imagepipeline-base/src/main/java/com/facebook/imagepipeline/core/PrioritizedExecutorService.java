@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+
+package com.facebook.imagepipeline.core;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.logging.FLog;
+import com.facebook.imagepipeline.common.Priority;
+
+/**
+ * A {@link java.util.concurrent.ExecutorService} that delegates to an existing {@link Executor},
+ * running at most a pre-configured number of tasks at a time, and always starting the most urgent
+ * pending task first.
+ *
+ * <p> Tasks implementing {@link PrioritizedRunnable} are ordered by their priority, with prefetches
+ * after everything else. The order is determined when a task is taken from the queue, so changes
+ * of priority made while a task is waiting are taken into account. Other tasks are treated as
+ * {@link Priority#HIGH} non-prefetches. Tasks of the same rank are started in submission order.
+ */
+public class PrioritizedExecutorService extends AbstractExecutorService {
+
+  private static final Class<?> TAG = PrioritizedExecutorService.class;
+
+  private final String mName;
+  private final Executor mExecutor;
+  private final int mMaxConcurrency;
+  private final Worker mTaskRunner;
+
+  @GuardedBy("this")
+  private final List<Runnable> mPendingTasks;
+  @GuardedBy("this")
+  private int mPendingWorkers;
+
+  /**
+   * Creates a new {@code PrioritizedExecutorService}.
+   * @param name Friendly name to identify the executor in logging and reporting.
+   * @param maxConcurrency Maximum number of tasks to execute in parallel on the delegate executor.
+   * @param executor Delegate executor for actually running tasks.
+   */
+  public PrioritizedExecutorService(String name, int maxConcurrency, Executor executor) {
+    Preconditions.checkArgument(maxConcurrency > 0, "max concurrency must be > 0");
+    mName = name;
+    mMaxConcurrency = maxConcurrency;
+    mExecutor = Preconditions.checkNotNull(executor);
+    mTaskRunner = new Worker();
+    mPendingTasks = new ArrayList<>();
+    mPendingWorkers = 0;
+  }
+
+  /**
+   * Gets the rank of a task: the higher the rank, the sooner the task is started.
+   * Non-prefetch tasks always rank higher than prefetch ones.
+   */
+  public static int getRank(Priority priority, boolean isPrefetch) {
+    return isPrefetch ? priority.ordinal() : priority.ordinal() + Priority.values().length;
+  }
+
+  @VisibleForTesting
+  static int getRank(Runnable runnable) {
+    if (runnable instanceof PrioritizedRunnable) {
+      PrioritizedRunnable prioritizedRunnable = (PrioritizedRunnable) runnable;
+      return getRank(prioritizedRunnable.getPriority(), prioritizedRunnable.isPrefetch());
+    }
+    return getRank(Priority.HIGH, false);
+  }
+
+  /**
+   * Submit a task to be executed in the future.
+   * @param runnable The task to be executed.
+   */
+  @Override
+  public void execute(Runnable runnable) {
+    Preconditions.checkNotNull(runnable);
+    boolean startWorker = false;
+    synchronized (this) {
+      mPendingTasks.add(runnable);
+      if (mPendingWorkers < mMaxConcurrency) {
+        mPendingWorkers++;
+        startWorker = true;
+      }
+    }
+    if (startWorker) {
+      mExecutor.execute(mTaskRunner);
+    }
+  }
+
+  /**
+   * Determine whether or not the queue is idle.
+   * @return true if there is no work being executed and there are no pending tasks
+   */
+  public synchronized boolean isIdle() {
+    return mPendingTasks.isEmpty() && mPendingWorkers == 0;
+  }
+
+  @VisibleForTesting
+  synchronized int getPendingTaskCount() {
+    return mPendingTasks.size();
+  }
+
+  /**
+   * Removes the pending task of the highest rank. Among tasks of the same rank, the first one
+   * submitted is returned.
+   */
+  private synchronized Runnable pollHighestRank() {
+    int bestIndex = -1;
+    int bestRank = Integer.MIN_VALUE;
+    for (int i = 0; i < mPendingTasks.size(); ++i) {
+      int rank = getRank(mPendingTasks.get(i));
+      if (rank > bestRank) {
+        bestRank = rank;
+        bestIndex = i;
+      }
+    }
+    return bestIndex >= 0 ? mPendingTasks.remove(bestIndex) : null;
+  }
+
+  @Override
+  public void shutdown() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return false;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return false;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Private worker class that removes the most urgent task and runs it. This class maintains no
+   * state of its own, so a single instance may be submitted to an executor multiple times.
+   */
+  private class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        Runnable runnable = pollHighestRank();
+        if (runnable != null) {
+          runnable.run();
+        } else {
+          FLog.v(TAG, "%s: Worker has nothing to run", mName);
+        }
+      } finally {
+        boolean startWorker = false;
+        synchronized (PrioritizedExecutorService.this) {
+          if (mPendingTasks.isEmpty()) {
+            mPendingWorkers--;
+          } else {
+            // keep the worker slot, and run the next task in a fresh submission
+            startWorker = true;
+          }
+        }
+        if (startWorker) {
+          mExecutor.execute(mTaskRunner);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+
+package com.facebook.imagepipeline.core;
+
+import com.facebook.imagepipeline.common.Priority;
+
+/**
+ * A {@link Runnable} that tells a {@link PrioritizedExecutorService} how urgent it is. Both values
+ * may change while the runnable is waiting to be executed.
+ */
+public interface PrioritizedRunnable extends Runnable {
+
+  /** Gets the current priority of the runnable. */
+  Priority getPriority();
+
+  /**
+   * Returns true if the runnable is only needed for a prefetch. Such runnables are executed after
+   * the others, regardless of their priority.
+   */
+  boolean isPrefetch();
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.core;
+
+/**
+ * A {@link Runnable} doing work for a single request, so that an {@link ExecutorObserver} can
+ * attribute the time it waits and runs to that request.
+ */
+public interface RequestRunnable extends Runnable {
+
+  /** Gets the id of the request the runnable works for. */
+  String getRequestId();
+}
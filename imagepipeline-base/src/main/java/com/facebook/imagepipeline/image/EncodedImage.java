@@ -66,6 +66,7 @@ public class EncodedImage implements Closeable {
   private int mWidth = UNKNOWN_WIDTH;
   private int mHeight = UNKNOWN_HEIGHT;
   private int mSampleSize = DEFAULT_SAMPLE_SIZE;
+  private int mTargetWidth = UNKNOWN_WIDTH;
   private int mStreamSize = UNKNOWN_STREAM_SIZE;
   private @Nullable CacheKey mEncodedCacheKey;
   private @Nullable BytesRange mBytesRange;
@@ -198,6 +199,13 @@ public class EncodedImage implements Closeable {
     this.mSampleSize = sampleSize;
   }
 
+  /**
+   * Sets the width to scale the image to while decoding it, after sampling
+   */
+  public void setTargetWidth(int targetWidth) {
+    this.mTargetWidth = targetWidth;
+  }
+
   /**
    * Sets the size of an image if backed by an InputStream
    *
@@ -258,6 +266,14 @@ public class EncodedImage implements Closeable {
     return mSampleSize;
   }
 
+  /**
+   * Returns the width to scale the image to while decoding it, after sampling, if any, else -1.
+   * The height is scaled by the same factor.
+   */
+  public int getTargetWidth() {
+    return mTargetWidth;
+  }
+
   /**
    * Gets the key to use when storing this image in encoded caches
    * @return the encoded cache key
@@ -307,8 +323,33 @@ public class EncodedImage implements Closeable {
 
   /**
    * Sets the encoded image meta data.
+   *
+   * <p> Images in a byte buffer are parsed in a single pass over their header, unless custom image
+   * formats are registered. The slower, stream based parsing is used otherwise, and for images
+   * the single pass parser does not recognize.
    */
   public void parseMetaData() {
+    if (mPooledByteBufferRef != null &&
+        !ImageFormatChecker.getInstance().hasCustomImageFormatCheckers()) {
+      final int orientation = ImageMetaDataParser.parse(mPooledByteBufferRef.get(), this);
+      if (orientation != ImageMetaDataParser.UNPARSED) {
+        if (mImageFormat == DefaultImageFormats.JPEG && mRotationAngle == UNKNOWN_ROTATION_ANGLE) {
+          mRotationAngle = JfifUtil.getAutoRotateAngleFromOrientation(orientation);
+        } else {
+          mRotationAngle = 0;
+        }
+        return;
+      }
+    }
+    parseMetaDataFromStreams();
+  }
+
+  /**
+   * Sets the encoded image meta data by reading its input stream once for each of the format, the
+   * dimensions and the rotation.
+   */
+  @VisibleForTesting
+  void parseMetaDataFromStreams() {
     final ImageFormat imageFormat = ImageFormatChecker.getImageFormat_WrapIOException(
         getInputStream());
     mImageFormat = imageFormat;
@@ -379,6 +420,7 @@ public class EncodedImage implements Closeable {
     mHeight = encodedImage.getHeight();
     mRotationAngle = encodedImage.getRotationAngle();
     mSampleSize = encodedImage.getSampleSize();
+    mTargetWidth = encodedImage.getTargetWidth();
     mStreamSize = encodedImage.getSize();
     mEncodedCacheKey = encodedImage.getEncodedCacheKey();
     mBytesRange = encodedImage.getBytesRange();
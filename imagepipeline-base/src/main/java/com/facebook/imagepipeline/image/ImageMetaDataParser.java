@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.image;
+
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormat;
+import com.facebook.imageutils.JfifUtil;
+
+/**
+ * Reads the format, the dimensions and the EXIF orientation of an encoded image in a single pass
+ * over the header of its {@link PooledByteBuffer}.
+ *
+ * <p> Only the bytes that hold the meta data are read, in place, and nothing is allocated: no
+ * input stream, no header copy and no bounds decode. The formats recognized are the
+ * {@link DefaultImageFormats}, detected the same way as by the default format checker.
+ *
+ * <p> Images in other formats, or whose header is incomplete or unexpected, are not parsed, so
+ * that the caller can fall back to the stream based parsing.
+ */
+final class ImageMetaDataParser {
+
+  /**
+   * Returned when the meta data could not be parsed.
+   */
+  static final int UNPARSED = -1;
+
+  private static final int TIFF_BYTE_ORDER_BIG_END = 0x4D4D002A;
+  private static final int TIFF_BYTE_ORDER_LITTLE_END = 0x49492A00;
+  private static final int TIFF_TAG_ORIENTATION = 0x0112;
+  private static final int TIFF_TYPE_SHORT = 3;
+  private static final int TIFF_IFD_ENTRY_SIZE = 12;
+
+  private static final int RIFF = 0x52494646;
+  private static final int WEBP = 0x57454250;
+  private static final int VP8 = 0x56503820;
+  private static final int VP8L = 0x5650384C;
+  private static final int VP8X = 0x56503858;
+
+  private static final int PNG_SIGNATURE_HIGH = 0x89504E47;
+  private static final int PNG_SIGNATURE_LOW = 0x0D0A1A0A;
+  private static final int PNG_IHDR = 0x49484452;
+
+  private static final int GIF_SIGNATURE = 0x47494638;
+  private static final int GIF_VERSION_87A = 0x3761;
+  private static final int GIF_VERSION_89A = 0x3961;
+
+  private ImageMetaDataParser() {
+  }
+
+  /**
+   * Parses the meta data of the image in the buffer. If it succeeds, the format, width and height
+   * of the encoded image are set. The encoded image is not changed otherwise.
+   *
+   * @param buffer the buffer that holds the encoded image
+   * @param encodedImage the encoded image to set the meta data of
+   * @return the EXIF orientation for JPEG images, 0 if they have none, 0 for other formats, or
+   *     {@link #UNPARSED} if the meta data could not be parsed
+   */
+  static int parse(PooledByteBuffer buffer, EncodedImage encodedImage) {
+    final int size = buffer.size();
+    if (size >= 20 &&
+        readInt(buffer, 0, false) == RIFF &&
+        readInt(buffer, 8, false) == WEBP) {
+      return parseWebp(buffer, size, encodedImage);
+    }
+    if (size >= 3 &&
+        readByte(buffer, 0) == JfifUtil.MARKER_FIRST_BYTE &&
+        readByte(buffer, 1) == JfifUtil.MARKER_SOI &&
+        readByte(buffer, 2) == JfifUtil.MARKER_FIRST_BYTE) {
+      return parseJpeg(buffer, size, encodedImage);
+    }
+    if (size >= 8 &&
+        readInt(buffer, 0, false) == PNG_SIGNATURE_HIGH &&
+        readInt(buffer, 4, false) == PNG_SIGNATURE_LOW) {
+      // the IHDR chunk comes first
+      if (size < 24 || readInt(buffer, 12, false) != PNG_IHDR) {
+        return UNPARSED;
+      }
+      return setMetaData(
+          encodedImage,
+          DefaultImageFormats.PNG,
+          readInt(buffer, 16, false),
+          readInt(buffer, 20, false));
+    }
+    if (size >= 6 && readInt(buffer, 0, false) == GIF_SIGNATURE) {
+      final int version = readShort(buffer, 4, false);
+      if (version == GIF_VERSION_87A || version == GIF_VERSION_89A) {
+        // size of the logical screen
+        if (size < 10) {
+          return UNPARSED;
+        }
+        return setMetaData(
+            encodedImage,
+            DefaultImageFormats.GIF,
+            readShort(buffer, 6, true),
+            readShort(buffer, 8, true));
+      }
+    }
+    if (size >= 2 && readByte(buffer, 0) == 'B' && readByte(buffer, 1) == 'M') {
+      return parseBmp(buffer, size, encodedImage);
+    }
+    return UNPARSED;
+  }
+
+  /**
+   * Reads the format from the first chunk header, and the size from the chunk.
+   * See https://developers.google.com/speed/webp/docs/riff_container
+   */
+  private static int parseWebp(PooledByteBuffer buffer, int size, EncodedImage encodedImage) {
+    final int chunk = readInt(buffer, 12, false);
+    if (chunk == VP8) {
+      // frame tag, then the start code
+      if (size < 30 ||
+          readByte(buffer, 23) != 0x9D ||
+          readByte(buffer, 24) != 0x01 ||
+          readByte(buffer, 25) != 0x2A) {
+        return UNPARSED;
+      }
+      return setMetaData(
+          encodedImage,
+          DefaultImageFormats.WEBP_SIMPLE,
+          readShort(buffer, 26, true),
+          readShort(buffer, 28, true));
+    }
+    if (chunk == VP8L) {
+      // signature, then 14 bits for each of the width and height minus one
+      if (size < 25 || readByte(buffer, 20) != 0x2F) {
+        return UNPARSED;
+      }
+      final int bits = readInt(buffer, 21, true);
+      return setMetaData(
+          encodedImage,
+          DefaultImageFormats.WEBP_LOSSLESS,
+          (bits & 0x3FFF) + 1,
+          ((bits >> 14) & 0x3FFF) + 1);
+    }
+    if (chunk == VP8X) {
+      // feature flags, reserved bytes, then 24 bits for each of the width and height minus one
+      if (size < 30) {
+        return UNPARSED;
+      }
+      final int flags = readByte(buffer, 20);
+      final ImageFormat imageFormat;
+      if ((flags & 2) != 0) {
+        imageFormat = DefaultImageFormats.WEBP_ANIMATED;
+      } else if ((flags & 16) != 0) {
+        imageFormat = DefaultImageFormats.WEBP_EXTENDED_WITH_ALPHA;
+      } else {
+        imageFormat = DefaultImageFormats.WEBP_EXTENDED;
+      }
+      return setMetaData(
+          encodedImage,
+          imageFormat,
+          read3Bytes(buffer, 24) + 1,
+          read3Bytes(buffer, 27) + 1);
+    }
+    return UNPARSED;
+  }
+
+  /**
+   * Walks the markers up to the start of the scan, reading the size from the SOFn segment and the
+   * orientation from the first APP1 segment, like {@link JfifUtil#getOrientation}.
+   */
+  private static int parseJpeg(PooledByteBuffer buffer, int size, EncodedImage encodedImage) {
+    int width = 0;
+    int height = 0;
+    int orientation = 0;
+    boolean app1Found = false;
+    int offset = 2;
+    while (offset < size && readByte(buffer, offset) == JfifUtil.MARKER_FIRST_BYTE) {
+      int marker = JfifUtil.MARKER_FIRST_BYTE;
+      while (marker == JfifUtil.MARKER_FIRST_BYTE && ++offset < size) {
+        marker = readByte(buffer, offset);
+      }
+      offset++;
+      if (marker == JfifUtil.MARKER_SOI || marker == JfifUtil.MARKER_TEM) {
+        // no length field
+        continue;
+      }
+      if (marker == JfifUtil.MARKER_EOI ||
+          marker == JfifUtil.MARKER_SOS ||
+          offset + 2 > size) {
+        break;
+      }
+      final int length = readShort(buffer, offset, false);
+      if (length < 2) {
+        break;
+      }
+      if (isSOFn(marker)) {
+        // precision, then height and width
+        if (length < 7 || offset + 7 > size) {
+          break;
+        }
+        height = readShort(buffer, offset + 3, false);
+        width = readShort(buffer, offset + 5, false);
+        if (app1Found) {
+          break;
+        }
+      } else if (marker == JfifUtil.MARKER_APP1 && !app1Found) {
+        app1Found = true;
+        orientation =
+            readExifOrientation(buffer, offset + 2, Math.min(length, size - offset) - 2);
+        if (width > 0) {
+          break;
+        }
+      }
+      offset += length;
+    }
+    if (width <= 0 || height <= 0) {
+      return UNPARSED;
+    }
+    setMetaData(encodedImage, DefaultImageFormats.JPEG, width, height);
+    return orientation;
+  }
+
+  /**
+   * Reads the orientation from the first IFD of the EXIF data, like TiffUtil.
+   *
+   * @return the orientation, or 0 if the segment has none
+   */
+  private static int readExifOrientation(PooledByteBuffer buffer, int offset, int length) {
+    // EXIF magic number followed by two zero bytes, then the TIFF header
+    if (length <= 14 ||
+        readInt(buffer, offset, false) != JfifUtil.APP1_EXIF_MAGIC ||
+        readShort(buffer, offset + 4, false) != 0) {
+      return 0;
+    }
+    final int tiffOffset = offset + 6;
+    final int tiffLength = length - 6;
+    final int byteOrder = readInt(buffer, tiffOffset, false);
+    if (byteOrder != TIFF_BYTE_ORDER_LITTLE_END && byteOrder != TIFF_BYTE_ORDER_BIG_END) {
+      return 0;
+    }
+    final boolean isLittleEndian = byteOrder == TIFF_BYTE_ORDER_LITTLE_END;
+    final int ifdOffset = readInt(buffer, tiffOffset + 4, isLittleEndian);
+    if (ifdOffset < 8 || ifdOffset > tiffLength - 2) {
+      return 0;
+    }
+    final int entryCount = readShort(buffer, tiffOffset + ifdOffset, isLittleEndian);
+    int entryOffset = ifdOffset + 2;
+    for (int i = 0;
+        i < entryCount && entryOffset + TIFF_IFD_ENTRY_SIZE <= tiffLength;
+        i++, entryOffset += TIFF_IFD_ENTRY_SIZE) {
+      final int entry = tiffOffset + entryOffset;
+      if (readShort(buffer, entry, isLittleEndian) == TIFF_TAG_ORIENTATION) {
+        if (readShort(buffer, entry + 2, isLittleEndian) != TIFF_TYPE_SHORT ||
+            readInt(buffer, entry + 4, isLittleEndian) != 1) {
+          return 0;
+        }
+        return readShort(buffer, entry + 8, isLittleEndian);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Reads the size from the DIB header, which is either a BITMAPCOREHEADER with 16 bit sizes or
+   * a later header with 32 bit sizes. The height is negative for top-down bitmaps.
+   */
+  private static int parseBmp(PooledByteBuffer buffer, int size, EncodedImage encodedImage) {
+    if (size < 18) {
+      return UNPARSED;
+    }
+    final int headerSize = readInt(buffer, 14, true);
+    if (headerSize == 12) {
+      if (size < 22) {
+        return UNPARSED;
+      }
+      return setMetaData(
+          encodedImage,
+          DefaultImageFormats.BMP,
+          readShort(buffer, 18, true),
+          readShort(buffer, 20, true));
+    }
+    if (headerSize < 40 || size < 26) {
+      return UNPARSED;
+    }
+    return setMetaData(
+        encodedImage,
+        DefaultImageFormats.BMP,
+        readInt(buffer, 18, true),
+        Math.abs(readInt(buffer, 22, true)));
+  }
+
+  private static int setMetaData(
+      EncodedImage encodedImage,
+      ImageFormat imageFormat,
+      int width,
+      int height) {
+    if (width <= 0 || height <= 0) {
+      return UNPARSED;
+    }
+    encodedImage.setImageFormat(imageFormat);
+    encodedImage.setWidth(width);
+    encodedImage.setHeight(height);
+    return 0;
+  }
+
+  private static boolean isSOFn(int marker) {
+    // there are no SOF4, SOF8 and SOF12, these are DHT, JPG and DAC
+    return marker >= 0xC0 && marker <= 0xCF &&
+        marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+  }
+
+  private static int readByte(PooledByteBuffer buffer, int offset) {
+    return buffer.read(offset) & 0xFF;
+  }
+
+  private static int readShort(PooledByteBuffer buffer, int offset, boolean isLittleEndian) {
+    final int first = readByte(buffer, offset);
+    final int second = readByte(buffer, offset + 1);
+    return isLittleEndian ? second << 8 | first : first << 8 | second;
+  }
+
+  private static int read3Bytes(PooledByteBuffer buffer, int offset) {
+    return readByte(buffer, offset + 2) << 16 | readShort(buffer, offset, true);
+  }
+
+  private static int readInt(PooledByteBuffer buffer, int offset, boolean isLittleEndian) {
+    final int first = readShort(buffer, offset, isLittleEndian);
+    final int second = readShort(buffer, offset + 2, isLittleEndian);
+    return isLittleEndian ? second << 16 | first : first << 16 | second;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CountingBloomFilter}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CountingBloomFilterTest {
+
+  private static final int NUM_COUNTERS = 1 << 12;
+
+  @Test
+  public void testAddAndRemove() {
+    CountingBloomFilter filter = new CountingBloomFilter(NUM_COUNTERS);
+    assertFalse(filter.mightContain("foo"));
+    filter.add("foo");
+    filter.add("foo");
+    assertTrue(filter.mightContain("foo"));
+    filter.remove("foo");
+    assertTrue(filter.mightContain("foo"));
+    filter.remove("foo");
+    assertFalse(filter.mightContain("foo"));
+  }
+
+  @Test
+  public void testNoFalseNegatives() {
+    CountingBloomFilter filter = new CountingBloomFilter(NUM_COUNTERS);
+    for (int i = 0; i < NUM_COUNTERS; i++) {
+      filter.add("added" + i);
+    }
+    for (int i = 0; i < NUM_COUNTERS; i += 2) {
+      filter.remove("added" + i);
+    }
+    for (int i = 1; i < NUM_COUNTERS; i += 2) {
+      assertTrue(filter.mightContain("added" + i));
+    }
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    CountingBloomFilter filter = new CountingBloomFilter(NUM_COUNTERS);
+    for (int i = 0; i < NUM_COUNTERS / 8; i++) {
+      filter.add("added" + i);
+    }
+    int falsePositives = 0;
+    int lookups = 10000;
+    for (int i = 0; i < lookups; i++) {
+      if (filter.mightContain("missing" + i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < lookups * 5 / 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSizeMustBeAPowerOfTwo() {
+    new CountingBloomFilter(1000);
+  }
+}
@@ -529,6 +529,119 @@ public class DefaultDiskStorageTest {
     Assert.assertEquals(files.get(2), entriesAfterRemoval.get(1).getResource().getFile());
   }
 
+  @Test
+  public void testJournal() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    when(mClock.now()).thenReturn(1000L);
+    File file1 = writeFileToStorage(storage, "resource1", new byte[100]);
+    when(mClock.now()).thenReturn(2000L);
+    writeFileToStorage(storage, "resource2", new byte[104]);
+    when(mClock.now()).thenReturn(3000L);
+    storage.touch("resource1", null);
+    storage.remove("resource2");
+
+    // a new instance reads the entries from the journal, not from the directory
+    assertTrue(file1.delete());
+    List<DefaultDiskStorage.EntryImpl> entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals("resource1", entries.get(0).getId());
+    assertEquals(100, entries.get(0).getSize());
+    assertEquals(3000L, entries.get(0).getTimestamp());
+  }
+
+  @Test
+  public void testJournalIsNotPurged() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    writeFileToStorage(storage, "resource1", new byte[100]);
+    purgeUnexpectedFiles(storage);
+    assertEquals(1, retrieveEntries(createStorageWithJournal()).size());
+  }
+
+  @Test
+  public void testCorruptedJournalIsRebuilt() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    File file1 = writeFileToStorage(storage, "resource1", new byte[100]);
+    writeFileToStorage(storage, "resource2", new byte[104]);
+
+    File journalFile = new File(
+        new File(mDirectory, DefaultDiskStorage.getVersionSubdirectoryName(1)),
+        DiskStorageJournal.JOURNAL_FILE_NAME);
+    FileOutputStream fos = new FileOutputStream(journalFile);
+    try {
+      fos.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    } finally {
+      fos.close();
+    }
+
+    // the directory is walked, and the journal rebuilt from it
+    assertEquals(2, retrieveEntries(createStorageWithJournal()).size());
+    assertTrue(file1.delete());
+    assertEquals(2, retrieveEntries(createStorageWithJournal()).size());
+  }
+
+  @Test
+  public void testJournalPendingInsert() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    writeFileToStorage(storage, "resource1", new byte[100]);
+    // started but never committed
+    DiskStorage.Inserter inserter = storage.insert("resource2", null);
+    writeToResource(inserter, new byte[104]);
+
+    List<DefaultDiskStorage.EntryImpl> entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals("resource1", entries.get(0).getId());
+  }
+
+  @Test
+  public void testJournalTouchIsWrittenLater() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    when(mClock.now()).thenReturn(1000L);
+    writeFileToStorage(storage, "resource1", new byte[100]);
+    purgeUnexpectedFiles(storage);
+    when(mClock.now()).thenReturn(2000L);
+    storage.touch("resource1", null);
+
+    // the touch is only in memory
+    List<DefaultDiskStorage.EntryImpl> entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals(1000L, entries.get(0).getTimestamp());
+
+    // until the storage is maintained
+    purgeUnexpectedFiles(storage);
+    entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals(2000L, entries.get(0).getTimestamp());
+  }
+
+  @Test
+  public void testJournalLostCommitIsRecovered() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    // the commit record is not written yet, as if the process died right after the rename
+    File file1 = writeFileToStorage(storage, "resource1", new byte[100]);
+
+    List<DefaultDiskStorage.EntryImpl> entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals("resource1", entries.get(0).getId());
+    assertEquals(file1.length(), entries.get(0).getSize());
+  }
+
+  @Test
+  public void testJournalAfterClearAll() throws Exception {
+    DefaultDiskStorage storage = createStorageWithJournal();
+    writeFileToStorage(storage, "resource1", new byte[100]);
+    storage.clearAll();
+    assertEquals(0, storage.getEntries().size());
+    writeFileToStorage(storage, "resource2", new byte[104]);
+
+    List<DefaultDiskStorage.EntryImpl> entries = retrieveEntries(createStorageWithJournal());
+    assertEquals(1, entries.size());
+    assertEquals("resource2", entries.get(0).getId());
+  }
+
+  private DefaultDiskStorage createStorageWithJournal() {
+    return new DefaultDiskStorage(mDirectory, 1, mock(CacheErrorLogger.class), true);
+  }
+
   private static FileBinaryResource writeToStorage(
       final DefaultDiskStorage storage,
       final String resourceId,
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.facebook.cache.common.CacheErrorLogger;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.NoOpCacheEventListener;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.cache.common.WriterCallbacks;
+import com.facebook.common.disk.DiskTrimmableRegistry;
+import com.facebook.common.internal.Suppliers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Contention benchmark for {@link DiskStorageCache}: readers probe the index and read resources
+ * while writers insert enough data to keep the cache evicting. The timings are printed, so that
+ * they can be compared between runs; the test itself only checks that all the operations
+ * complete without errors.
+ *
+ * <p> It is not part of the unit test run: remove the {@link Ignore} annotation locally to run it.
+ */
+@Ignore("Benchmark, run it manually")
+@RunWith(RobolectricTestRunner.class)
+public class DiskStorageCacheContentionTest {
+
+  private static final String CACHE_TYPE = "contention_test";
+  private static final int READER_COUNT = 4;
+  private static final int WRITER_COUNT = 2;
+  private static final int OPERATIONS_PER_THREAD = 200;
+  private static final int KEY_COUNT = 64;
+  private static final int VALUE_SIZE = 1024;
+  // Small enough for the writers to trigger evictions regularly
+  private static final long CACHE_SIZE_LIMIT = KEY_COUNT * VALUE_SIZE / 4;
+
+  private DiskStorage mStorage;
+
+  @Before
+  public void setUp() {
+    mStorage = new DynamicDefaultDiskStorage(
+        1,
+        Suppliers.of(RuntimeEnvironment.application.getApplicationContext().getCacheDir()),
+        CACHE_TYPE,
+        mock(CacheErrorLogger.class));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    mStorage.clearAll();
+  }
+
+  @Test
+  public void testParallelReadsAndWrites() throws Exception {
+    runBenchmark("inline eviction", createDiskCache(null));
+    runBenchmark(
+        "background eviction",
+        createDiskCache(Executors.newSingleThreadExecutor()));
+  }
+
+  private void runBenchmark(String name, final DiskStorageCache cache) throws Exception {
+    final CacheKey[] keys = new CacheKey[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      keys[i] = new SimpleCacheKey("key" + i);
+    }
+    final byte[] value = new byte[VALUE_SIZE];
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(READER_COUNT + WRITER_COUNT);
+    final AtomicLong readNanos = new AtomicLong();
+    final AtomicLong writeNanos = new AtomicLong();
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    for (int t = 0; t < READER_COUNT + WRITER_COUNT; t++) {
+      final boolean isWriter = t < WRITER_COUNT;
+      final int seed = t;
+      Thread thread = new Thread(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                start.await();
+                long startNanos = System.nanoTime();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                  CacheKey key = keys[(seed * 31 + i * 7) % KEY_COUNT];
+                  if (isWriter) {
+                    cache.insert(key, WriterCallbacks.from(value));
+                  } else if (cache.hasKeySync(key)) {
+                    // the resource may have been evicted in the meantime, this is a valid miss
+                    cache.getResource(key);
+                  }
+                }
+                (isWriter ? writeNanos : readNanos).addAndGet(System.nanoTime() - startNanos);
+              } catch (Throwable throwable) {
+                error.compareAndSet(null, throwable);
+              } finally {
+                done.countDown();
+              }
+            }
+          });
+      thread.setDaemon(true);
+      thread.start();
+    }
+    start.countDown();
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertNull(error.get());
+
+    System.out.println(
+        String.format(
+            (Locale) null,
+            "DiskStorageCache %s: %d ns per read, %d ns per write",
+            name,
+            readNanos.get() / (READER_COUNT * OPERATIONS_PER_THREAD),
+            writeNanos.get() / (WRITER_COUNT * OPERATIONS_PER_THREAD)));
+    cache.clearAll();
+  }
+
+  private DiskStorageCache createDiskCache(Executor evictionExecutor) {
+    return new DiskStorageCache(
+        mStorage,
+        new DefaultEntryEvictionComparatorSupplier(),
+        new DiskStorageCache.Params(0, CACHE_SIZE_LIMIT, CACHE_SIZE_LIMIT),
+        NoOpCacheEventListener.getInstance(),
+        mock(CacheErrorLogger.class),
+        mock(DiskTrimmableRegistry.class),
+        RuntimeEnvironment.application.getApplicationContext(),
+        Executors.newSingleThreadExecutor(),
+        false,
+        evictionExecutor);
+  }
+}
@@ -16,7 +16,9 @@ import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -47,6 +49,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareOnlyThisForTest;
@@ -62,9 +66,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -139,6 +145,21 @@ public class DiskStorageCacheTest {
   private DiskStorageCache createDiskCache(
       DiskStorage diskStorage,
       boolean indexPopulateAtStartupEnabled) {
+    return createDiskCache(diskStorage, indexPopulateAtStartupEnabled, null);
+  }
+
+  private DiskStorageCache createDiskCache(
+      DiskStorage diskStorage,
+      boolean indexPopulateAtStartupEnabled,
+      Executor evictionExecutor) {
+    return createDiskCache(diskStorage, indexPopulateAtStartupEnabled, evictionExecutor, false);
+  }
+
+  private DiskStorageCache createDiskCache(
+      DiskStorage diskStorage,
+      boolean indexPopulateAtStartupEnabled,
+      Executor evictionExecutor,
+      boolean negativeLookupFilterEnabled) {
     DiskStorageCache.Params diskStorageCacheParams =
         new DiskStorageCache.Params(
             0,
@@ -156,7 +177,9 @@ public class DiskStorageCacheTest {
         mDiskTrimmableRegistry,
         context,
         mBackgroundExecutor,
-        indexPopulateAtStartupEnabled);
+        indexPopulateAtStartupEnabled,
+        evictionExecutor,
+        negativeLookupFilterEnabled);
   }
 
   @Test
@@ -687,6 +710,184 @@ public class DiskStorageCacheTest {
     assertFalse(mCache.hasKey(key));
   }
 
+  @Test
+  public void testTimeEvictionSkipsEntryReadAfterListing() throws Exception {
+    when(mClock.now()).thenReturn(5l);
+    final CacheKey key = putOneThingInCache();
+    final String resourceId = CacheKeyUtil.getFirstResourceId(key);
+    DiskStorage storage = spy(mStorage);
+    final DiskStorageCache cache = createDiskCache(storage, false);
+    doAnswer(
+        new Answer<Object>() {
+          @Override
+          public Object answer(InvocationOnMock invocation) throws Throwable {
+            Object entries = invocation.callRealMethod();
+            // a read that doesn't wait for the eviction, with the same file timestamp
+            assertNotNull(cache.getResource(key));
+            return entries;
+          }
+        }).when(storage).getEntries();
+
+    cache.clearOldEntries(4);
+    assertTrue(mStorage.contains(resourceId, key));
+    assertTrue(cache.hasKey(key));
+  }
+
+  @Test
+  public void testSizeEvictionSkipsEntryReadAfterListing() throws Exception {
+    TestExecutorService evictionExecutor = new TestExecutorService(new FakeClock());
+    DiskStorage storage = spy(mStorage);
+    final DiskStorageCache cache = createDiskCache(storage, false, evictionExecutor);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    final CacheKey key1 = putOneThingInCache(cache);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    cache.insert(new SimpleCacheKey("bar"), WriterCallbacks.from(new byte[150]));
+    doAnswer(
+        new Answer<Object>() {
+          @Override
+          public Object answer(InvocationOnMock invocation) throws Throwable {
+            Object entries = invocation.callRealMethod();
+            // the least recently used entry is read before the eviction removes it
+            assertTrue(cache.probe(key1));
+            return entries;
+          }
+        }).when(storage).getEntries();
+
+    evictionExecutor.runUntilIdle();
+    assertTrue(cache.hasKeySync(key1));
+    assertTrue(cache.hasKey(key1));
+  }
+
+  @Test
+  public void testSizeEvictionInBackground() throws Exception {
+    TestExecutorService evictionExecutor = new TestExecutorService(new FakeClock());
+    DiskStorageCache cache = createDiskCache(mStorage, false, evictionExecutor);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    CacheKey key1 = putOneThingInCache(cache);
+    CacheKey key2 = new SimpleCacheKey("bar");
+    byte[] value2 = new byte[150];
+    value2[80] = 'c';
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    cache.insert(key2, WriterCallbacks.from(value2));
+    // now over limit, but the inserts didn't wait for the eviction
+    assertTrue(cache.hasKeySync(key1));
+    assertTrue(cache.hasKeySync(key2));
+
+    evictionExecutor.runUntilIdle();
+    assertFalse(cache.hasKeySync(key1));
+    assertFalse(cache.hasKey(key1));
+    assertTrue(cache.hasKeySync(key2));
+    assertTrue(cache.hasKey(key2));
+  }
+
+  @Test
+  public void testBackgroundEvictionsAreCoalesced() throws Exception {
+    TestExecutorService evictionExecutor = new TestExecutorService(new FakeClock());
+    DiskStorageCache cache = createDiskCache(mStorage, false, evictionExecutor);
+    putOneThingInCache(cache);
+    cache.insert(new SimpleCacheKey("bar"), WriterCallbacks.from(new byte[150]));
+    cache.insert(new SimpleCacheKey("baz"), WriterCallbacks.from(new byte[150]));
+    assertEquals(1, evictionExecutor.getPendingCount());
+
+    evictionExecutor.runUntilIdle();
+    cache.insert(new SimpleCacheKey("qux"), WriterCallbacks.from(new byte[150]));
+    assertEquals(1, evictionExecutor.getPendingCount());
+  }
+
+  @Test
+  public void testNegativeLookupFilter() throws Exception {
+    DiskStorageCache cache = createDiskCache(mStorage, false, null, true);
+    CacheKey key1 = new SimpleCacheKey("foo");
+    CacheKey key2 = new SimpleCacheKey("bar");
+    // nothing is known before the storage has been listed
+    assertFalse(cache.isKeyAbsentSync(key1));
+    assertFalse(cache.isKeyAbsentSync(key2));
+
+    putOneThingInCache(cache);
+    assertFalse(cache.isKeyAbsentSync(key1));
+    assertTrue(cache.isKeyAbsentSync(key2));
+
+    cache.remove(key1);
+    assertTrue(cache.isKeyAbsentSync(key1));
+
+    putOneThingInCache(cache);
+    cache.clearAll();
+    assertTrue(cache.isKeyAbsentSync(key1));
+  }
+
+  @Test
+  public void testNegativeLookupFilterIsBuiltFromStorage() throws Exception {
+    CacheKey key1 = putOneThingInCache();
+    CacheKey key2 = new SimpleCacheKey("bar");
+    // A new cache object in the same directory. Equivalent to a process restart.
+    DiskStorageCache cache2 = createDiskCache(mStorage, true, null, true);
+    assertFalse(cache2.isKeyAbsentSync(key2));
+
+    mBackgroundExecutor.runUntilIdle();
+    assertFalse(cache2.isKeyAbsentSync(key1));
+    assertTrue(cache2.isKeyAbsentSync(key2));
+  }
+
+  @Test
+  public void testNegativeLookupFilterAfterEviction() throws Exception {
+    DiskStorageCache cache = createDiskCache(mStorage, false, null, true);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    CacheKey key1 = putOneThingInCache(cache);
+    CacheKey key2 = new SimpleCacheKey("bar");
+    CacheKey key3 = new SimpleCacheKey("duck");
+    byte[] value2 = new byte[(int) FILE_CACHE_MAX_SIZE_HIGH_LIMIT];
+    value2[80] = 'c';
+    WriterCallback callback = WriterCallbacks.from(value2);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    cache.insert(key2, callback);
+    // now over limit. Next write will evict key1
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(3, TimeUnit.DAYS));
+    cache.insert(key3, callback);
+    assertTrue(cache.isKeyAbsentSync(key1));
+    assertFalse(cache.isKeyAbsentSync(key3));
+  }
+
+  /**
+   * Verify that reads don't wait for a thread holding the cache lock while it does file system
+   * operations.
+   */
+  @Test
+  public void testReadsDontWaitForFileSystemOperations() throws Exception {
+    final CountDownLatch walkStarted = new CountDownLatch(1);
+    final CountDownLatch walkAllowed = new CountDownLatch(1);
+    DiskStorage storage = spy(mStorage);
+    final DiskStorageCache cache = createDiskCache(storage, false);
+    when(mClock.now()).thenReturn(5l);
+    CacheKey key = putOneThingInCache(cache);
+    doAnswer(
+        new Answer<Object>() {
+          @Override
+          public Object answer(InvocationOnMock invocation) throws Throwable {
+            walkStarted.countDown();
+            walkAllowed.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+          }
+        }).when(storage).getEntries();
+    Thread thread = new Thread(
+        new Runnable() {
+          @Override
+          public void run() {
+            cache.clearOldEntries(4);
+          }
+        });
+    thread.setDaemon(true);
+    thread.start();
+    assertTrue(walkStarted.await(10, TimeUnit.SECONDS));
+
+    assertTrue(cache.hasKeySync(key));
+    assertTrue(cache.hasKey(key));
+    assertNotNull(cache.getResource(key));
+
+    walkAllowed.countDown();
+    thread.join(10000);
+    assertFalse(cache.hasKeySync(key));
+  }
+
   private CacheKey putOneThingInCache() throws IOException {
     return putOneThingInCache(mCache);
   }
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.cache.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.cache.common.CacheErrorLogger;
+import com.facebook.cache.common.WriterCallback;
+import com.facebook.common.file.FileTree;
+import com.facebook.common.internal.ByteStreams;
+import com.facebook.common.internal.Suppliers;
+import com.facebook.common.time.SystemClock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareOnlyThisForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PackedDiskStorage}
+ */
+@RunWith(RobolectricTestRunner.class)
+@PowerMockIgnore({ "org.mockito.*", "org.robolectric.*", "android.*" })
+@PrepareOnlyThisForTest({SystemClock.class})
+public class PackedDiskStorageTest {
+
+  private static final String DIRECTORY_NAME = "packed-disk-storage-test";
+  // room for two records of 100 bytes per segment
+  private static final long MAX_SEGMENT_SIZE = 256;
+
+  @Rule
+  public PowerMockRule rule = new PowerMockRule();
+
+  private File mDirectory;
+  private SystemClock mClock;
+
+  @Before
+  public void setUp() {
+    mClock = mock(SystemClock.class);
+    PowerMockito.mockStatic(SystemClock.class);
+    PowerMockito.when(SystemClock.get()).thenReturn(mClock);
+    mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), DIRECTORY_NAME);
+    FileTree.deleteRecursively(mDirectory);
+  }
+
+  @Test
+  public void testBasicOperations() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    assertNull(storage.getResource("resource1", null));
+
+    byte[] value1 = newValue(100, 1);
+    write(storage, "resource1", value1);
+    assertTrue(storage.contains("resource1", null));
+    assertArrayEquals(value1, read(storage.getResource("resource1", null)));
+    assertArrayEquals(
+        value1,
+        ByteStreams.toByteArray(storage.getResource("resource1", null).openStream()));
+
+    assertEquals(100, storage.remove("resource1"));
+    assertFalse(storage.contains("resource1", null));
+    assertNull(storage.getResource("resource1", null));
+    assertEquals(0, storage.remove("resource1"));
+  }
+
+  @Test
+  public void testOverwrite() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    write(storage, "resource1", newValue(100, 1));
+    byte[] value2 = newValue(50, 2);
+    write(storage, "resource1", value2);
+    assertArrayEquals(value2, read(storage.getResource("resource1", null)));
+    assertEquals(1, storage.getEntries().size());
+  }
+
+  @Test
+  public void testEntriesAreReloaded() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    when(mClock.now()).thenReturn(1000L);
+    byte[] value1 = newValue(100, 1);
+    write(storage, "resource1", value1);
+    when(mClock.now()).thenReturn(2000L);
+    write(storage, "resource2", newValue(100, 2));
+    when(mClock.now()).thenReturn(3000L);
+    storage.touch("resource1", null);
+    storage.remove("resource2");
+
+    List<DiskStorage.Entry> entries = new ArrayList<>(createStorage().getEntries());
+    assertEquals(1, entries.size());
+    assertEquals("resource1", entries.get(0).getId());
+    assertEquals(100, entries.get(0).getSize());
+    assertEquals(3000L, entries.get(0).getTimestamp());
+    assertArrayEquals(value1, read(entries.get(0).getResource()));
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    for (int i = 1; i <= 4; i++) {
+      write(storage, "resource" + i, newValue(100, i));
+    }
+    storage.remove("resource1");
+    storage.remove("resource2");
+    int segmentCount = storage.getSegmentCount();
+    assertEquals(3, segmentCount);
+
+    // the first segment only has dead resources
+    storage.purgeUnexpectedResources();
+    assertEquals(segmentCount - 1, storage.getSegmentCount());
+    assertArrayEquals(newValue(100, 3), read(storage.getResource("resource3", null)));
+    assertArrayEquals(newValue(100, 4), read(storage.getResource("resource4", null)));
+
+    PackedDiskStorage reloaded = createStorage();
+    assertEquals(2, reloaded.getEntries().size());
+    assertArrayEquals(newValue(100, 3), read(reloaded.getResource("resource3", null)));
+  }
+
+  @Test
+  public void testLiveResourcesAreMovedByCompaction() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    for (int i = 1; i <= 4; i++) {
+      write(storage, "resource" + i, newValue(100, i));
+    }
+    storage.remove("resource1");
+    storage.purgeUnexpectedResources();
+
+    PackedDiskStorage reloaded = createStorage();
+    Collection<DiskStorage.Entry> entries = reloaded.getEntries();
+    assertEquals(3, entries.size());
+    assertArrayEquals(newValue(100, 2), read(reloaded.getResource("resource2", null)));
+  }
+
+  @Test
+  public void testDeadestSegmentIsCompacted() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    for (int i = 1; i <= 6; i++) {
+      write(storage, "resource" + i, newValue(100, i));
+    }
+    storage.remove("resource3");
+    storage.remove("resource4");
+    assertEquals(4, storage.getSegmentCount());
+
+    // the second segment only has dead resources, the first one is still live
+    storage.purgeUnexpectedResources();
+    assertEquals(3, storage.getSegmentCount());
+
+    PackedDiskStorage reloaded = createStorage();
+    assertEquals(4, reloaded.getEntries().size());
+    assertArrayEquals(newValue(100, 1), read(reloaded.getResource("resource1", null)));
+    assertArrayEquals(newValue(100, 6), read(reloaded.getResource("resource6", null)));
+  }
+
+  @Test
+  public void testRemoveRecordsAreKeptByCompaction() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    write(storage, "resource1", newValue(20, 1));
+    write(storage, "resource2", newValue(150, 2));
+    // the second segment gets the remove record of a resource of the first one
+    write(storage, "resource3", newValue(100, 3));
+    storage.remove("resource1");
+    storage.remove("resource3");
+    write(storage, "resource4", newValue(200, 4));
+
+    storage.purgeUnexpectedResources();
+    assertFalse(new File(getVersionDirectory(), "1.seg").exists());
+    assertTrue(new File(getVersionDirectory(), "0.seg").exists());
+
+    PackedDiskStorage reloaded = createStorage();
+    assertEquals(2, reloaded.getEntries().size());
+    assertFalse(reloaded.contains("resource1", null));
+    assertTrue(reloaded.contains("resource2", null));
+  }
+
+  @Test
+  public void testTouchesAreWrittenLater() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    when(mClock.now()).thenReturn(1000L);
+    write(storage, "resource1", newValue(100, 1));
+    File segmentFile = new File(getVersionDirectory(), "0.seg");
+    long segmentLength = segmentFile.length();
+
+    when(mClock.now()).thenReturn(2000L);
+    storage.touch("resource1", null);
+    assertEquals(segmentLength, segmentFile.length());
+    assertEquals(2000L, storage.getTimestamp("resource1"));
+    assertEquals(1000L, createStorage().getTimestamp("resource1"));
+
+    storage.purgeUnexpectedResources();
+    assertEquals(2000L, createStorage().getTimestamp("resource1"));
+  }
+
+  @Test
+  public void testIncompleteRecordIsDropped() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    write(storage, "resource1", newValue(100, 1));
+    write(storage, "resource2", newValue(100, 2));
+
+    File segmentFile = new File(
+        new File(mDirectory, PackedDiskStorage.getVersionSubdirectoryName(1)),
+        "0.seg");
+    RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+    try {
+      file.setLength(file.length() - 10);
+    } finally {
+      file.close();
+    }
+
+    PackedDiskStorage reloaded = createStorage();
+    assertTrue(reloaded.contains("resource1", null));
+    assertFalse(reloaded.contains("resource2", null));
+    write(reloaded, "resource3", newValue(100, 3));
+
+    PackedDiskStorage reloadedAgain = createStorage();
+    assertEquals(2, reloadedAgain.getEntries().size());
+    assertArrayEquals(newValue(100, 3), read(reloadedAgain.getResource("resource3", null)));
+  }
+
+  @Test
+  public void testClearAll() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    write(storage, "resource1", newValue(100, 1));
+    storage.clearAll();
+    assertFalse(storage.contains("resource1", null));
+    write(storage, "resource2", newValue(100, 2));
+    assertEquals(1, createStorage().getEntries().size());
+  }
+
+  @Test
+  public void testUnexpectedFilesArePurged() throws Exception {
+    PackedDiskStorage storage = createStorage();
+    write(storage, "resource1", newValue(100, 1));
+    File bogusFile = new File(
+        new File(mDirectory, PackedDiskStorage.getVersionSubdirectoryName(1)),
+        "bogus");
+    assertTrue(bogusFile.createNewFile());
+    storage.purgeUnexpectedResources();
+    assertFalse(bogusFile.exists());
+    assertTrue(storage.contains("resource1", null));
+  }
+
+  private PackedDiskStorage createStorage() {
+    return new PackedDiskStorage(
+        1,
+        Suppliers.of(RuntimeEnvironment.application.getCacheDir()),
+        DIRECTORY_NAME,
+        mock(CacheErrorLogger.class),
+        MAX_SEGMENT_SIZE);
+  }
+
+  private File getVersionDirectory() {
+    return new File(mDirectory, PackedDiskStorage.getVersionSubdirectoryName(1));
+  }
+
+  private static byte[] newValue(int size, int seed) {
+    byte[] value = new byte[size];
+    for (int i = 0; i < size; i++) {
+      value[i] = (byte) (i * seed);
+    }
+    return value;
+  }
+
+  private static void write(PackedDiskStorage storage, String resourceId, final byte[] value)
+      throws IOException {
+    DiskStorage.Inserter inserter = storage.insert(resourceId, null);
+    inserter.writeData(
+        new WriterCallback() {
+          @Override
+          public void write(OutputStream os) throws IOException {
+            os.write(value);
+          }
+        },
+        null);
+    inserter.commit(null);
+  }
+
+  private static byte[] read(BinaryResource resource) throws IOException {
+    return resource.read();
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import android.os.SystemClock;
+
+import com.facebook.common.internal.Supplier;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+
+import com.android.internal.util.Predicate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@PrepareForTest({SystemClock.class})
+@PowerMockIgnore({ "org.mockito.*", "org.robolectric.*", "android.*" })
+@Config(manifest=Config.NONE)
+public class SegmentedCountingMemoryCacheTest {
+
+  private static final int SEGMENT_COUNT = 4;
+  private static final int CACHE_MAX_SIZE = 1200;
+  private static final int CACHE_MAX_COUNT = 4;
+  private static final int CACHE_EVICTION_QUEUE_MAX_SIZE = 1100;
+  private static final int CACHE_EVICTION_QUEUE_MAX_COUNT = 3;
+  private static final int CACHE_ENTRY_MAX_SIZE = 1000;
+
+  private static final String[] KEYS =
+      new String[] {"k0", "k1", "k2", "k3", "k4", "k5", "k6", "k7", "k8", "k9"};
+
+  @Mock public ResourceReleaser<Integer> mReleaser;
+  @Mock public CountingMemoryCache.CacheTrimStrategy mCacheTrimStrategy;
+  @Mock public Supplier<MemoryCacheParams> mParamsSupplier;
+  @Mock public CountingMemoryCache.EntryStateObserver<String> mEntryStateObserver;
+
+  @Rule
+  public PowerMockRule rule = new PowerMockRule();
+
+  private SegmentedCountingMemoryCache<String, Integer> mCache;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    PowerMockito.mockStatic(SystemClock.class);
+    PowerMockito.when(SystemClock.uptimeMillis()).thenReturn(0L);
+    ValueDescriptor<Integer> valueDescriptor =
+        new ValueDescriptor<Integer>() {
+          @Override
+          public int getSizeInBytes(Integer value) {
+            return value;
+          }
+        };
+    MemoryCacheParams params = new MemoryCacheParams(
+        CACHE_MAX_SIZE,
+        CACHE_MAX_COUNT,
+        CACHE_EVICTION_QUEUE_MAX_SIZE,
+        CACHE_EVICTION_QUEUE_MAX_COUNT,
+        CACHE_ENTRY_MAX_SIZE);
+    when(mParamsSupplier.get()).thenReturn(params);
+    mCache = new SegmentedCountingMemoryCache<>(
+        valueDescriptor,
+        mCacheTrimStrategy,
+        mParamsSupplier,
+        Mockito.mock(PlatformBitmapFactory.class),
+        false,
+        SEGMENT_COUNT);
+  }
+
+  @Test
+  public void testSegmentIndex() {
+    for (String key : KEYS) {
+      int index = mCache.getSegmentIndex(key);
+      assertTrue(index >= 0 && index < SEGMENT_COUNT);
+      assertEquals(index, mCache.getSegmentIndex(key));
+    }
+  }
+
+  @Test
+  public void testCacheAndGet() {
+    CloseableReference<Integer> cachedRef = mCache.cache(KEYS[0], newReference(100));
+    assertTotalSize(1, 100);
+    assertExclusivelyOwnedSize(0, 0);
+    assertTrue(mCache.contains(KEYS[0]));
+    assertTrue(getSegment(KEYS[0]).mCachedEntries.contains(KEYS[0]));
+
+    CloseableReference<Integer> ref = mCache.get(KEYS[0]);
+    assertNotNull(ref);
+    assertEquals(100, (int) ref.get());
+    assertEquals(2, getSegment(KEYS[0]).mCachedEntries.get(KEYS[0]).clientCount);
+    assertNull(mCache.get(KEYS[1]));
+
+    cachedRef.close();
+    ref.close();
+    assertTotalSize(1, 100);
+    assertExclusivelyOwnedSize(1, 100);
+    assertTrue(getSegment(KEYS[0]).mExclusiveEntries.contains(KEYS[0]));
+    verify(mReleaser, never()).release(anyInt());
+  }
+
+  @Test
+  public void testToggleExclusive() {
+    CloseableReference<Integer> cachedRef =
+        mCache.cache(KEYS[0], newReference(100), mEntryStateObserver);
+    cachedRef.close();
+    verify(mEntryStateObserver).onExclusivityChanged(KEYS[0], true);
+    mCache.get(KEYS[0]);
+    verify(mEntryStateObserver).onExclusivityChanged(KEYS[0], false);
+    assertExclusivelyOwnedSize(0, 0);
+  }
+
+  @Test
+  public void testReuseExclusive() {
+    CloseableReference<Integer> cachedRef = mCache.cache(KEYS[0], newReference(100));
+    assertNull(mCache.reuse(KEYS[0]));
+    cachedRef.close();
+    CloseableReference<Integer> reusedRef = mCache.reuse(KEYS[0]);
+    assertNotNull(reusedRef);
+    assertTotalSize(0, 0);
+    assertExclusivelyOwnedSize(0, 0);
+    reusedRef.close();
+    verify(mReleaser).release(100);
+  }
+
+  @Test
+  public void testEvictionCountAcrossSegments() {
+    for (int i = 0; i < CACHE_MAX_COUNT; i++) {
+      mCache.cache(KEYS[i], newReference(100 + i)).close();
+    }
+    // the eviction queue holds at most 3 entries in total, regardless of their segments
+    assertTotalSize(CACHE_EVICTION_QUEUE_MAX_COUNT, getSegmentsSize());
+    assertExclusivelyOwnedSize(CACHE_EVICTION_QUEUE_MAX_COUNT, getSegmentsSize());
+    verify(mReleaser, times(1)).release(anyInt());
+  }
+
+  @Test
+  public void testCannotCacheAboveGlobalSize() {
+    CloseableReference<Integer> ref1 = mCache.cache(KEYS[0], newReference(700));
+    CloseableReference<Integer> ref2 = mCache.cache(KEYS[1], newReference(600));
+    assertNotNull(ref1);
+    assertNull(ref2);
+    assertTotalSize(1, 700);
+    ref1.close();
+  }
+
+  @Test
+  public void testRemoveAllAndClear() {
+    CloseableReference<Integer> ref0 = mCache.cache(KEYS[0], newReference(100));
+    mCache.cache(KEYS[1], newReference(110)).close();
+    mCache.cache(KEYS[2], newReference(120)).close();
+
+    int removed = mCache.removeAll(
+        new Predicate<String>() {
+          @Override
+          public boolean apply(String key) {
+            return key.equals(KEYS[1]);
+          }
+        });
+    assertEquals(1, removed);
+    assertFalse(mCache.contains(KEYS[1]));
+    assertTotalSize(2, 220);
+    assertExclusivelyOwnedSize(1, 120);
+    verify(mReleaser).release(110);
+
+    mCache.clear();
+    assertTotalSize(0, 0);
+    assertExclusivelyOwnedSize(0, 0);
+    verify(mReleaser).release(120);
+    verify(mReleaser, never()).release(100);
+    ref0.close();
+    verify(mReleaser).release(100);
+  }
+
+  @Test
+  public void testTrimming() {
+    MemoryTrimType memoryTrimType = MemoryTrimType.OnCloseToDalvikHeapLimit;
+    CloseableReference<Integer> ref0 = mCache.cache(KEYS[0], newReference(100));
+    mCache.cache(KEYS[1], newReference(110)).close();
+    mCache.cache(KEYS[2], newReference(120)).close();
+
+    when(mCacheTrimStrategy.getTrimRatio(memoryTrimType)).thenReturn(1.00);
+    mCache.trim(memoryTrimType);
+    assertTotalSize(1, 100);
+    assertExclusivelyOwnedSize(0, 0);
+    verify(mReleaser).release(110);
+    verify(mReleaser).release(120);
+    ref0.close();
+  }
+
+  @Test
+  public void testEvictionPolicyNameCoversAllSegments() {
+    assertEquals(
+        new LruEvictionPolicy<String>().getName() + " x" + SEGMENT_COUNT,
+        mCache.getEvictionPolicyName());
+  }
+
+  @Test
+  public void testSetCreationListener() {
+    PlatformBitmapFactory platformBitmapFactory = Mockito.mock(PlatformBitmapFactory.class);
+    new SegmentedCountingMemoryCache<String, Integer>(
+        new ValueDescriptor<Integer>() {
+          @Override
+          public int getSizeInBytes(Integer value) {
+            return value;
+          }
+        },
+        mCacheTrimStrategy,
+        mParamsSupplier,
+        platformBitmapFactory,
+        true,
+        SEGMENT_COUNT);
+
+    verify(platformBitmapFactory)
+        .setCreationListener(any(PlatformBitmapFactory.BitmapCreationObserver.class));
+  }
+
+  private SegmentedCountingMemoryCache.Segment<String, Integer> getSegment(String key) {
+    return mCache.mSegments[mCache.getSegmentIndex(key)];
+  }
+
+  private int getSegmentsSize() {
+    int size = 0;
+    for (SegmentedCountingMemoryCache.Segment<String, Integer> segment : mCache.mSegments) {
+      size += segment.mCachedEntries.getSizeInBytes();
+    }
+    return size;
+  }
+
+  private CloseableReference<Integer> newReference(int size) {
+    return CloseableReference.of(size, mReleaser);
+  }
+
+  private void assertTotalSize(int count, int bytes) {
+    assertEquals("total cache count mismatch", count, mCache.getCount());
+    assertEquals("total cache size mismatch", bytes, mCache.getSizeInBytes());
+  }
+
+  private void assertExclusivelyOwnedSize(int count, int bytes) {
+    assertEquals("total exclusives count mismatch", count, mCache.getEvictionQueueCount());
+    assertEquals("total exclusives size mismatch", bytes, mCache.getEvictionQueueSizeInBytes());
+  }
+}
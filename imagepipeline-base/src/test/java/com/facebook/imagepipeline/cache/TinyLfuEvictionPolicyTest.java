@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TinyLfuEvictionPolicyTest {
+
+  private TinyLfuEvictionPolicy<String> mPolicy;
+  private CountingLruMap<String, Integer> mExclusiveEntries;
+
+  @Before
+  public void setUp() {
+    mPolicy = new TinyLfuEvictionPolicy<>(100);
+    mExclusiveEntries = new CountingLruMap<>(
+        new ValueDescriptor<Integer>() {
+          @Override
+          public int getSizeInBytes(Integer value) {
+            return value;
+          }
+        });
+  }
+
+  @Test
+  public void testEmpty() {
+    assertNull(mPolicy.getEvictionCandidate(mExclusiveEntries));
+  }
+
+  @Test
+  public void testFrequentEntrySurvivesScan() {
+    addExclusive("cold0", 1);
+    addExclusive("hot", 5);
+    addExclusive("cold1", 1);
+    // nothing to compete with yet, the oldest entry gets evicted
+    assertEquals("cold0", evict());
+
+    addExclusive("cold2", 1);
+    addExclusive("cold3", 1);
+    assertEquals("cold1", evict());
+    assertEquals("cold2", evict());
+    assertTrue(mExclusiveEntries.contains("hot"));
+  }
+
+  @Test
+  public void testFrequentCandidateIsAdmitted() {
+    addExclusive("cold0", 1);
+    addExclusive("cold1", 1);
+    addExclusive("cold2", 1);
+    assertEquals("cold0", evict());
+
+    addExclusive("hot", 5);
+    addExclusive("cold3", 1);
+    // cold2 loses against cold1, then hot wins against cold1
+    assertEquals("cold2", evict());
+    assertEquals("cold1", evict());
+    assertTrue(mPolicy.mMain.contains("hot"));
+  }
+
+  @Test
+  public void testReusedEntryIsNotCandidate() {
+    addExclusive("a", 1);
+    addExclusive("b", 1);
+    mExclusiveEntries.remove("a");
+    mPolicy.onExclusiveEntryRemoved("a");
+    assertFalse(mPolicy.mWindow.contains("a"));
+    assertEquals("b", evict());
+  }
+
+  @Test
+  public void testFrequencySketch() {
+    FrequencySketch sketch = new FrequencySketch(100);
+    assertEquals(0, sketch.frequency(42));
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(15, sketch.frequency(42));
+    sketch.reset();
+    assertEquals(7, sketch.frequency(42));
+  }
+
+  private void addExclusive(String key, int accessCount) {
+    for (int i = 0; i < accessCount; i++) {
+      mPolicy.onAccess(key);
+    }
+    mExclusiveEntries.put(key, 1);
+    mPolicy.onExclusiveEntryAdded(key);
+  }
+
+  private String evict() {
+    String key = mPolicy.getEvictionCandidate(mExclusiveEntries);
+    mExclusiveEntries.remove(key);
+    mPolicy.onExclusiveEntryRemoved(key);
+    return key;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.common;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RegionDecodeOptionsTest {
+
+  @Test
+  public void testDimensions() {
+    RegionDecodeOptions regionDecodeOptions = new RegionDecodeOptions(10, 20, 110, 70, 4);
+
+    assertThat(regionDecodeOptions.getWidth()).isEqualTo(100);
+    assertThat(regionDecodeOptions.getHeight()).isEqualTo(50);
+    assertThat(regionDecodeOptions.sampleSize).isEqualTo(4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRegion() {
+    new RegionDecodeOptions(10, 20, 10, 70);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSampleSizeNotPowerOfTwo() {
+    new RegionDecodeOptions(0, 0, 100, 100, 3);
+  }
+
+  @Test
+  public void testDecodeOptionsOfDifferentTilesAreDifferent() {
+    ImageDecodeOptions tile = ImageDecodeOptions.newBuilder()
+        .setRegionDecodeOptions(new RegionDecodeOptions(0, 0, 256, 256, 2))
+        .build();
+    ImageDecodeOptions sameTile = ImageDecodeOptions.newBuilder()
+        .setRegionDecodeOptions(new RegionDecodeOptions(0, 0, 256, 256, 2))
+        .build();
+    ImageDecodeOptions otherLevel = ImageDecodeOptions.newBuilder()
+        .setRegionDecodeOptions(new RegionDecodeOptions(0, 0, 256, 256, 1))
+        .build();
+
+    assertThat(tile).isEqualTo(sameTile);
+    assertThat(tile.hashCode()).isEqualTo(sameTile.hashCode());
+    assertThat(tile).isNotEqualTo(otherLevel);
+    assertThat(tile).isNotEqualTo(ImageDecodeOptions.defaults());
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.facebook.common.time.MonotonicClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InstrumentedThreadPoolExecutorTest {
+
+  private static final String NAME = "test";
+  private static final String REQUEST_ID = "request";
+
+  private AtomicLong mNowMs;
+  private MonotonicClock mClock;
+  private ExecutorObserver mObserver;
+
+  @Before
+  public void setUp() {
+    mNowMs = new AtomicLong(0);
+    mClock = new MonotonicClock() {
+      @Override
+      public long now() {
+        return mNowMs.get();
+      }
+    };
+    mObserver = mock(ExecutorObserver.class);
+  }
+
+  @Test
+  public void testMeasuresWaitAndRunTimes() throws Exception {
+    InstrumentedThreadPoolExecutor executor = createExecutor(1, 1);
+    CountDownLatch blocker = blockThread(executor);
+    executor.execute(advanceClockBy(20));
+    assertEquals(1, executor.getQueueDepth());
+
+    mNowMs.set(100);
+    blocker.countDown();
+    awaitTermination(executor);
+
+    // the blocking task waited 0 ms and ran 100 ms, the other one waited 100 ms and ran 20 ms
+    assertEquals(100, executor.getTotalWaitTimeMs());
+    assertEquals(120, executor.getTotalRunTimeMs());
+    verify(mObserver).onTaskStarted(NAME, null, 100);
+    verify(mObserver).onTaskFinished(NAME, null, 100, 20);
+  }
+
+  @Test
+  public void testReportsRequestIds() throws Exception {
+    InstrumentedThreadPoolExecutor executor = createExecutor(1, 1);
+    CountDownLatch blocker = blockThread(executor);
+    executor.execute(
+        new RequestRunnable() {
+          @Override
+          public void run() {
+            mNowMs.addAndGet(20);
+          }
+
+          @Override
+          public String getRequestId() {
+            return REQUEST_ID;
+          }
+        });
+    verify(mObserver).onTaskQueued(NAME, REQUEST_ID, 0);
+
+    mNowMs.set(100);
+    blocker.countDown();
+    awaitTermination(executor);
+
+    verify(mObserver).onTaskStarted(NAME, REQUEST_ID, 100);
+    verify(mObserver).onTaskFinished(NAME, REQUEST_ID, 100, 20);
+  }
+
+  @Test
+  public void testNeverRunsTasksOnSubmittingThread() throws Exception {
+    InstrumentedThreadPoolExecutor executor = createExecutor(1, 1);
+    CountDownLatch blocker = blockThread(executor);
+    final Thread[] runningThreads = new Thread[256];
+    for (int i = 0; i < runningThreads.length; i++) {
+      final int index = i;
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              runningThreads[index] = Thread.currentThread();
+            }
+          });
+    }
+    assertEquals(runningThreads.length, executor.getQueueDepth());
+
+    blocker.countDown();
+    awaitTermination(executor);
+
+    for (Thread thread : runningThreads) {
+      assertNotSame(Thread.currentThread(), thread);
+    }
+  }
+
+  @Test
+  public void testAddsThreadWhenTasksWait() throws Exception {
+    InstrumentedThreadPoolExecutor executor = createExecutor(1, 2);
+    CountDownLatch blocker = blockThread(executor);
+    for (int i = 0; i < InstrumentedThreadPoolExecutor.ADJUSTMENT_INTERVAL; i++) {
+      executor.execute(advanceClockBy(0));
+    }
+
+    mNowMs.set(10 * InstrumentedThreadPoolExecutor.LONG_WAIT_TIME_MS);
+    blocker.countDown();
+    awaitTermination(executor);
+
+    assertEquals(2, executor.getCorePoolSize());
+    verify(mObserver).onParallelismChanged(NAME, 2);
+  }
+
+  @Test
+  public void testRemovesThreadWhenTasksDoNotWait() throws Exception {
+    InstrumentedThreadPoolExecutor executor = createExecutor(1, 2);
+    executor.setCorePoolSize(2);
+    for (int i = 0; i < InstrumentedThreadPoolExecutor.ADJUSTMENT_INTERVAL; i++) {
+      executor.execute(advanceClockBy(0));
+    }
+    awaitTermination(executor);
+
+    assertEquals(1, executor.getCorePoolSize());
+    verify(mObserver).onParallelismChanged(NAME, 1);
+  }
+
+  private InstrumentedThreadPoolExecutor createExecutor(
+      int minThreads,
+      int maxThreads) {
+    return new InstrumentedThreadPoolExecutor(
+        NAME,
+        minThreads,
+        maxThreads,
+        Executors.defaultThreadFactory(),
+        mObserver,
+        mClock);
+  }
+
+  /**
+   * Submits a task that occupies a thread until the returned latch is counted down.
+   */
+  private CountDownLatch blockThread(InstrumentedThreadPoolExecutor executor) throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocker = new CountDownLatch(1);
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            started.countDown();
+            try {
+              blocker.await();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        });
+    started.await();
+    return blocker;
+  }
+
+  private Runnable advanceClockBy(final long runTimeMs) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        mNowMs.addAndGet(runTimeMs);
+      }
+    };
+  }
+
+  private static void awaitTermination(InstrumentedThreadPoolExecutor executor) throws Exception {
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+}
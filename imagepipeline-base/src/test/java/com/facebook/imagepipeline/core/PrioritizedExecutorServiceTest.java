@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+
+package com.facebook.imagepipeline.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import com.facebook.imagepipeline.common.Priority;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PrioritizedExecutorServiceTest {
+
+  private Queue<Runnable> mDelegateQueue;
+  private List<String> mExecuted;
+  private PrioritizedExecutorService mExecutorService;
+
+  @Before
+  public void setUp() {
+    mDelegateQueue = new LinkedList<>();
+    mExecuted = new ArrayList<>();
+    mExecutorService = new PrioritizedExecutorService(
+        "test",
+        1,
+        new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            mDelegateQueue.add(command);
+          }
+        });
+  }
+
+  @Test
+  public void testRank() {
+    assertTrue(
+        PrioritizedExecutorService.getRank(Priority.LOW, false) >
+            PrioritizedExecutorService.getRank(Priority.HIGH, true));
+    assertTrue(
+        PrioritizedExecutorService.getRank(Priority.HIGH, false) >
+            PrioritizedExecutorService.getRank(Priority.MEDIUM, false));
+    assertEquals(
+        PrioritizedExecutorService.getRank(Priority.HIGH, false),
+        PrioritizedExecutorService.getRank(new TestRunnable("plain")));
+  }
+
+  @Test
+  public void testExecutesInOrderOfPriority() {
+    mExecutorService.execute(new TestPrioritizedRunnable("low", Priority.LOW, false));
+    mExecutorService.execute(new TestPrioritizedRunnable("prefetch", Priority.HIGH, true));
+    mExecutorService.execute(new TestPrioritizedRunnable("medium1", Priority.MEDIUM, false));
+    mExecutorService.execute(new TestPrioritizedRunnable("medium2", Priority.MEDIUM, false));
+    mExecutorService.execute(new TestRunnable("plain"));
+
+    // only one worker is started
+    assertEquals(1, mDelegateQueue.size());
+    runDelegate();
+    assertEquals(5, mExecuted.size());
+    assertEquals("plain", mExecuted.get(0));
+    assertEquals("medium1", mExecuted.get(1));
+    assertEquals("medium2", mExecuted.get(2));
+    assertEquals("low", mExecuted.get(3));
+    assertEquals("prefetch", mExecuted.get(4));
+    assertTrue(mExecutorService.isIdle());
+  }
+
+  @Test
+  public void testPriorityChangeWhileQueued() {
+    TestPrioritizedRunnable first = new TestPrioritizedRunnable("first", Priority.HIGH, false);
+    TestPrioritizedRunnable second = new TestPrioritizedRunnable("second", Priority.HIGH, false);
+    mExecutorService.execute(first);
+    mExecutorService.execute(second);
+    assertEquals(2, mExecutorService.getPendingTaskCount());
+
+    // the first one became a prefetch, e.g. the image went off screen
+    first.mIsPrefetch = true;
+    runDelegate();
+    assertEquals("second", mExecuted.get(0));
+    assertEquals("first", mExecuted.get(1));
+    assertEquals(0, mExecutorService.getPendingTaskCount());
+  }
+
+  private void runDelegate() {
+    Runnable runnable;
+    while ((runnable = mDelegateQueue.poll()) != null) {
+      runnable.run();
+    }
+  }
+
+  private class TestRunnable implements Runnable {
+    private final String mName;
+
+    TestRunnable(String name) {
+      mName = name;
+    }
+
+    @Override
+    public void run() {
+      mExecuted.add(mName);
+    }
+  }
+
+  private class TestPrioritizedRunnable extends TestRunnable implements PrioritizedRunnable {
+    private final Priority mPriority;
+    private boolean mIsPrefetch;
+
+    TestPrioritizedRunnable(String name, Priority priority, boolean isPrefetch) {
+      super(name);
+      mPriority = priority;
+      mIsPrefetch = isPrefetch;
+    }
+
+    @Override
+    public Priority getPriority() {
+      return mPriority;
+    }
+
+    @Override
+    public boolean isPrefetch() {
+      return mIsPrefetch;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.image;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.facebook.common.internal.ByteStreams;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Benchmark of {@link EncodedImage#parseMetaData()}: the single pass parser against the stream
+ * based parsing it replaces, over images of each default format. Each variant is warmed up before
+ * it is timed. The timings are printed, so that they can be compared between runs; the test
+ * itself only checks that both variants find the same meta data.
+ *
+ * <p> It is not part of the unit test run, ImageMetaDataParserTest#testMatchesStreamParsing checks
+ * the same meta data: remove the {@link Ignore} annotation locally to run it.
+ */
+@Ignore("Benchmark, run it manually")
+@RunWith(RobolectricTestRunner.class)
+public class ImageMetaDataParserBenchmarkTest {
+
+  private static final String[] IMAGES = {
+      "/com/facebook/imageutils/jpegs/1.jpeg",
+      "/com/facebook/imageutils/jpegs/1prog.jpeg",
+      "/com/facebook/imageutils/pngs/1.png",
+      "/com/facebook/imageutils/gifs/1.gif",
+      "/com/facebook/imageutils/bmps/1.bmp",
+      "images/1_webp_plain.webp",
+      "images/1_webp_ll.webp",
+      "images/1_webp_ea.webp",
+  };
+
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int ITERATIONS = 200;
+
+  @Test
+  public void testSinglePassAgainstStreams() throws IOException {
+    for (String image : IMAGES) {
+      final EncodedImage singlePass = newEncodedImage(image);
+      final EncodedImage streams = newEncodedImage(image);
+      try {
+        final long singlePassNanos = time(singlePass, true);
+        final long streamsNanos = time(streams, false);
+
+        assertSame(streams.getImageFormat(), singlePass.getImageFormat());
+        assertEquals(streams.getWidth(), singlePass.getWidth());
+        assertEquals(streams.getHeight(), singlePass.getHeight());
+        assertEquals(streams.getRotationAngle(), singlePass.getRotationAngle());
+        System.out.println(
+            String.format(
+                (Locale) null,
+                "parseMetaData %s: %d ns single pass, %d ns with streams",
+                image,
+                singlePassNanos,
+                streamsNanos));
+      } finally {
+        singlePass.close();
+        streams.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the average time to parse the meta data of the image, in nanoseconds.
+   */
+  private static long time(EncodedImage encodedImage, boolean singlePass) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      parse(encodedImage, singlePass);
+    }
+    final long startNanos = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      parse(encodedImage, singlePass);
+    }
+    return (System.nanoTime() - startNanos) / ITERATIONS;
+  }
+
+  private static void parse(EncodedImage encodedImage, boolean singlePass) {
+    // the rotation is only read from the EXIF data if it is unknown
+    encodedImage.setRotationAngle(EncodedImage.UNKNOWN_ROTATION_ANGLE);
+    if (singlePass) {
+      encodedImage.parseMetaData();
+    } else {
+      encodedImage.parseMetaDataFromStreams();
+    }
+  }
+
+  private static EncodedImage newEncodedImage(String path) throws IOException {
+    final PooledByteBuffer buffer = new TrivialPooledByteBuffer(ByteStreams.toByteArray(
+        ImageMetaDataParserBenchmarkTest.class.getResourceAsStream(path)));
+    final CloseableReference<PooledByteBuffer> bufferRef = CloseableReference.of(buffer);
+    try {
+      return new EncodedImage(bufferRef);
+    } finally {
+      CloseableReference.closeSafely(bufferRef);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.image;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.facebook.common.internal.ByteStreams;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormat;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static com.facebook.imageutils.JfifTestUtils.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ImageMetaDataParser}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ImageMetaDataParserTest {
+
+  private static final String IMAGEUTILS_RESOURCES = "/com/facebook/imageutils/";
+
+  @Test
+  public void testJpegs() throws IOException {
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/1.jpeg", DefaultImageFormats.JPEG, 240, 181);
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/2.jpeg", DefaultImageFormats.JPEG, 240, 93);
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/3.jpeg", DefaultImageFormats.JPEG, 240, 240);
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/1cut.jpeg", DefaultImageFormats.JPEG, 240, 181);
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/1prog.jpeg", DefaultImageFormats.JPEG, 981, 657);
+    checkImage(IMAGEUTILS_RESOURCES + "jpegs/2prog.jpeg", DefaultImageFormats.JPEG, 800, 531);
+    checkImage("images/image.jpg", DefaultImageFormats.JPEG, 550, 468);
+  }
+
+  @Test
+  public void testPngs() throws IOException {
+    checkImage(IMAGEUTILS_RESOURCES + "pngs/1.png", DefaultImageFormats.PNG, 240, 181);
+    checkImage(IMAGEUTILS_RESOURCES + "pngs/2.png", DefaultImageFormats.PNG, 240, 246);
+    checkImage("images/image.png", DefaultImageFormats.PNG, 800, 600);
+  }
+
+  @Test
+  public void testGifs() throws IOException {
+    checkImage(IMAGEUTILS_RESOURCES + "gifs/1.gif", DefaultImageFormats.GIF, 240, 181);
+    checkImage(IMAGEUTILS_RESOURCES + "animatedgifs/1.gif", DefaultImageFormats.GIF, 500, 500);
+    checkImage(IMAGEUTILS_RESOURCES + "animatedgifs/2.gif", DefaultImageFormats.GIF, 550, 400);
+  }
+
+  @Test
+  public void testBmps() throws IOException {
+    // stored top-down, with a negative height
+    checkImage(IMAGEUTILS_RESOURCES + "bmps/1.bmp", DefaultImageFormats.BMP, 240, 181);
+    checkImage(IMAGEUTILS_RESOURCES + "bmps/2.bmp", DefaultImageFormats.BMP, 240, 246);
+  }
+
+  @Test
+  public void testWebps() throws IOException {
+    checkImage("images/1_webp_plain.webp", DefaultImageFormats.WEBP_SIMPLE, 320, 214);
+    checkImage("images/1_webp_ll.webp", DefaultImageFormats.WEBP_LOSSLESS, 400, 301);
+    checkImage("images/1_webp_e.webp", DefaultImageFormats.WEBP_EXTENDED, 480, 320);
+    checkImage(
+        "images/1_webp_ea.webp",
+        DefaultImageFormats.WEBP_EXTENDED_WITH_ALPHA,
+        400,
+        301);
+    checkImage("images/1_webp_anim.webp", DefaultImageFormats.WEBP_ANIMATED, 322, 477);
+  }
+
+  @Test
+  public void testJpegOrientation() {
+    final boolean[] littleEndians = {true, false};
+    final int[] orientations = {1, 3, 6, 8};
+    for (boolean littleEndian : littleEndians) {
+      for (int orientation : orientations) {
+        final String app1 = makeAPP1_EXIF(makeTiff(
+            makeIfd(
+                new String[] {
+                    makeIfdEntry(IFD_ENTRY_TAG_1, TYPE_SHORT, 1, 255, 2, littleEndian),
+                    makeOrientationEntry(orientation, littleEndian)},
+                0,
+                littleEndian),
+            littleEndian));
+        final EncodedImage encodedImage = newEncodedImage(hexStringToByteArray(
+            SOI + APP0 + app1 + DQT + DHT + makeSOFSection(17, 8, 300, 200) + SOS + EOI));
+
+        assertEquals(orientation, ImageMetaDataParser.parse(getBuffer(encodedImage), encodedImage));
+        assertSame(DefaultImageFormats.JPEG, encodedImage.getImageFormat());
+        assertEquals(300, encodedImage.getWidth());
+        assertEquals(200, encodedImage.getHeight());
+      }
+    }
+  }
+
+  @Test
+  public void testJpegWithoutExif() {
+    final EncodedImage encodedImage = newEncodedImage(hexStringToByteArray(
+        SOI + APP0 + APP2 + DQT + makeSOFSection(17, 8, 300, 200) + DHT + SOS + EOI));
+
+    assertEquals(0, ImageMetaDataParser.parse(getBuffer(encodedImage), encodedImage));
+    assertEquals(300, encodedImage.getWidth());
+    assertEquals(200, encodedImage.getHeight());
+  }
+
+  @Test
+  public void testParseMetaDataSetsRotation() {
+    final String app1 = makeAPP1_EXIF(makeTiff(
+        makeIfd(new String[] {makeOrientationEntry(6, true)}, 0, true),
+        true));
+    final EncodedImage encodedImage = newEncodedImage(hexStringToByteArray(
+        SOI + app1 + makeSOFSection(17, 8, 300, 200) + SOS + EOI));
+
+    encodedImage.parseMetaData();
+
+    assertSame(DefaultImageFormats.JPEG, encodedImage.getImageFormat());
+    assertEquals(90, encodedImage.getRotationAngle());
+  }
+
+  @Test
+  public void testIncompleteImagesAreNotParsed() throws IOException {
+    final byte[] jpeg = readResource(IMAGEUTILS_RESOURCES + "jpegs/1.jpeg");
+    assertUnparsed(Arrays.copyOf(jpeg, 20));
+    final byte[] png = readResource(IMAGEUTILS_RESOURCES + "pngs/1.png");
+    assertUnparsed(Arrays.copyOf(png, 16));
+    final byte[] webp = readResource("images/1_webp_e.webp");
+    assertUnparsed(Arrays.copyOf(webp, 25));
+  }
+
+  @Test
+  public void testUnknownFormatsAreNotParsed() {
+    assertUnparsed(new byte[0]);
+    assertUnparsed(new byte[100]);
+    // SOF without a size
+    assertUnparsed(hexStringToByteArray(SOI + APP0 + DQT + DHT + SOF + SOS + EOI));
+  }
+
+  @Test
+  public void testMatchesStreamParsing() throws IOException {
+    final String[] paths = {
+        IMAGEUTILS_RESOURCES + "jpegs/1.jpeg",
+        IMAGEUTILS_RESOURCES + "jpegs/1prog.jpeg",
+        IMAGEUTILS_RESOURCES + "pngs/1.png",
+        IMAGEUTILS_RESOURCES + "gifs/1.gif",
+        IMAGEUTILS_RESOURCES + "bmps/1.bmp",
+        "images/1_webp_plain.webp",
+        "images/1_webp_ll.webp",
+        "images/1_webp_ea.webp",
+    };
+    for (String path : paths) {
+      final byte[] bytes = readResource(path);
+      final EncodedImage singlePass = newEncodedImage(bytes);
+      final EncodedImage streams = newEncodedImage(bytes);
+      try {
+        singlePass.parseMetaData();
+        streams.parseMetaDataFromStreams();
+
+        assertSame(path, streams.getImageFormat(), singlePass.getImageFormat());
+        assertEquals(path, streams.getWidth(), singlePass.getWidth());
+        assertEquals(path, streams.getHeight(), singlePass.getHeight());
+        assertEquals(path, streams.getRotationAngle(), singlePass.getRotationAngle());
+      } finally {
+        singlePass.close();
+        streams.close();
+      }
+    }
+  }
+
+  private static void checkImage(
+      String path,
+      ImageFormat imageFormat,
+      int width,
+      int height) throws IOException {
+    final EncodedImage encodedImage = newEncodedImage(readResource(path));
+
+    assertEquals(0, ImageMetaDataParser.parse(getBuffer(encodedImage), encodedImage));
+    assertSame(imageFormat, encodedImage.getImageFormat());
+    assertEquals(width, encodedImage.getWidth());
+    assertEquals(height, encodedImage.getHeight());
+  }
+
+  private static void assertUnparsed(byte[] bytes) {
+    final EncodedImage encodedImage = newEncodedImage(bytes);
+
+    assertEquals(
+        ImageMetaDataParser.UNPARSED,
+        ImageMetaDataParser.parse(getBuffer(encodedImage), encodedImage));
+    assertSame(ImageFormat.UNKNOWN, encodedImage.getImageFormat());
+    assertEquals(EncodedImage.UNKNOWN_WIDTH, encodedImage.getWidth());
+    assertEquals(EncodedImage.UNKNOWN_HEIGHT, encodedImage.getHeight());
+  }
+
+  private static byte[] readResource(String path) throws IOException {
+    return ByteStreams.toByteArray(ImageMetaDataParserTest.class.getResourceAsStream(path));
+  }
+
+  private static EncodedImage newEncodedImage(byte[] bytes) {
+    final PooledByteBuffer buffer = new TrivialPooledByteBuffer(bytes);
+    final CloseableReference<PooledByteBuffer> bufferRef = CloseableReference.of(buffer);
+    try {
+      return new EncodedImage(bufferRef);
+    } finally {
+      CloseableReference.closeSafely(bufferRef);
+    }
+  }
+
+  private static PooledByteBuffer getBuffer(EncodedImage encodedImage) {
+    final CloseableReference<PooledByteBuffer> bufferRef = encodedImage.getByteBufferRef();
+    try {
+      return bufferRef.get();
+    } finally {
+      CloseableReference.closeSafely(bufferRef);
+    }
+  }
+}
@@ -15,10 +15,14 @@ import com.facebook.imagepipeline.image.CloseableImage;
 public class BitmapMemoryCacheFactory {
 
   public static MemoryCache<CacheKey, CloseableImage> get(
-    final CountingMemoryCache<CacheKey, CloseableImage> bitmapCountingMemoryCache,
+    final CountingCache<CacheKey, CloseableImage> bitmapCountingMemoryCache,
     final ImageCacheStatsTracker imageCacheStatsTracker) {
 
-    imageCacheStatsTracker.registerBitmapMemoryCache(bitmapCountingMemoryCache);
+    // The tracker interface takes the single-lock cache, segmented caches are not registered
+    if (bitmapCountingMemoryCache instanceof CountingMemoryCache) {
+      imageCacheStatsTracker.registerBitmapMemoryCache(
+          (CountingMemoryCache<CacheKey, CloseableImage>) bitmapCountingMemoryCache);
+    }
 
     MemoryCacheTracker memoryCacheTracker = new MemoryCacheTracker<CacheKey>() {
       @Override
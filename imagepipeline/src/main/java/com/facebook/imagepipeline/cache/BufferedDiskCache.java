@@ -9,6 +9,8 @@
 
 package com.facebook.imagepipeline.cache;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,16 +22,23 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import bolts.Task;
 
 import com.facebook.binaryresource.BinaryResource;
+import com.facebook.binaryresource.FileBinaryResource;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.WriterCallback;
 import com.facebook.cache.disk.FileCache;
+import com.facebook.cache.disk.NegativeLookupCache;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.common.logging.FLog;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.memory.PooledByteBufferFactory;
+import com.facebook.common.memory.PooledByteBufferInputStream;
 import com.facebook.common.memory.PooledByteStreams;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormatChecker;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.memory.MappedPooledByteBuffer;
+import com.facebook.imagepipeline.memory.NativeMemoryChunkPool;
 
 /**
  * BufferedDiskCache provides get and put operations to take care of scheduling disk-cache
@@ -39,12 +48,16 @@ public class BufferedDiskCache {
   private static final Class<?> TAG = BufferedDiskCache.class;
 
   private final FileCache mFileCache;
+  // the file cache, if it can tell that a key is absent without any disk access
+  private final @Nullable NegativeLookupCache mNegativeLookupCache;
   private final PooledByteBufferFactory mPooledByteBufferFactory;
   private final PooledByteStreams mPooledByteStreams;
   private final Executor mReadExecutor;
   private final Executor mWriteExecutor;
   private final StagingArea mStagingArea;
   private final ImageCacheStatsTracker mImageCacheStatsTracker;
+  private final @Nullable NativeMemoryChunkPool mNativeMemoryChunkPool;
+  private final int mMemoryMappingThreshold;
 
   public BufferedDiskCache(
       FileCache fileCache,
@@ -53,12 +66,43 @@ public class BufferedDiskCache {
       Executor readExecutor,
       Executor writeExecutor,
       ImageCacheStatsTracker imageCacheStatsTracker) {
+    this(
+        fileCache,
+        pooledByteBufferFactory,
+        pooledByteStreams,
+        readExecutor,
+        writeExecutor,
+        imageCacheStatsTracker,
+        null,
+        -1);
+  }
+
+  /**
+   * @param nativeMemoryChunkPool the pool to copy a memory-mapped file to if its bytes are needed
+   *     in native memory. Only used if memoryMappingThreshold isn't negative
+   * @param memoryMappingThreshold JPEG files of at least this many bytes are memory-mapped instead
+   *     of copied to native memory when read. Negative to always copy.
+   */
+  public BufferedDiskCache(
+      FileCache fileCache,
+      PooledByteBufferFactory pooledByteBufferFactory,
+      PooledByteStreams pooledByteStreams,
+      Executor readExecutor,
+      Executor writeExecutor,
+      ImageCacheStatsTracker imageCacheStatsTracker,
+      @Nullable NativeMemoryChunkPool nativeMemoryChunkPool,
+      int memoryMappingThreshold) {
+    Preconditions.checkArgument(memoryMappingThreshold < 0 || nativeMemoryChunkPool != null);
     mFileCache = fileCache;
+    mNegativeLookupCache =
+        fileCache instanceof NegativeLookupCache ? (NegativeLookupCache) fileCache : null;
     mPooledByteBufferFactory = pooledByteBufferFactory;
     mPooledByteStreams = pooledByteStreams;
     mReadExecutor = readExecutor;
     mWriteExecutor = writeExecutor;
     mImageCacheStatsTracker = imageCacheStatsTracker;
+    mNativeMemoryChunkPool = nativeMemoryChunkPool;
+    mMemoryMappingThreshold = memoryMappingThreshold;
     mStagingArea = StagingArea.getInstance();
   }
 
@@ -85,6 +129,9 @@ public class BufferedDiskCache {
     if (containsSync(key)) {
       return Task.forResult(true);
     }
+    if (isAbsentSync(key)) {
+      return Task.forResult(false);
+    }
     return containsAsync(key);
   }
 
@@ -119,6 +166,9 @@ public class BufferedDiskCache {
     if (containsSync(key)) {
       return true;
     }
+    if (isAbsentSync(key)) {
+      return false;
+    }
     return checkInStagingAreaAndFileCache(key);
   }
 
@@ -135,9 +185,25 @@ public class BufferedDiskCache {
     if (pinnedImage != null) {
       return foundPinnedImage(key, pinnedImage);
     }
+    if (isAbsentSync(key)) {
+      FLog.v(TAG, "Did not find image for %s in disk cache filter", key.getUriString());
+      mImageCacheStatsTracker.onStagingAreaMiss();
+      mImageCacheStatsTracker.onDiskCacheMiss();
+      return Task.forResult(null);
+    }
     return getAsync(key, isCancelled);
   }
 
+  /**
+   * Returns true if the key is neither in the staging area nor in the file cache, without any
+   * disk access, so that the misses don't need to go through the read executor.
+   */
+  private boolean isAbsentSync(CacheKey key) {
+    return mNegativeLookupCache != null
+        && !mStagingArea.containsKey(key)
+        && mNegativeLookupCache.isKeyAbsentSync(key);
+  }
+
   /**
    * Performs key-value loop up in staging area and file cache.
    * Any error manifests itself as a miss, i.e. returns false.
@@ -335,12 +401,17 @@ public class BufferedDiskCache {
         mImageCacheStatsTracker.onDiskCacheHit();
       }
 
-      PooledByteBuffer byteBuffer;
-      final InputStream is = diskCacheResource.openStream();
-      try {
-        byteBuffer = mPooledByteBufferFactory.newByteBuffer(is, (int) diskCacheResource.size());
-      } finally {
-        is.close();
+      PooledByteBuffer byteBuffer = null;
+      if (mMemoryMappingThreshold >= 0 && diskCacheResource.size() >= mMemoryMappingThreshold) {
+        byteBuffer = mapIfDecodable(key, diskCacheResource);
+      }
+      if (byteBuffer == null) {
+        final InputStream is = diskCacheResource.openStream();
+        try {
+          byteBuffer = mPooledByteBufferFactory.newByteBuffer(is, (int) diskCacheResource.size());
+        } finally {
+          is.close();
+        }
       }
 
       FLog.v(TAG, "Successful read from disk cache for %s", key.getUriString());
@@ -355,6 +426,43 @@ public class BufferedDiskCache {
     }
   }
 
+  /**
+   * Memory-maps the resource if it is a file of its own, and a JPEG that the platform decoders can
+   * decode from the mapping.
+   *
+   * <p> Slices of a file, such as the resources of a {@link
+   * com.facebook.cache.disk.PackedDiskStorage}, are never mapped: their file can be truncated or
+   * compacted while mapped, and reading the mapping would then crash the process. The file of a
+   * resource of its own is only ever replaced or deleted, which doesn't invalidate the mapping.
+   *
+   * <p> Only JPEGs are mapped. The other formats can be decoded from native memory, and the mapped
+   * buffer would then copy its bytes there: copying them right away is cheaper.
+   *
+   * @return the mapped buffer, or null if the resource has to be copied
+   */
+  private @Nullable PooledByteBuffer mapIfDecodable(CacheKey key, BinaryResource resource) {
+    if (!(resource instanceof FileBinaryResource)) {
+      return null;
+    }
+    MappedPooledByteBuffer mappedBuffer;
+    try {
+      mappedBuffer = MappedPooledByteBuffer.map(
+          ((FileBinaryResource) resource).getFile(),
+          mNativeMemoryChunkPool);
+    } catch (IOException ioe) {
+      // the file may have been evicted since it was found, copying will tell
+      FLog.v(TAG, "Failed to map %s, copying it instead", key.getUriString());
+      return null;
+    }
+    if (ImageFormatChecker.getImageFormat_WrapIOException(
+        new PooledByteBufferInputStream(mappedBuffer)) != DefaultImageFormats.JPEG) {
+      // other formats, e.g. the animated ones, may need the bytes in native memory anyway
+      mappedBuffer.close();
+      return null;
+    }
+    return mappedBuffer;
+  }
+
   /**
    * Writes to disk cache
    * @throws IOException
@@ -9,6 +9,8 @@
 
 package com.facebook.imagepipeline.cache;
 
+import javax.annotation.Nullable;
+
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.memory.MemoryTrimmableRegistry;
@@ -22,20 +24,10 @@ public class EncodedCountingMemoryCacheFactory {
        MemoryTrimmableRegistry memoryTrimmableRegistry,
        PlatformBitmapFactory platformBitmapFactory) {
 
-    ValueDescriptor<PooledByteBuffer> valueDescriptor =
-        new ValueDescriptor<PooledByteBuffer>() {
-          @Override
-          public int getSizeInBytes(PooledByteBuffer value) {
-            return value.size();
-          }
-        };
-
-    CountingMemoryCache.CacheTrimStrategy trimStrategy = new NativeMemoryCacheTrimStrategy();
-
     CountingMemoryCache<CacheKey, PooledByteBuffer> countingCache =
         new CountingMemoryCache<>(
-            valueDescriptor,
-            trimStrategy,
+            createValueDescriptor(),
+            new NativeMemoryCacheTrimStrategy(),
             encodedMemoryCacheParamsSupplier,
             platformBitmapFactory,
             false);
@@ -44,4 +36,59 @@ public class EncodedCountingMemoryCacheFactory {
 
     return countingCache;
   }
+
+  /**
+   * Creates the encoded counting memory cache.
+   *
+   * @param segmentCount the number of independently locked segments of the cache. If greater than
+   *     one, a {@link SegmentedCountingMemoryCache} is created
+   * @param evictionPolicySupplier supplies the eviction policy of the cache, or of each of its
+   *     segments. If null, the items are evicted in LRU order
+   */
+  public static CountingCache<CacheKey, PooledByteBuffer> get(
+      Supplier<MemoryCacheParams> encodedMemoryCacheParamsSupplier,
+      MemoryTrimmableRegistry memoryTrimmableRegistry,
+      PlatformBitmapFactory platformBitmapFactory,
+      int segmentCount,
+      @Nullable Supplier<EvictionPolicy<CacheKey>> evictionPolicySupplier) {
+
+    ValueDescriptor<PooledByteBuffer> valueDescriptor = createValueDescriptor();
+
+    CountingMemoryCache.CacheTrimStrategy trimStrategy = new NativeMemoryCacheTrimStrategy();
+
+    CountingCache<CacheKey, PooledByteBuffer> countingCache;
+    if (segmentCount > 1) {
+      countingCache =
+          new SegmentedCountingMemoryCache<>(
+              valueDescriptor,
+              trimStrategy,
+              encodedMemoryCacheParamsSupplier,
+              platformBitmapFactory,
+              false,
+              segmentCount,
+              evictionPolicySupplier);
+    } else {
+      countingCache =
+          new CountingMemoryCache<>(
+              valueDescriptor,
+              trimStrategy,
+              encodedMemoryCacheParamsSupplier,
+              platformBitmapFactory,
+              false,
+              evictionPolicySupplier);
+    }
+
+    memoryTrimmableRegistry.registerMemoryTrimmable(countingCache);
+
+    return countingCache;
+  }
+
+  private static ValueDescriptor<PooledByteBuffer> createValueDescriptor() {
+    return new ValueDescriptor<PooledByteBuffer>() {
+      @Override
+      public int getSizeInBytes(PooledByteBuffer value) {
+        return value.size();
+      }
+    };
+  }
 }
@@ -15,10 +15,14 @@ import com.facebook.common.memory.PooledByteBuffer;
 public class EncodedMemoryCacheFactory {
 
   public static MemoryCache<CacheKey, PooledByteBuffer> get(
-      final CountingMemoryCache<CacheKey, PooledByteBuffer> encodedCountingMemoryCache,
+      final CountingCache<CacheKey, PooledByteBuffer> encodedCountingMemoryCache,
       final ImageCacheStatsTracker imageCacheStatsTracker) {
 
-    imageCacheStatsTracker.registerEncodedMemoryCache(encodedCountingMemoryCache);
+    // The tracker interface takes the single-lock cache, segmented caches are not registered
+    if (encodedCountingMemoryCache instanceof CountingMemoryCache) {
+      imageCacheStatsTracker.registerEncodedMemoryCache(
+          (CountingMemoryCache<CacheKey, PooledByteBuffer>) encodedCountingMemoryCache);
+    }
 
     MemoryCacheTracker memoryCacheTracker = new MemoryCacheTracker<CacheKey>() {
       @Override
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Objects;
+
+/**
+ * Stats tracker that counts the hits and misses of the memory caches, so that their hit ratios
+ * can be compared, e.g. between eviction policies when replaying recorded request traces.
+ */
+@ThreadSafe
+public class HitRatioImageCacheStatsTracker implements ImageCacheStatsTracker {
+
+  private final AtomicInteger mBitmapCacheHits = new AtomicInteger();
+  private final AtomicInteger mBitmapCacheMisses = new AtomicInteger();
+  private final AtomicInteger mEncodedMemoryCacheHits = new AtomicInteger();
+  private final AtomicInteger mEncodedMemoryCacheMisses = new AtomicInteger();
+  private final AtomicInteger mDiskCacheHits = new AtomicInteger();
+  private final AtomicInteger mDiskCacheMisses = new AtomicInteger();
+
+  private volatile @Nullable CountingMemoryCache<?, ?> mBitmapMemoryCache;
+  private volatile @Nullable CountingMemoryCache<?, ?> mEncodedMemoryCache;
+
+  @Override
+  public void onBitmapCachePut() {
+  }
+
+  @Override
+  public void onBitmapCacheHit(CacheKey cacheKey) {
+    mBitmapCacheHits.incrementAndGet();
+  }
+
+  @Override
+  public void onBitmapCacheMiss() {
+    mBitmapCacheMisses.incrementAndGet();
+  }
+
+  @Override
+  public void onMemoryCachePut() {
+  }
+
+  @Override
+  public void onMemoryCacheHit(CacheKey cacheKey) {
+    mEncodedMemoryCacheHits.incrementAndGet();
+  }
+
+  @Override
+  public void onMemoryCacheMiss() {
+    mEncodedMemoryCacheMisses.incrementAndGet();
+  }
+
+  @Override
+  public void onStagingAreaHit(CacheKey cacheKey) {
+  }
+
+  @Override
+  public void onStagingAreaMiss() {
+  }
+
+  @Override
+  public void onDiskCacheHit() {
+    mDiskCacheHits.incrementAndGet();
+  }
+
+  @Override
+  public void onDiskCacheMiss() {
+    mDiskCacheMisses.incrementAndGet();
+  }
+
+  @Override
+  public void onDiskCacheGetFail() {
+  }
+
+  @Override
+  public void registerBitmapMemoryCache(CountingMemoryCache<?, ?> bitmapMemoryCache) {
+    mBitmapMemoryCache = bitmapMemoryCache;
+  }
+
+  @Override
+  public void registerEncodedMemoryCache(CountingMemoryCache<?, ?> encodedMemoryCache) {
+    mEncodedMemoryCache = encodedMemoryCache;
+  }
+
+  /** Gets the share of the bitmap cache lookups that were hits, 0 if there were none. */
+  public float getBitmapCacheHitRatio() {
+    return getHitRatio(mBitmapCacheHits.get(), mBitmapCacheMisses.get());
+  }
+
+  /** Gets the share of the encoded memory cache lookups that were hits, 0 if there were none. */
+  public float getEncodedMemoryCacheHitRatio() {
+    return getHitRatio(mEncodedMemoryCacheHits.get(), mEncodedMemoryCacheMisses.get());
+  }
+
+  /** Gets the share of the disk cache lookups that were hits, 0 if there were none. */
+  public float getDiskCacheHitRatio() {
+    return getHitRatio(mDiskCacheHits.get(), mDiskCacheMisses.get());
+  }
+
+  /** Resets all the counters, e.g. before replaying the next trace. */
+  public void reset() {
+    mBitmapCacheHits.set(0);
+    mBitmapCacheMisses.set(0);
+    mEncodedMemoryCacheHits.set(0);
+    mEncodedMemoryCacheMisses.set(0);
+    mDiskCacheHits.set(0);
+    mDiskCacheMisses.set(0);
+  }
+
+  @Override
+  public String toString() {
+    CountingMemoryCache<?, ?> bitmapMemoryCache = mBitmapMemoryCache;
+    CountingMemoryCache<?, ?> encodedMemoryCache = mEncodedMemoryCache;
+    return Objects.toStringHelper(this)
+        .add("bitmapCacheHitRatio", getBitmapCacheHitRatio())
+        .add(
+            "bitmapCachePolicy",
+            bitmapMemoryCache == null ? null : bitmapMemoryCache.getEvictionPolicyName())
+        .add(
+            "bitmapCacheEvictions",
+            bitmapMemoryCache == null ? 0 : bitmapMemoryCache.getEvictionCount())
+        .add("encodedMemoryCacheHitRatio", getEncodedMemoryCacheHitRatio())
+        .add(
+            "encodedMemoryCachePolicy",
+            encodedMemoryCache == null ? null : encodedMemoryCache.getEvictionPolicyName())
+        .add(
+            "encodedMemoryCacheEvictions",
+            encodedMemoryCache == null ? 0 : encodedMemoryCache.getEvictionCount())
+        .add("diskCacheHitRatio", getDiskCacheHitRatio())
+        .toString();
+  }
+
+  private static float getHitRatio(int hits, int misses) {
+    int lookups = hits + misses;
+    return lookups == 0 ? 0 : (float) hits / lookups;
+  }
+}
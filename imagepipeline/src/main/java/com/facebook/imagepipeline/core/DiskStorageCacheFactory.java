@@ -52,7 +52,9 @@ public class DiskStorageCacheFactory implements FileCacheFactory {
         diskCacheConfig.getDiskTrimmableRegistry(),
         diskCacheConfig.getContext(),
         executorForBackgroundInit,
-        diskCacheConfig.getIndexPopulateAtStartupEnabled());
+        diskCacheConfig.getIndexPopulateAtStartupEnabled(),
+        diskCacheConfig.getEvictionInBackgroundEnabled() ? executorForBackgroundInit : null,
+        diskCacheConfig.getNegativeLookupFilterEnabled());
   }
 
   @Override
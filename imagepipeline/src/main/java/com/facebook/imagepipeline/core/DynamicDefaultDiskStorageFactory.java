@@ -11,18 +11,24 @@ package com.facebook.imagepipeline.core;
 import com.facebook.cache.disk.DiskCacheConfig;
 import com.facebook.cache.disk.DiskStorage;
 import com.facebook.cache.disk.DynamicDefaultDiskStorage;
+import com.facebook.cache.disk.PackedDiskStorage;
 
 /**
- * Factory for the default implementation of the DiskStorage.
+ * Factory for the default implementation of the DiskStorage. Uses a {@link PackedDiskStorage} if
+ * the config asks for it.
  */
 public class DynamicDefaultDiskStorageFactory implements DiskStorageFactory {
 
   @Override
   public DiskStorage get(DiskCacheConfig diskCacheConfig) {
+    if (diskCacheConfig.getPackedStorageEnabled()) {
+      return new PackedDiskStorageFactory().get(diskCacheConfig);
+    }
     return new DynamicDefaultDiskStorage(
         diskCacheConfig.getVersion(),
         diskCacheConfig.getBaseDirectoryPathSupplier(),
         diskCacheConfig.getBaseDirectoryName(),
-        diskCacheConfig.getCacheErrorLogger());
+        diskCacheConfig.getCacheErrorLogger(),
+        diskCacheConfig.getJournalEnabled());
   }
 }
@@ -175,7 +175,10 @@ public class ImagePipelineConfig {
     int numCpuBoundThreads = mPoolFactory.getFlexByteArrayPoolMaxNumThreads();
     mExecutorSupplier =
         builder.mExecutorSupplier == null ?
-            new DefaultExecutorSupplier(numCpuBoundThreads) : builder.mExecutorSupplier;
+            new DefaultExecutorSupplier(
+                numCpuBoundThreads,
+                mImagePipelineExperiments.isPrioritizedSchedulingEnabled()) :
+            builder.mExecutorSupplier;
     // Here we manage the WebpBitmapFactory implementation if any
     WebpBitmapFactory webpBitmapFactory = mImagePipelineExperiments.getWebpBitmapFactory();
     if (webpBitmapFactory != null) {
@@ -10,8 +10,10 @@ package com.facebook.imagepipeline.core;
 
 import javax.annotation.Nullable;
 
+import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.webp.WebpBitmapFactory;
+import com.facebook.imagepipeline.cache.EvictionPolicy;
 import com.facebook.imagepipeline.cache.MediaIdExtractor;
 
 /**
@@ -34,6 +36,12 @@ public class ImagePipelineExperiments {
   private final boolean mUseDownsamplingRatioForResizing;
   private final boolean mUseBitmapPrepareToDraw;
   private final boolean mPartialImageCachingEnabled;
+  private final int mMemoryCacheSegmentCount;
+  private final @Nullable Supplier<EvictionPolicy<CacheKey>> mMemoryCacheEvictionPolicySupplier;
+  private final boolean mPrioritizedSchedulingEnabled;
+  private final int mDiskCacheMemoryMappingThreshold;
+  private final int mMaxIntermediateDecodes;
+  private final boolean mExactDownscaleEnabled;
 
   private ImagePipelineExperiments(Builder builder, ImagePipelineConfig.Builder configBuilder) {
     mWebpSupportEnabled = builder.mWebpSupportEnabled;
@@ -56,6 +64,12 @@ public class ImagePipelineExperiments {
     mUseDownsamplingRatioForResizing = builder.mUseDownsamplingRatioForResizing;
     mUseBitmapPrepareToDraw = builder.mUseBitmapPrepareToDraw;
     mPartialImageCachingEnabled = builder.mPartialImageCachingEnabled;
+    mMemoryCacheSegmentCount = builder.mMemoryCacheSegmentCount;
+    mMemoryCacheEvictionPolicySupplier = builder.mMemoryCacheEvictionPolicySupplier;
+    mPrioritizedSchedulingEnabled = builder.mPrioritizedSchedulingEnabled;
+    mDiskCacheMemoryMappingThreshold = builder.mDiskCacheMemoryMappingThreshold;
+    mMaxIntermediateDecodes = builder.mMaxIntermediateDecodes;
+    mExactDownscaleEnabled = builder.mExactDownscaleEnabled;
   }
 
   public boolean isExternalCreatedBitmapLogEnabled() {
@@ -98,6 +112,30 @@ public class ImagePipelineExperiments {
     return mPartialImageCachingEnabled;
   }
 
+  public int getMemoryCacheSegmentCount() {
+    return mMemoryCacheSegmentCount;
+  }
+
+  public @Nullable Supplier<EvictionPolicy<CacheKey>> getMemoryCacheEvictionPolicySupplier() {
+    return mMemoryCacheEvictionPolicySupplier;
+  }
+
+  public boolean isPrioritizedSchedulingEnabled() {
+    return mPrioritizedSchedulingEnabled;
+  }
+
+  public int getDiskCacheMemoryMappingThreshold() {
+    return mDiskCacheMemoryMappingThreshold;
+  }
+
+  public int getMaxIntermediateDecodes() {
+    return mMaxIntermediateDecodes;
+  }
+
+  public boolean isExactDownscaleEnabled() {
+    return mExactDownscaleEnabled;
+  }
+
   public static ImagePipelineExperiments.Builder newBuilder(
       ImagePipelineConfig.Builder configBuilder) {
     return new ImagePipelineExperiments.Builder(configBuilder);
@@ -117,6 +155,12 @@ public class ImagePipelineExperiments {
     private boolean mUseDownsamplingRatioForResizing = false;
     private boolean mUseBitmapPrepareToDraw = false;
     private boolean mPartialImageCachingEnabled = false;
+    private int mMemoryCacheSegmentCount = 1;
+    private Supplier<EvictionPolicy<CacheKey>> mMemoryCacheEvictionPolicySupplier = null;
+    private boolean mPrioritizedSchedulingEnabled = false;
+    private int mDiskCacheMemoryMappingThreshold = -1;
+    private int mMaxIntermediateDecodes = 0;
+    private boolean mExactDownscaleEnabled = false;
 
     public Builder(ImagePipelineConfig.Builder configBuilder) {
       mConfigBuilder = configBuilder;
@@ -217,6 +261,91 @@ public class ImagePipelineExperiments {
       return mConfigBuilder;
     }
 
+    /**
+     * Splits the bitmap and encoded memory caches into the given number of independently locked
+     * segments, in order to reduce lock contention between the threads accessing them. The size
+     * constraints of the caches apply to all the segments together.
+     *
+     * @param memoryCacheSegmentCount the number of segments, 1 to use a single lock
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setMemoryCacheSegmentCount(int memoryCacheSegmentCount) {
+      mMemoryCacheSegmentCount = memoryCacheSegmentCount;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Sets the policy deciding which items of the bitmap and encoded memory caches get evicted
+     * first, e.g. {@link com.facebook.imagepipeline.cache.TinyLfuEvictionPolicy}. The supplier
+     * must return a new instance each time, as every cache needs its own policy.
+     *
+     * <p> By default the items are evicted in LRU order.
+     *
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setMemoryCacheEvictionPolicySupplier(
+        Supplier<EvictionPolicy<CacheKey>> memoryCacheEvictionPolicySupplier) {
+      mMemoryCacheEvictionPolicySupplier = memoryCacheEvictionPolicySupplier;
+      return mConfigBuilder;
+    }
+
+    /**
+     * If true, pending decodes and throttled local image requests are started in order of priority
+     * instead of in the order they came in, taking priority changes into account. Prefetches go
+     * after all the other requests. The decode executor is only affected if no custom
+     * {@link ExecutorSupplier} is set; custom ones can use {@link PrioritizedExecutorService}.
+     *
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setPrioritizedSchedulingEnabled(
+        boolean prioritizedSchedulingEnabled) {
+      mPrioritizedSchedulingEnabled = prioritizedSchedulingEnabled;
+      return mConfigBuilder;
+    }
+
+    /**
+     * JPEG files of at least this many bytes read from the disk caches are memory-mapped, instead
+     * of being copied to native memory before being decoded. The mapped bytes are shared with the
+     * page cache, and released when the image is closed and garbage collected. A negative value,
+     * the default, disables mapping.
+     *
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setDiskCacheMemoryMappingThreshold(
+        int diskCacheMemoryMappingThreshold) {
+      mDiskCacheMemoryMappingThreshold = diskCacheMemoryMappingThreshold;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Limits the number of intermediate decodes of progressive JPEGs in flight across all the
+     * requests. While a final decode is pending, only the intermediate decodes of high priority
+     * requests are scheduled. The scans that are skipped are included in the next decode. The
+     * number of intermediate decodes skipped for a request is reported in the extras of the
+     * decode producer. 0, the default, disables the limit.
+     *
+     * @param maxIntermediateDecodes the maximum number of intermediate decodes in flight
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setMaxIntermediateDecodes(int maxIntermediateDecodes) {
+      mMaxIntermediateDecodes = maxIntermediateDecodes;
+      return mConfigBuilder;
+    }
+
+    /**
+     * If enabled, static images other than JPEGs that are larger than the {@link
+     * com.facebook.imagepipeline.common.ResizeOptions} of their request are scaled down to exactly
+     * cover them while decoded, instead of being decoded at a power of 2 of their size. The number
+     * of bytes saved is reported in the extras of the decode producer. Scaling while decoding is
+     * only supported on Lollipop and up.
+     *
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setExactDownscaleEnabled(boolean exactDownscaleEnabled) {
+      mExactDownscaleEnabled = exactDownscaleEnabled;
+      return mConfigBuilder;
+    }
+
     public ImagePipelineExperiments build() {
       return new ImagePipelineExperiments(this, mConfigBuilder);
     }
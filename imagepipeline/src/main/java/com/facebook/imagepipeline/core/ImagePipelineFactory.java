@@ -34,6 +34,7 @@ import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 import com.facebook.imagepipeline.cache.BitmapCountingMemoryCacheFactory;
 import com.facebook.imagepipeline.cache.BitmapMemoryCacheFactory;
 import com.facebook.imagepipeline.cache.BufferedDiskCache;
+import com.facebook.imagepipeline.cache.CountingCache;
 import com.facebook.imagepipeline.cache.CountingMemoryCache;
 import com.facebook.imagepipeline.cache.EncodedCountingMemoryCacheFactory;
 import com.facebook.imagepipeline.cache.EncodedMemoryCacheFactory;
@@ -100,10 +101,10 @@ public class ImagePipelineFactory {
   }
 
   private final ImagePipelineConfig mConfig;
-  private CountingMemoryCache<CacheKey, CloseableImage>
+  private CountingCache<CacheKey, CloseableImage>
       mBitmapCountingMemoryCache;
   private MemoryCache<CacheKey, CloseableImage> mBitmapMemoryCache;
-  private CountingMemoryCache<CacheKey, PooledByteBuffer> mEncodedCountingMemoryCache;
+  private CountingCache<CacheKey, PooledByteBuffer> mEncodedCountingMemoryCache;
   private MemoryCache<CacheKey, PooledByteBuffer> mEncodedMemoryCache;
   private BufferedDiskCache mMainBufferedDiskCache;
   private FileCache mMainFileCache;
@@ -132,7 +133,7 @@ public class ImagePipelineFactory {
       mAnimatedFactory = AnimatedFactoryProvider.getAnimatedFactory(
           getPlatformBitmapFactory(),
           mConfig.getExecutorSupplier(),
-          getBitmapCountingMemoryCache());
+          getBitmapCountingCache());
     }
     return mAnimatedFactory;
   }
@@ -143,8 +144,23 @@ public class ImagePipelineFactory {
     return animatedFactory == null ? null : animatedFactory.getAnimatedDrawableFactory(context);
   }
 
+  /**
+   * Gets the bitmap counting memory cache.
+   *
+   * @deprecated use {@link #getBitmapCountingCache()}, which also supports the segmented cache
+   * @throws IllegalStateException if the memory cache segment count experiment is on
+   */
+  @Deprecated
   public CountingMemoryCache<CacheKey, CloseableImage>
   getBitmapCountingMemoryCache() {
+    CountingCache<CacheKey, CloseableImage> countingCache = getBitmapCountingCache();
+    Preconditions.checkState(
+        countingCache instanceof CountingMemoryCache,
+        "The bitmap cache is segmented, use getBitmapCountingCache()");
+    return (CountingMemoryCache<CacheKey, CloseableImage>) countingCache;
+  }
+
+  public CountingCache<CacheKey, CloseableImage> getBitmapCountingCache() {
     if (mBitmapCountingMemoryCache == null) {
       mBitmapCountingMemoryCache =
           BitmapCountingMemoryCacheFactory.get(
@@ -152,7 +168,9 @@ public class ImagePipelineFactory {
               mConfig.getMemoryTrimmableRegistry(),
               getPlatformBitmapFactory(),
               mConfig.getExperiments().isExternalCreatedBitmapLogEnabled(),
-              mConfig.getBitmapMemoryCacheTrimStrategy());
+              mConfig.getBitmapMemoryCacheTrimStrategy(),
+              mConfig.getExperiments().getMemoryCacheSegmentCount(),
+              mConfig.getExperiments().getMemoryCacheEvictionPolicySupplier());
     }
     return mBitmapCountingMemoryCache;
   }
@@ -161,19 +179,36 @@ public class ImagePipelineFactory {
     if (mBitmapMemoryCache == null) {
       mBitmapMemoryCache =
           BitmapMemoryCacheFactory.get(
-              getBitmapCountingMemoryCache(),
+              getBitmapCountingCache(),
               mConfig.getImageCacheStatsTracker());
     }
     return mBitmapMemoryCache;
   }
 
+  /**
+   * Gets the encoded counting memory cache.
+   *
+   * @deprecated use {@link #getEncodedCountingCache()}, which also supports the segmented cache
+   * @throws IllegalStateException if the memory cache segment count experiment is on
+   */
+  @Deprecated
   public CountingMemoryCache<CacheKey, PooledByteBuffer> getEncodedCountingMemoryCache() {
+    CountingCache<CacheKey, PooledByteBuffer> countingCache = getEncodedCountingCache();
+    Preconditions.checkState(
+        countingCache instanceof CountingMemoryCache,
+        "The encoded memory cache is segmented, use getEncodedCountingCache()");
+    return (CountingMemoryCache<CacheKey, PooledByteBuffer>) countingCache;
+  }
+
+  public CountingCache<CacheKey, PooledByteBuffer> getEncodedCountingCache() {
     if (mEncodedCountingMemoryCache == null) {
       mEncodedCountingMemoryCache =
           EncodedCountingMemoryCacheFactory.get(
               mConfig.getEncodedMemoryCacheParamsSupplier(),
               mConfig.getMemoryTrimmableRegistry(),
-              getPlatformBitmapFactory());
+              getPlatformBitmapFactory(),
+              mConfig.getExperiments().getMemoryCacheSegmentCount(),
+              mConfig.getExperiments().getMemoryCacheEvictionPolicySupplier());
     }
     return mEncodedCountingMemoryCache;
   }
@@ -182,7 +217,7 @@ public class ImagePipelineFactory {
     if (mEncodedMemoryCache == null) {
       mEncodedMemoryCache =
           EncodedMemoryCacheFactory.get(
-              getEncodedCountingMemoryCache(),
+              getEncodedCountingCache(),
               mConfig.getImageCacheStatsTracker());
     }
     return mEncodedMemoryCache;
@@ -233,7 +268,9 @@ public class ImagePipelineFactory {
               mConfig.getPoolFactory().getPooledByteStreams(),
               mConfig.getExecutorSupplier().forLocalStorageRead(),
               mConfig.getExecutorSupplier().forLocalStorageWrite(),
-              mConfig.getImageCacheStatsTracker());
+              mConfig.getImageCacheStatsTracker(),
+              mConfig.getPoolFactory().getNativeMemoryChunkPool(),
+              mConfig.getExperiments().getDiskCacheMemoryMappingThreshold());
     }
     return mMainBufferedDiskCache;
   }
@@ -341,6 +378,9 @@ public class ImagePipelineFactory {
               mConfig.isDownsampleEnabled(),
               mConfig.isResizeAndRotateEnabledForNetwork(),
               mConfig.getExperiments().isDecodeCancellationEnabled(),
+              mConfig.getExperiments().isPrioritizedSchedulingEnabled(),
+              mConfig.getExperiments().getMaxIntermediateDecodes(),
+              mConfig.getExperiments().isExactDownscaleEnabled(),
               mConfig.getExecutorSupplier(),
               mConfig.getPoolFactory().getPooledByteBufferFactory(),
               getBitmapMemoryCache(),
@@ -392,7 +432,9 @@ public class ImagePipelineFactory {
               mConfig.getPoolFactory().getPooledByteStreams(),
               mConfig.getExecutorSupplier().forLocalStorageRead(),
               mConfig.getExecutorSupplier().forLocalStorageWrite(),
-              mConfig.getImageCacheStatsTracker());
+              mConfig.getImageCacheStatsTracker(),
+              mConfig.getPoolFactory().getNativeMemoryChunkPool(),
+              mConfig.getExperiments().getDiskCacheMemoryMappingThreshold());
     }
     return mSmallImageBufferedDiskCache;
   }
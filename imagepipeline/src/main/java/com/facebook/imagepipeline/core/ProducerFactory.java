@@ -58,6 +58,7 @@ import com.facebook.imagepipeline.producers.PartialDiskCacheProducer;
 import com.facebook.imagepipeline.producers.PostprocessedBitmapMemoryCacheProducer;
 import com.facebook.imagepipeline.producers.PostprocessorProducer;
 import com.facebook.imagepipeline.producers.Producer;
+import com.facebook.imagepipeline.producers.ProgressiveDecodeBudget;
 import com.facebook.imagepipeline.producers.QualifiedResourceFetchProducer;
 import com.facebook.imagepipeline.producers.ResizeAndRotateProducer;
 import com.facebook.imagepipeline.producers.SwallowResultProducer;
@@ -84,8 +85,11 @@ public class ProducerFactory {
   private final boolean mDownsampleEnabled;
   private final boolean mResizeAndRotateEnabledForNetwork;
   private final boolean mDecodeCancellationEnabled;
+  private final @Nullable ProgressiveDecodeBudget mProgressiveDecodeBudget;
+  private final boolean mExactDownscaleEnabled;
 
   // Dependencies used by multiple steps
+  private final boolean mPrioritizedSchedulingEnabled;
   private final ExecutorSupplier mExecutorSupplier;
   private final PooledByteBufferFactory mPooledByteBufferFactory;
 
@@ -109,6 +113,9 @@ public class ProducerFactory {
       boolean downsampleEnabled,
       boolean resizeAndRotateEnabledForNetwork,
       boolean decodeCancellationEnabled,
+      boolean prioritizedSchedulingEnabled,
+      int maxIntermediateDecodes,
+      boolean exactDownscaleEnabled,
       ExecutorSupplier executorSupplier,
       PooledByteBufferFactory pooledByteBufferFactory,
       MemoryCache<CacheKey, CloseableImage> bitmapMemoryCache,
@@ -129,7 +136,12 @@ public class ProducerFactory {
     mDownsampleEnabled = downsampleEnabled;
     mResizeAndRotateEnabledForNetwork = resizeAndRotateEnabledForNetwork;
     mDecodeCancellationEnabled = decodeCancellationEnabled;
+    mProgressiveDecodeBudget = maxIntermediateDecodes > 0 ?
+        new ProgressiveDecodeBudget(maxIntermediateDecodes) :
+        null;
+    mExactDownscaleEnabled = exactDownscaleEnabled;
 
+    mPrioritizedSchedulingEnabled = prioritizedSchedulingEnabled;
     mExecutorSupplier = executorSupplier;
     mPooledByteBufferFactory = pooledByteBufferFactory;
 
@@ -183,6 +195,8 @@ public class ProducerFactory {
         mDownsampleEnabled,
         mResizeAndRotateEnabledForNetwork,
         mDecodeCancellationEnabled,
+        mExactDownscaleEnabled,
+        mProgressiveDecodeBudget,
         inputProducer);
   }
 
@@ -350,7 +364,8 @@ public class ProducerFactory {
     return new ThrottlingProducer<T>(
         MAX_SIMULTANEOUS_REQUESTS,
         mExecutorSupplier.forLightweightBackgroundTasks(),
-        inputProducer);
+        inputProducer,
+        mPrioritizedSchedulingEnabled);
   }
 
   public WebpTranscodeProducer newWebpTranscodeProducer(
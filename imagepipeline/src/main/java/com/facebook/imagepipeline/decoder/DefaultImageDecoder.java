@@ -17,6 +17,7 @@ import java.util.Map;
 import android.graphics.Bitmap;
 
 import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imageformat.DefaultImageFormats;
 import com.facebook.imageformat.ImageFormat;
@@ -58,6 +59,9 @@ public class DefaultImageDecoder implements ImageDecoder {
         QualityInfo qualityInfo,
         ImageDecodeOptions options) {
       ImageFormat imageFormat = encodedImage.getImageFormat();
+      if (options.regionDecodeOptions != null && isRegionDecodingSupported(imageFormat)) {
+        return decodeRegion(encodedImage, options);
+      }
       if (imageFormat == DefaultImageFormats.JPEG) {
         return decodeJpeg(encodedImage, length, qualityInfo, options);
       } else if (imageFormat == DefaultImageFormats.GIF) {
@@ -170,6 +174,31 @@ public class DefaultImageDecoder implements ImageDecoder {
     }
   }
 
+  /**
+   * Decodes a region of a static image, see {@link ImageDecodeOptions#regionDecodeOptions}.
+   *
+   * <p> The region is in the coordinates of the encoded image, so the rotation of the image is not
+   * applied to the bitmap of the region.
+   *
+   * @param encodedImage input image (encoded bytes plus meta data)
+   * @param options options with the region to decode
+   * @return a CloseableStaticBitmap
+   */
+  public CloseableStaticBitmap decodeRegion(
+      final EncodedImage encodedImage,
+      ImageDecodeOptions options) {
+    Preconditions.checkNotNull(options.regionDecodeOptions);
+    CloseableReference<Bitmap> bitmapReference = mPlatformDecoder.decodeRegionFromEncodedImage(
+        encodedImage,
+        options.bitmapConfig,
+        options.regionDecodeOptions);
+    try {
+      return new CloseableStaticBitmap(bitmapReference, ImmutableQualityInfo.FULL_QUALITY, 0);
+    } finally {
+      bitmapReference.close();
+    }
+  }
+
   /**
    * Decodes a partial jpeg.
    *
@@ -211,4 +240,10 @@ public class DefaultImageDecoder implements ImageDecoder {
       final ImageDecodeOptions options) {
     return mAnimatedWebPDecoder.decode(encodedImage, length, qualityInfo, options);
   }
+
+  private static boolean isRegionDecodingSupported(ImageFormat imageFormat) {
+    return imageFormat == DefaultImageFormats.JPEG ||
+        imageFormat == DefaultImageFormats.PNG ||
+        DefaultImageFormats.isStaticWebpFormat(imageFormat);
+  }
 }
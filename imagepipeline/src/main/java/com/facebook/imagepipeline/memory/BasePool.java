@@ -9,6 +9,7 @@
 
 package com.facebook.imagepipeline.memory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -17,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.annotation.SuppressLint;
 import android.util.SparseArray;
@@ -110,6 +112,14 @@ import com.facebook.common.memory.Pool;
  *   cap, in that it will not cause an exception on get; it simply controls the release path.
  *   If the BucketSizes parameter is null, then the pool will dynamically create buckets on demand.
  *   </li>
+ *   <li> {@link PoolParams#maxThreadCacheLength}
+ *   If set, each thread keeps a few of the values it releases in a small cache of its own, and
+ *   {@link #get(int)} looks there first. Caching and taking a value only touch the cache of the
+ *   current thread and atomic counters, not the pool lock. The pool keeps accounting a cached
+ *   value as used, in its bucket too, until the thread caches are drained back to the buckets:
+ *   on {@link #trim(MemoryTrimType)}, and whenever the pool is over its soft cap or an
+ *   allocation would exceed a cap. Values released twice or not allocated via the pool are only
+ *   recognized when they are drained. </li>
  * </ul>
  */
 public abstract class BasePool<V> implements Pool<V> {
@@ -158,6 +168,25 @@ public abstract class BasePool<V> implements Pool<V> {
 
   private final PoolStatsTracker mPoolStatsTracker;
 
+  /**
+   * The cache of the current thread, null if the thread caches are disabled
+   */
+  @Nullable
+  private final ThreadLocal<ThreadCache<V>> mThreadCaches;
+
+  /**
+   * All the thread caches, so that they can be drained when the pool is trimmed
+   */
+  @GuardedBy("mThreadCacheList")
+  private final List<ThreadCache<V>> mThreadCacheList;
+
+  /**
+   * Number and total size in bytes of the values in the thread caches. These values are also
+   * part of the used portion of the pool
+   */
+  private final AtomicInteger mThreadCachedCount;
+  private final AtomicInteger mThreadCachedBytes;
+
   /**
    * Creates a new instance of the pool.
    * @param poolParams pool parameters
@@ -179,6 +208,26 @@ public abstract class BasePool<V> implements Pool<V> {
 
     mFree = new Counter();
     mUsed = new Counter();
+
+    mThreadCacheList = new ArrayList<>();
+    mThreadCachedCount = new AtomicInteger();
+    mThreadCachedBytes = new AtomicInteger();
+    final int maxThreadCacheLength = poolParams.maxThreadCacheLength;
+    if (maxThreadCacheLength > 0) {
+      mThreadCaches = new ThreadLocal<ThreadCache<V>>() {
+        @Override
+        protected ThreadCache<V> initialValue() {
+          ThreadCache<V> threadCache =
+              new ThreadCache<V>(Thread.currentThread(), maxThreadCacheLength);
+          synchronized (mThreadCacheList) {
+            mThreadCacheList.add(threadCache);
+          }
+          return threadCache;
+        }
+      };
+    } else {
+      mThreadCaches = null;
+    }
   }
 
   /**
@@ -202,9 +251,13 @@ public abstract class BasePool<V> implements Pool<V> {
    * @throws InvalidSizeException
    */
   public V get(int size) {
-    ensurePoolSizeInvariant();
-
     int bucketedSize = getBucketedSize(size);
+    V cachedValue = getFromThreadCache(bucketedSize);
+    if (cachedValue != null) {
+      return cachedValue;
+    }
+
+    ensurePoolSizeInvariant();
     int sizeInBytes = -1;
 
     synchronized (this) {
@@ -212,7 +265,7 @@ public abstract class BasePool<V> implements Pool<V> {
 
       if (bucket != null) {
         // find an existing value that we can reuse
-        V value = bucket.get();
+        V value = getValueForReuse(bucket, bucketedSize);
         if (value != null) {
           Preconditions.checkState(mInUseValues.add(value));
 
@@ -310,6 +363,12 @@ public abstract class BasePool<V> implements Pool<V> {
 
     final int bucketedSize = getBucketedSizeForValue(value);
     final int sizeInBytes = getSizeInBytes(bucketedSize);
+    if (!offerToThreadCache(value, bucketedSize, sizeInBytes)) {
+      releaseToPool(value, bucketedSize, sizeInBytes);
+    }
+  }
+
+  private void releaseToPool(V value, int bucketedSize, int sizeInBytes) {
     synchronized (this) {
       final Bucket<V> bucket = getBucket(bucketedSize);
       if (!mInUseValues.remove(value)) {
@@ -484,6 +543,8 @@ public abstract class BasePool<V> implements Pool<V> {
    */
   @VisibleForTesting
   void trimToNothing() {
+    drainThreadCaches();
+
     final List<Bucket<V>> bucketsToTrim = new ArrayList<>(mBuckets.size());
     final SparseIntArray inUseCounts = new SparseIntArray();
 
@@ -535,6 +596,10 @@ public abstract class BasePool<V> implements Pool<V> {
   @VisibleForTesting
   synchronized void trimToSoftCap() {
     if (isMaxSizeSoftCapExceeded()) {
+      // the values in the thread caches are not in use, but they only become free once drained
+      if (mThreadCachedCount.get() > 0) {
+        drainThreadCaches();
+      }
       trimToSize(mPoolParams.maxSizeSoftCap);
     }
   }
@@ -599,6 +664,119 @@ public abstract class BasePool<V> implements Pool<V> {
   }
 
 
+  /**
+   * Takes a value of the given bucketed size from the cache of the current thread, if any.
+   * The pool still accounts thread cached values as used, so the pool lock is not needed.
+   */
+  @Nullable
+  private V getFromThreadCache(int bucketedSize) {
+    if (mThreadCaches == null) {
+      return null;
+    }
+    V value = mThreadCaches.get().take(bucketedSize);
+    if (value != null) {
+      mThreadCachedCount.decrementAndGet();
+      mThreadCachedBytes.addAndGet(-getSizeInBytes(bucketedSize));
+      if (FLog.isLoggable(FLog.VERBOSE)) {
+        FLog.v(
+            TAG,
+            "get (thread cache) (object, size) = (%x, %s)",
+            System.identityHashCode(value),
+            bucketedSize);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Puts the value in the cache of the current thread, if it could be released to a bucket, the
+   * pool is not over its soft cap and the cache is not full. The pool lock is not taken: the cap
+   * is checked on the volatile counters, and the value stays accounted as used.
+   * @return true if the value was cached, or was already in the cache
+   */
+  private boolean offerToThreadCache(V value, int bucketedSize, int sizeInBytes) {
+    if (mThreadCaches == null ||
+        !isBucketedSize(bucketedSize) ||
+        !isReusable(value)) {
+      return false;
+    }
+    final ThreadCache<V> threadCache = mThreadCaches.get();
+    if (threadCache.contains(value)) {
+      // released twice by this thread, the value is still there for the next get
+      FLog.e(
+          TAG,
+          "release (already in thread cache) (object, size) = (%x, %s)",
+          System.identityHashCode(value),
+          bucketedSize);
+      return true;
+    }
+    if (mUsed.mNumBytes + mFree.mNumBytes > mPoolParams.maxSizeSoftCap ||
+        !threadCache.offer(value, bucketedSize)) {
+      return false;
+    }
+    mThreadCachedCount.incrementAndGet();
+    mThreadCachedBytes.addAndGet(sizeInBytes);
+    if (FLog.isLoggable(FLog.VERBOSE)) {
+      FLog.v(
+          TAG,
+          "release (thread cache) (object, size) = (%x, %s)",
+          System.identityHashCode(value),
+          bucketedSize);
+    }
+    return true;
+  }
+
+  /**
+   * Releases the values of all the thread caches to the pool, as if they were released by their
+   * owners. The caches of threads that are no longer alive are dropped.
+   */
+  private void drainThreadCaches() {
+    if (mThreadCaches == null) {
+      return;
+    }
+    final List<V> values = new ArrayList<>();
+    synchronized (mThreadCacheList) {
+      for (int i = mThreadCacheList.size() - 1; i >= 0; --i) {
+        final ThreadCache<V> threadCache = mThreadCacheList.get(i);
+        threadCache.drainTo(values);
+        if (!threadCache.mOwner.isAlive()) {
+          mThreadCacheList.remove(i);
+        }
+      }
+    }
+    for (int i = 0; i < values.size(); ++i) {
+      final V value = values.get(i);
+      final int bucketedSize = getBucketedSizeForValue(value);
+      final int sizeInBytes = getSizeInBytes(bucketedSize);
+      mThreadCachedCount.decrementAndGet();
+      mThreadCachedBytes.addAndGet(-sizeInBytes);
+      releaseToPool(value, bucketedSize, sizeInBytes);
+    }
+  }
+
+  /**
+   * Determines if values of the given bucketed size are kept by the pool. Only the immutable
+   * pool params are read, so this does not need the pool lock.
+   */
+  private boolean isBucketedSize(int bucketedSize) {
+    final SparseIntArray bucketSizes = mPoolParams.bucketSizes;
+    return bucketSizes == null || bucketSizes.indexOfKey(bucketedSize) >= 0;
+  }
+
+  /**
+   * Gets a free value that can be used for a request of the given bucketed size.
+   * By default, the value is taken from the bucket of that size. Subclasses can override this to
+   * look for a suitable value in other buckets as well, in which case they must take the value
+   * via {@link Bucket#get()} of the bucket it belongs to.
+   * @param bucket the bucket for the requested size
+   * @param bucketedSize the requested bucketed size
+   * @return a free value, or null if none is available
+   */
+  @Nullable
+  synchronized V getValueForReuse(Bucket<V> bucket, int bucketedSize) {
+    return bucket.get();
+  }
+
   /**
    * Gets the freelist for the specified bucket. Create the freelist if there isn't one
    * @param bucketedSize the bucket size
@@ -654,6 +832,13 @@ public abstract class BasePool<V> implements Pool<V> {
   @VisibleForTesting
   synchronized boolean canAllocate(int sizeInBytes) {
     int hardCap = mPoolParams.maxSizeHardCap;
+    int softCap = mPoolParams.maxSizeSoftCap;
+
+    // the values in the thread caches count as used, give them back to the pool first
+    if (sizeInBytes > softCap - (mUsed.mNumBytes + mFree.mNumBytes) &&
+        mThreadCachedCount.get() > 0) {
+      drainThreadCaches();
+    }
 
     // even with our best effort we cannot ensure hard cap limit.
     // Return immediately - no point in trimming any space
@@ -663,7 +848,6 @@ public abstract class BasePool<V> implements Pool<V> {
     }
 
     // trim if we need to
-    int softCap = mPoolParams.maxSizeSoftCap;
     if (sizeInBytes > softCap - (mUsed.mNumBytes + mFree.mNumBytes)) {
       trimToSize(softCap - sizeInBytes);
     }
@@ -705,6 +889,9 @@ public abstract class BasePool<V> implements Pool<V> {
       final String BUCKET_USED_KEY =
           PoolStatsTracker.BUCKETS_USED_PREFIX + getSizeInBytes(bucketedSize);
       stats.put(BUCKET_USED_KEY, bucket.getInUseCount());
+      final String BUCKET_FREE_KEY =
+          PoolStatsTracker.BUCKETS_FREE_PREFIX + getSizeInBytes(bucketedSize);
+      stats.put(BUCKET_FREE_KEY, bucket.getFreeListSize());
     }
 
     stats.put(PoolStatsTracker.SOFT_CAP, mPoolParams.maxSizeSoftCap);
@@ -713,6 +900,8 @@ public abstract class BasePool<V> implements Pool<V> {
     stats.put(PoolStatsTracker.USED_BYTES, mUsed.mNumBytes);
     stats.put(PoolStatsTracker.FREE_COUNT, mFree.mCount);
     stats.put(PoolStatsTracker.FREE_BYTES, mFree.mNumBytes);
+    stats.put(PoolStatsTracker.THREAD_CACHED_COUNT, mThreadCachedCount.get());
+    stats.put(PoolStatsTracker.THREAD_CACHED_BYTES, mThreadCachedBytes.get());
 
     return stats;
   }
@@ -721,15 +910,16 @@ public abstract class BasePool<V> implements Pool<V> {
    * A simple 'counter' that keeps track of the number of items (mCount) as well as the byte
    * mCount for the number of items
    * WARNING: this class is not synchronized - the caller must ensure the appropriate
-   * synchronization
+   * synchronization. The fields are volatile only so that they can be read without the lock,
+   * e.g. for a quick cap check.
    */
   @NotThreadSafe
   @VisibleForTesting
   static class Counter {
     private static final String TAG = "com.facebook.imagepipeline.memory.BasePool.Counter";
 
-    int mCount;
-    int mNumBytes;
+    volatile int mCount;
+    volatile int mNumBytes;
 
     /**
      * Add a new item to the counter
@@ -767,6 +957,83 @@ public abstract class BasePool<V> implements Pool<V> {
     }
   }
 
+  /**
+   * A small cache of values released by a thread, that the same thread can get again without
+   * going through the pool. Only the owner thread uses it, except when the pool drains it, so its
+   * lock is almost never contended.
+   */
+  @VisibleForTesting
+  static class ThreadCache<V> {
+    final Thread mOwner;
+
+    @GuardedBy("this")
+    private final Object[] mValues;
+    @GuardedBy("this")
+    private final int[] mBucketedSizes;
+    @GuardedBy("this")
+    private int mLength;
+
+    ThreadCache(Thread owner, int maxLength) {
+      mOwner = owner;
+      mValues = new Object[maxLength];
+      mBucketedSizes = new int[maxLength];
+    }
+
+    /**
+     * Takes the most recently cached value of the given bucketed size
+     * @return the value, or null if there is none
+     */
+    @Nullable
+    synchronized V take(int bucketedSize) {
+      for (int i = mLength - 1; i >= 0; --i) {
+        if (mBucketedSizes[i] == bucketedSize) {
+          final V value = (V) mValues[i];
+          mLength--;
+          mValues[i] = mValues[mLength];
+          mBucketedSizes[i] = mBucketedSizes[mLength];
+          mValues[mLength] = null;
+          return value;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Caches the value, unless the cache is full
+     * @return true if the value was cached
+     */
+    synchronized boolean offer(V value, int bucketedSize) {
+      if (mLength == mValues.length) {
+        return false;
+      }
+      mValues[mLength] = value;
+      mBucketedSizes[mLength] = bucketedSize;
+      mLength++;
+      return true;
+    }
+
+    synchronized boolean contains(V value) {
+      for (int i = 0; i < mLength; ++i) {
+        if (mValues[i] == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    synchronized void drainTo(List<V> values) {
+      for (int i = 0; i < mLength; ++i) {
+        values.add((V) mValues[i]);
+        mValues[i] = null;
+      }
+      mLength = 0;
+    }
+
+    synchronized int getLength() {
+      return mLength;
+    }
+  }
+
   /**
    * An exception to indicate if the 'value' is invalid.
    */
@@ -9,12 +9,17 @@
 
 package com.facebook.imagepipeline.memory;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.Map;
+
 import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 
 import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
 import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.imageutils.BitmapUtil;
 
@@ -26,11 +31,33 @@ import com.facebook.imageutils.BitmapUtil;
  * get() allows for a bitmap in the pool to be reused if it matches the desired
  * dimensions; if no such bitmap is found in the pool, a new one is allocated.
  * release() returns a bitmap to the pool.
+ * <p>
+ * Optionally, the pool can be configured with a max waste ratio. In that case the bitmaps are
+ * allocated in size classes: the sizes are rounded up so that there are a few classes for every
+ * power of two, wasting at most the given ratio of the requested size. When there is no free bitmap
+ * of the requested size class, the smallest free bitmap that is larger by at most the waste ratio
+ * is reused instead (best fit). The caller is expected to reconfigure the bitmap, either
+ * explicitly with {@link Bitmap#reconfigure} or by decoding into it via
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}.
  */
 @ThreadSafe
 @TargetApi(21)
 public class BitmapPool extends BasePool<Bitmap> {
 
+  // Spacing between the smallest size classes, so that they can hold whole ARGB_8888 pixels.
+  private static final int MIN_SIZE_CLASS_SPACING = 4;
+  private static final int MAX_SIZE_CLASSES_PER_DOUBLING = 1024;
+
+  private final float mMaxWasteRatio;
+
+  // 0 if size classes are disabled.
+  private final int mSizeClassesPerDoubling;
+
+  @GuardedBy("this")
+  private int mBestFitReuseCount;
+  @GuardedBy("this")
+  private int mBestFitWastedBytes;
+
   /**
    * Creates an instance of a bitmap pool.
    * @param memoryTrimmableRegistry the memory manager to register with
@@ -40,7 +67,25 @@ public class BitmapPool extends BasePool<Bitmap> {
       MemoryTrimmableRegistry memoryTrimmableRegistry,
       PoolParams poolParams,
       PoolStatsTracker poolStatsTracker) {
+    this(memoryTrimmableRegistry, poolParams, poolStatsTracker, 0);
+  }
+
+  /**
+   * Creates an instance of a bitmap pool.
+   * @param memoryTrimmableRegistry the memory manager to register with
+   * @param poolParams pool parameters
+   * @param maxWasteRatio the max ratio of the requested size a reused bitmap can be larger by.
+   *     If 0, only bitmaps of exactly the requested size are reused
+   */
+  public BitmapPool(
+      MemoryTrimmableRegistry memoryTrimmableRegistry,
+      PoolParams poolParams,
+      PoolStatsTracker poolStatsTracker,
+      float maxWasteRatio) {
     super(memoryTrimmableRegistry, poolParams, poolStatsTracker);
+    Preconditions.checkArgument(maxWasteRatio >= 0);
+    mMaxWasteRatio = maxWasteRatio;
+    mSizeClassesPerDoubling = getSizeClassesPerDoubling(maxWasteRatio);
     initialize();
   }
 
@@ -75,7 +120,10 @@ public class BitmapPool extends BasePool<Bitmap> {
    */
   @Override
   protected int getBucketedSize(int requestSize) {
-    return requestSize;
+    if (mSizeClassesPerDoubling == 0) {
+      return requestSize;
+    }
+    return getSizeClassCeil(requestSize, mSizeClassesPerDoubling);
   }
 
   /**
@@ -88,7 +136,10 @@ public class BitmapPool extends BasePool<Bitmap> {
   @Override
   protected int getBucketedSizeForValue(Bitmap value) {
     Preconditions.checkNotNull(value);
-    return value.getAllocationByteCount();
+    if (mSizeClassesPerDoubling == 0) {
+      return value.getAllocationByteCount();
+    }
+    return getSizeClassFloor(value.getAllocationByteCount(), mSizeClassesPerDoubling);
   }
 
   /**
@@ -116,4 +167,89 @@ public class BitmapPool extends BasePool<Bitmap> {
     return !value.isRecycled() &&
         value.isMutable();
   }
+
+  /**
+   * Gets a free bitmap of the requested size class if available. Otherwise, if a max waste ratio
+   * is set, gets the smallest free bitmap that is larger by at most that ratio.
+   */
+  @Nullable
+  @Override
+  synchronized Bitmap getValueForReuse(Bucket<Bitmap> bucket, int bucketedSize) {
+    Bitmap value = super.getValueForReuse(bucket, bucketedSize);
+    if (value != null || mMaxWasteRatio == 0) {
+      return value;
+    }
+    final long maxBucketedSize = (long) (bucketedSize * (1 + (double) mMaxWasteRatio));
+    for (int i = findFirstBucketAbove(bucketedSize);
+        i < mBuckets.size() && mBuckets.keyAt(i) <= maxBucketedSize;
+        i++) {
+      value = mBuckets.valueAt(i).get();
+      if (value != null) {
+        mBestFitReuseCount++;
+        mBestFitWastedBytes += mBuckets.keyAt(i) - bucketedSize;
+        return value;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized Map<String, Integer> getStats() {
+    Map<String, Integer> stats = super.getStats();
+    stats.put(PoolStatsTracker.BEST_FIT_REUSE_COUNT, mBestFitReuseCount);
+    stats.put(PoolStatsTracker.BEST_FIT_WASTED_BYTES, mBestFitWastedBytes);
+    return stats;
+  }
+
+  /** Gets the index of the first bucket whose size is larger than the given one. */
+  private int findFirstBucketAbove(int bucketedSize) {
+    int low = 0;
+    int high = mBuckets.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mBuckets.keyAt(mid) <= bucketedSize) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Gets the number of size classes per power of two, so that rounding a size up to its size class
+   * wastes at most the given ratio. Returns 0 if the size classes are disabled.
+   */
+  @VisibleForTesting
+  static int getSizeClassesPerDoubling(float maxWasteRatio) {
+    if (maxWasteRatio <= 0) {
+      return 0;
+    }
+    int minClasses = (int) Math.ceil(1 / maxWasteRatio);
+    if (minClasses <= 1) {
+      return 1;
+    }
+    return Math.min(Integer.highestOneBit(minClasses - 1) << 1, MAX_SIZE_CLASSES_PER_DOUBLING);
+  }
+
+  /** Rounds the size up to the nearest size class. */
+  @VisibleForTesting
+  static int getSizeClassCeil(int size, int sizeClassesPerDoubling) {
+    int spacing = getSizeClassSpacing(size, sizeClassesPerDoubling);
+    long sizeClass = ((size + (long) spacing - 1) / spacing) * spacing;
+    return (int) Math.min(sizeClass, Integer.MAX_VALUE);
+  }
+
+  /** Rounds the size down to the nearest size class. */
+  @VisibleForTesting
+  static int getSizeClassFloor(int size, int sizeClassesPerDoubling) {
+    int spacing = getSizeClassSpacing(size, sizeClassesPerDoubling);
+    return size / spacing * spacing;
+  }
+
+  private static int getSizeClassSpacing(int size, int sizeClassesPerDoubling) {
+    return Math.max(
+        MIN_SIZE_CLASS_SPACING,
+        Integer.highestOneBit(size) / sizeClassesPerDoubling);
+  }
 }
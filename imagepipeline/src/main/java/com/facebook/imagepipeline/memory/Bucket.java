@@ -12,7 +12,7 @@ package com.facebook.imagepipeline.memory;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.Queue;
 
 import com.facebook.common.internal.Preconditions;
@@ -45,7 +45,9 @@ import com.facebook.common.internal.VisibleForTesting;
 class Bucket<V> {
   public final int mItemSize; // size in bytes of items in this bucket
   public final int mMaxLength; // 'max' length for this bucket
-  final Queue mFreeList; // the free list for this bucket, subclasses can vary type
+  // the free list for this bucket, subclasses can vary type. It is array-backed, so that releasing
+  // a value doesn't allocate
+  final Queue mFreeList;
 
   private int mInUseLength; // current number of entries 'in use' (i.e.) not in the free list
 
@@ -62,7 +64,7 @@ class Bucket<V> {
 
     mItemSize = itemSize;
     mMaxLength = maxLength;
-    mFreeList = new LinkedList();
+    mFreeList = new ArrayDeque();
     mInUseLength = inUseLength;
   }
 
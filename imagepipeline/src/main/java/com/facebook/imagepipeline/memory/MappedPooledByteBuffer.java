@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.memory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+
+/**
+ * An implementation of {@link PooledByteBuffer} backed by a read-only memory mapping of a file, so
+ * that the bytes are read from the page cache instead of being copied to native memory.
+ *
+ * <p> There is no way to unmap a file explicitly: closing the buffer drops the reference to the
+ * mapping, which is released once it's garbage collected. The mapping stays valid if the file is
+ * deleted, but the file must never be truncated while mapped.
+ *
+ * <p> The mapped bytes don't have a native pointer accessible from java. The native pointer is only
+ * needed by the decoders of animated images: {@link #getNativePtr()} copies the bytes to a chunk
+ * of native memory once, and the buffer uses that chunk instead of the mapping from then on.
+ */
+@ThreadSafe
+public class MappedPooledByteBuffer implements PooledByteBuffer {
+
+  // size of the transfer buffer used to copy the mapping to native memory
+  private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+  private final NativeMemoryChunkPool mPool;
+  private final int mSize;
+
+  // the mapping, until the bytes are copied to native memory
+  @GuardedBy("this")
+  private @Nullable ByteBuffer mBuffer;
+
+  // the bytes in native memory, once a native pointer was needed
+  @GuardedBy("this")
+  private @Nullable CloseableReference<NativeMemoryChunk> mChunkRef;
+
+  /**
+   * @param buffer the mapping, from its position to its limit
+   * @param pool the pool to allocate a chunk from if a native pointer is needed
+   */
+  public MappedPooledByteBuffer(ByteBuffer buffer, NativeMemoryChunkPool pool) {
+    Preconditions.checkNotNull(buffer);
+    mPool = Preconditions.checkNotNull(pool);
+    mBuffer = buffer.duplicate();
+    mSize = mBuffer.remaining();
+  }
+
+  /**
+   * Maps the whole file. The file doesn't need to stay open while it's mapped, but it must not be
+   * truncated: only map files that are replaced or deleted, never rewritten in place.
+   */
+  public static MappedPooledByteBuffer map(File file, NativeMemoryChunkPool pool)
+      throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large to be mapped: " + file);
+      }
+      return new MappedPooledByteBuffer(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, size),
+          pool);
+    } finally {
+      Closeables.close(randomAccessFile, true);
+    }
+  }
+
+  @Override
+  public synchronized int size() {
+    ensureValid();
+    return mSize;
+  }
+
+  @Override
+  public synchronized byte read(int offset) {
+    ensureValid();
+    Preconditions.checkArgument(offset >= 0);
+    Preconditions.checkArgument(offset < mSize);
+    if (mChunkRef != null) {
+      return mChunkRef.get().read(offset);
+    }
+    return mBuffer.get(offset);
+  }
+
+  @Override
+  public synchronized void read(int offset, byte[] buffer, int bufferOffset, int length) {
+    ensureValid();
+    Preconditions.checkArgument(offset >= 0 && length >= 0);
+    Preconditions.checkArgument(offset + length <= mSize);
+    if (mChunkRef != null) {
+      // The bounds of the destination array are checked by NativeMemoryChunk.read
+      mChunkRef.get().read(offset, buffer, bufferOffset, length);
+      return;
+    }
+    mBuffer.position(offset);
+    mBuffer.get(buffer, bufferOffset, length);
+  }
+
+  /**
+   * Returns the address of the data, after copying it from the mapping to native memory if needed.
+   */
+  @Override
+  public synchronized long getNativePtr() {
+    ensureValid();
+    if (mChunkRef == null) {
+      copyToNativeMemory();
+    }
+    return mChunkRef.get().getNativePtr();
+  }
+
+  @GuardedBy("this")
+  private void copyToNativeMemory() {
+    CloseableReference<NativeMemoryChunk> chunkRef =
+        CloseableReference.of(mPool.get(Math.max(mSize, 1)), mPool);
+    byte[] transferBuffer = new byte[Math.min(COPY_BUFFER_SIZE, Math.max(mSize, 1))];
+    mBuffer.position(0);
+    int copied = 0;
+    while (copied < mSize) {
+      int count = Math.min(transferBuffer.length, mSize - copied);
+      mBuffer.get(transferBuffer, 0, count);
+      chunkRef.get().write(copied, transferBuffer, 0, count);
+      copied += count;
+    }
+    mChunkRef = chunkRef;
+    mBuffer = null;
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return mBuffer == null && mChunkRef == null;
+  }
+
+  /**
+   * Drops the reference to the mapping, and releases the native memory if the bytes were copied.
+   * It is not an error to close an already closed buffer.
+   */
+  @Override
+  public synchronized void close() {
+    mBuffer = null;
+    CloseableReference.closeSafely(mChunkRef);
+    mChunkRef = null;
+  }
+
+  synchronized void ensureValid() {
+    if (isClosed()) {
+      throw new ClosedException();
+    }
+  }
+}
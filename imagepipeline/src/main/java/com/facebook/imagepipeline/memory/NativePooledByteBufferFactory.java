@@ -18,24 +18,40 @@ import com.facebook.common.internal.Preconditions;
 import com.facebook.common.internal.Throwables;
 import com.facebook.common.internal.VisibleForTesting;
 import com.facebook.common.memory.PooledByteBufferFactory;
+import com.facebook.common.memory.PooledByteBufferOutputStream;
 import com.facebook.common.memory.PooledByteStreams;
 import com.facebook.common.references.CloseableReference;
 
 /**
  * A factory to provide instances of {@link NativePooledByteBuffer} and
- * {@link NativePooledByteBufferOutputStream}
+ * {@link NativePooledByteBufferOutputStream}, and of {@link SegmentedPooledByteBufferOutputStream}
+ * for the output streams of unknown size if a segment size is set.
  */
 @ThreadSafe
 public class NativePooledByteBufferFactory implements PooledByteBufferFactory {
 
   private final PooledByteStreams mPooledByteStreams;
   private final NativeMemoryChunkPool mPool;    // native memory pool
+  private final int mSegmentSize;
 
   public NativePooledByteBufferFactory(
       NativeMemoryChunkPool pool,
       PooledByteStreams pooledByteStreams) {
+    this(pool, pooledByteStreams, 0);
+  }
+
+  /**
+   * @param segmentSize if positive, the output streams created by
+   *     {@link #newSegmentedOutputStream()} are made of segments of this size instead of a single
+   *     chunk that is reallocated as they grow
+   */
+  public NativePooledByteBufferFactory(
+      NativeMemoryChunkPool pool,
+      PooledByteStreams pooledByteStreams,
+      int segmentSize) {
     mPool = pool;
     mPooledByteStreams = pooledByteStreams;
+    mSegmentSize = segmentSize;
   }
 
   @Override
@@ -133,6 +149,19 @@ public class NativePooledByteBufferFactory implements PooledByteBufferFactory {
     return new NativePooledByteBufferOutputStream(mPool);
   }
 
+  /**
+   * Creates a new output stream for contents of unknown size: a
+   * SegmentedPooledByteBufferOutputStream if a segment size is set, otherwise the same as
+   * {@link #newOutputStream()}
+   * @return a new PooledByteBufferOutputStream
+   */
+  public PooledByteBufferOutputStream newSegmentedOutputStream() {
+    if (mSegmentSize > 0) {
+      return new SegmentedPooledByteBufferOutputStream(mPool, mSegmentSize);
+    }
+    return newOutputStream();
+  }
+
   /**
    * Creates a new NativePooledByteBufferOutputStream instance with the specified initial capacity
    * @param initialCapacity initial allocation size for the underlying output stream
@@ -11,7 +11,7 @@ package com.facebook.imagepipeline.memory;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 
 import com.facebook.common.references.OOMSoftReference;
 
@@ -21,11 +21,11 @@ import com.facebook.common.references.OOMSoftReference;
 @NotThreadSafe
 class OOMSoftReferenceBucket<V> extends Bucket<V> {
 
-  private LinkedList<OOMSoftReference<V>> mSpareReferences;
+  private ArrayDeque<OOMSoftReference<V>> mSpareReferences;
 
   public OOMSoftReferenceBucket(int itemSize, int maxLength, int inUseLength) {
     super(itemSize, maxLength, inUseLength);
-    mSpareReferences = new LinkedList<>();
+    mSpareReferences = new ArrayDeque<>();
   }
 
   @Override
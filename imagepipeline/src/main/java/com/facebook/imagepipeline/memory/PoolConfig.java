@@ -23,6 +23,7 @@ public class PoolConfig {
 
   // There are a lot of parameters in this class. Please follow strict alphabetical order.
 
+  private final float mBitmapPoolMaxWasteRatio;
   private final PoolParams mBitmapPoolParams;
   private final PoolStatsTracker mBitmapPoolStatsTracker;
   private final PoolParams mFlexByteArrayPoolParams;
@@ -31,8 +32,10 @@ public class PoolConfig {
   private final PoolStatsTracker mNativeMemoryChunkPoolStatsTracker;
   private final PoolParams mSmallByteArrayPoolParams;
   private final PoolStatsTracker mSmallByteArrayPoolStatsTracker;
+  private final int mPooledByteBufferSegmentSize;
 
   private PoolConfig(Builder builder) {
+    mBitmapPoolMaxWasteRatio = builder.mBitmapPoolMaxWasteRatio;
     mBitmapPoolParams =
         builder.mBitmapPoolParams == null ?
             DefaultBitmapPoolParams.get() :
@@ -65,6 +68,11 @@ public class PoolConfig {
         builder.mSmallByteArrayPoolStatsTracker == null ?
             NoOpPoolStatsTracker.getInstance() :
             builder.mSmallByteArrayPoolStatsTracker;
+    mPooledByteBufferSegmentSize = builder.mPooledByteBufferSegmentSize;
+  }
+
+  public float getBitmapPoolMaxWasteRatio() {
+    return mBitmapPoolMaxWasteRatio;
   }
 
   public PoolParams getBitmapPoolParams() {
@@ -99,12 +107,17 @@ public class PoolConfig {
     return mSmallByteArrayPoolStatsTracker;
   }
 
+  public int getPooledByteBufferSegmentSize() {
+    return mPooledByteBufferSegmentSize;
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
 
   public static class Builder {
 
+    private float mBitmapPoolMaxWasteRatio = 0;
     private PoolParams mBitmapPoolParams;
     private PoolStatsTracker mBitmapPoolStatsTracker;
     private PoolParams mFlexByteArrayPoolParams;
@@ -113,10 +126,22 @@ public class PoolConfig {
     private PoolStatsTracker mNativeMemoryChunkPoolStatsTracker;
     private PoolParams mSmallByteArrayPoolParams;
     private PoolStatsTracker mSmallByteArrayPoolStatsTracker;
+    private int mPooledByteBufferSegmentSize;
 
     private Builder() {
     }
 
+    /**
+     * Allows the bitmap pool to reuse bitmaps that are larger than requested by at most the given
+     * ratio of the requested size, see {@link BitmapPool}. By default only bitmaps of exactly the
+     * requested size are reused.
+     */
+    public Builder setBitmapPoolMaxWasteRatio(float bitmapPoolMaxWasteRatio) {
+      Preconditions.checkArgument(bitmapPoolMaxWasteRatio >= 0);
+      mBitmapPoolMaxWasteRatio = bitmapPoolMaxWasteRatio;
+      return this;
+    }
+
     public Builder setBitmapPoolParams(PoolParams bitmapPoolParams) {
       mBitmapPoolParams = Preconditions.checkNotNull(bitmapPoolParams);
       return this;
@@ -162,6 +187,17 @@ public class PoolConfig {
       return this;
     }
 
+    /**
+     * Sets the size of the segments of the buffers downloaded without a known content length. The
+     * buffers then grow by adding segments instead of being copied to bigger chunks. Zero, the
+     * default, to use a single chunk.
+     */
+    public Builder setPooledByteBufferSegmentSize(int pooledByteBufferSegmentSize) {
+      Preconditions.checkArgument(pooledByteBufferSegmentSize >= 0);
+      mPooledByteBufferSegmentSize = pooledByteBufferSegmentSize;
+      return this;
+    }
+
     public PoolConfig build() {
       return new PoolConfig(this);
     }
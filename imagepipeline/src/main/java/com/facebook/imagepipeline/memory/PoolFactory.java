@@ -41,7 +41,8 @@ public class PoolFactory {
       mBitmapPool = new BitmapPool(
           mConfig.getMemoryTrimmableRegistry(),
           mConfig.getBitmapPoolParams(),
-          mConfig.getBitmapPoolStatsTracker());
+          mConfig.getBitmapPoolStatsTracker(),
+          mConfig.getBitmapPoolMaxWasteRatio());
     }
     return mBitmapPool;
   }
@@ -73,7 +74,8 @@ public class PoolFactory {
     if (mPooledByteBufferFactory == null) {
       mPooledByteBufferFactory = new NativePooledByteBufferFactory(
           getNativeMemoryChunkPool(),
-          getPooledByteStreams());
+          getPooledByteStreams(),
+          mConfig.getPooledByteBufferSegmentSize());
     }
     return mPooledByteBufferFactory;
   }
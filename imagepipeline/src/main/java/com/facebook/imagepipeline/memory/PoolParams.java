@@ -46,6 +46,12 @@ import com.facebook.common.internal.Preconditions;
  * This represents the maximum size of the buckets in the pool. This restricts all buckets to only
  * accept elements smaller or equal to this size. If this size is exceeded, an exception will be
  * thrown.
+ * <p>
+ * {@link #maxThreadCacheLength}
+ * The maximum number of released values each thread keeps for itself, in front of the shared
+ * buckets. Values in these thread caches count as used until they are drained back to the pool,
+ * which happens when the pool is trimmed or over its soft cap, or an allocation would exceed a cap.
+ * If this is 0, the thread caches are disabled.
  */
 public class PoolParams {
   /** If maxNumThreads is set to this level, the pool doesn't actually care what it is */
@@ -63,6 +69,9 @@ public class PoolParams {
    */
   public final int maxNumThreads;
 
+  /** The maximum number of values cached by each thread, or 0 if the thread caches are disabled */
+  public final int maxThreadCacheLength;
+
   /**
    * Set up pool params
    * @param maxSize soft-cap and hard-cap on size of the pool
@@ -98,12 +107,43 @@ public class PoolParams {
       int minBucketSize,
       int maxBucketSize,
       int maxNumThreads) {
+    this(
+        maxSizeSoftCap,
+        maxSizeHardCap,
+        bucketSizes,
+        minBucketSize,
+        maxBucketSize,
+        maxNumThreads,
+        0);
+  }
+
+  /**
+   * Set up pool params
+   * @param maxSizeSoftCap soft cap on max size of the pool
+   * @param maxSizeHardCap hard cap on max size of the pool
+   * @param bucketSizes (optional) bucket sizes and lengths for the pool
+   * @param minBucketSize min bucket size for the pool
+   * @param maxBucketSize max bucket size for the pool
+   * @param maxNumThreads the maximum number of threads in th epool, or -1 if the pool doesn't care
+   * @param maxThreadCacheLength the maximum number of values cached by each thread, or 0 to
+   *     disable the thread caches
+   */
+  public PoolParams(
+      int maxSizeSoftCap,
+      int maxSizeHardCap,
+      @Nullable SparseIntArray bucketSizes,
+      int minBucketSize,
+      int maxBucketSize,
+      int maxNumThreads,
+      int maxThreadCacheLength) {
     Preconditions.checkState(maxSizeSoftCap >= 0 && maxSizeHardCap >= maxSizeSoftCap);
+    Preconditions.checkState(maxThreadCacheLength >= 0);
     this.maxSizeSoftCap = maxSizeSoftCap;
     this.maxSizeHardCap = maxSizeHardCap;
     this.bucketSizes = bucketSizes;
     this.minBucketSize = minBucketSize;
     this.maxBucketSize = maxBucketSize;
     this.maxNumThreads = maxNumThreads;
+    this.maxThreadCacheLength = maxThreadCacheLength;
   }
 }
@@ -14,12 +14,17 @@ package com.facebook.imagepipeline.memory;
  */
 public interface PoolStatsTracker {
   String BUCKETS_USED_PREFIX = "buckets_used_";
+  String BUCKETS_FREE_PREFIX = "buckets_free_";
   String USED_COUNT = "used_count";
   String USED_BYTES = "used_bytes";
   String FREE_COUNT = "free_count";
   String FREE_BYTES = "free_bytes";
   String SOFT_CAP = "soft_cap";
   String HARD_CAP = "hard_cap";
+  String BEST_FIT_REUSE_COUNT = "best_fit_reuse_count";
+  String BEST_FIT_WASTED_BYTES = "best_fit_wasted_bytes";
+  String THREAD_CACHED_COUNT = "thread_cached_count";
+  String THREAD_CACHED_BYTES = "thread_cached_bytes";
 
   void setBasePool(BasePool basePool);
 
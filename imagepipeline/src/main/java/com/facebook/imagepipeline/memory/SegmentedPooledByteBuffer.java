@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.memory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+
+/**
+ * An implementation of {@link PooledByteBuffer} that stores its data in a chain of
+ * {@link NativeMemoryChunk}s, so that it can be built without ever copying the data to a bigger
+ * chunk.
+ *
+ * <p> The segments are shared with the stream that produced the buffer and with the other buffers
+ * it produced. The native pointer of a single block of memory is only needed by the decoders of
+ * animated images: if there are several segments, {@link #getNativePtr()} copies them to a new
+ * chunk once, and the buffer uses that chunk from then on.
+ */
+@ThreadSafe
+public class SegmentedPooledByteBuffer implements PooledByteBuffer {
+
+  private final NativeMemoryChunkPool mPool;
+  private final int mSize;
+
+  @GuardedBy("this")
+  private @Nullable List<CloseableReference<NativeMemoryChunk>> mSegments;
+
+  // offset in the buffer of the first byte of each segment
+  @GuardedBy("this")
+  private int[] mSegmentOffsets;
+
+  /**
+   * @param segments the segments, the buffer takes its own references to them
+   * @param size the number of bytes of the buffer, at most the size of all the segments
+   * @param pool the pool to allocate a single chunk from if a native pointer is needed
+   */
+  public SegmentedPooledByteBuffer(
+      List<CloseableReference<NativeMemoryChunk>> segments,
+      int size,
+      NativeMemoryChunkPool pool) {
+    Preconditions.checkNotNull(segments);
+    mPool = Preconditions.checkNotNull(pool);
+    mSegments = new ArrayList<>(segments.size());
+    mSegmentOffsets = new int[segments.size()];
+    int capacity = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      CloseableReference<NativeMemoryChunk> segment = segments.get(i);
+      mSegmentOffsets[i] = capacity;
+      capacity += segment.get().getSize();
+      mSegments.add(segment.clone());
+    }
+    Preconditions.checkArgument(size >= 0 && size <= capacity);
+    mSize = size;
+  }
+
+  @Override
+  public synchronized int size() {
+    ensureValid();
+    return mSize;
+  }
+
+  @Override
+  public synchronized byte read(int offset) {
+    ensureValid();
+    Preconditions.checkArgument(offset >= 0);
+    Preconditions.checkArgument(offset < mSize);
+    int index = getSegmentIndex(offset);
+    return mSegments.get(index).get().read(offset - mSegmentOffsets[index]);
+  }
+
+  @Override
+  public synchronized void read(int offset, byte[] buffer, int bufferOffset, int length) {
+    ensureValid();
+    // The bounds of the destination array are checked by NativeMemoryChunk.read
+    Preconditions.checkArgument(offset >= 0 && length >= 0);
+    Preconditions.checkArgument(offset + length <= mSize);
+    int index = getSegmentIndex(offset);
+    while (length > 0) {
+      NativeMemoryChunk segment = mSegments.get(index).get();
+      int segmentOffset = offset - mSegmentOffsets[index];
+      int count = Math.min(length, segment.getSize() - segmentOffset);
+      segment.read(segmentOffset, buffer, bufferOffset, count);
+      offset += count;
+      bufferOffset += count;
+      length -= count;
+      index++;
+    }
+  }
+
+  /**
+   * Returns the address of the data, after copying it to a single chunk if needed.
+   */
+  @Override
+  public synchronized long getNativePtr() {
+    ensureValid();
+    if (mSegments.size() > 1) {
+      coalesce();
+    }
+    return mSegments.get(0).get().getNativePtr();
+  }
+
+  @GuardedBy("this")
+  private void coalesce() {
+    CloseableReference<NativeMemoryChunk> chunkRef =
+        CloseableReference.of(mPool.get(Math.max(mSize, 1)), mPool);
+    int copied = 0;
+    for (int i = 0; i < mSegments.size() && copied < mSize; i++) {
+      NativeMemoryChunk segment = mSegments.get(i).get();
+      int count = Math.min(mSize - copied, segment.getSize());
+      segment.copy(0, chunkRef.get(), copied, count);
+      copied += count;
+    }
+    CloseableReference.closeSafely(mSegments);
+    mSegments = new ArrayList<>(1);
+    mSegments.add(chunkRef);
+    mSegmentOffsets = new int[] {0};
+  }
+
+  @GuardedBy("this")
+  private int getSegmentIndex(int offset) {
+    int index = Arrays.binarySearch(mSegmentOffsets, offset);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  @VisibleForTesting
+  synchronized int getSegmentCount() {
+    ensureValid();
+    return mSegments.size();
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return mSegments == null;
+  }
+
+  /**
+   * Closes this instance, and releases its references to the segments.
+   * Note: It is not an error to close an already closed bytebuffer
+   */
+  @Override
+  public synchronized void close() {
+    if (mSegments != null) {
+      CloseableReference.closeSafely(mSegments);
+      mSegments = null;
+    }
+  }
+
+  synchronized void ensureValid() {
+    if (isClosed()) {
+      throw new ClosedException();
+    }
+  }
+}
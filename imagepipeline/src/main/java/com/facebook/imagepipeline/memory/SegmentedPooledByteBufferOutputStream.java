@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.memory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.memory.PooledByteBufferOutputStream;
+import com.facebook.common.references.CloseableReference;
+
+/**
+ * An implementation of {@link PooledByteBufferOutputStream} that produces a
+ * {@link SegmentedPooledByteBuffer}.
+ *
+ * <p> Unlike {@link NativePooledByteBufferOutputStream}, the stream grows by adding a new segment
+ * when the last one is full, so the bytes already written are never copied. This suits the
+ * streams whose final size is unknown, such as the downloads without a content length.
+ */
+@NotThreadSafe
+public class SegmentedPooledByteBufferOutputStream extends PooledByteBufferOutputStream {
+  private final NativeMemoryChunkPool mPool;  // the pool to allocate the segments from
+  private final int mSegmentSize; // the size requested for each new segment
+  private List<CloseableReference<NativeMemoryChunk>> mSegments;
+  private int mCount; // number of bytes written to the stream
+  private int mCapacity; // total size of the segments
+
+  /**
+   * Construct a new instance of this output stream
+   * @param pool the pool to use
+   * @param segmentSize the size to allocate for each segment. The pool may return bigger chunks
+   */
+  public SegmentedPooledByteBufferOutputStream(NativeMemoryChunkPool pool, int segmentSize) {
+    super();
+
+    Preconditions.checkArgument(segmentSize > 0);
+    mPool = Preconditions.checkNotNull(pool);
+    mSegmentSize = segmentSize;
+    mSegments = new ArrayList<>();
+    mCount = 0;
+    mCapacity = 0;
+    addSegment();
+  }
+
+  /**
+   * Gets a PooledByteBuffer from the current contents, sharing the segments with the stream. If
+   * the stream has already been closed, then an InvalidStreamException is thrown.
+   * @return a PooledByteBuffer instance for the contents of the stream
+   * @throws InvalidStreamException if the stream is invalid
+   */
+  @Override
+  public SegmentedPooledByteBuffer toByteBuffer() {
+    ensureValid();
+    return new SegmentedPooledByteBuffer(mSegments, mCount, mPool);
+  }
+
+  @Override
+  public int size() {
+    return mCount;
+  }
+
+  @Override
+  public void write(int oneByte) throws IOException {
+    byte[] buf = new byte[1];
+    buf[0] = (byte) oneByte;
+    this.write(buf);
+  }
+
+  /**
+   * Writes {@code count} bytes from the byte array {@code buffer} starting at
+   * position {@code offset} to this stream, adding segments as needed.
+   * The underlying stream MUST be valid
+   * @throws InvalidStreamException if the stream is invalid
+   */
+  @Override
+  public void write(byte[] buffer, int offset, int count) throws IOException {
+    if (offset < 0 || count < 0 || offset + count > buffer.length) {
+      throw new ArrayIndexOutOfBoundsException("length=" + buffer.length + "; regionStart=" + offset
+          + "; regionLength=" + count);
+    }
+    ensureValid();
+    while (count > 0) {
+      if (mCount == mCapacity) {
+        addSegment();
+      }
+      NativeMemoryChunk segment = mSegments.get(mSegments.size() - 1).get();
+      int segmentOffset = segment.getSize() - (mCapacity - mCount);
+      int written = segment.write(segmentOffset, buffer, offset, count);
+      mCount += written;
+      offset += written;
+      count -= written;
+    }
+  }
+
+  /**
+   * Closes the stream. The segments are released back to the pool once the buffers that share
+   * them are closed too.
+   */
+  @Override
+  public void close() {
+    if (mSegments != null) {
+      CloseableReference.closeSafely(mSegments);
+    }
+    mSegments = null;
+    mCount = -1;
+    super.close();
+  }
+
+  /**
+   * @throws BasePool.SizeTooLargeException if the allocation from the pool fails
+   */
+  private void addSegment() {
+    NativeMemoryChunk segment = mPool.get(mSegmentSize);
+    mSegments.add(CloseableReference.of(segment, mPool));
+    mCapacity += segment.getSize();
+  }
+
+  @VisibleForTesting
+  int getSegmentCount() {
+    ensureValid();
+    return mSegments.size();
+  }
+
+  private void ensureValid() {
+    if (mSegments == null) {
+      throw new NativePooledByteBufferOutputStream.InvalidStreamException();
+    }
+  }
+}
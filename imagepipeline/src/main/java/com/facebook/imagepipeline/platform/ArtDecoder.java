@@ -20,11 +20,14 @@ import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.support.v4.util.Pools.SynchronizedPool;
 
+import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.common.internal.VisibleForTesting;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.common.streams.LimitedInputStream;
 import com.facebook.common.streams.TailAppendingInputStream;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.common.RegionDecodeOptions;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.memory.BitmapPool;
 import com.facebook.imageutils.BitmapUtil;
@@ -43,6 +46,7 @@ public class ArtDecoder implements PlatformDecoder {
   private static final int DECODE_BUFFER_SIZE = 16 * 1024;
 
   private final BitmapPool mBitmapPool;
+  private final RegionDecoderCache mRegionDecoderCache = new RegionDecoderCache();
 
   /**
    * ArtPlatformImageDecoder decodes images from InputStream - to do so we need to provide
@@ -126,6 +130,42 @@ public class ArtDecoder implements PlatformDecoder {
     }
   }
 
+  /**
+   * Creates a bitmap from a region of encoded bytes.
+   * @param encodedImage the encoded image with a reference to the encoded bytes
+   * @param bitmapConfig the {@link android.graphics.Bitmap.Config}
+   * used to create the decoded Bitmap
+   * @param regionDecodeOptions the region to decode and its sample size
+   * @return the bitmap
+   * @exception java.lang.OutOfMemoryError if the Bitmap cannot be allocated
+   */
+  @Override
+  public CloseableReference<Bitmap> decodeRegionFromEncodedImage(
+      EncodedImage encodedImage,
+      Bitmap.Config bitmapConfig,
+      RegionDecodeOptions regionDecodeOptions) {
+    ByteBuffer byteBuffer = mDecodeBuffers.acquire();
+    if (byteBuffer == null) {
+      byteBuffer = ByteBuffer.allocate(DECODE_BUFFER_SIZE);
+    }
+    try {
+      // the size of the region is only known once decoded, so the bitmap is not taken from the pool
+      Bitmap bitmap = mRegionDecoderCache.decodeRegion(
+          encodedImage,
+          bitmapConfig,
+          regionDecodeOptions,
+          byteBuffer.array());
+      return CloseableReference.of(bitmap, SimpleBitmapReleaser.getInstance());
+    } finally {
+      mDecodeBuffers.release(byteBuffer);
+    }
+  }
+
+  @Override
+  public void closeRegionDecoder(CacheKey encodedCacheKey) {
+    mRegionDecoderCache.close(encodedCacheKey);
+  }
+
   protected CloseableReference<Bitmap> decodeStaticImageFromStream(
       InputStream inputStream,
       BitmapFactory.Options options) {
@@ -160,6 +200,10 @@ public class ArtDecoder implements PlatformDecoder {
       decodedBitmap.recycle();
       throw new IllegalStateException();
     }
+    if (options.inDensity != 0) {
+      // a scaled bitmap has the target density, which would make it scaled again when drawn
+      decodedBitmap.setDensity(Bitmap.DENSITY_NONE);
+    }
 
     return CloseableReference.of(decodedBitmap, mBitmapPool);
   }
@@ -180,6 +224,17 @@ public class ArtDecoder implements PlatformDecoder {
       throw new IllegalArgumentException();
     }
 
+    final int targetWidth = encodedImage.getTargetWidth();
+    if (targetWidth > 0 && targetWidth < options.outWidth) {
+      // scale the sampled image down to the target width while decoding it, rounding the
+      // dimensions the same way as BitmapFactory so that the bitmap to reuse has the right size
+      options.inDensity = options.outWidth;
+      options.inTargetDensity = targetWidth;
+      final float scale = (float) options.inTargetDensity / options.inDensity;
+      options.outWidth = (int) (options.outWidth * scale + 0.5f);
+      options.outHeight = (int) (options.outHeight * scale + 0.5f);
+    }
+
     options.inJustDecodeBounds = false;
     options.inDither = true;
     options.inPreferredConfig = bitmapConfig;
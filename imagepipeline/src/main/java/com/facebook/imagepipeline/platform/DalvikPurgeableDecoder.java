@@ -13,10 +13,12 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
 
+import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.common.internal.Throwables;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.common.RegionDecodeOptions;
 import com.facebook.imagepipeline.common.TooManyBitmapsException;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.memory.BitmapCounter;
@@ -32,6 +34,7 @@ abstract class DalvikPurgeableDecoder implements PlatformDecoder {
       (byte) JfifUtil.MARKER_FIRST_BYTE, (byte) JfifUtil.MARKER_EOI };
 
   private final BitmapCounter mUnpooledBitmapsCounter;
+  private final RegionDecoderCache mRegionDecoderCache = new RegionDecoderCache();
 
   DalvikPurgeableDecoder() {
     mUnpooledBitmapsCounter = BitmapCounterProvider.get();
@@ -93,7 +96,35 @@ abstract class DalvikPurgeableDecoder implements PlatformDecoder {
     }
   }
 
+  /**
+   * Creates a bitmap from a region of encoded bytes. The bitmap is not purgeable.
+   *
+   * @param encodedImage the encoded image with reference to the encoded bytes
+   * @param bitmapConfig the {@link android.graphics.Bitmap.Config}
+   * used to create the decoded Bitmap
+   * @param regionDecodeOptions the region to decode and its sample size
+   * @return the bitmap
+   * @throws TooManyBitmapsException if the pool is full
+   * @throws java.lang.OutOfMemoryError if the Bitmap cannot be allocated
+   */
+  @Override
+  public CloseableReference<Bitmap> decodeRegionFromEncodedImage(
+      EncodedImage encodedImage,
+      Bitmap.Config bitmapConfig,
+      RegionDecodeOptions regionDecodeOptions) {
+    Bitmap bitmap =
+        mRegionDecoderCache.decodeRegion(encodedImage, bitmapConfig, regionDecodeOptions, null);
+    if (!mUnpooledBitmapsCounter.increase(bitmap)) {
+      bitmap.recycle();
+      throw new TooManyBitmapsException();
+    }
+    return CloseableReference.of(bitmap, mUnpooledBitmapsCounter.getReleaser());
+  }
 
+  @Override
+  public void closeRegionDecoder(CacheKey encodedCacheKey) {
+    mRegionDecoderCache.close(encodedCacheKey);
+  }
 
   /**
    * Decodes a byteArray into a purgeable bitmap
@@ -10,7 +10,9 @@ package com.facebook.imagepipeline.platform;
 
 import android.graphics.Bitmap;
 
+import com.facebook.cache.common.CacheKey;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.common.RegionDecodeOptions;
 import com.facebook.imagepipeline.image.EncodedImage;
 
 public interface PlatformDecoder {
@@ -44,4 +46,32 @@ public interface PlatformDecoder {
       EncodedImage encodedImage,
       Bitmap.Config bitmapConfig,
       int length);
+
+  /**
+   * Creates a bitmap from a region of encoded bytes. Supports the formats supported by
+   * {@link android.graphics.BitmapRegionDecoder}, but not partial images.
+   *
+   * <p> The region decoder of an image with an encoded cache key is kept to decode its other
+   * regions, until {@link #closeRegionDecoder} is called or it is evicted by the decoders of other
+   * images.
+   *
+   * @param encodedImage the reference to the encoded image with the reference to the encoded bytes
+   * @param bitmapConfig the {@link android.graphics.Bitmap.Config} used to create the decoded
+   * Bitmap
+   * @param regionDecodeOptions the region to decode, and the sample size to decode it with
+   * @return the bitmap
+   * @throws TooManyBitmapsException if the pool is full
+   * @throws java.lang.OutOfMemoryError if the Bitmap cannot be allocated
+   */
+  CloseableReference<Bitmap> decodeRegionFromEncodedImage(
+      EncodedImage encodedImage,
+      Bitmap.Config bitmapConfig,
+      RegionDecodeOptions regionDecodeOptions);
+
+  /**
+   * Releases the region decoder kept for an image, once no more regions of it are needed.
+   *
+   * @param encodedCacheKey the encoded cache key of the image
+   */
+  void closeRegionDecoder(CacheKey encodedCacheKey);
 }
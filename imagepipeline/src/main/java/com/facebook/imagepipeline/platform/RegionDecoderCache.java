@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.platform;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.common.RegionDecodeOptions;
+import com.facebook.imagepipeline.image.EncodedImage;
+
+/**
+ * Decodes regions of images with {@link BitmapRegionDecoder}.
+ *
+ * <p> Creating a region decoder parses the whole encoded image, so the decoders are kept and
+ * reused for all the regions of the same image, keyed by its encoded cache key. Only the few most
+ * recently used ones are kept, and {@link #close} releases the one of an image as soon as no more
+ * regions of it are needed. A decoder is only recycled once the decodes using it are finished.
+ */
+@ThreadSafe
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+class RegionDecoderCache {
+
+  @VisibleForTesting static final int MAX_DECODERS = 2;
+
+  private static final ResourceReleaser<BitmapRegionDecoder> REGION_DECODER_RELEASER =
+      new ResourceReleaser<BitmapRegionDecoder>() {
+        @Override
+        public void release(BitmapRegionDecoder regionDecoder) {
+          regionDecoder.recycle();
+        }
+      };
+
+  // in access order, so that the least recently used decoder comes first
+  @GuardedBy("this")
+  private final LinkedHashMap<CacheKey, CloseableReference<BitmapRegionDecoder>> mDecoders =
+      new LinkedHashMap<>(MAX_DECODERS, 0.75f, true);
+
+  /**
+   * Decodes the region of the encoded image. The region is clipped to the bounds of the image.
+   *
+   * @param encodedImage the encoded image with a reference to the encoded bytes
+   * @param bitmapConfig the {@link android.graphics.Bitmap.Config} used to create the bitmap
+   * @param regionDecodeOptions the region to decode and its sample size
+   * @param tempStorage the buffer used while decoding, if any
+   * @return the bitmap of the region, not backed by any pool
+   * @throws IllegalArgumentException if the format does not support region decoding, or if the
+   *     region is outside the image
+   */
+  Bitmap decodeRegion(
+      EncodedImage encodedImage,
+      Bitmap.Config bitmapConfig,
+      RegionDecodeOptions regionDecodeOptions,
+      @Nullable byte[] tempStorage) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD_MR1) {
+      throw new UnsupportedOperationException("Region decoding requires API 10");
+    }
+    CloseableReference<BitmapRegionDecoder> regionDecoderRef = getRegionDecoder(encodedImage);
+    try {
+      BitmapRegionDecoder regionDecoder = regionDecoderRef.get();
+      Rect region = new Rect(
+          regionDecodeOptions.left,
+          regionDecodeOptions.top,
+          regionDecodeOptions.right,
+          regionDecodeOptions.bottom);
+      if (!region.intersect(0, 0, regionDecoder.getWidth(), regionDecoder.getHeight())) {
+        throw new IllegalArgumentException("Region is outside the image: " + regionDecodeOptions);
+      }
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = regionDecodeOptions.sampleSize;
+      options.inPreferredConfig = bitmapConfig;
+      options.inDither = true;
+      options.inTempStorage = tempStorage;
+      Bitmap bitmap = regionDecoder.decodeRegion(region, options);
+      if (bitmap == null) {
+        throw new IllegalArgumentException("Could not decode region " + regionDecodeOptions);
+      }
+      return bitmap;
+    } finally {
+      regionDecoderRef.close();
+    }
+  }
+
+  /**
+   * Releases the decoder kept for the image, if any.
+   *
+   * @param encodedCacheKey the encoded cache key of the image
+   */
+  void close(CacheKey encodedCacheKey) {
+    CloseableReference<BitmapRegionDecoder> regionDecoderRef;
+    synchronized (this) {
+      regionDecoderRef = mDecoders.remove(encodedCacheKey);
+    }
+    CloseableReference.closeSafely(regionDecoderRef);
+  }
+
+  @VisibleForTesting
+  synchronized int getCount() {
+    return mDecoders.size();
+  }
+
+  /**
+   * Gets the decoder of the image, creating it if needed. Images without an encoded cache key get
+   * a decoder of their own, which is not kept.
+   */
+  private CloseableReference<BitmapRegionDecoder> getRegionDecoder(EncodedImage encodedImage) {
+    final CacheKey encodedCacheKey = encodedImage.getEncodedCacheKey();
+    if (encodedCacheKey != null) {
+      synchronized (this) {
+        CloseableReference<BitmapRegionDecoder> regionDecoderRef =
+            mDecoders.get(encodedCacheKey);
+        if (regionDecoderRef != null) {
+          return regionDecoderRef.clone();
+        }
+      }
+    }
+    // the decoder is created outside of the lock, as it parses the whole image
+    CloseableReference<BitmapRegionDecoder> regionDecoderRef =
+        CloseableReference.of(createRegionDecoder(encodedImage), REGION_DECODER_RELEASER);
+    if (encodedCacheKey == null) {
+      return regionDecoderRef;
+    }
+    CloseableReference<BitmapRegionDecoder> evictedRef = null;
+    try {
+      synchronized (this) {
+        CloseableReference<BitmapRegionDecoder> cachedRef = mDecoders.get(encodedCacheKey);
+        if (cachedRef != null) {
+          // another thread created a decoder for the same image meanwhile
+          return cachedRef.clone();
+        }
+        if (mDecoders.size() >= MAX_DECODERS) {
+          Iterator<CloseableReference<BitmapRegionDecoder>> iterator =
+              mDecoders.values().iterator();
+          evictedRef = iterator.next();
+          iterator.remove();
+        }
+        mDecoders.put(encodedCacheKey, regionDecoderRef.clone());
+        return regionDecoderRef.clone();
+      }
+    } finally {
+      regionDecoderRef.close();
+      CloseableReference.closeSafely(evictedRef);
+    }
+  }
+
+  private static BitmapRegionDecoder createRegionDecoder(EncodedImage encodedImage) {
+    InputStream inputStream = encodedImage.getInputStream();
+    Preconditions.checkNotNull(inputStream);
+    try {
+      return BitmapRegionDecoder.newInstance(inputStream, false);
+    } catch (IOException ioe) {
+      // BitmapRegionDecoder throws an IOException for the formats it does not support
+      throw new IllegalArgumentException(ioe);
+    } finally {
+      Closeables.closeQuietly(inputStream);
+    }
+  }
+}
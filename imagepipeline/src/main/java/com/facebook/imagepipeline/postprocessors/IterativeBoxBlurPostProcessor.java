@@ -12,6 +12,7 @@ package com.facebook.imagepipeline.postprocessors;
 import javax.annotation.Nullable;
 
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
 import android.graphics.Bitmap;
 
@@ -24,6 +25,10 @@ import com.facebook.imagepipeline.request.BasePostprocessor;
 /**
  * A fast and memory-efficient post processor performing an iterative box blur.  For details see
  * {@link NativeBlurFilter#iterativeBoxBlur(Bitmap, int, int)}.
+ *
+ * <p> If an executor is given, the row and column passes over large bitmaps are split in bands
+ * that are blurred on several threads. To blur a bitmap that is displayed scaled down, prefer
+ * {@link ScalingBlurPostprocessor}.
  */
 public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
 
@@ -31,6 +36,7 @@ public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
 
   private final int mIterations;
   private final int mBlurRadius;
+  private final @Nullable Executor mParallelExecutor;
 
   private CacheKey mCacheKey;
 
@@ -39,15 +45,34 @@ public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
   }
 
   public IterativeBoxBlurPostProcessor(int iterations, int blurRadius) {
+    this(iterations, blurRadius, null);
+  }
+
+  /**
+   * @param iterations the number of iterations of the box blur
+   * @param blurRadius the radius of the box blur
+   * @param parallelExecutor the executor to blur bands of large bitmaps on, or null to blur on the
+   *     postprocessing thread only
+   */
+  public IterativeBoxBlurPostProcessor(
+      int iterations,
+      int blurRadius,
+      @Nullable Executor parallelExecutor) {
     Preconditions.checkArgument(iterations > 0);
     Preconditions.checkArgument(blurRadius > 0);
     mIterations = iterations;
     mBlurRadius = blurRadius;
+    mParallelExecutor = parallelExecutor;
   }
 
   @Override
   public void process(Bitmap bitmap) {
-    NativeBlurFilter.iterativeBoxBlur(bitmap, mIterations, mBlurRadius);
+    ParallelBoxBlur.iterativeBoxBlur(bitmap, mIterations, mBlurRadius, mParallelExecutor);
+  }
+
+  @Override
+  public boolean canProcessInPlace() {
+    return true;
   }
 
   @Nullable
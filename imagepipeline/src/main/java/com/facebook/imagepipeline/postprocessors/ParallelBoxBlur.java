@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+
+import com.facebook.common.internal.Throwables;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.imagepipeline.nativecode.NativeBlurFilter;
+
+/**
+ * Runs the passes of the iterative box blur of {@link NativeBlurFilter#iterativeBoxBlur} over
+ * bands of rows and columns on several threads.
+ *
+ * <p> Each iteration is a horizontal pass over all the rows followed by a vertical pass over all
+ * the columns. Rows are independent of each other in the horizontal pass, and so are columns in
+ * the vertical pass, so each pass is split in bands that are blurred concurrently. The passes are
+ * implemented in Java, with the same moving average as the native blur, over a copy of the pixels
+ * that is written back to the bitmap once all the iterations are done.
+ *
+ * <p> The calling thread blurs bands as well, and only waits for the bands that other threads
+ * have already started. It is therefore safe to pass the executor the caller itself runs on.
+ */
+final class ParallelBoxBlur {
+
+  // below this number of pixels, splitting the passes costs more than it saves
+  @VisibleForTesting static final int MIN_PIXELS_FOR_PARALLEL_BLUR = 256 * 256;
+
+  // minimum number of rows or columns of a band
+  @VisibleForTesting static final int MIN_BAND_SIZE = 32;
+
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private ParallelBoxBlur() {
+  }
+
+  /**
+   * Blurs the bitmap in-place, like {@link NativeBlurFilter#iterativeBoxBlur}.
+   *
+   * @param bitmap the bitmap to blur, in ARGB_8888
+   * @param iterations the number of iterations of the box blur
+   * @param blurRadius the radius of the box blur
+   * @param executor the executor to run the bands on, or null to blur on the calling thread only
+   */
+  static void iterativeBoxBlur(
+      Bitmap bitmap,
+      int iterations,
+      int blurRadius,
+      @Nullable Executor executor) {
+    final int width = bitmap.getWidth();
+    final int height = bitmap.getHeight();
+    if (executor == null || PARALLELISM <= 1 || width * height < MIN_PIXELS_FOR_PARALLEL_BLUR) {
+      NativeBlurFilter.iterativeBoxBlur(bitmap, iterations, blurRadius);
+      return;
+    }
+    // the pixels are copied as they are stored, premultiplied, like the native blur reads them
+    final int[] pixels = new int[width * height];
+    bitmap.copyPixelsToBuffer(IntBuffer.wrap(pixels));
+    iterativeBoxBlur(pixels, width, height, iterations, blurRadius, executor, PARALLELISM);
+    bitmap.copyPixelsFromBuffer(IntBuffer.wrap(pixels));
+  }
+
+  /**
+   * Blurs the pixels in-place, running each pass in at most {@code parallelism} bands.
+   */
+  @VisibleForTesting
+  static void iterativeBoxBlur(
+      final int[] pixels,
+      final int width,
+      final int height,
+      int iterations,
+      final int blurRadius,
+      Executor executor,
+      int parallelism) {
+    final BandPass rowsPass = new BandPass() {
+      @Override
+      public void run(int first, int count) {
+        blurRows(pixels, width, blurRadius, first, count);
+      }
+    };
+    final BandPass columnsPass = new BandPass() {
+      @Override
+      public void run(int first, int count) {
+        blurColumns(pixels, width, height, blurRadius, first, count);
+      }
+    };
+    for (int i = 0; i < iterations; i++) {
+      runInBands(executor, parallelism, height, rowsPass);
+      runInBands(executor, parallelism, width, columnsPass);
+    }
+  }
+
+  /**
+   * Runs a horizontal pass over {@code count} rows starting at {@code first}.
+   */
+  @VisibleForTesting
+  static void blurRows(int[] pixels, int width, int radius, int first, int count) {
+    final int[] blurred = new int[width];
+    for (int row = first; row < first + count; row++) {
+      blurLine(pixels, row * width, 1, width, radius, blurred);
+      System.arraycopy(blurred, 0, pixels, row * width, width);
+    }
+  }
+
+  /**
+   * Runs a vertical pass over {@code count} columns starting at {@code first}.
+   */
+  @VisibleForTesting
+  static void blurColumns(
+      int[] pixels,
+      int width,
+      int height,
+      int radius,
+      int first,
+      int count) {
+    final int[] blurred = new int[height];
+    for (int column = first; column < first + count; column++) {
+      blurLine(pixels, column, width, height, radius, blurred);
+      for (int i = 0, offset = column; i < height; i++, offset += width) {
+        pixels[offset] = blurred[i];
+      }
+    }
+  }
+
+  /**
+   * Blurs a row or a column of {@code length} pixels into {@code out}, with a moving average that
+   * reads every pixel once. The pixels past the ends repeat the edge pixels, and each channel of
+   * the average is rounded like the division table of the native blur.
+   *
+   * @param start the index of the first pixel of the line
+   * @param step the distance between two pixels of the line
+   */
+  private static void blurLine(
+      int[] pixels,
+      int start,
+      int step,
+      int length,
+      int radius,
+      int[] out) {
+    final int diameter = 2 * radius + 1;
+    final int last = length - 1;
+    int a = 0, r = 0, g = 0, b = 0;
+    for (int i = -radius; i < length + radius; i++) {
+      int p = pixels[start + Math.min(Math.max(i, 0), last) * step];
+      a += p >>> 24;
+      r += (p >> 16) & 0xff;
+      g += (p >> 8) & 0xff;
+      b += p & 0xff;
+
+      if (i >= radius) {
+        out[i - radius] = ((a + radius) / diameter) << 24 |
+            ((r + radius) / diameter) << 16 |
+            ((g + radius) / diameter) << 8 |
+            ((b + radius) / diameter);
+
+        p = pixels[start + Math.min(Math.max(i - diameter + 1, 0), last) * step];
+        a -= p >>> 24;
+        r -= (p >> 16) & 0xff;
+        g -= (p >> 8) & 0xff;
+        b -= p & 0xff;
+      }
+    }
+  }
+
+  /**
+   * Runs the pass over [0, size) split in at most {@code parallelism} bands, and returns once all
+   * of them are done.
+   */
+  @VisibleForTesting
+  static void runInBands(Executor executor, int parallelism, int size, BandPass pass) {
+    final int bandCount = Math.max(1, Math.min(parallelism, size / MIN_BAND_SIZE));
+    final BandRunner runner = new BandRunner(pass, size, bandCount);
+    for (int i = 1; i < bandCount; i++) {
+      executor.execute(runner);
+    }
+    runner.run();
+    runner.await();
+  }
+
+  /**
+   * A pass of the blur over a band of rows or columns.
+   */
+  @VisibleForTesting
+  interface BandPass {
+    void run(int first, int count);
+  }
+
+  /**
+   * Hands out the bands of a pass to the threads that run it, one at a time.
+   */
+  private static class BandRunner implements Runnable {
+
+    private final BandPass mPass;
+    private final int mSize;
+    private final int mBandCount;
+    private final int mBandSize;
+    private final AtomicInteger mNextBand = new AtomicInteger();
+
+    @GuardedBy("this")
+    private int mFinishedBandCount;
+    @GuardedBy("this")
+    private @Nullable Throwable mFailure;
+
+    private BandRunner(BandPass pass, int size, int bandCount) {
+      mPass = pass;
+      mSize = size;
+      mBandCount = bandCount;
+      mBandSize = (size + bandCount - 1) / bandCount;
+    }
+
+    @Override
+    public void run() {
+      int band;
+      while ((band = mNextBand.getAndIncrement()) < mBandCount) {
+        Throwable failure = null;
+        try {
+          final int first = band * mBandSize;
+          final int count = Math.min(mBandSize, mSize - first);
+          if (count > 0) {
+            mPass.run(first, count);
+          }
+        } catch (Throwable t) {
+          failure = t;
+        } finally {
+          onBandFinished(failure);
+        }
+      }
+    }
+
+    private synchronized void onBandFinished(@Nullable Throwable failure) {
+      if (failure != null && mFailure == null) {
+        mFailure = failure;
+      }
+      mFinishedBandCount++;
+      if (mFinishedBandCount == mBandCount) {
+        notifyAll();
+      }
+    }
+
+    /**
+     * Waits for the bands started by other threads. All the bands have been claimed by the time
+     * the calling thread gets here, so this only waits for work that is in progress.
+     */
+    private synchronized void await() {
+      boolean interrupted = false;
+      while (mFinishedBandCount < mBandCount) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (mFailure != null) {
+        throw Throwables.propagate(mFailure);
+      }
+    }
+  }
+}
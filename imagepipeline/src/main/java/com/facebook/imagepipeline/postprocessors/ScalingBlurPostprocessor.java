@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import javax.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.nativecode.NativeBlurFilter;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+
+/**
+ * A post processor that down-scales the bitmap before blurring it with an iterative box blur. For
+ * details on the blur see {@link NativeBlurFilter#iterativeBoxBlur(Bitmap, int, int)}.
+ *
+ * <p> The source is drawn scaled down into a bitmap from the {@link PlatformBitmapFactory}, which
+ * is then blurred in-place. No full-size copy of the source is made, and the blur processes
+ * scaleRatio^2 times fewer pixels. The result is returned at the reduced size: the drawable scales
+ * it up when drawing, which hides the loss of detail since the image is blurred anyway.
+ *
+ * <p> The blur radius is given in pixels of the source bitmap, so that the result looks the same
+ * for any scale ratio.
+ */
+public class ScalingBlurPostprocessor extends BasePostprocessor {
+
+  private static final int DEFAULT_ITERATIONS = 3;
+
+  private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final int mIterations;
+  private final int mBlurRadius;
+  private final int mScaleRatio;
+  private final @Nullable Executor mParallelExecutor;
+
+  private CacheKey mCacheKey;
+
+  public ScalingBlurPostprocessor(int blurRadius, int scaleRatio) {
+    this(DEFAULT_ITERATIONS, blurRadius, scaleRatio);
+  }
+
+  public ScalingBlurPostprocessor(int iterations, int blurRadius, int scaleRatio) {
+    this(iterations, blurRadius, scaleRatio, null);
+  }
+
+  /**
+   * @param iterations the number of iterations of the box blur
+   * @param blurRadius the radius of the box blur, in pixels of the source bitmap
+   * @param scaleRatio the factor by which both dimensions of the bitmap are reduced
+   * @param parallelExecutor the executor to blur bands of large bitmaps on, or null to blur on the
+   *     postprocessing thread only
+   */
+  public ScalingBlurPostprocessor(
+      int iterations,
+      int blurRadius,
+      int scaleRatio,
+      @Nullable Executor parallelExecutor) {
+    Preconditions.checkArgument(iterations > 0);
+    Preconditions.checkArgument(blurRadius > 0);
+    Preconditions.checkArgument(scaleRatio > 0);
+    mIterations = iterations;
+    mBlurRadius = blurRadius;
+    mScaleRatio = scaleRatio;
+    mParallelExecutor = parallelExecutor;
+  }
+
+  @Override
+  public String getName() {
+    return "ScalingBlurPostprocessor";
+  }
+
+  @Override
+  public CloseableReference<Bitmap> process(
+      Bitmap sourceBitmap,
+      PlatformBitmapFactory bitmapFactory) {
+    final CloseableReference<Bitmap> bitmapRef = bitmapFactory.createBitmap(
+        Math.max(1, sourceBitmap.getWidth() / mScaleRatio),
+        Math.max(1, sourceBitmap.getHeight() / mScaleRatio),
+        Bitmap.Config.ARGB_8888);
+    try {
+      final Bitmap destBitmap = bitmapRef.get();
+      // pooled bitmaps are not cleared, and the source may not be opaque
+      destBitmap.eraseColor(Color.TRANSPARENT);
+      final Canvas canvas = new Canvas(destBitmap);
+      canvas.drawBitmap(
+          sourceBitmap,
+          null,
+          new Rect(0, 0, destBitmap.getWidth(), destBitmap.getHeight()),
+          mPaint);
+      ParallelBoxBlur.iterativeBoxBlur(
+          destBitmap,
+          mIterations,
+          getScaledBlurRadius(mBlurRadius, mScaleRatio),
+          mParallelExecutor);
+      return CloseableReference.cloneOrNull(bitmapRef);
+    } finally {
+      CloseableReference.closeSafely(bitmapRef);
+    }
+  }
+
+  @Nullable
+  @Override
+  public CacheKey getPostprocessorCacheKey() {
+    if (mCacheKey == null) {
+      final String key = String.format(
+          (Locale) null,
+          "i%dr%ds%d",
+          mIterations,
+          mBlurRadius,
+          mScaleRatio);
+      mCacheKey = new SimpleCacheKey(key);
+    }
+    return mCacheKey;
+  }
+
+  /**
+   * Gets the radius to blur the scaled bitmap with, rounded and at least 1.
+   */
+  static int getScaledBlurRadius(int blurRadius, int scaleRatio) {
+    return Math.max(1, (blurRadius + scaleRatio / 2) / scaleRatio);
+  }
+}
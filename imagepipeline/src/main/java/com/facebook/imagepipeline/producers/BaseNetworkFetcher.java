@@ -37,4 +37,22 @@ public abstract class BaseNetworkFetcher<FETCH_STATE extends FetchState>
   public Map<String, String> getExtraMap(FETCH_STATE fetchState, int byteSize) {
     return null;
   }
+
+  /**
+   * Gets the validator of a response that can be sent back in the If-Range header of a request
+   * for the remaining bytes: the ETag, unless it's weak, otherwise the Last-Modified date.
+   *
+   * @param eTag the value of the ETag header of the response
+   * @param lastModified the value of the Last-Modified header of the response
+   * @return the validator, or null if the response has none usable with If-Range
+   */
+  @Nullable
+  protected static String getResponseValidator(
+      @Nullable String eTag,
+      @Nullable String lastModified) {
+    if (eTag != null && !eTag.startsWith("W/")) {
+      return eTag;
+    }
+    return lastModified;
+  }
 }
@@ -37,13 +37,16 @@ import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.image.ImmutableQualityInfo;
 import com.facebook.imagepipeline.image.QualityInfo;
 import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imageutils.BitmapUtil;
 
 import static com.facebook.imagepipeline.producers.JobScheduler.JobRunnable;
 
 /**
  * Decodes images.
  *
- * <p/> Progressive JPEGs are decoded progressively as new data arrives.
+ * <p/> Progressive JPEGs are decoded progressively as new data arrives. If a
+ * {@link ProgressiveDecodeBudget} is set, it decides whether each intermediate decode is worth
+ * scheduling, given the decodes of all the other requests.
  */
 public class DecodeProducer implements Producer<CloseableReference<CloseableImage>> {
 
@@ -57,6 +60,10 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
   public static final String ENCODED_IMAGE_SIZE = ProducerConstants.ENCODED_IMAGE_SIZE;
   public static final String REQUESTED_IMAGE_SIZE = ProducerConstants.REQUESTED_IMAGE_SIZE;
   public static final String SAMPLE_SIZE = ProducerConstants.SAMPLE_SIZE;
+  public static final String EXTRA_SKIPPED_INTERMEDIATE_DECODES =
+      ProducerConstants.EXTRA_SKIPPED_INTERMEDIATE_DECODES;
+  public static final String EXTRA_DOWNSCALE_BYTES_SAVED =
+      ProducerConstants.EXTRA_DOWNSCALE_BYTES_SAVED;
 
   private final ByteArrayPool mByteArrayPool;
   private final Executor mExecutor;
@@ -66,6 +73,8 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
   private final boolean mDownsampleEnabled;
   private final boolean mDownsampleEnabledForNetwork;
   private final boolean mDecodeCancellationEnabled;
+  private final boolean mExactDownscaleEnabled;
+  private final @Nullable ProgressiveDecodeBudget mProgressiveDecodeBudget;
 
   public DecodeProducer(
       final ByteArrayPool byteArrayPool,
@@ -76,6 +85,62 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
       final boolean downsampleEnabledForNetwork,
       final boolean decodeCancellationEnabled,
       final Producer<EncodedImage> inputProducer) {
+    this(
+        byteArrayPool,
+        executor,
+        imageDecoder,
+        progressiveJpegConfig,
+        downsampleEnabled,
+        downsampleEnabledForNetwork,
+        decodeCancellationEnabled,
+        null,
+        inputProducer);
+  }
+
+  /**
+   * @param progressiveDecodeBudget if not null, the budget shared with the other decode producers
+   *     that limits the intermediate decodes of progressive images
+   */
+  public DecodeProducer(
+      final ByteArrayPool byteArrayPool,
+      final Executor executor,
+      final ImageDecoder imageDecoder,
+      final ProgressiveJpegConfig progressiveJpegConfig,
+      final boolean downsampleEnabled,
+      final boolean downsampleEnabledForNetwork,
+      final boolean decodeCancellationEnabled,
+      @Nullable final ProgressiveDecodeBudget progressiveDecodeBudget,
+      final Producer<EncodedImage> inputProducer) {
+    this(
+        byteArrayPool,
+        executor,
+        imageDecoder,
+        progressiveJpegConfig,
+        downsampleEnabled,
+        downsampleEnabledForNetwork,
+        decodeCancellationEnabled,
+        false,
+        progressiveDecodeBudget,
+        inputProducer);
+  }
+
+  /**
+   * @param exactDownscaleEnabled if true, static images other than JPEGs that are larger than
+   *     the requested size are scaled down to it while decoded
+   * @param progressiveDecodeBudget if not null, the budget shared with the other decode producers
+   *     that limits the intermediate decodes of progressive images
+   */
+  public DecodeProducer(
+      final ByteArrayPool byteArrayPool,
+      final Executor executor,
+      final ImageDecoder imageDecoder,
+      final ProgressiveJpegConfig progressiveJpegConfig,
+      final boolean downsampleEnabled,
+      final boolean downsampleEnabledForNetwork,
+      final boolean decodeCancellationEnabled,
+      final boolean exactDownscaleEnabled,
+      @Nullable final ProgressiveDecodeBudget progressiveDecodeBudget,
+      final Producer<EncodedImage> inputProducer) {
     mByteArrayPool = Preconditions.checkNotNull(byteArrayPool);
     mExecutor = Preconditions.checkNotNull(executor);
     mImageDecoder = Preconditions.checkNotNull(imageDecoder);
@@ -84,6 +149,8 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
     mDownsampleEnabledForNetwork = downsampleEnabledForNetwork;
     mInputProducer = Preconditions.checkNotNull(inputProducer);
     mDecodeCancellationEnabled = decodeCancellationEnabled;
+    mExactDownscaleEnabled = exactDownscaleEnabled;
+    mProgressiveDecodeBudget = progressiveDecodeBudget;
   }
 
   @Override
@@ -92,7 +159,9 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
       final ProducerContext producerContext) {
     final ImageRequest imageRequest = producerContext.getImageRequest();
     ProgressiveDecoder progressiveDecoder;
-    if (!UriUtil.isNetworkUri(imageRequest.getSourceUri())) {
+    // regions are only decoded from complete images
+    if (!UriUtil.isNetworkUri(imageRequest.getSourceUri()) ||
+        imageRequest.getImageDecodeOptions().regionDecodeOptions != null) {
       progressiveDecoder = new LocalImagesProgressiveDecoder(
           consumer,
           producerContext,
@@ -109,6 +178,40 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
     mInputProducer.produceResults(progressiveDecoder, producerContext);
   }
 
+  /**
+   * Whether the platform decoder can scale the image down while decoding it. JPEGs are resized by
+   * the {@link ResizeAndRotateProducer} instead, and animated images are not scaled.
+   */
+  private static boolean isExactDownscaleSupported(EncodedImage encodedImage) {
+    ImageFormat imageFormat = encodedImage.getImageFormat();
+    return imageFormat != null &&
+        imageFormat != ImageFormat.UNKNOWN &&
+        imageFormat != DefaultImageFormats.JPEG &&
+        imageFormat != DefaultImageFormats.WEBP_ANIMATED;
+  }
+
+  /**
+   * Gets the number of bytes saved by scaling the image down to its target width while decoding
+   * it, compared to decoding it with its sample size only.
+   */
+  private static long getDownscaleBytesSaved(
+      EncodedImage encodedImage,
+      @Nullable CloseableImage image) {
+    if (!(image instanceof CloseableStaticBitmap)) {
+      return 0;
+    }
+    Bitmap bitmap = ((CloseableStaticBitmap) image).getUnderlyingBitmap();
+    if (bitmap.getConfig() == null) {
+      return 0;
+    }
+    final int sampleSize = encodedImage.getSampleSize();
+    long sampledSizeInBytes = BitmapUtil.getSizeInByteForBitmap(
+        encodedImage.getWidth() / sampleSize,
+        encodedImage.getHeight() / sampleSize,
+        bitmap.getConfig());
+    return Math.max(0, sampledSizeInBytes - BitmapUtil.getSizeInBytes(bitmap));
+  }
+
   private abstract class ProgressiveDecoder extends DelegatingConsumer<
       EncodedImage, CloseableReference<CloseableImage>> {
 
@@ -119,6 +222,14 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
     @GuardedBy("this")
     private boolean mIsFinished;
 
+    // decodes reserved in the progressive decode budget, if any
+    @GuardedBy("this")
+    private boolean mHasIntermediateDecode;
+    @GuardedBy("this")
+    private boolean mHasFinalDecode;
+    @GuardedBy("this")
+    private int mSkippedIntermediateDecodes;
+
     private final JobScheduler mJobScheduler;
 
     public ProgressiveDecoder(
@@ -142,17 +253,35 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
                     request, encodedImage));
               }
             }
-            doDecode(encodedImage, status);
+            if (mExactDownscaleEnabled && isExactDownscaleSupported(encodedImage)) {
+              ImageRequest request = producerContext.getImageRequest();
+              int targetWidth = DownsampleUtil.determineTargetWidth(request, encodedImage);
+              if (targetWidth != EncodedImage.UNKNOWN_WIDTH) {
+                encodedImage.setSampleSize(DownsampleUtil.determineSampleSizeForTargetWidth(
+                    encodedImage.getWidth(),
+                    targetWidth));
+                encodedImage.setTargetWidth(targetWidth);
+              }
+            }
+            try {
+              doDecode(encodedImage, status);
+            } finally {
+              onIntermediateDecodeFinished();
+            }
           }
         }
       };
-      mJobScheduler = new JobScheduler(mExecutor, job, mImageDecodeOptions.minDecodeIntervalMs);
+      mJobScheduler = new JobScheduler(
+          mExecutor,
+          job,
+          mImageDecodeOptions.minDecodeIntervalMs,
+          producerContext);
       mProducerContext.addCallbacks(
           new BaseProducerContextCallbacks() {
             @Override
             public void onIsIntermediateResultExpectedChanged() {
               if (mProducerContext.isIntermediateResultExpected()) {
-                mJobScheduler.scheduleJob();
+                scheduleIntermediateDecode();
               }
             }
 
@@ -176,8 +305,79 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         return;
       }
       final boolean isPlaceholder = statusHasFlag(status, IS_PLACEHOLDER);
-      if (isLast || isPlaceholder || mProducerContext.isIntermediateResultExpected()) {
+      if (isLast) {
+        onFinalDecodeScheduled();
+        mJobScheduler.scheduleJob();
+      } else if (isPlaceholder) {
+        mJobScheduler.scheduleJob();
+      } else if (mProducerContext.isIntermediateResultExpected()) {
+        scheduleIntermediateDecode();
+      }
+    }
+
+    /**
+     * Schedules the job if the budget allows an intermediate decode. A job that is not scheduled
+     * stays set, and is replaced by the next result.
+     */
+    private void scheduleIntermediateDecode() {
+      if (mProgressiveDecodeBudget == null) {
         mJobScheduler.scheduleJob();
+        return;
+      }
+      synchronized (this) {
+        if (mIsFinished) {
+          return;
+        }
+        if (!mHasIntermediateDecode) {
+          if (!mProgressiveDecodeBudget.tryStartIntermediateDecode(mProducerContext)) {
+            mSkippedIntermediateDecodes++;
+            return;
+          }
+          mHasIntermediateDecode = true;
+        }
+      }
+      if (!mJobScheduler.scheduleJob()) {
+        onIntermediateDecodeFinished();
+      }
+    }
+
+    private void onIntermediateDecodeFinished() {
+      if (mProgressiveDecodeBudget == null) {
+        return;
+      }
+      synchronized (this) {
+        if (mHasIntermediateDecode) {
+          mHasIntermediateDecode = false;
+          mProgressiveDecodeBudget.onIntermediateDecodeFinished();
+        }
+      }
+    }
+
+    private void onFinalDecodeScheduled() {
+      if (mProgressiveDecodeBudget == null) {
+        return;
+      }
+      synchronized (this) {
+        if (!mIsFinished && !mHasFinalDecode) {
+          mHasFinalDecode = true;
+          mProgressiveDecodeBudget.onFinalDecodeScheduled();
+        }
+      }
+    }
+
+    /**
+     * Gives back the decodes reserved in the budget, once the decoder is finished.
+     */
+    private void onDecodesFinished() {
+      if (mProgressiveDecodeBudget == null) {
+        return;
+      }
+      onIntermediateDecodeFinished();
+      synchronized (this) {
+        if (mHasFinalDecode) {
+          mHasFinalDecode = false;
+          mProgressiveDecodeBudget.onFinalDecodeFinished();
+        }
       }
     }
 
@@ -255,12 +455,16 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
               imageFormatStr,
               encodedImageSize,
               requestedSizeStr,
-              sampleSize);
+              sampleSize,
+              null);
           mProducerListener.
               onProducerFinishWithFailure(mProducerContext.getId(), PRODUCER_NAME, e, extraMap);
           handleError(e);
           return;
         }
+        final String downscaleBytesSaved = encodedImage.getTargetWidth() > 0
+            ? String.valueOf(getDownscaleBytesSaved(encodedImage, image))
+            : null;
         Map<String, String> extraMap = getExtraMap(
             image,
             queueTime,
@@ -269,7 +473,8 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
             imageFormatStr,
             encodedImageSize,
             requestedSizeStr,
-            sampleSize);
+            sampleSize,
+            downscaleBytesSaved);
         mProducerListener.
             onProducerFinishWithSuccess(mProducerContext.getId(), PRODUCER_NAME, extraMap);
         handleResult(image, status);
@@ -286,7 +491,8 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         String imageFormatName,
         String encodedImageSize,
         String requestImageSize,
-        String sampleSize) {
+        String sampleSize,
+        @Nullable String downscaleBytesSaved) {
       if (!mProducerListener.requiresExtraMap(mProducerContext.getId())) {
         return null;
       }
@@ -298,7 +504,7 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         String sizeStr = bitmap.getWidth() + "x" + bitmap.getHeight();
         // We need this because the copyOf() utility method doesn't have a proper overload method
         // for all these parameters
-        final Map<String, String> tmpMap = new HashMap<>(8);
+        final Map<String, String> tmpMap = new HashMap<>(10);
         tmpMap.put(EXTRA_BITMAP_SIZE, sizeStr);
         tmpMap.put(JobScheduler.QUEUE_TIME_KEY, queueStr);
         tmpMap.put(EXTRA_HAS_GOOD_QUALITY, qualityStr);
@@ -307,9 +513,13 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         tmpMap.put(EXTRA_IMAGE_FORMAT_NAME, imageFormatName);
         tmpMap.put(REQUESTED_IMAGE_SIZE, requestImageSize);
         tmpMap.put(SAMPLE_SIZE, sampleSize);
+        if (downscaleBytesSaved != null) {
+          tmpMap.put(EXTRA_DOWNSCALE_BYTES_SAVED, downscaleBytesSaved);
+        }
+        maybePutSkippedIntermediateDecodes(tmpMap);
         return ImmutableMap.copyOf(tmpMap);
       } else {
-        final Map<String, String> tmpMap = new HashMap<>(7);
+        final Map<String, String> tmpMap = new HashMap<>(8);
         tmpMap.put(JobScheduler.QUEUE_TIME_KEY, queueStr);
         tmpMap.put(EXTRA_HAS_GOOD_QUALITY, qualityStr);
         tmpMap.put(EXTRA_IS_FINAL, finalStr);
@@ -317,10 +527,19 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         tmpMap.put(EXTRA_IMAGE_FORMAT_NAME, imageFormatName);
         tmpMap.put(REQUESTED_IMAGE_SIZE, requestImageSize);
         tmpMap.put(SAMPLE_SIZE, sampleSize);
+        maybePutSkippedIntermediateDecodes(tmpMap);
         return ImmutableMap.copyOf(tmpMap);
       }
     }
 
+    private synchronized void maybePutSkippedIntermediateDecodes(Map<String, String> extraMap) {
+      if (mProgressiveDecodeBudget != null) {
+        extraMap.put(
+            EXTRA_SKIPPED_INTERMEDIATE_DECODES,
+            String.valueOf(mSkippedIntermediateDecodes));
+      }
+    }
+
     /**
      * @return true if producer is finished
      */
@@ -341,6 +560,7 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
         mIsFinished = true;
       }
       mJobScheduler.clearJob();
+      onDecodesFinished();
     }
 
     /**
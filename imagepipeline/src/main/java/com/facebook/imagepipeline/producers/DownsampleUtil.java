@@ -61,6 +61,40 @@ public class DownsampleUtil {
     return sampleSize;
   }
 
+  /**
+   * Get the width to decode a static image at so that it exactly covers the requested dimensions,
+   * for decoders that can scale while decoding.
+   *
+   * @param imageRequest the request containing the requested dimensions
+   * @param encodedImage the encoded image with the actual dimensions
+   * @return the target width, or {@link EncodedImage#UNKNOWN_WIDTH} if the image is not larger
+   *     than requested
+   */
+  public static int determineTargetWidth(ImageRequest imageRequest, EncodedImage encodedImage) {
+    if (!EncodedImage.isMetaDataAvailable(encodedImage)) {
+      return EncodedImage.UNKNOWN_WIDTH;
+    }
+    float ratio = determineDownsampleRatio(imageRequest, encodedImage);
+    int targetWidth = Math.max(1, Math.round(encodedImage.getWidth() * ratio));
+    return targetWidth < encodedImage.getWidth() ? targetWidth : EncodedImage.UNKNOWN_WIDTH;
+  }
+
+  /**
+   * Get the largest power of 2 sample size that decodes the image at least as wide as the target
+   * width, so that the decoder never has to scale the sampled image by more than a factor of 2.
+   *
+   * @param width the width of the image
+   * @param targetWidth the width to decode the image at
+   * @return the sample size
+   */
+  public static int determineSampleSizeForTargetWidth(int width, int targetWidth) {
+    int sampleSize = DEFAULT_SAMPLE_SIZE;
+    while (width / (sampleSize * 2) >= targetWidth) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
   @VisibleForTesting
   static float determineDownsampleRatio(
       ImageRequest imageRequest, EncodedImage encodedImage) {
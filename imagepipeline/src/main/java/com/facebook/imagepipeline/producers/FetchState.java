@@ -28,6 +28,7 @@ public class FetchState {
   private long mLastIntermediateResultTimeMs;
   private int mOnNewResultStatusFlags;
   private @Nullable BytesRange mResponseBytesRange;
+  private @Nullable String mResponseValidator;
 
   public FetchState(
       Consumer<EncodedImage> consumer,
@@ -89,4 +90,18 @@ public class FetchState {
   public void setResponseBytesRange(BytesRange bytesRange) {
     mResponseBytesRange = bytesRange;
   }
+
+  @Nullable
+  public String getResponseValidator() {
+    return mResponseValidator;
+  }
+
+  /**
+   * EXPERIMENTAL: Allows the fetcher to identify the version of the image being provided, so that
+   * a download that is interrupted can later be resumed with a request for the remaining bytes.
+   * See {@link com.facebook.imagepipeline.request.ImageRequestBuilder#setBytesRangeValidator}.
+   */
+  public void setResponseValidator(@Nullable String validator) {
+    mResponseValidator = validator;
+  }
 }
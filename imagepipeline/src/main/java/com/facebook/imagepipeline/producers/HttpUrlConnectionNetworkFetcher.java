@@ -9,6 +9,8 @@
 
 package com.facebook.imagepipeline.producers;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -21,7 +23,9 @@ import java.util.concurrent.Future;
 import android.net.Uri;
 
 import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.imagepipeline.common.BytesRange;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.request.ImageRequest;
 
 /**
  * Network fetcher that uses the simplest Android stack.
@@ -78,14 +82,32 @@ public class HttpUrlConnectionNetworkFetcher extends BaseNetworkFetcher<FetchSta
     HttpURLConnection connection = null;
     InputStream is = null;
     try {
-      connection = downloadFrom(fetchState.getUri(), MAX_REDIRECTS);
+      final ImageRequest imageRequest = fetchState.getContext().getImageRequest();
+      connection = downloadFrom(
+          fetchState.getUri(),
+          imageRequest.getBytesRange(),
+          imageRequest.getBytesRangeValidator(),
+          MAX_REDIRECTS);
 
       if (connection != null) {
+        BytesRange responseRange =
+            BytesRange.fromContentRangeHeader(connection.getHeaderField("Content-Range"));
+        if (responseRange != null) {
+          fetchState.setResponseBytesRange(responseRange);
+          fetchState.setOnNewResultStatusFlags(Consumer.IS_PARTIAL_RESULT);
+        }
+        fetchState.setResponseValidator(getResponseValidator(
+            connection.getHeaderField("ETag"),
+            connection.getHeaderField("Last-Modified")));
+
         is = connection.getInputStream();
         callback.onResponse(is, -1);
       }
     } catch (IOException e) {
       callback.onFailure(e);
+    } catch (IllegalArgumentException e) {
+      // invalid Content-Range header
+      callback.onFailure(e);
     } finally {
       if (is != null) {
         try {
@@ -101,8 +123,18 @@ public class HttpUrlConnectionNetworkFetcher extends BaseNetworkFetcher<FetchSta
 
   }
 
-  private HttpURLConnection downloadFrom(Uri uri, int maxRedirects) throws IOException {
+  private HttpURLConnection downloadFrom(
+      Uri uri,
+      @Nullable BytesRange bytesRange,
+      @Nullable String bytesRangeValidator,
+      int maxRedirects) throws IOException {
     HttpURLConnection connection = openConnectionTo(uri);
+    if (bytesRange != null) {
+      connection.setRequestProperty("Range", bytesRange.toHttpRangeHeaderValue());
+      if (bytesRangeValidator != null) {
+        connection.setRequestProperty("If-Range", bytesRangeValidator);
+      }
+    }
     int responseCode = connection.getResponseCode();
 
     if (isHttpSuccess(responseCode)) {
@@ -116,7 +148,7 @@ public class HttpUrlConnectionNetworkFetcher extends BaseNetworkFetcher<FetchSta
         String originalScheme = uri.getScheme();
 
         if (maxRedirects > 0 && nextUri != null && !nextUri.getScheme().equals(originalScheme)) {
-          return downloadFrom(nextUri, maxRedirects - 1);
+          return downloadFrom(nextUri, bytesRange, bytesRangeValidator, maxRedirects - 1);
         } else {
           String message = maxRedirects == 0
               ? error("URL %s follows too many redirects", uri.toString())
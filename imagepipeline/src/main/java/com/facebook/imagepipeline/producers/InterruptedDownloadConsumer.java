@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import javax.annotation.Nullable;
+
+import com.facebook.imagepipeline.image.EncodedImage;
+
+/**
+ * Implemented by the consumers of {@link NetworkFetchProducer} that keep the bytes downloaded
+ * before a fetch is cancelled or fails, so that the download can be resumed later.
+ */
+public interface InterruptedDownloadConsumer {
+
+  /**
+   * Called before the cancellation or the failure of a fetch that received some bytes.
+   *
+   * <p> The encoded image is only valid during the call: implementations must make their own copy
+   * or take their own reference if they keep it.
+   *
+   * @param downloadedPrefix the bytes received, from the start of the image
+   * @param validator the validator of the response, see {@link FetchState#getResponseValidator}
+   */
+  void onInterruptedDownload(EncodedImage downloadedPrefix, @Nullable String validator);
+}
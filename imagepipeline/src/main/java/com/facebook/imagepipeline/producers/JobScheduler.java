@@ -8,6 +8,7 @@
  */
 package com.facebook.imagepipeline.producers;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 import java.util.concurrent.Executor;
@@ -18,6 +19,9 @@ import java.util.concurrent.TimeUnit;
 import android.os.SystemClock;
 
 import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.imagepipeline.common.Priority;
+import com.facebook.imagepipeline.core.PrioritizedRunnable;
+import com.facebook.imagepipeline.core.RequestRunnable;
 import com.facebook.imagepipeline.image.EncodedImage;
 
 /**
@@ -69,15 +73,31 @@ public class JobScheduler {
   @VisibleForTesting long mJobStartTime;
 
   public JobScheduler(Executor executor, JobRunnable jobRunnable, int minimumJobIntervalMs) {
+    this(executor, jobRunnable, minimumJobIntervalMs, null);
+  }
+
+  /**
+   * @param producerContext if not null, the jobs are submitted as {@link PrioritizedRunnable}s
+   *     that follow the priority of this context, and as {@link RequestRunnable}s of its request
+   */
+  public JobScheduler(
+      Executor executor,
+      JobRunnable jobRunnable,
+      int minimumJobIntervalMs,
+      @Nullable ProducerContext producerContext) {
     mExecutor = executor;
     mJobRunnable = jobRunnable;
     mMinimumJobIntervalMs = minimumJobIntervalMs;
-    mDoJobRunnable = new Runnable() {
-      @Override
-      public void run() {
-        doJob();
-      }
-    };
+    if (producerContext == null) {
+      mDoJobRunnable = new Runnable() {
+        @Override
+        public void run() {
+          doJob();
+        }
+      };
+    } else {
+      mDoJobRunnable = new ProducerContextJobRunnable(producerContext);
+    }
     mSubmitJobRunnable = new Runnable() {
       @Override
       public void run() {
@@ -239,6 +259,37 @@ public class JobScheduler {
         || EncodedImage.isValid(encodedImage);
   }
 
+  /**
+   * Runs the job on behalf of a request, with the priority of that request.
+   */
+  private class ProducerContextJobRunnable implements PrioritizedRunnable, RequestRunnable {
+    private final ProducerContext mProducerContext;
+
+    private ProducerContextJobRunnable(ProducerContext producerContext) {
+      mProducerContext = producerContext;
+    }
+
+    @Override
+    public void run() {
+      doJob();
+    }
+
+    @Override
+    public Priority getPriority() {
+      return mProducerContext.getPriority();
+    }
+
+    @Override
+    public boolean isPrefetch() {
+      return mProducerContext.isPrefetch();
+    }
+
+    @Override
+    public String getRequestId() {
+      return mProducerContext.getId();
+    }
+  }
+
   /**
    * Gets the queued time in milliseconds for the currently running job.
    *
@@ -25,6 +25,7 @@ import com.facebook.common.memory.PooledByteBufferOutputStream;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.common.BytesRange;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.memory.NativePooledByteBufferFactory;
 
 /**
  * A producer to actually fetch images from the network.
@@ -93,19 +94,29 @@ public class NetworkFetchProducer implements Producer<EncodedImage> {
     final PooledByteBufferOutputStream pooledOutputStream;
     if (responseContentLength > 0) {
       pooledOutputStream = mPooledByteBufferFactory.newOutputStream(responseContentLength);
+    } else if (mPooledByteBufferFactory instanceof NativePooledByteBufferFactory) {
+      // grows without copying the bytes already downloaded, if segments are enabled
+      pooledOutputStream =
+          ((NativePooledByteBufferFactory) mPooledByteBufferFactory).newSegmentedOutputStream();
     } else {
       pooledOutputStream = mPooledByteBufferFactory.newOutputStream();
     }
     final byte[] ioArray = mByteArrayPool.get(READ_SIZE);
     try {
-      int length;
-      while ((length = responseData.read(ioArray)) >= 0) {
-        if (length > 0) {
-          pooledOutputStream.write(ioArray, 0, length);
-          maybeHandleIntermediateResult(pooledOutputStream, fetchState);
-          float progress = calculateProgress(pooledOutputStream.size(), responseContentLength);
-          fetchState.getConsumer().onProgressUpdate(progress);
+      try {
+        int length;
+        while ((length = responseData.read(ioArray)) >= 0) {
+          if (length > 0) {
+            pooledOutputStream.write(ioArray, 0, length);
+            maybeHandleIntermediateResult(pooledOutputStream, fetchState);
+            float progress = calculateProgress(pooledOutputStream.size(), responseContentLength);
+            fetchState.getConsumer().onProgressUpdate(progress);
+          }
         }
+      } catch (IOException e) {
+        // the fetcher reports the cancellation or the failure once this exception is thrown
+        maybeHandleInterruptedDownload(pooledOutputStream, fetchState);
+        throw e;
       }
       mNetworkFetcher.onFetchCompletion(fetchState, pooledOutputStream.size());
       handleFinalResult(pooledOutputStream, fetchState);
@@ -151,6 +162,32 @@ public class NetworkFetchProducer implements Producer<EncodedImage> {
     }
   }
 
+  /**
+   * Hands the bytes received so far to the consumer if it can keep them. Only the responses that
+   * start from the beginning of the image are handed over.
+   */
+  private void maybeHandleInterruptedDownload(
+      PooledByteBufferOutputStream pooledOutputStream,
+      FetchState fetchState) {
+    final Consumer<EncodedImage> consumer = fetchState.getConsumer();
+    if (!(consumer instanceof InterruptedDownloadConsumer) ||
+        pooledOutputStream.size() == 0 ||
+        fetchState.getResponseBytesRange() != null) {
+      return;
+    }
+    CloseableReference<PooledByteBuffer> result =
+        CloseableReference.of(pooledOutputStream.toByteBuffer());
+    EncodedImage encodedImage = null;
+    try {
+      encodedImage = new EncodedImage(result);
+      ((InterruptedDownloadConsumer) consumer)
+          .onInterruptedDownload(encodedImage, fetchState.getResponseValidator());
+    } finally {
+      EncodedImage.closeSafely(encodedImage);
+      CloseableReference.closeSafely(result);
+    }
+  }
+
   private void handleFinalResult(
       PooledByteBufferOutputStream pooledOutputStream,
       FetchState fetchState) {
@@ -18,6 +18,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.net.Uri;
 
@@ -50,12 +51,23 @@ import bolts.Task;
  *
  * <p>When the final result comes from the input producer, the two parts are stitched back together
  * and returned as a whole.
+ *
+ * <p>Each partial entry starts with a header holding the validator of the response the bytes came
+ * from, if any, so that the two can't be evicted separately. If a download is cancelled or fails,
+ * the bytes received so far are cached as well. The request for the remaining bytes then carries
+ * the validator, so that the server sends the whole image instead if it has changed since.
  */
 public class PartialDiskCacheProducer implements Producer<EncodedImage> {
   public static final String PRODUCER_NAME = "PartialDiskCacheProducer";
   public static final String EXTRA_CACHED_VALUE_FOUND = ProducerConstants.EXTRA_CACHED_VALUE_FOUND;
   public static final String ENCODED_IMAGE_SIZE = ProducerConstants.ENCODED_IMAGE_SIZE;
 
+  // Part of the cache key of the partial entries, so that entries of another format are never read.
+  // The header of an entry is the length of the validator followed by the validator itself.
+  private static final String PARTIAL_ENTRY_VERSION = "2";
+  private static final String VALIDATOR_CHARSET = "UTF-8";
+  private static final int VALIDATOR_LENGTH_SIZE = 4;
+
   private final BufferedDiskCache mDefaultBufferedDiskCache;
   private final CacheKeyFactory mCacheKeyFactory;
   private final PooledByteBufferFactory mPooledByteBufferFactory;
@@ -92,11 +104,22 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
         uriForPartialCacheKey,
         producerContext.getCallerContext());
     final AtomicBoolean isCancelled = new AtomicBoolean(false);
-
-    final Task<EncodedImage> diskLookupTask =
-        mDefaultBufferedDiskCache.get(partialImageCacheKey, isCancelled);
+    final AtomicReference<String> validator = new AtomicReference<>();
+
+    final Task<EncodedImage> diskLookupTask = mDefaultBufferedDiskCache
+        .get(partialImageCacheKey, isCancelled)
+        .continueWithTask(
+            new Continuation<EncodedImage, Task<EncodedImage>>() {
+              @Override
+              public Task<EncodedImage> then(Task<EncodedImage> task) throws Exception {
+                if (task.isFaulted() || task.isCancelled() || task.getResult() == null) {
+                  return task;
+                }
+                return Task.forResult(readPartialImage(task.getResult(), validator));
+              }
+            });
     final Continuation<EncodedImage, Void> continuation =
-        onFinishDiskReads(consumer, producerContext, partialImageCacheKey);
+        onFinishDiskReads(consumer, producerContext, partialImageCacheKey, validator);
 
     diskLookupTask.continueWith(continuation);
     subscribeTaskForRequestCancellation(isCancelled, producerContext);
@@ -105,7 +128,8 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
   private Continuation<EncodedImage, Void> onFinishDiskReads(
       final Consumer<EncodedImage> consumer,
       final ProducerContext producerContext,
-      final CacheKey partialImageCacheKey) {
+      final CacheKey partialImageCacheKey,
+      final AtomicReference<String> validator) {
     final String requestId = producerContext.getId();
     final ProducerListener listener = producerContext.getListener();
     return new Continuation<EncodedImage, Void>() {
@@ -141,6 +165,7 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
               // Pass the request on, but only for the remaining bytes
               final ImageRequest remainingRequest = ImageRequestBuilder.fromRequest(originalRequest)
                   .setBytesRange(BytesRange.from(cachedLength - 1))
+                  .setBytesRangeValidator(validator.get())
                   .build();
               final SettableProducerContext contextForRemainingRequest =
                   new SettableProducerContext(remainingRequest, producerContext);
@@ -222,10 +247,60 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
 
   private static Uri createUriForPartialCacheKey(ImageRequest imageRequest) {
     return imageRequest.getSourceUri().buildUpon()
-        .appendQueryParameter("fresco_partial", "true")
+        .appendQueryParameter("fresco_partial", PARTIAL_ENTRY_VERSION)
         .build();
   }
 
+  /**
+   * Reads the validator from the header of a partial entry.
+   *
+   * @return the bytes of the image, sharing the memory of the entry, or null if the entry is
+   * malformed
+   */
+  @Nullable
+  private static EncodedImage readPartialImage(
+      EncodedImage entry,
+      AtomicReference<String> validator) throws IOException {
+    final CloseableReference<PooledByteBuffer> entryRef = entry.getByteBufferRef();
+    CloseableReference<PooledByteBuffer> imageRef = null;
+    try {
+      if (entryRef == null) {
+        return null;
+      }
+      final PooledByteBuffer buffer = entryRef.get();
+      final int size = buffer.size();
+      final int validatorLength =
+          size >= VALIDATOR_LENGTH_SIZE ? readInt(buffer, 0) : -1;
+      if (validatorLength < 0 || validatorLength >= size - VALIDATOR_LENGTH_SIZE) {
+        FLog.w(PRODUCER_NAME, "Malformed partial image of %d bytes", size);
+        return null;
+      }
+      if (validatorLength > 0) {
+        final byte[] validatorBytes = new byte[validatorLength];
+        buffer.read(VALIDATOR_LENGTH_SIZE, validatorBytes, 0, validatorLength);
+        validator.set(new String(validatorBytes, VALIDATOR_CHARSET));
+      }
+      final int imageOffset = VALIDATOR_LENGTH_SIZE + validatorLength;
+      final PooledByteBuffer imageBuffer =
+          new PooledByteBufferSlice(entryRef, imageOffset, size - imageOffset);
+      imageRef = CloseableReference.of(imageBuffer);
+      final EncodedImage image = new EncodedImage(imageRef);
+      image.setEncodedCacheKey(entry.getEncodedCacheKey());
+      return image;
+    } finally {
+      CloseableReference.closeSafely(imageRef);
+      CloseableReference.closeSafely(entryRef);
+      entry.close();
+    }
+  }
+
+  private static int readInt(PooledByteBuffer buffer, int offset) {
+    return ((buffer.read(offset) & 0xff) << 24) |
+        ((buffer.read(offset + 1) & 0xff) << 16) |
+        ((buffer.read(offset + 2) & 0xff) << 8) |
+        (buffer.read(offset + 3) & 0xff);
+  }
+
   /**
    * Consumer that consumes results from next producer in the sequence.
    *
@@ -233,10 +308,15 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
    * differentiate from the full image.
    *
    * <p>If a partial image is already held, it combines new results with that partial data and
-   * passes the combination to the next consumer.
+   * passes the combination to the next consumer. If the whole image is received instead, the
+   * partial data is outdated and removed from the cache.
+   *
+   * <p>If the download is interrupted, it caches the bytes received so far, provided that the
+   * response has a validator to resume the download with.
    */
   private static class PartialDiskCacheConsumer
-      extends DelegatingConsumer<EncodedImage, EncodedImage> {
+      extends DelegatingConsumer<EncodedImage, EncodedImage>
+      implements InterruptedDownloadConsumer {
 
     private static final int READ_SIZE = 16 * ByteConstants.KB;
 
@@ -282,15 +362,73 @@ public class PartialDiskCacheProducer implements Producer<EncodedImage> {
           mPartialEncodedImageFromCache.close();
         }
 
-        mDefaultBufferedDiskCache.remove(mPartialImageCacheKey);
+        removePartialImage();
       } else if (statusHasFlag(status, IS_PARTIAL_RESULT) && isLast(status)) {
-        mDefaultBufferedDiskCache.put(mPartialImageCacheKey, newResult);
+        putPartialImage(newResult, null);
         getConsumer().onNewResult(newResult, status);
       } else {
+        if (mPartialEncodedImageFromCache != null) {
+          // the server sent the whole image, the cached bytes may be of an older version of it
+          mPartialEncodedImageFromCache.close();
+          removePartialImage();
+        }
         getConsumer().onNewResult(newResult, status);
       }
     }
 
+    @Override
+    public void onInterruptedDownload(EncodedImage downloadedPrefix, @Nullable String validator) {
+      // Without a validator, there is no way to tell whether the remaining bytes served later
+      // are of the same version of the image. The bytes start from the beginning of the image, so
+      // they replace any partial image cached before.
+      if (validator == null) {
+        return;
+      }
+      putPartialImage(downloadedPrefix, validator);
+    }
+
+    /**
+     * Caches the bytes of an image from its beginning, behind the header with the validator to
+     * resume its download with.
+     */
+    private void putPartialImage(EncodedImage image, @Nullable String validator) {
+      PooledByteBufferOutputStream pooledOutputStream = null;
+      CloseableReference<PooledByteBuffer> entryRef = null;
+      EncodedImage entry = null;
+      try {
+        final byte[] validatorBytes =
+            validator != null ? validator.getBytes(VALIDATOR_CHARSET) : new byte[0];
+        final int imageLength = image.getSize();
+        pooledOutputStream = mPooledByteBufferFactory.newOutputStream(
+            VALIDATOR_LENGTH_SIZE + validatorBytes.length + imageLength);
+        writeInt(pooledOutputStream, validatorBytes.length);
+        pooledOutputStream.write(validatorBytes);
+        copy(image.getInputStream(), pooledOutputStream, imageLength);
+        entryRef = CloseableReference.of(pooledOutputStream.toByteBuffer());
+        entry = new EncodedImage(entryRef);
+        mDefaultBufferedDiskCache.put(mPartialImageCacheKey, entry);
+      } catch (IOException e) {
+        FLog.e(PRODUCER_NAME, "Error while caching the partial image", e);
+      } finally {
+        EncodedImage.closeSafely(entry);
+        CloseableReference.closeSafely(entryRef);
+        if (pooledOutputStream != null) {
+          pooledOutputStream.close();
+        }
+      }
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+      out.write(value >>> 24);
+      out.write(value >>> 16);
+      out.write(value >>> 8);
+      out.write(value);
+    }
+
+    private void removePartialImage() {
+      mDefaultBufferedDiskCache.remove(mPartialImageCacheKey);
+    }
+
     private PooledByteBufferOutputStream merge(EncodedImage initialData, EncodedImage remainingData)
         throws IOException {
       final int totalLength = remainingData.getSize() + remainingData.getBytesRange().from;
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+
+/**
+ * A {@link PooledByteBuffer} exposing a range of the bytes of another buffer, without copying them.
+ */
+@ThreadSafe
+class PooledByteBufferSlice implements PooledByteBuffer {
+
+  private final int mOffset;
+  private final int mSize;
+
+  @GuardedBy("this")
+  private @Nullable CloseableReference<PooledByteBuffer> mBufferRef;
+
+  /**
+   * @param bufferRef the buffer to expose the bytes of, the slice takes its own reference to it
+   * @param offset the position in the buffer of the first byte of the slice
+   * @param size the number of bytes of the slice
+   */
+  PooledByteBufferSlice(CloseableReference<PooledByteBuffer> bufferRef, int offset, int size) {
+    Preconditions.checkArgument(CloseableReference.isValid(bufferRef));
+    Preconditions.checkArgument(offset >= 0 && size >= 0);
+    Preconditions.checkArgument(offset + size <= bufferRef.get().size());
+    mBufferRef = bufferRef.clone();
+    mOffset = offset;
+    mSize = size;
+  }
+
+  @Override
+  public synchronized int size() {
+    ensureValid();
+    return mSize;
+  }
+
+  @Override
+  public synchronized byte read(int offset) {
+    ensureValid();
+    Preconditions.checkArgument(offset >= 0);
+    Preconditions.checkArgument(offset < mSize);
+    return mBufferRef.get().read(mOffset + offset);
+  }
+
+  @Override
+  public synchronized void read(int offset, byte[] buffer, int bufferOffset, int length) {
+    ensureValid();
+    Preconditions.checkArgument(offset >= 0 && length >= 0);
+    Preconditions.checkArgument(offset + length <= mSize);
+    mBufferRef.get().read(mOffset + offset, buffer, bufferOffset, length);
+  }
+
+  @Override
+  public synchronized long getNativePtr() {
+    ensureValid();
+    return mBufferRef.get().getNativePtr() + mOffset;
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return !CloseableReference.isValid(mBufferRef);
+  }
+
+  /**
+   * Closes this instance, and releases its reference to the underlying buffer.
+   * Note: It is not an error to close an already closed bytebuffer
+   */
+  @Override
+  public synchronized void close() {
+    CloseableReference.closeSafely(mBufferRef);
+    mBufferRef = null;
+  }
+
+  synchronized void ensureValid() {
+    if (isClosed()) {
+      throw new ClosedException();
+    }
+  }
+}
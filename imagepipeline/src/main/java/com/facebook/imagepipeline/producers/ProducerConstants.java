@@ -28,4 +28,6 @@ class ProducerConstants {
   static final String ENCODED_IMAGE_SIZE = "encodedImageSize";
   static final String REQUESTED_IMAGE_SIZE = "requestedImageSize";
   static final String SAMPLE_SIZE = "sampleSize";
+  static final String EXTRA_SKIPPED_INTERMEDIATE_DECODES = "skippedIntermediateDecodes";
+  static final String EXTRA_DOWNSCALE_BYTES_SAVED = "downscaleBytesSaved";
 }
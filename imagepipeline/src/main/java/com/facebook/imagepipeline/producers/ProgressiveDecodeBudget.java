@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.VisibleForTesting;
+import com.facebook.imagepipeline.common.Priority;
+
+/**
+ * Limits the number of intermediate decodes of progressive images across all the requests, so
+ * that they don't hold up the final decodes.
+ *
+ * <p> An intermediate decode can start when fewer than the maximum number of intermediate
+ * decodes are in flight, and when no final decode is pending, unless the request is a
+ * {@link Priority#HIGH} non-prefetch. Skipped scans are not lost: the next scan that is decoded,
+ * or the final result, includes them.
+ */
+@ThreadSafe
+public class ProgressiveDecodeBudget {
+
+  private final int mMaxIntermediateDecodes;
+
+  @GuardedBy("this")
+  private int mIntermediateDecodes;
+  @GuardedBy("this")
+  private int mFinalDecodes;
+
+  /**
+   * @param maxIntermediateDecodes the maximum number of intermediate decodes in flight
+   */
+  public ProgressiveDecodeBudget(int maxIntermediateDecodes) {
+    Preconditions.checkArgument(maxIntermediateDecodes > 0);
+    mMaxIntermediateDecodes = maxIntermediateDecodes;
+  }
+
+  /**
+   * Reserves an intermediate decode for the request if the budget allows it. If so,
+   * {@link #onIntermediateDecodeFinished} must be called once the decode is done or dropped.
+   *
+   * @return true if the intermediate decode can be scheduled
+   */
+  public synchronized boolean tryStartIntermediateDecode(ProducerContext producerContext) {
+    if (mIntermediateDecodes >= mMaxIntermediateDecodes) {
+      return false;
+    }
+    final boolean isUrgent =
+        producerContext.getPriority() == Priority.HIGH && !producerContext.isPrefetch();
+    if (mFinalDecodes > 0 && !isUrgent) {
+      return false;
+    }
+    mIntermediateDecodes++;
+    return true;
+  }
+
+  public synchronized void onIntermediateDecodeFinished() {
+    Preconditions.checkState(mIntermediateDecodes > 0);
+    mIntermediateDecodes--;
+  }
+
+  /**
+   * Called when a final decode is scheduled. {@link #onFinalDecodeFinished} must be called once
+   * the decode is done or dropped.
+   */
+  public synchronized void onFinalDecodeScheduled() {
+    mFinalDecodes++;
+  }
+
+  public synchronized void onFinalDecodeFinished() {
+    Preconditions.checkState(mFinalDecodes > 0);
+    mFinalDecodes--;
+  }
+
+  @VisibleForTesting
+  synchronized int getIntermediateDecodeCount() {
+    return mIntermediateDecodes;
+  }
+
+  @VisibleForTesting
+  synchronized int getFinalDecodeCount() {
+    return mFinalDecodes;
+  }
+}
@@ -12,6 +12,7 @@ package com.facebook.imagepipeline.producers;
 import java.util.Map;
 
 import com.facebook.common.executors.StatefulRunnable;
+import com.facebook.imagepipeline.core.RequestRunnable;
 
 /**
  * {@link StatefulRunnable} intended to be used by producers.
@@ -20,7 +21,8 @@ import com.facebook.common.executors.StatefulRunnable;
  * resource management.
  */
 public abstract class StatefulProducerRunnable<T>
-    extends StatefulRunnable<T> {
+    extends StatefulRunnable<T>
+    implements RequestRunnable {
 
   private final Consumer<T> mConsumer;
   private final ProducerListener mProducerListener;
@@ -40,6 +42,11 @@ public abstract class StatefulProducerRunnable<T>
     mProducerListener.onProducerStart(mRequestId, mProducerName);
   }
 
+  @Override
+  public String getRequestId() {
+    return mRequestId;
+  }
+
   @Override
   protected void onSuccess(T result) {
     mProducerListener.onProducerFinishWithSuccess(
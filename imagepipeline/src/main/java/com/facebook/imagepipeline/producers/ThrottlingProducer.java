@@ -17,10 +17,15 @@ import java.util.concurrent.Executor;
 import android.util.Pair;
 
 import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.core.PrioritizedExecutorService;
 
 /**
  * Only permits a configurable number of requests to be kicked off simultaneously. If that number
  * is exceeded, then requests are queued up and kicked off once other requests complete.
+ *
+ * <p> Queued requests are kicked off in the order they came in, unless the producer is
+ * prioritized: then the request with the highest priority at that time goes first, and requests
+ * that became prefetches go after all the others.
  */
 public class ThrottlingProducer<T> implements Producer<T> {
 
@@ -28,6 +33,7 @@ public class ThrottlingProducer<T> implements Producer<T> {
 
   private final Producer<T> mInputProducer;
   private final int mMaxSimultaneousRequests;
+  private final boolean mPrioritized;
 
   @GuardedBy("this")
   private int mNumCurrentRequests;
@@ -39,7 +45,16 @@ public class ThrottlingProducer<T> implements Producer<T> {
       int maxSimultaneousRequests,
       Executor executor,
       final Producer<T> inputProducer) {
+    this(maxSimultaneousRequests, executor, inputProducer, false);
+  }
+
+  public ThrottlingProducer(
+      int maxSimultaneousRequests,
+      Executor executor,
+      final Producer<T> inputProducer,
+      boolean prioritized) {
     mMaxSimultaneousRequests = maxSimultaneousRequests;
+    mPrioritized = prioritized;
     mExecutor = Preconditions.checkNotNull(executor);
     mInputProducer = Preconditions.checkNotNull(inputProducer);
     mPendingRequests = new ConcurrentLinkedQueue<Pair<Consumer<T>, ProducerContext>>();
@@ -73,6 +88,30 @@ public class ThrottlingProducer<T> implements Producer<T> {
     mInputProducer.produceResults(new ThrottlerConsumer(consumer), producerContext);
   }
 
+  /**
+   * Removes the pending request that ranks the highest, see
+   * {@link PrioritizedExecutorService#getRank}. Among requests of the same rank, the oldest one is
+   * returned.
+   */
+  private synchronized Pair<Consumer<T>, ProducerContext> pollHighestPriority() {
+    Pair<Consumer<T>, ProducerContext> bestRequestPair = null;
+    int bestRank = Integer.MIN_VALUE;
+    for (Pair<Consumer<T>, ProducerContext> requestPair : mPendingRequests) {
+      ProducerContext producerContext = requestPair.second;
+      int rank = PrioritizedExecutorService.getRank(
+          producerContext.getPriority(),
+          producerContext.isPrefetch());
+      if (rank > bestRank) {
+        bestRank = rank;
+        bestRequestPair = requestPair;
+      }
+    }
+    if (bestRequestPair != null) {
+      mPendingRequests.remove(bestRequestPair);
+    }
+    return bestRequestPair;
+  }
+
   private class ThrottlerConsumer extends DelegatingConsumer<T, T> {
 
     private ThrottlerConsumer(Consumer<T> consumer) {
@@ -102,7 +141,7 @@ public class ThrottlingProducer<T> implements Producer<T> {
     private void onRequestFinished() {
       final Pair<Consumer<T>, ProducerContext> nextRequestPair;
       synchronized (ThrottlingProducer.this) {
-        nextRequestPair = mPendingRequests.poll();
+        nextRequestPair = mPrioritized ? pollHighestPriority() : mPendingRequests.poll();
         if (nextRequestPair == null) {
           mNumCurrentRequests--;
         }
@@ -100,6 +100,18 @@ public abstract class BasePostprocessor implements Postprocessor {
   public void process(Bitmap bitmap) {
   }
 
+  /**
+   * Clients that only override {@link #process(Bitmap)} may return true to let a
+   * {@link PostprocessorChain} run that method directly on the bitmap produced by the previous
+   * step, which the chain owns, instead of on a copy of it. The decoded bitmap itself is never
+   * processed in place, since the bitmap memory cache may share it.
+   *
+   * @return whether {@link #process(Bitmap)} is the only method overridden
+   */
+  public boolean canProcessInPlace() {
+    return false;
+  }
+
   /**
    * The default implementation of the CacheKey for a Postprocessor is null
    * @return The CacheKey to use for caching. Not used if null
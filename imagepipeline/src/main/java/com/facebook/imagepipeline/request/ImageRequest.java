@@ -75,6 +75,9 @@ public class ImageRequest {
   /** Range of bytes to request from the network */
   private final @Nullable BytesRange mBytesRange;
 
+  /** Validator of the response the range of bytes continues, sent as the If-Range header */
+  private final @Nullable String mBytesRangeValidator;
+
   /** Priority levels of this request. */
   private final Priority mRequestPriority;
 
@@ -117,6 +120,7 @@ public class ImageRequest {
     mRotationOptions = builder.getRotationOptions() == null
         ? RotationOptions.autoRotate() : builder.getRotationOptions();
     mBytesRange = builder.getBytesRange();
+    mBytesRangeValidator = builder.getBytesRangeValidator();
 
     mRequestPriority = builder.getRequestPriority();
     mLowestPermittedRequestLevel = builder.getLowestPermittedRequestLevel();
@@ -172,6 +176,11 @@ public class ImageRequest {
     return mBytesRange;
   }
 
+  @Nullable
+  public String getBytesRangeValidator() {
+    return mBytesRangeValidator;
+  }
+
   public ImageDecodeOptions getImageDecodeOptions() {
     return mImageDecodeOptions;
   }
@@ -47,6 +47,7 @@ public class ImageRequestBuilder {
   private @Nullable RequestListener mRequestListener;
   private @Nullable MediaVariations mMediaVariations = null;
   private @Nullable BytesRange mBytesRange = null;
+  private @Nullable String mBytesRangeValidator = null;
 
   /**
    * Creates a new request builder instance. The setting will be done according to the source type.
@@ -87,6 +88,7 @@ public class ImageRequestBuilder {
     return ImageRequestBuilder.newBuilderWithSource(imageRequest.getSourceUri())
         .setImageDecodeOptions(imageRequest.getImageDecodeOptions())
         .setBytesRange(imageRequest.getBytesRange())
+        .setBytesRangeValidator(imageRequest.getBytesRangeValidator())
         .setCacheChoice(imageRequest.getCacheChoice())
         .setLocalThumbnailPreviewsEnabled(imageRequest.getLocalThumbnailPreviewsEnabled())
         .setLowestPermittedRequestLevel(imageRequest.getLowestPermittedRequestLevel())
@@ -240,6 +242,25 @@ public class ImageRequestBuilder {
     return mBytesRange;
   }
 
+  /**
+   * Set the validator of the response that the range of bytes continues, i.e. its strong ETag or
+   * its Last-Modified date. Network fetchers send it as the If-Range header, so that the server
+   * returns the whole image instead of the range if the image has changed since.
+   *
+   * @param bytesRangeValidator the validator, or null to request the range unconditionally
+   * @return the modified builder instance
+   */
+  public ImageRequestBuilder setBytesRangeValidator(@Nullable String bytesRangeValidator) {
+    mBytesRangeValidator = bytesRangeValidator;
+    return this;
+  }
+
+  /** Gets the validator of the range of bytes if set, null otherwise. */
+  @Nullable
+  public String getBytesRangeValidator() {
+    return mBytesRangeValidator;
+  }
+
   public ImageRequestBuilder setImageDecodeOptions(ImageDecodeOptions imageDecodeOptions) {
     mImageDecodeOptions = imageDecodeOptions;
     return this;
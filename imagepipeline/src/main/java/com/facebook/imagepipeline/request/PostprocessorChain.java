@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.request;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.graphics.Bitmap;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.MultiCacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+
+/**
+ * Runs several postprocessors, in order, as a single postprocessing step.
+ *
+ * <p> Only the postprocessors that need a new bitmap, e.g. to change its size, allocate one.
+ * Postprocessors that {@link BasePostprocessor#canProcessInPlace() can process in place} run
+ * directly on the bitmap produced by the previous step, which the chain owns, so a chain of
+ * in-place postprocessors copies the source only once. Bitmaps that are not needed anymore are
+ * closed right away, which returns them to the pool for the next step.
+ *
+ * <p> The result is cached if all the postprocessors have a cache key, under a key that combines
+ * them in order.
+ */
+public class PostprocessorChain extends BasePostprocessor {
+
+  private final List<Postprocessor> mPostprocessors;
+
+  private @Nullable CacheKey mCacheKey;
+
+  public PostprocessorChain(Postprocessor... postprocessors) {
+    this(Arrays.asList(postprocessors));
+  }
+
+  public PostprocessorChain(List<Postprocessor> postprocessors) {
+    Preconditions.checkArgument(!postprocessors.isEmpty());
+    for (Postprocessor postprocessor : postprocessors) {
+      Preconditions.checkNotNull(postprocessor);
+      // there is no way to rerun a single step of the chain
+      Preconditions.checkArgument(!(postprocessor instanceof RepeatedPostprocessor));
+    }
+    mPostprocessors = Collections.unmodifiableList(new ArrayList<>(postprocessors));
+  }
+
+  public List<Postprocessor> getPostprocessors() {
+    return mPostprocessors;
+  }
+
+  @Override
+  public String getName() {
+    StringBuilder name = new StringBuilder("PostprocessorChain[");
+    for (int i = 0; i < mPostprocessors.size(); i++) {
+      if (i > 0) {
+        name.append(',');
+      }
+      name.append(mPostprocessors.get(i).getName());
+    }
+    return name.append(']').toString();
+  }
+
+  @Override
+  public CloseableReference<Bitmap> process(
+      Bitmap sourceBitmap,
+      PlatformBitmapFactory bitmapFactory) {
+    CloseableReference<Bitmap> bitmapRef = null;
+    try {
+      for (Postprocessor postprocessor : mPostprocessors) {
+        if (bitmapRef != null && isInPlace(postprocessor)) {
+          ((BasePostprocessor) postprocessor).process(bitmapRef.get());
+        } else {
+          final Bitmap inputBitmap = bitmapRef != null ? bitmapRef.get() : sourceBitmap;
+          final CloseableReference<Bitmap> outputBitmapRef =
+              postprocessor.process(inputBitmap, bitmapFactory);
+          CloseableReference.closeSafely(bitmapRef);
+          bitmapRef = outputBitmapRef;
+        }
+      }
+      return CloseableReference.cloneOrNull(bitmapRef);
+    } finally {
+      CloseableReference.closeSafely(bitmapRef);
+    }
+  }
+
+  /**
+   * Runs all the postprocessors on the bitmap. Only called if they can all process in place.
+   */
+  @Override
+  public void process(Bitmap bitmap) {
+    for (Postprocessor postprocessor : mPostprocessors) {
+      ((BasePostprocessor) postprocessor).process(bitmap);
+    }
+  }
+
+  @Override
+  public boolean canProcessInPlace() {
+    for (Postprocessor postprocessor : mPostprocessors) {
+      if (!isInPlace(postprocessor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  @Override
+  public synchronized CacheKey getPostprocessorCacheKey() {
+    if (mCacheKey == null) {
+      final List<CacheKey> cacheKeys = new ArrayList<>(mPostprocessors.size());
+      for (Postprocessor postprocessor : mPostprocessors) {
+        final CacheKey cacheKey = postprocessor.getPostprocessorCacheKey();
+        if (cacheKey == null) {
+          return null;
+        }
+        cacheKeys.add(cacheKey);
+      }
+      mCacheKey = new MultiCacheKey(cacheKeys);
+    }
+    return mCacheKey;
+  }
+
+  private static boolean isInPlace(Postprocessor postprocessor) {
+    return postprocessor instanceof BasePostprocessor &&
+        ((BasePostprocessor) postprocessor).canProcessInPlace();
+  }
+}
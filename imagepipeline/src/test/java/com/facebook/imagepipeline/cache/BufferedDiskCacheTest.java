@@ -9,8 +9,11 @@
 
 package com.facebook.imagepipeline.cache;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CancellationException;
@@ -19,17 +22,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import bolts.Task;
 
 import com.facebook.binaryresource.BinaryResource;
+import com.facebook.binaryresource.FileBinaryResource;
+import com.facebook.binaryresource.FileSliceBinaryResource;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.MultiCacheKey;
 import com.facebook.cache.common.SimpleCacheKey;
 import com.facebook.cache.common.WriterCallback;
 import com.facebook.cache.disk.FileCache;
+import com.facebook.cache.disk.NegativeLookupCache;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.memory.PooledByteBufferFactory;
 import com.facebook.common.memory.PooledByteStreams;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.memory.MappedPooledByteBuffer;
 import com.facebook.imagepipeline.testing.FakeClock;
+import com.facebook.imagepipeline.testing.FakeNativeMemoryChunkPool;
 import com.facebook.imagepipeline.testing.TestExecutorService;
 
 import org.junit.Before;
@@ -45,11 +53,13 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -57,6 +67,7 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 @RunWith(RobolectricTestRunner.class)
@@ -196,6 +207,65 @@ public class BufferedDiskCacheTest {
     assertEquals(mCacheKey, mEncodedImage.getEncodedCacheKey());
   }
 
+  @Test
+  public void testMapsJpegFromDiskCache() throws Exception {
+    byte[] jpeg = new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3, 4};
+    when(mFileCache.getResource(eq(mCacheKey))).thenReturn(createFileResource(jpeg));
+    BufferedDiskCache bufferedDiskCache = createBufferedDiskCacheWithMemoryMapping();
+
+    Task<EncodedImage> readTask = bufferedDiskCache.get(mCacheKey, mIsCancelled);
+    mReadPriorityExecutor.runUntilIdle();
+    PooledByteBuffer byteBuffer = readTask.getResult().getByteBufferRef().get();
+    assertTrue(byteBuffer instanceof MappedPooledByteBuffer);
+    byte[] bytes = new byte[jpeg.length];
+    byteBuffer.read(0, bytes, 0, jpeg.length);
+    assertArrayEquals(jpeg, bytes);
+  }
+
+  @Test
+  public void testCopiesOtherFormatsFromDiskCache() throws Exception {
+    byte[] png = new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+    when(mFileCache.getResource(eq(mCacheKey))).thenReturn(createFileResource(png));
+    when(mByteBufferFactory.newByteBuffer(any(InputStream.class), eq(png.length)))
+        .thenReturn(mPooledByteBuffer);
+    BufferedDiskCache bufferedDiskCache = createBufferedDiskCacheWithMemoryMapping();
+
+    Task<EncodedImage> readTask = bufferedDiskCache.get(mCacheKey, mIsCancelled);
+    mReadPriorityExecutor.runUntilIdle();
+    assertSame(mPooledByteBuffer, readTask.getResult().getByteBufferRef().get());
+  }
+
+  @Test
+  public void testCopiesResourcesThatAreNotFiles() throws Exception {
+    when(mFileCache.getResource(eq(mCacheKey))).thenReturn(mBinaryResource);
+    BufferedDiskCache bufferedDiskCache = createBufferedDiskCacheWithMemoryMapping();
+
+    Task<EncodedImage> readTask = bufferedDiskCache.get(mCacheKey, mIsCancelled);
+    mReadPriorityExecutor.runUntilIdle();
+    assertSame(mPooledByteBuffer, readTask.getResult().getByteBufferRef().get());
+  }
+
+  @Test
+  public void testCopiesFileSlices() throws Exception {
+    byte[] jpeg = new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3, 4};
+    File file = ((FileBinaryResource) createFileResource(jpeg)).getFile();
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      when(mFileCache.getResource(eq(mCacheKey))).thenReturn(
+          new FileSliceBinaryResource(file, randomAccessFile.getChannel(), 0, jpeg.length));
+      when(mByteBufferFactory.newByteBuffer(any(InputStream.class), eq(jpeg.length)))
+          .thenReturn(mPooledByteBuffer);
+      BufferedDiskCache bufferedDiskCache = createBufferedDiskCacheWithMemoryMapping();
+
+      // the segment of a slice can be truncated, so it is never mapped
+      Task<EncodedImage> readTask = bufferedDiskCache.get(mCacheKey, mIsCancelled);
+      mReadPriorityExecutor.runUntilIdle();
+      assertSame(mPooledByteBuffer, readTask.getResult().getByteBufferRef().get());
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
   @Test
   public void testCacheMiss() throws Exception {
     Task<EncodedImage> readTask = mBufferedDiskCache.get(mCacheKey, mIsCancelled);
@@ -204,6 +274,39 @@ public class BufferedDiskCacheTest {
     assertNull(readTask.getResult());
   }
 
+  @Test
+  public void testSkipsDiskReadIfKeyIsAbsent() throws Exception {
+    FileCache fileCache = createNegativeLookupFileCache();
+    when(((NegativeLookupCache) fileCache).isKeyAbsentSync(mCacheKey)).thenReturn(true);
+    BufferedDiskCache bufferedDiskCache = createBufferedDiskCache(fileCache);
+    Task<EncodedImage> readTask = bufferedDiskCache.get(mCacheKey, mIsCancelled);
+    assertTrue(readTask.isCompleted());
+    assertNull(readTask.getResult());
+    assertFalse(bufferedDiskCache.contains(mCacheKey).getResult());
+    assertFalse(bufferedDiskCache.diskCheckSync(mCacheKey));
+    mReadPriorityExecutor.runUntilIdle();
+    verify(fileCache, never()).getResource(eq(mCacheKey));
+    verify(fileCache, never()).hasKey(eq(mCacheKey));
+  }
+
+  @Test
+  public void testReadsDiskIfKeyMayBePresent() throws Exception {
+    FileCache fileCache = createNegativeLookupFileCache();
+    when(((NegativeLookupCache) fileCache).isKeyAbsentSync(mCacheKey)).thenReturn(false);
+    Task<EncodedImage> readTask = createBufferedDiskCache(fileCache).get(mCacheKey, mIsCancelled);
+    mReadPriorityExecutor.runUntilIdle();
+    verify(fileCache).getResource(eq(mCacheKey));
+    assertNull(readTask.getResult());
+  }
+
+  @Test
+  public void testStagingAreaWinsOverAbsentKey() throws Exception {
+    FileCache fileCache = createNegativeLookupFileCache();
+    when(((NegativeLookupCache) fileCache).isKeyAbsentSync(mCacheKey)).thenReturn(true);
+    when(mStagingArea.containsKey(mCacheKey)).thenReturn(true);
+    assertTrue(createBufferedDiskCache(fileCache).diskCheckSync(mCacheKey));
+  }
+
   @Test
   public void testPutBumpsRefCountBeforeSubmit() {
     mBufferedDiskCache.put(mCacheKey, mEncodedImage);
@@ -286,6 +389,44 @@ public class BufferedDiskCacheTest {
     verify(mStagingArea).clearAll();
   }
 
+  private static FileCache createNegativeLookupFileCache() {
+    return mock(FileCache.class, withSettings().extraInterfaces(NegativeLookupCache.class));
+  }
+
+  private BufferedDiskCache createBufferedDiskCache(FileCache fileCache) {
+    return new BufferedDiskCache(
+        fileCache,
+        mByteBufferFactory,
+        mPooledByteStreams,
+        mReadPriorityExecutor,
+        mWritePriorityExecutor,
+        mImageCacheStatsTracker);
+  }
+
+  private BufferedDiskCache createBufferedDiskCacheWithMemoryMapping() {
+    return new BufferedDiskCache(
+        mFileCache,
+        mByteBufferFactory,
+        mPooledByteStreams,
+        mReadPriorityExecutor,
+        mWritePriorityExecutor,
+        mImageCacheStatsTracker,
+        new FakeNativeMemoryChunkPool(),
+        0);
+  }
+
+  private static BinaryResource createFileResource(byte[] content) throws Exception {
+    File file = File.createTempFile("buffered_disk_cache_test", ".cnt");
+    file.deleteOnExit();
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      fos.write(content);
+    } finally {
+      fos.close();
+    }
+    return FileBinaryResource.createOrNull(file);
+  }
+
   private static boolean isTaskCancelled(Task<?> task) {
     return task.isCancelled() ||
         (task.isFaulted() && task.getError() instanceof CancellationException);
@@ -9,6 +9,8 @@
 
 package com.facebook.imagepipeline.memory;
 
+import java.util.concurrent.CountDownLatch;
+
 import android.util.SparseIntArray;
 
 import com.facebook.common.memory.MemoryTrimmableRegistry;
@@ -473,6 +475,186 @@ public class BasePoolTest {
     Assert.assertFalse(pool.canAllocate(4));
   }
 
+  @Test
+  public void testThreadCache() throws Exception {
+    mPool = new TestPool(
+        new PoolParams(12, 16, null, 0, Integer.MAX_VALUE, PoolParams.IGNORE_THREADS, 1));
+    mStats.setPool(mPool);
+
+    byte[] b1 = mPool.get(2);
+    byte[] b2 = mPool.get(2);
+
+    // the first release goes to the thread cache, the value is still accounted as used
+    mPool.release(b1);
+    Assert.assertTrue(mPool.mInUseValues.contains(b1));
+    mStats.refresh();
+    Assert.assertEquals(4, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+
+    // the thread cache is full, so the second one goes to the bucket
+    mPool.release(b2);
+    Assert.assertFalse(mPool.mInUseValues.contains(b2));
+    mStats.refresh();
+    Assert.assertEquals(2, mStats.mUsedBytes);
+    Assert.assertEquals(2, mStats.mFreeBytes);
+
+    // the thread cache is looked at first
+    Assert.assertSame(b1, mPool.get(2));
+    Assert.assertSame(b2, mPool.get(2));
+    mPool.release(b1);
+
+    // a value released by another thread is not visible to this one
+    final byte[] b3 = mPool.get(4);
+    Thread thread = new Thread(
+        new Runnable() {
+          @Override
+          public void run() {
+            mPool.release(b3);
+          }
+        });
+    thread.start();
+    thread.join();
+    Assert.assertNotSame(b3, mPool.get(4));
+    Assert.assertEquals(
+        2,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+
+    // trimming drains the thread caches
+    mPool.trimToNothing();
+    mStats.refresh();
+    Assert.assertEquals(6, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+    Assert.assertFalse(mPool.mInUseValues.contains(b1));
+    Assert.assertFalse(mPool.mInUseValues.contains(b3));
+    Assert.assertEquals(
+        0,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+  }
+
+  @Test
+  public void testThreadCache_ReleaseTwice() throws Exception {
+    mPool = new TestPool(
+        new PoolParams(10, 14, null, 0, Integer.MAX_VALUE, PoolParams.IGNORE_THREADS, 2));
+    mStats.setPool(mPool);
+
+    byte[] b1 = mPool.get(2);
+    mPool.release(b1);
+    // released twice by the same thread, the value is only cached once
+    mPool.release(b1);
+    Assert.assertEquals(
+        1,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+
+    // a value the pool did not allocate is only recognized when the thread caches are drained
+    mPool.release(new byte[2]);
+    Assert.assertEquals(
+        2,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+
+    mPool.trimToNothing();
+    mStats.refresh();
+    Assert.assertEquals(0, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+    Assert.assertFalse(mPool.mInUseValues.contains(b1));
+    Assert.assertEquals(
+        0,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+  }
+
+  @Test
+  public void testThreadCache_CanAllocate() throws Exception {
+    mPool = new TestPool(
+        new PoolParams(4, 6, null, 0, Integer.MAX_VALUE, PoolParams.IGNORE_THREADS, 1));
+    mStats.setPool(mPool);
+
+    mPool.release(mPool.get(2));
+    mStats.refresh();
+    Assert.assertEquals(2, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+
+    // the thread cached value is drained and trimmed to make room for the new one
+    Assert.assertTrue(mPool.canAllocate(6));
+    mStats.refresh();
+    Assert.assertEquals(0, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+    Assert.assertEquals(
+        0,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+  }
+
+  @Test
+  public void testThreadCache_AllocateOverSoftCap() throws Exception {
+    mPool = new TestPool(
+        new PoolParams(4, 10, null, 0, Integer.MAX_VALUE, PoolParams.IGNORE_THREADS, 2));
+    mStats.setPool(mPool);
+
+    byte[] b1 = mPool.get(2);
+    mPool.get(2);
+    mPool.release(b1);
+
+    // going over the soft cap drains the thread caches and trims them
+    mPool.get(4);
+    mStats.refresh();
+    Assert.assertEquals(6, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+    Assert.assertEquals(
+        0,
+        (int) mPool.getStats().get(PoolStatsTracker.THREAD_CACHED_COUNT));
+
+    // the pool size invariant still holds for the next get
+    Assert.assertNotSame(b1, mPool.get(2));
+    mStats.refresh();
+    Assert.assertEquals(8, mStats.mUsedBytes);
+    Assert.assertEquals(0, mStats.mFreeBytes);
+  }
+
+  @Test(timeout = 10000)
+  public void testThreadCache_DoesNotTakePoolLock() throws Exception {
+    mPool = new TestPool(
+        new PoolParams(10, 14, null, 0, Integer.MAX_VALUE, PoolParams.IGNORE_THREADS, 1));
+    byte[] b1 = mPool.get(2);
+
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch unlock = new CountDownLatch(1);
+    Thread thread = new Thread(
+        new Runnable() {
+          @Override
+          public void run() {
+            synchronized (mPool) {
+              locked.countDown();
+              try {
+                unlock.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+        });
+    thread.start();
+    locked.await();
+
+    // both go through the thread cache while another thread holds the pool lock
+    mPool.release(b1);
+    Assert.assertSame(b1, mPool.get(2));
+
+    unlock.countDown();
+    thread.join();
+  }
+
+  @Test
+  public void testThreadCache_DoubleRelease() throws Exception {
+    BasePool.ThreadCache<byte[]> threadCache =
+        new BasePool.ThreadCache<>(Thread.currentThread(), 2);
+    byte[] b1 = new byte[2];
+    Assert.assertTrue(threadCache.offer(b1, 2));
+    Assert.assertTrue(threadCache.contains(b1));
+    Assert.assertFalse(threadCache.contains(new byte[2]));
+    Assert.assertNull(threadCache.take(4));
+    Assert.assertSame(b1, threadCache.take(2));
+    Assert.assertFalse(threadCache.contains(b1));
+    Assert.assertEquals(0, threadCache.getLength());
+  }
+
   /**
    * A simple test pool that allocates byte arrays, and always allocates buffers of double
    * the size requested
@@ -488,9 +670,13 @@ public class BasePoolTest {
         int maxPoolSizeSoftCap,
         int maxPoolSizeHardCap,
         SparseIntArray bucketSizes) {
+      this(new PoolParams(maxPoolSizeSoftCap, maxPoolSizeHardCap, bucketSizes));
+    }
+
+    public TestPool(PoolParams poolParams) {
       super(
           mock(MemoryTrimmableRegistry.class),
-          new PoolParams(maxPoolSizeSoftCap, maxPoolSizeHardCap, bucketSizes),
+          poolParams,
           mock(PoolStatsTracker.class));
       mIsReusable = true;
       initialize();
@@ -12,6 +12,7 @@ package com.facebook.imagepipeline.memory;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 
+import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.common.soloader.SoLoaderShim;
 import com.facebook.imagepipeline.testing.MockBitmapFactory;
 import com.facebook.imageutils.BitmapUtil;
@@ -118,4 +119,55 @@ public class BitmapPoolTest {
     doReturn(false).when(b5).isMutable();
     assertFalse(mPool.isReusable(b5));
   }
+
+  @Test
+  public void testSizeClasses() throws Exception {
+    assertEquals(0, BitmapPool.getSizeClassesPerDoubling(0));
+    assertEquals(4, BitmapPool.getSizeClassesPerDoubling(0.25f));
+    assertEquals(8, BitmapPool.getSizeClassesPerDoubling(0.2f));
+    assertEquals(1, BitmapPool.getSizeClassesPerDoubling(2));
+
+    assertEquals(12, BitmapPool.getSizeClassCeil(12, 4));
+    assertEquals(112, BitmapPool.getSizeClassCeil(100, 4));
+    assertEquals(112, BitmapPool.getSizeClassCeil(112, 4));
+    assertEquals(128, BitmapPool.getSizeClassCeil(113, 4));
+    assertEquals(96, BitmapPool.getSizeClassFloor(100, 4));
+    assertEquals(112, BitmapPool.getSizeClassFloor(112, 4));
+  }
+
+  @Test
+  public void testBestFitReuse() throws Exception {
+    BitmapPool pool = spy(new BitmapPool(
+        mock(MemoryTrimmableRegistry.class),
+        new PoolParams(Integer.MAX_VALUE, null),
+        mock(PoolStatsTracker.class),
+        0.25f));
+    doAnswer(
+        new Answer() {
+          @Override
+          public Object answer(InvocationOnMock invocation) throws Throwable {
+            int size = (Integer) invocation.getArguments()[0];
+            Bitmap bitmap = MockBitmapFactory.createForSize(size, Bitmap.Config.ARGB_8888);
+            doReturn(size).when(bitmap).getAllocationByteCount();
+            return bitmap;
+          }
+        }).when(pool).alloc(any(Integer.class));
+
+    Bitmap b1 = pool.get(200);
+    assertEquals(224, b1.getAllocationByteCount());
+    pool.release(b1);
+
+    // the 192 bytes size class is empty, but the 224 bytes bitmap wastes less than 25%
+    Bitmap b2 = pool.get(180);
+    assertSame(b1, b2);
+    pool.release(b2);
+
+    // 224 bytes would waste more than 25% of the 160 bytes size class
+    Bitmap b3 = pool.get(150);
+    assertNotSame(b1, b3);
+    assertEquals(160, b3.getAllocationByteCount());
+
+    assertEquals(1, (int) pool.getStats().get(PoolStatsTracker.BEST_FIT_REUSE_COUNT));
+    assertEquals(32, (int) pool.getStats().get(PoolStatsTracker.BEST_FIT_WASTED_BYTES));
+  }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.memory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.imagepipeline.testing.FakeNativeMemoryChunkPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Basic tests for {@link MappedPooledByteBuffer}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MappedPooledByteBufferTest extends TestUsingNativeMemoryChunk {
+  private static final byte[] BYTES = new byte[] {1, 4, 5, 0, 100, 34, 0, 1, -1, -1};
+
+  private File mFile;
+  private NativeMemoryChunkPool mPool;
+  private PoolStats<NativeMemoryChunk> mStats;
+
+  @Before
+  public void setUp() throws Exception {
+    mPool = new FakeNativeMemoryChunkPool();
+    mStats = new PoolStats<>(mPool);
+    mFile = File.createTempFile("mapped_pooled_byte_buffer_test", ".cnt");
+    mFile.deleteOnExit();
+    FileOutputStream fos = new FileOutputStream(mFile);
+    try {
+      fos.write(BYTES);
+    } finally {
+      fos.close();
+    }
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    MappedPooledByteBuffer buffer = MappedPooledByteBuffer.map(mFile, mPool);
+    assertFalse(buffer.isClosed());
+    assertEquals(BYTES.length, buffer.size());
+    assertEquals(BYTES[4], buffer.read(4));
+    byte[] bytes = new byte[4];
+    buffer.read(2, bytes, 1, 3);
+    assertArrayEquals(new byte[] {0, 5, 0, 100}, bytes);
+  }
+
+  @Test
+  public void testReadAfterFileDeleted() throws Exception {
+    MappedPooledByteBuffer buffer = MappedPooledByteBuffer.map(mFile, mPool);
+    assertTrue(mFile.delete());
+    byte[] bytes = new byte[BYTES.length];
+    buffer.read(0, bytes, 0, BYTES.length);
+    assertArrayEquals(BYTES, bytes);
+  }
+
+  @Test(expected = PooledByteBuffer.ClosedException.class)
+  public void testReadAfterClose() throws Exception {
+    MappedPooledByteBuffer buffer = MappedPooledByteBuffer.map(mFile, mPool);
+    buffer.close();
+    assertTrue(buffer.isClosed());
+    buffer.read(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadOutOfBounds() throws Exception {
+    MappedPooledByteBuffer.map(mFile, mPool).read(BYTES.length);
+  }
+
+  @Test
+  public void testNativePointer() throws Exception {
+    MappedPooledByteBuffer buffer = MappedPooledByteBuffer.map(mFile, mPool);
+    buffer.getNativePtr();
+    mStats.refresh();
+    assertEquals(1, mStats.mUsedCount);
+    // the bytes are read from the copy from then on
+    assertTrue(mFile.delete());
+    byte[] bytes = new byte[BYTES.length];
+    buffer.read(0, bytes, 0, BYTES.length);
+    assertArrayEquals(BYTES, bytes);
+    assertEquals(BYTES[8], buffer.read(8));
+    buffer.getNativePtr();
+
+    buffer.close();
+    assertTrue(buffer.isClosed());
+    mStats.refresh();
+    assertEquals(0, mStats.mUsedCount);
+  }
+}
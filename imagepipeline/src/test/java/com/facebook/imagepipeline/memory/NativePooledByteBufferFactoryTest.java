@@ -148,4 +148,20 @@ public class NativePooledByteBufferFactoryTest extends TestUsingNativeMemoryChun
             4, new IntPair(0, 0)),
         mStats.mBucketStats);
   }
+
+  @Test
+  public void testNewOutputStream() {
+    Assert.assertTrue(mFactory.newOutputStream() instanceof NativePooledByteBufferOutputStream);
+    NativePooledByteBufferFactory segmentedFactory =
+        new NativePooledByteBufferFactory(mPool, mPooledByteStreams, 8);
+    Assert.assertTrue(
+        segmentedFactory.newOutputStream() instanceof NativePooledByteBufferOutputStream);
+    Assert.assertTrue(
+        segmentedFactory.newOutputStream(32) instanceof NativePooledByteBufferOutputStream);
+    Assert.assertTrue(
+        segmentedFactory.newSegmentedOutputStream()
+            instanceof SegmentedPooledByteBufferOutputStream);
+    Assert.assertTrue(
+        mFactory.newSegmentedOutputStream() instanceof NativePooledByteBufferOutputStream);
+  }
 }
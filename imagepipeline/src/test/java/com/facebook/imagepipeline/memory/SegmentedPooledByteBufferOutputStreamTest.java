@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.memory;
+
+import java.util.Arrays;
+
+import com.facebook.common.internal.ImmutableMap;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.imagepipeline.testing.FakeNativeMemoryChunkPool;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for SegmentedPooledByteBufferOutputStream and SegmentedPooledByteBuffer
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SegmentedPooledByteBufferOutputStreamTest extends TestUsingNativeMemoryChunk {
+  private NativeMemoryChunkPool mPool;
+  private byte[] mData;
+  private PoolStats<byte[]> mStats;
+
+  @Before
+  public void setup() {
+    mPool = new FakeNativeMemoryChunkPool();
+    mStats = new PoolStats(mPool);
+    mData = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+  }
+
+  private byte[] getBytes(PooledByteBuffer bb) {
+    byte[] bytes = new byte[bb.size()];
+    bb.read(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Test
+  public void testGrowsBySegments() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 4);
+    for (int i = 0; i < mData.length; i++) {
+      os.write(mData, i, 1);
+    }
+    Assert.assertEquals(mData.length, os.size());
+    Assert.assertEquals(4, os.getSegmentCount());
+    SegmentedPooledByteBuffer sb = os.toByteBuffer();
+    Assert.assertArrayEquals(mData, getBytes(sb));
+    mStats.refresh();
+    // the segments were never copied to bigger chunks
+    Assert.assertEquals(
+        ImmutableMap.of(
+            32, new IntPair(0, 0),
+            16, new IntPair(0, 0),
+            8, new IntPair(0, 0),
+            4, new IntPair(4, 0)),
+        mStats.mBucketStats);
+    os.close();
+    sb.close();
+    mStats.refresh();
+    Assert.assertEquals(
+        ImmutableMap.of(
+            32, new IntPair(0, 0),
+            16, new IntPair(0, 0),
+            8, new IntPair(0, 0),
+            4, new IntPair(0, 4)),
+        mStats.mBucketStats);
+  }
+
+  @Test
+  public void testWriteAcrossSegments() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 8);
+    os.write(mData, 0, 3);
+    os.write(mData, 3, 11);
+    Assert.assertEquals(2, os.getSegmentCount());
+    SegmentedPooledByteBuffer sb = os.toByteBuffer();
+    Assert.assertArrayEquals(mData, getBytes(sb));
+    for (int i = 0; i < mData.length; i++) {
+      Assert.assertEquals(mData[i], sb.read(i));
+    }
+    byte[] bytes = new byte[6];
+    sb.read(5, bytes, 0, 6);
+    Assert.assertArrayEquals(Arrays.copyOfRange(mData, 5, 11), bytes);
+    os.close();
+    sb.close();
+  }
+
+  @Test
+  public void testIntermediateBuffersShareSegments() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 4);
+    os.write(mData, 0, 6);
+    SegmentedPooledByteBuffer sb1 = os.toByteBuffer();
+    os.write(mData, 6, 8);
+    SegmentedPooledByteBuffer sb2 = os.toByteBuffer();
+    os.close();
+    Assert.assertArrayEquals(Arrays.copyOf(mData, 6), getBytes(sb1));
+    Assert.assertArrayEquals(mData, getBytes(sb2));
+    mStats.refresh();
+    Assert.assertEquals(new IntPair(4, 0), mStats.mBucketStats.get(4));
+    sb1.close();
+    sb2.close();
+    mStats.refresh();
+    Assert.assertEquals(new IntPair(0, 4), mStats.mBucketStats.get(4));
+  }
+
+  @Test
+  public void testNativePtrCoalescesSegments() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 4);
+    os.write(mData, 0, mData.length);
+    SegmentedPooledByteBuffer sb = os.toByteBuffer();
+    os.close();
+    Assert.assertEquals(4, sb.getSegmentCount());
+    sb.getNativePtr();
+    Assert.assertEquals(1, sb.getSegmentCount());
+    Assert.assertArrayEquals(mData, getBytes(sb));
+    mStats.refresh();
+    Assert.assertEquals(new IntPair(1, 0), mStats.mBucketStats.get(16));
+    Assert.assertEquals(new IntPair(0, 4), mStats.mBucketStats.get(4));
+  }
+
+  @Test(expected = PooledByteBuffer.ClosedException.class)
+  public void testReadAfterClose() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 4);
+    os.write(mData, 0, mData.length);
+    SegmentedPooledByteBuffer sb = os.toByteBuffer();
+    os.close();
+    sb.close();
+    sb.read(0);
+  }
+
+  @Test(expected = NativePooledByteBufferOutputStream.InvalidStreamException.class)
+  public void testToByteBufferAfterClose() throws Exception {
+    SegmentedPooledByteBufferOutputStream os = new SegmentedPooledByteBufferOutputStream(mPool, 4);
+    os.close();
+    os.toByteBuffer();
+  }
+}
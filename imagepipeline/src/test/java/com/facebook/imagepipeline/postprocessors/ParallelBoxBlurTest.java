@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelBoxBlurTest {
+
+  @Test
+  public void testBandsCoverEachRowOnce() throws Exception {
+    final int size = 1000;
+    final int[] visits = new int[size];
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      ParallelBoxBlur.runInBands(executor, 4, size, new ParallelBoxBlur.BandPass() {
+        @Override
+        public void run(int first, int count) {
+          synchronized (visits) {
+            for (int i = first; i < first + count; i++) {
+              visits[i]++;
+            }
+          }
+        }
+      });
+    } finally {
+      executor.shutdown();
+    }
+    for (int i = 0; i < size; i++) {
+      assertEquals(1, visits[i]);
+    }
+  }
+
+  @Test
+  public void testSmallSizeRunsInOneBand() {
+    final List<Integer> bandSizes = new ArrayList<>();
+    ParallelBoxBlur.runInBands(
+        new RejectingExecutor(),
+        4,
+        ParallelBoxBlur.MIN_BAND_SIZE,
+        new ParallelBoxBlur.BandPass() {
+          @Override
+          public void run(int first, int count) {
+            bandSizes.add(count);
+          }
+        });
+    assertEquals(1, bandSizes.size());
+    assertEquals(ParallelBoxBlur.MIN_BAND_SIZE, (int) bandSizes.get(0));
+  }
+
+  @Test
+  public void testCallerRunsBandsNotStartedByTheExecutor() {
+    // an executor whose threads are all busy, e.g. the one the caller runs on
+    final List<Runnable> queued = new ArrayList<>();
+    Executor busyExecutor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queued.add(command);
+      }
+    };
+    final int[] rows = new int[1];
+    ParallelBoxBlur.runInBands(busyExecutor, 4, 1000, new ParallelBoxBlur.BandPass() {
+      @Override
+      public void run(int first, int count) {
+        rows[0] += count;
+      }
+    });
+    assertEquals(1000, rows[0]);
+    assertEquals(3, queued.size());
+    // the queued runners find no band left when they eventually run
+    for (Runnable runnable : queued) {
+      runnable.run();
+    }
+    assertEquals(1000, rows[0]);
+  }
+
+  @Test
+  public void testFailureIsPropagated() {
+    try {
+      ParallelBoxBlur.runInBands(new RejectingExecutor(), 1, 100, new ParallelBoxBlur.BandPass() {
+        @Override
+        public void run(int first, int count) {
+          throw new IllegalStateException();
+        }
+      });
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testRowBlurAveragesNeighbours() {
+    // one row of 5 pixels, blurred with a radius of 1: each pixel is the rounded average of
+    // itself and its neighbours, the edge pixels being repeated
+    int[] pixels = new int[] {gray(0), gray(0), gray(255), gray(0), gray(0)};
+    ParallelBoxBlur.blurRows(pixels, 5, 1, 0, 1);
+    assertArrayEquals(
+        new int[] {gray(0), gray(85), gray(85), gray(85), gray(0)},
+        pixels);
+  }
+
+  @Test
+  public void testColumnBlurRepeatsEdgePixels() {
+    // one column of 3 pixels
+    int[] pixels = new int[] {gray(255), gray(0), gray(0)};
+    ParallelBoxBlur.blurColumns(pixels, 1, 3, 1, 0, 1);
+    assertArrayEquals(new int[] {gray(170), gray(85), gray(0)}, pixels);
+  }
+
+  @Test
+  public void testBlurKeepsUniformImage() {
+    int[] pixels = new int[64 * 48];
+    Arrays.fill(pixels, 0x80402010);
+    int[] expected = pixels.clone();
+    ParallelBoxBlur.iterativeBoxBlur(pixels, 64, 48, 3, 5, new RejectingExecutor(), 1);
+    assertArrayEquals(expected, pixels);
+  }
+
+  @Test
+  public void testParallelBlurMatchesSingleBandBlur() throws Exception {
+    final int width = 200;
+    final int height = 150;
+    int[] pixels = new int[width * height];
+    Random random = new Random(42);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    int[] expected = pixels.clone();
+    ParallelBoxBlur.iterativeBoxBlur(expected, width, height, 3, 7, new RejectingExecutor(), 1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      ParallelBoxBlur.iterativeBoxBlur(pixels, width, height, 3, 7, executor, 4);
+    } finally {
+      executor.shutdown();
+    }
+    assertArrayEquals(expected, pixels);
+  }
+
+  private static int gray(int value) {
+    return 0xff000000 | value << 16 | value << 8 | value;
+  }
+
+  private static class RejectingExecutor implements Executor {
+    @Override
+    public void execute(Runnable command) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
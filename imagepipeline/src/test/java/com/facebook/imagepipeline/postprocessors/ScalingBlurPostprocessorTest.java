@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ScalingBlurPostprocessorTest {
+
+  @Test
+  public void testCacheKeyCapturesRadiusAndScale() {
+    ScalingBlurPostprocessor postprocessor = new ScalingBlurPostprocessor(3, 25, 4);
+
+    assertEquals(
+        postprocessor.getPostprocessorCacheKey(),
+        new ScalingBlurPostprocessor(3, 25, 4).getPostprocessorCacheKey());
+    assertNotEquals(
+        postprocessor.getPostprocessorCacheKey(),
+        new ScalingBlurPostprocessor(3, 25, 2).getPostprocessorCacheKey());
+    assertNotEquals(
+        postprocessor.getPostprocessorCacheKey(),
+        new ScalingBlurPostprocessor(3, 10, 4).getPostprocessorCacheKey());
+    assertNotEquals(
+        postprocessor.getPostprocessorCacheKey(),
+        new IterativeBoxBlurPostProcessor(3, 25).getPostprocessorCacheKey());
+  }
+
+  @Test
+  public void testScaledBlurRadius() {
+    assertEquals(6, ScalingBlurPostprocessor.getScaledBlurRadius(25, 4));
+    assertEquals(7, ScalingBlurPostprocessor.getScaledBlurRadius(26, 4));
+    assertEquals(1, ScalingBlurPostprocessor.getScaledBlurRadius(1, 8));
+    assertEquals(25, ScalingBlurPostprocessor.getScaledBlurRadius(25, 1));
+  }
+}
@@ -177,6 +177,42 @@ public class DecodeProducerTest {
     verify(mJobScheduler, never()).scheduleJob();
   }
 
+  @Test
+  public void testNewResult_Intermediate_OverBudget() {
+    ProgressiveDecodeBudget budget = new ProgressiveDecodeBudget(1);
+    mDecodeProducer = new DecodeProducer(
+        mByteArrayPool,
+        mExecutor,
+        mImageDecoder,
+        mProgressiveJpegConfig,
+        false, /* Set downsampleEnabled to false */
+        false, /* Set resizeAndRotateForNetwork to false */
+        false, /* We don't cancel when the request is cancelled */
+        budget,
+        mInputProducer);
+    // the final decode of another request is pending
+    budget.onFinalDecodeScheduled();
+    mEncodedImage.setImageFormat(DefaultImageFormats.WEBP_SIMPLE);
+    setupNetworkUri();
+    Consumer<EncodedImage> consumer = produceResults();
+
+    when(mJobScheduler.updateJob(mEncodedImage, Consumer.NO_FLAGS)).thenReturn(true);
+    consumer.onNewResult(mEncodedImage, Consumer.NO_FLAGS);
+
+    verify(mJobScheduler).updateJob(mEncodedImage, Consumer.NO_FLAGS);
+    verify(mJobScheduler, never()).scheduleJob();
+    assertEquals(0, budget.getIntermediateDecodeCount());
+
+    when(mJobScheduler.updateJob(mEncodedImage, Consumer.IS_LAST)).thenReturn(true);
+    consumer.onNewResult(mEncodedImage, Consumer.IS_LAST);
+
+    verify(mJobScheduler).scheduleJob();
+    assertEquals(2, budget.getFinalDecodeCount());
+
+    consumer.onCancellation();
+    assertEquals(1, budget.getFinalDecodeCount());
+  }
+
   @Test
   public void testNewResult_Placeholder() {
     setupNetworkUri();
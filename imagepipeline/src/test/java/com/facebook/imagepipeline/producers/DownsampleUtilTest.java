@@ -166,6 +166,30 @@ public class DownsampleUtilTest {
     assertEquals(16, DownsampleUtil.ratioToSampleSizeJPEG(0.0832f));
   }
 
+  @Test
+  public void testDetermineTargetWidth() {
+    whenImageWidthAndHeight(1200, 800);
+    mEncodedImage.setImageFormat(DefaultImageFormats.PNG);
+
+    // 1200x800 covering 500x500 -> 750x500
+    whenRequestResizeWidthAndHeightWithExifRotation(500, 500);
+    assertEquals(750, DownsampleUtil.determineTargetWidth(mImageRequest, mEncodedImage));
+
+    whenRequestResizeWidthAndHeightWithExifRotation(1500, 1500);
+    assertEquals(
+        EncodedImage.UNKNOWN_WIDTH,
+        DownsampleUtil.determineTargetWidth(mImageRequest, mEncodedImage));
+  }
+
+  @Test
+  public void testDetermineSampleSizeForTargetWidth() {
+    assertEquals(1, DownsampleUtil.determineSampleSizeForTargetWidth(1200, 1200));
+    assertEquals(1, DownsampleUtil.determineSampleSizeForTargetWidth(1200, 750));
+    assertEquals(2, DownsampleUtil.determineSampleSizeForTargetWidth(1200, 600));
+    assertEquals(2, DownsampleUtil.determineSampleSizeForTargetWidth(1200, 500));
+    assertEquals(8, DownsampleUtil.determineSampleSizeForTargetWidth(1200, 100));
+  }
+
   @Test
   public void testRoundToPowerOfTwo() {
     assertEquals(1, DownsampleUtil.roundToPowerOfTwo(1));
@@ -19,9 +19,13 @@ import java.util.Queue;
 
 import android.net.Uri;
 
+import com.facebook.imagepipeline.common.BytesRange;
+import com.facebook.imagepipeline.request.ImageRequest;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -31,10 +35,12 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -49,6 +55,7 @@ public class HttpUrlConnectionNetworkFetcherTest {
 
   @Mock private FetchState mMockFetchState;
   @Mock private ProducerContext mMockProducerContext;
+  @Mock private ImageRequest mMockImageRequest;
   @Mock private NetworkFetcher.Callback mMockCallback;
 
   private HttpUrlConnectionNetworkFetcher mFetcher;
@@ -101,6 +108,7 @@ public class HttpUrlConnectionNetworkFetcherTest {
 
   private void mockFetchState() {
     when(mMockFetchState.getContext()).thenReturn(mMockProducerContext);
+    when(mMockProducerContext.getImageRequest()).thenReturn(mMockImageRequest);
     when(mMockFetchState.getUri()).then(new Answer<Uri>() {
       @Override
       public Uri answer(InvocationOnMock invocation) throws Throwable {
@@ -186,6 +194,61 @@ public class HttpUrlConnectionNetworkFetcherTest {
     verifyNoMoreInteractions(mMockCallback);
   }
 
+  @Test
+  public void testFetchDoesNotSendRangeByDefault() throws IOException {
+    HttpURLConnection mockConnection = mockSuccess();
+
+    runFetch();
+
+    verify(mockConnection, never()).setRequestProperty(anyString(), anyString());
+  }
+
+  @Test
+  public void testFetchSendsRangeAndValidator() throws IOException {
+    when(mMockImageRequest.getBytesRange()).thenReturn(BytesRange.from(100));
+    when(mMockImageRequest.getBytesRangeValidator()).thenReturn("\"etag\"");
+    HttpURLConnection mockRedirect = mockRedirectTo(HTTPS_URL);
+    HttpURLConnection mockConnection = mockSuccess();
+
+    runFetch();
+
+    verify(mockRedirect).setRequestProperty("Range", "bytes=100-");
+    verify(mockRedirect).setRequestProperty("If-Range", "\"etag\"");
+    verify(mockConnection).setRequestProperty("Range", "bytes=100-");
+    verify(mockConnection).setRequestProperty("If-Range", "\"etag\"");
+  }
+
+  @Test
+  public void testFetchSetsResponseRangeAndValidator() throws IOException {
+    HttpURLConnection mockConnection = mockSuccess();
+    when(mockConnection.getHeaderField("Content-Range")).thenReturn("bytes 100-199/200");
+    when(mockConnection.getHeaderField("ETag")).thenReturn("\"etag\"");
+    when(mockConnection.getHeaderField("Last-Modified"))
+        .thenReturn("Wed, 21 Oct 2015 07:28:00 GMT");
+
+    runFetch();
+
+    ArgumentCaptor<BytesRange> rangeCaptor = ArgumentCaptor.forClass(BytesRange.class);
+    verify(mMockFetchState).setResponseBytesRange(rangeCaptor.capture());
+    assertEquals(100, rangeCaptor.getValue().from);
+    assertEquals(BytesRange.TO_END_OF_CONTENT, rangeCaptor.getValue().to);
+    verify(mMockFetchState).setOnNewResultStatusFlags(Consumer.IS_PARTIAL_RESULT);
+    verify(mMockFetchState).setResponseValidator("\"etag\"");
+  }
+
+  @Test
+  public void testFetchFallsBackToLastModifiedForWeakETag() throws IOException {
+    HttpURLConnection mockConnection = mockSuccess();
+    when(mockConnection.getHeaderField("ETag")).thenReturn("W/\"etag\"");
+    when(mockConnection.getHeaderField("Last-Modified"))
+        .thenReturn("Wed, 21 Oct 2015 07:28:00 GMT");
+
+    runFetch();
+
+    verify(mMockFetchState, never()).setResponseBytesRange(any(BytesRange.class));
+    verify(mMockFetchState).setResponseValidator("Wed, 21 Oct 2015 07:28:00 GMT");
+  }
+
   private HttpURLConnection mockSuccess() throws IOException {
     return mockSuccessWithStream(mock(InputStream.class));
   }
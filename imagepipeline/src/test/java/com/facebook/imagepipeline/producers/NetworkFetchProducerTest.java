@@ -27,7 +27,9 @@ import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.memory.PooledByteBufferFactory;
 import com.facebook.common.memory.PooledByteBufferOutputStream;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.common.BytesRange;
 import com.facebook.imagepipeline.common.Priority;
+import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.request.ImageRequest;
 
 import org.junit.*;
@@ -243,6 +245,63 @@ public class NetworkFetchProducerTest {
     }
   }
 
+  @Test
+  public void testInterruptedDownloadIsHandedToConsumer() throws IOException {
+    Consumer consumer = mockInterruptedDownloadConsumer();
+    FetchState fetchState = new FetchState(consumer, mProducerContext);
+    fetchState.setResponseValidator("\"etag\"");
+    NetworkFetcher.Callback callback = performInterruptedFetch(consumer, fetchState);
+    try {
+      callback.onResponse(mockInterruptedInputStream(), 100);
+      fail();
+    } catch (IOException e) {
+      verify((InterruptedDownloadConsumer) consumer)
+          .onInterruptedDownload(any(EncodedImage.class), eq("\"etag\""));
+      verifyPooledByteBufferUsed(1);
+      verify(mPooledByteBufferOutputStream).close();
+    }
+  }
+
+  @Test
+  public void testInterruptedRangeIsNotHandedToConsumer() throws IOException {
+    Consumer consumer = mockInterruptedDownloadConsumer();
+    FetchState fetchState = new FetchState(consumer, mProducerContext);
+    fetchState.setResponseBytesRange(BytesRange.from(100));
+    NetworkFetcher.Callback callback = performInterruptedFetch(consumer, fetchState);
+    try {
+      callback.onResponse(mockInterruptedInputStream(), 100);
+      fail();
+    } catch (IOException e) {
+      verify((InterruptedDownloadConsumer) consumer, never())
+          .onInterruptedDownload(any(EncodedImage.class), anyString());
+      verifyPooledByteBufferUsed(0);
+    }
+  }
+
+  private Consumer mockInterruptedDownloadConsumer() {
+    return mock(Consumer.class, withSettings().extraInterfaces(InterruptedDownloadConsumer.class));
+  }
+
+  private InputStream mockInterruptedInputStream() throws IOException {
+    InputStream inputStream = mock(InputStream.class);
+    when(inputStream.read(any(byte[].class))).thenReturn(10).thenThrow(new IOException());
+    when(mPooledByteBufferOutputStream.size()).thenReturn(10);
+    when(mNetworkFetcher.shouldPropagate(any(FetchState.class))).thenReturn(false);
+    return inputStream;
+  }
+
+  private NetworkFetcher.Callback performInterruptedFetch(
+      Consumer consumer,
+      FetchState fetchState) {
+    when(mNetworkFetcher.createFetchState(eq(consumer), eq(mProducerContext)))
+        .thenReturn(fetchState);
+    mNetworkFetchProducer.produceResults(consumer, mProducerContext);
+    ArgumentCaptor<NetworkFetcher.Callback> callbackCaptor =
+        ArgumentCaptor.forClass(NetworkFetcher.Callback.class);
+    verify(mNetworkFetcher).fetch(eq(fetchState), callbackCaptor.capture());
+    return callbackCaptor.getValue();
+  }
+
   private void verifyPooledByteBufferUsed(int times) {
     verify(mPooledByteBufferOutputStream, times(times)).toByteBuffer();
     verify(mPooledByteBuffer, times(times)).close();
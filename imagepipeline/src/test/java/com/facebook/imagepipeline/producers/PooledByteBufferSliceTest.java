@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Basic tests for {@link PooledByteBufferSlice}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PooledByteBufferSliceTest {
+  private static final byte[] BYTES = new byte[] {1, 4, 5, 0, 100, 34, 0, 1, -1, -1};
+  private static final long NATIVE_PTR = 1000L;
+
+  private TrivialPooledByteBuffer mBuffer;
+  private CloseableReference<PooledByteBuffer> mBufferRef;
+  private PooledByteBufferSlice mSlice;
+
+  @Before
+  public void setUp() {
+    mBuffer = new TrivialPooledByteBuffer(BYTES, NATIVE_PTR);
+    mBufferRef = CloseableReference.<PooledByteBuffer>of(mBuffer);
+    mSlice = new PooledByteBufferSlice(mBufferRef, 3, 5);
+  }
+
+  @Test
+  public void testSize() {
+    assertEquals(5, mSlice.size());
+  }
+
+  @Test
+  public void testReadByte() {
+    assertEquals(0, mSlice.read(0));
+    assertEquals(100, mSlice.read(1));
+    assertEquals(1, mSlice.read(4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadByteBeyondSlice() {
+    mSlice.read(5);
+  }
+
+  @Test
+  public void testReadBytes() {
+    byte[] bytes = new byte[4];
+    mSlice.read(1, bytes, 1, 3);
+    assertArrayEquals(new byte[] {0, 100, 34, 0}, bytes);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadBytesBeyondSlice() {
+    mSlice.read(3, new byte[3], 0, 3);
+  }
+
+  @Test
+  public void testNativePointer() {
+    assertEquals(NATIVE_PTR + 3, mSlice.getNativePtr());
+  }
+
+  @Test
+  public void testClose() {
+    mBufferRef.close();
+    assertFalse(mBuffer.isClosed());
+    mSlice.close();
+    assertTrue(mSlice.isClosed());
+    assertTrue(mBuffer.isClosed());
+    // closing again is fine
+    mSlice.close();
+  }
+
+  @Test(expected = PooledByteBuffer.ClosedException.class)
+  public void testSizeAfterClose() {
+    mSlice.close();
+    mSlice.size();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import com.facebook.imagepipeline.common.Priority;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ProgressiveDecodeBudgetTest {
+
+  private ProgressiveDecodeBudget mBudget;
+  private ProducerContext mHighPriorityContext;
+  private ProducerContext mMediumPriorityContext;
+  private ProducerContext mPrefetchContext;
+
+  @Before
+  public void setUp() {
+    mBudget = new ProgressiveDecodeBudget(2);
+    mHighPriorityContext = mockProducerContext(Priority.HIGH, false);
+    mMediumPriorityContext = mockProducerContext(Priority.MEDIUM, false);
+    mPrefetchContext = mockProducerContext(Priority.HIGH, true);
+  }
+
+  @Test
+  public void testLimitsIntermediateDecodes() {
+    assertTrue(mBudget.tryStartIntermediateDecode(mMediumPriorityContext));
+    assertTrue(mBudget.tryStartIntermediateDecode(mHighPriorityContext));
+    assertFalse(mBudget.tryStartIntermediateDecode(mHighPriorityContext));
+    assertEquals(2, mBudget.getIntermediateDecodeCount());
+
+    mBudget.onIntermediateDecodeFinished();
+    assertTrue(mBudget.tryStartIntermediateDecode(mMediumPriorityContext));
+  }
+
+  @Test
+  public void testPendingFinalDecodeOnlyAllowsUrgentIntermediateDecodes() {
+    mBudget.onFinalDecodeScheduled();
+
+    assertFalse(mBudget.tryStartIntermediateDecode(mMediumPriorityContext));
+    assertFalse(mBudget.tryStartIntermediateDecode(mPrefetchContext));
+    assertTrue(mBudget.tryStartIntermediateDecode(mHighPriorityContext));
+
+    mBudget.onFinalDecodeFinished();
+    assertTrue(mBudget.tryStartIntermediateDecode(mMediumPriorityContext));
+    assertEquals(0, mBudget.getFinalDecodeCount());
+  }
+
+  private static ProducerContext mockProducerContext(Priority priority, boolean isPrefetch) {
+    ProducerContext producerContext = mock(ProducerContext.class);
+    when(producerContext.getPriority()).thenReturn(priority);
+    when(producerContext.isPrefetch()).thenReturn(isPrefetch);
+    return producerContext;
+  }
+}
@@ -16,12 +16,17 @@ import java.util.Map;
 import android.graphics.Bitmap;
 
 import com.facebook.common.internal.ImmutableMap;
+import com.facebook.common.internal.Suppliers;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.common.references.ResourceReleaser;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.cache.CountingMemoryCache;
+import com.facebook.imagepipeline.cache.MemoryCacheParams;
+import com.facebook.imagepipeline.cache.ValueDescriptor;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.image.CloseableStaticBitmap;
 import com.facebook.imagepipeline.producers.PostprocessorProducer.SingleUsePostprocessorConsumer;
+import com.facebook.imagepipeline.request.BasePostprocessor;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.request.Postprocessor;
 import com.facebook.imagepipeline.testing.FakeClock;
@@ -173,6 +178,51 @@ public class SingleUsePostprocessorProducerTest {
     verify(mSourceCloseableStaticBitmap).close();
   }
 
+  @Test
+  public void testCachedSourceIsNotProcessedInPlace() {
+    BasePostprocessor inPlacePostprocessor = mock(BasePostprocessor.class);
+    when(inPlacePostprocessor.getName()).thenReturn(POSTPROCESSOR_NAME);
+    when(inPlacePostprocessor.canProcessInPlace()).thenReturn(true);
+    doReturn(mDestinationCloseableBitmapRef)
+        .when(inPlacePostprocessor).process(mSourceBitmap, mPlatformBitmapFactory);
+    when(mImageRequest.getPostprocessor()).thenReturn(inPlacePostprocessor);
+
+    // the client reference of a cached image is the only reference to its own shared reference,
+    // while the cache still holds the same image
+    CountingMemoryCache<String, CloseableImage> bitmapCache = new CountingMemoryCache<>(
+        new ValueDescriptor<CloseableImage>() {
+          @Override
+          public int getSizeInBytes(CloseableImage value) {
+            return 1;
+          }
+        },
+        mock(CountingMemoryCache.CacheTrimStrategy.class),
+        Suppliers.of(new MemoryCacheParams(10, 10, 10, 10, 10)),
+        mPlatformBitmapFactory,
+        false);
+    CloseableReference<CloseableImage> cachedSourceRef =
+        bitmapCache.cache("key", mSourceCloseableImageRef);
+    mSourceCloseableImageRef.close();
+
+    SingleUsePostprocessorConsumer postprocessorConsumer = produceResults();
+    postprocessorConsumer.onNewResult(cachedSourceRef, Consumer.IS_LAST);
+    cachedSourceRef.close();
+    mTestExecutorService.runUntilIdle();
+
+    verify(inPlacePostprocessor, never()).process(any(Bitmap.class));
+    verify(inPlacePostprocessor).process(mSourceBitmap, mPlatformBitmapFactory);
+    assertEquals(1, mResults.size());
+    assertSame(
+        mDestinationBitmap,
+        ((CloseableStaticBitmap) mResults.get(0).get()).getUnderlyingBitmap());
+    mResults.get(0).close();
+
+    CloseableReference<CloseableImage> stillCachedRef = bitmapCache.get("key");
+    assertSame(mSourceCloseableStaticBitmap, stillCachedRef.get());
+    verify(mSourceCloseableStaticBitmap, never()).close();
+    stillCachedRef.close();
+  }
+
   private SingleUsePostprocessorConsumer produceResults() {
     mPostprocessorProducer.produceResults(mConsumer, mProducerContext);
     ArgumentCaptor<Consumer> consumerCaptor = ArgumentCaptor.forClass(Consumer.class);
@@ -10,6 +10,7 @@
 package com.facebook.imagepipeline.producers;
 
 import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.imagepipeline.common.Priority;
 
 import org.junit.*;
 import org.junit.runner.*;
@@ -166,4 +167,44 @@ public class ThrottlingProducerTest {
     mThrottlerConsumers[2].onNewResult(mResults[3], Consumer.IS_LAST);
     mThrottlerConsumers[3].onNewResult(mResults[4], Consumer.IS_LAST);
   }
+
+  @Test
+  public void testThrottling_Prioritized() {
+    mThrottlingProducer = new ThrottlingProducer<Object>(
+        MAX_SIMULTANEOUS_REQUESTS,
+        CallerThreadExecutor.getInstance(),
+        mInputProducer,
+        true);
+    setPriority(2, Priority.LOW, false);
+    setPriority(3, Priority.MEDIUM, false);
+    setPriority(4, Priority.HIGH, true);
+    for (int i = 0; i < 5; i++) {
+      mThrottlingProducer.produceResults(mConsumers[i], mProducerContexts[i]);
+    }
+    assertNotNull(mThrottlerConsumers[0]);
+    assertNotNull(mThrottlerConsumers[1]);
+    assertNull(mThrottlerConsumers[2]);
+    assertNull(mThrottlerConsumers[3]);
+    assertNull(mThrottlerConsumers[4]);
+
+    // the priority of the third request is raised while it is queued, it goes first
+    setPriority(2, Priority.HIGH, false);
+    mThrottlerConsumers[0].onNewResult(mResults[0], Consumer.IS_LAST);
+    assertNotNull(mThrottlerConsumers[2]);
+    assertNull(mThrottlerConsumers[3]);
+    assertNull(mThrottlerConsumers[4]);
+
+    // the fifth request is a prefetch, so the fourth one goes before it
+    mThrottlerConsumers[1].onNewResult(mResults[1], Consumer.IS_LAST);
+    assertNotNull(mThrottlerConsumers[3]);
+    assertNull(mThrottlerConsumers[4]);
+
+    mThrottlerConsumers[2].onNewResult(mResults[2], Consumer.IS_LAST);
+    assertNotNull(mThrottlerConsumers[4]);
+  }
+
+  private void setPriority(int request, Priority priority, boolean isPrefetch) {
+    when(mProducerContexts[request].getPriority()).thenReturn(priority);
+    when(mProducerContexts[request].isPrefetch()).thenReturn(isPrefetch);
+  }
 }
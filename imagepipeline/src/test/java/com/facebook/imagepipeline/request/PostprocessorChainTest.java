@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.facebook.imagepipeline.request;
+
+import android.graphics.Bitmap;
+
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PostprocessorChainTest {
+
+  @Mock public PlatformBitmapFactory mBitmapFactory;
+  @Mock public ResourceReleaser<Bitmap> mResourceReleaser;
+  @Mock public Bitmap mSourceBitmap;
+  @Mock public Bitmap mScaledBitmap;
+  @Mock public Bitmap mCopiedBitmap;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void testInPlacePostprocessorsRunOnTheOutputOfThePreviousOne() {
+    Postprocessor scaling = mock(Postprocessor.class);
+    when(scaling.process(mSourceBitmap, mBitmapFactory))
+        .thenReturn(CloseableReference.of(mScaledBitmap, mResourceReleaser));
+    BasePostprocessor rounding = mockInPlacePostprocessor();
+    BasePostprocessor tinting = mockInPlacePostprocessor();
+
+    CloseableReference<Bitmap> resultRef = new PostprocessorChain(scaling, rounding, tinting)
+        .process(mSourceBitmap, mBitmapFactory);
+
+    assertSame(mScaledBitmap, resultRef.get());
+    verify(rounding).process(mScaledBitmap);
+    verify(tinting).process(mScaledBitmap);
+    verify(rounding, never()).process(any(Bitmap.class), any(PlatformBitmapFactory.class));
+    verify(tinting, never()).process(any(Bitmap.class), any(PlatformBitmapFactory.class));
+    resultRef.close();
+    verify(mResourceReleaser).release(mScaledBitmap);
+  }
+
+  @Test
+  public void testIntermediateBitmapsAreReleased() {
+    Postprocessor copying = mock(Postprocessor.class);
+    when(copying.process(mSourceBitmap, mBitmapFactory))
+        .thenReturn(CloseableReference.of(mCopiedBitmap, mResourceReleaser));
+    Postprocessor scaling = mock(Postprocessor.class);
+    when(scaling.process(mCopiedBitmap, mBitmapFactory))
+        .thenReturn(CloseableReference.of(mScaledBitmap, mResourceReleaser));
+
+    CloseableReference<Bitmap> resultRef =
+        new PostprocessorChain(copying, scaling).process(mSourceBitmap, mBitmapFactory);
+
+    assertSame(mScaledBitmap, resultRef.get());
+    verify(mResourceReleaser).release(mCopiedBitmap);
+    resultRef.close();
+  }
+
+  @Test
+  public void testCanProcessInPlaceOnlyIfAllPostprocessorsCan() {
+    assertTrue(new PostprocessorChain(mockInPlacePostprocessor(), mockInPlacePostprocessor())
+        .canProcessInPlace());
+    assertFalse(new PostprocessorChain(mockInPlacePostprocessor(), mock(Postprocessor.class))
+        .canProcessInPlace());
+  }
+
+  @Test
+  public void testCacheKeyCombinesTheKeysInOrder() {
+    Postprocessor first = mockPostprocessorWithKey("first");
+    Postprocessor second = mockPostprocessorWithKey("second");
+
+    assertEquals(
+        new PostprocessorChain(first, second).getPostprocessorCacheKey(),
+        new PostprocessorChain(first, second).getPostprocessorCacheKey());
+    assertNotEquals(
+        new PostprocessorChain(first, second).getPostprocessorCacheKey(),
+        new PostprocessorChain(second, first).getPostprocessorCacheKey());
+    assertNull(
+        new PostprocessorChain(first, mock(Postprocessor.class)).getPostprocessorCacheKey());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRepeatedPostprocessorIsRejected() {
+    new PostprocessorChain(mock(RepeatedPostprocessor.class));
+  }
+
+  private static BasePostprocessor mockInPlacePostprocessor() {
+    BasePostprocessor postprocessor = mock(BasePostprocessor.class);
+    when(postprocessor.canProcessInPlace()).thenReturn(true);
+    return postprocessor;
+  }
+
+  private static Postprocessor mockPostprocessorWithKey(String key) {
+    Postprocessor postprocessor = mock(Postprocessor.class);
+    when(postprocessor.getPostprocessorCacheKey()).thenReturn(new SimpleCacheKey(key));
+    return postprocessor;
+  }
+}
@@ -131,7 +131,7 @@ public class BitmapAnimationCacheSelectorConfigurator {
   private AnimatedFrameCache createAnimatedFrameCache() {
     return new AnimatedFrameCache(
         new SimpleCacheKey("Sample"),
-        Fresco.getImagePipelineFactory().getBitmapCountingMemoryCache());
+        Fresco.getImagePipelineFactory().getBitmapCountingCache());
   }
 
   private void setupSelector() {
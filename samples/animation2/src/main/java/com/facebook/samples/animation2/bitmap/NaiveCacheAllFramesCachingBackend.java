@@ -61,6 +61,12 @@ public class NaiveCacheAllFramesCachingBackend implements BitmapFrameCache {
     return CloseableReference.isValid(mBitmapSparseArray.get(frameNumber));
   }
 
+  @Override
+  public boolean willCacheFrame(int frameNumber) {
+    // Only rendered frames are cached
+    return false;
+  }
+
   @Override
   public synchronized int getSizeInBytes() {
     int size = 0;
@@ -12,6 +12,8 @@
 package com.facebook.fresco.samples.showcase.imagepipeline;
 
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.net.Uri;
 import android.os.Bundle;
@@ -31,6 +33,7 @@ import com.facebook.drawee.interfaces.DraweeController;
 import com.facebook.drawee.view.SimpleDraweeView;
 import com.facebook.fresco.samples.showcase.BaseShowcaseFragment;
 import com.facebook.fresco.samples.showcase.R;
+import com.facebook.fresco.samples.showcase.postprocessor.BlurBenchmark;
 import com.facebook.fresco.samples.showcase.postprocessor.BlurPostprocessor;
 import com.facebook.fresco.samples.showcase.postprocessor.CachedWatermarkPostprocessor;
 import com.facebook.fresco.samples.showcase.postprocessor.FasterGreyScalePostprocessor;
@@ -79,6 +82,8 @@ public class ImagePipelinePostProcessorFragment extends BaseShowcaseFragment
   };
 
   private Button mButton;
+  private Button mBenchmarkButton;
+  private TextView mBenchmarkText;
   private SimpleDraweeView mDraweeMain;
   private Spinner mSpinner;
 
@@ -96,6 +101,8 @@ public class ImagePipelinePostProcessorFragment extends BaseShowcaseFragment
     mButton = (Button) view.findViewById(R.id.button);
     mDraweeMain = (SimpleDraweeView) view.findViewById(R.id.drawee_view);
     mSpinner = (Spinner) view.findViewById(R.id.spinner);
+    mBenchmarkButton = (Button) view.findViewById(R.id.button_benchmark);
+    mBenchmarkText = (TextView) view.findViewById(R.id.text_benchmark);
 
     mSpinner.setAdapter(new SimplePostprocessorAdapter());
     mSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -118,6 +125,13 @@ public class ImagePipelinePostProcessorFragment extends BaseShowcaseFragment
         setPostprocessor(spinnerEntry.postprocessor);
       }
     });
+
+    mBenchmarkButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        runBlurBenchmark();
+      }
+    });
   }
 
   @Override
@@ -137,6 +151,33 @@ public class ImagePipelinePostProcessorFragment extends BaseShowcaseFragment
     });
   }
 
+  private void runBlurBenchmark() {
+    mBenchmarkButton.setEnabled(false);
+    mBenchmarkText.setText(R.string.imagepipeline_postprocessor_blur_benchmark_running);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        final ExecutorService parallelExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final String report;
+        try {
+          report = new BlurBenchmark(
+              Fresco.getImagePipelineFactory().getPlatformBitmapFactory(),
+              parallelExecutor).run();
+        } finally {
+          parallelExecutor.shutdown();
+        }
+        getActivity().runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            mBenchmarkText.setText(report);
+            mBenchmarkButton.setEnabled(true);
+          }
+        });
+      }
+    }).start();
+  }
+
   private void setPostprocessor(Postprocessor postprocessor) {
     final ImageRequest imageRequest = ImageRequestBuilder.newBuilderWithSource(URI)
         .setPostprocessor(postprocessor)
@@ -0,0 +1,114 @@
+/*
+ * This file provided by Facebook is for non-commercial testing and evaluation
+ * purposes only.  Facebook reserves all rights not expressly granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * FACEBOOK BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.facebook.fresco.samples.showcase.postprocessor;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.postprocessors.IterativeBoxBlurPostProcessor;
+import com.facebook.imagepipeline.postprocessors.ScalingBlurPostprocessor;
+import com.facebook.imagepipeline.request.Postprocessor;
+
+/**
+ * Compares the blur post-processors of the image pipeline on bitmaps of several sizes, for several
+ * blur radii:
+ * <ul>
+ *   <li>current: {@link IterativeBoxBlurPostProcessor} on a full-size copy, on one thread
+ *   <li>parallel: the same, with the passes over large bitmaps split across threads
+ *   <li>scaled: {@link ScalingBlurPostprocessor}, down-scaled by {@link #SCALE_RATIO}
+ * </ul>
+ * Each post-processor is run through {@link Postprocessor#process(Bitmap, PlatformBitmapFactory)},
+ * as the pipeline does, and the median duration of several runs is reported.
+ */
+public class BlurBenchmark {
+
+  private static final int[] SIZES = {512, 1024, 2048};
+  private static final int[] RADII = {4, 16, 64};
+  private static final int ITERATIONS = 3;
+  private static final int SCALE_RATIO = 4;
+  private static final int RUNS = 5;
+
+  private final PlatformBitmapFactory mBitmapFactory;
+  private final Executor mParallelExecutor;
+
+  public BlurBenchmark(PlatformBitmapFactory bitmapFactory, Executor parallelExecutor) {
+    mBitmapFactory = bitmapFactory;
+    mParallelExecutor = parallelExecutor;
+  }
+
+  /**
+   * Runs all the cases. Takes several seconds, so it must not be called on the UI thread.
+   *
+   * @return the report, one line per size and radius
+   */
+  public String run() {
+    final StringBuilder report = new StringBuilder();
+    for (int size : SIZES) {
+      final Bitmap source = createSourceBitmap(size);
+      try {
+        for (int radius : RADII) {
+          final float currentMs = measureMedianMs(
+              new IterativeBoxBlurPostProcessor(ITERATIONS, radius),
+              source);
+          final float parallelMs = measureMedianMs(
+              new IterativeBoxBlurPostProcessor(ITERATIONS, radius, mParallelExecutor),
+              source);
+          final float scaledMs = measureMedianMs(
+              new ScalingBlurPostprocessor(ITERATIONS, radius, SCALE_RATIO, mParallelExecutor),
+              source);
+          report.append(String.format(
+              (Locale) null,
+              "%dpx r=%d: current %.1f ms, parallel %.1f ms, scaled %.1f ms\n",
+              size,
+              radius,
+              currentMs,
+              parallelMs,
+              scaledMs));
+        }
+      } finally {
+        source.recycle();
+      }
+    }
+    return report.toString();
+  }
+
+  private float measureMedianMs(Postprocessor postprocessor, Bitmap source) {
+    final long[] durationsNs = new long[RUNS];
+    for (int i = 0; i < RUNS; i++) {
+      final long startNs = System.nanoTime();
+      final CloseableReference<Bitmap> resultRef = postprocessor.process(source, mBitmapFactory);
+      durationsNs[i] = System.nanoTime() - startNs;
+      CloseableReference.closeSafely(resultRef);
+    }
+    Arrays.sort(durationsNs);
+    return durationsNs[RUNS / 2] / 1e6f;
+  }
+
+  private static Bitmap createSourceBitmap(int size) {
+    final Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    final Paint paint = new Paint();
+    paint.setShader(
+        new LinearGradient(0, 0, size, size, Color.RED, Color.BLUE, Shader.TileMode.MIRROR));
+    new Canvas(bitmap).drawPaint(paint);
+    return bitmap;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file provided by Facebook is for non-commercial testing and evaluation
+ * purposes only.  Facebook reserves all rights not expressly granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * FACEBOOK BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.facebook.samples.zoomable;
+
+import javax.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+
+import com.facebook.common.executors.UiThreadImmediateExecutorService;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.logging.FLog;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.datasource.BaseDataSubscriber;
+import com.facebook.datasource.DataSource;
+import com.facebook.imagepipeline.common.ImageDecodeOptions;
+import com.facebook.imagepipeline.common.RegionDecodeOptions;
+import com.facebook.imagepipeline.common.RotationOptions;
+import com.facebook.imagepipeline.core.ImagePipeline;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import com.facebook.imagepipeline.platform.PlatformDecoder;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.request.ImageRequestBuilder;
+
+/**
+ * Drawable that shows a very large image as tiles, decoded at the level of detail they are
+ * displayed at.
+ *
+ * <p> Only the tiles that intersect the visible part of the image are requested, each one with
+ * {@link RegionDecodeOptions}, so that the memory used scales with the size of the screen rather
+ * than with the size of the image. The tiles are cached in the bitmap memory cache, keyed by
+ * image, region and sample size, so that panning or zooming back does not decode them again. The
+ * region decoder of the image is reused for all the tiles, and closed when the drawable is
+ * released.
+ *
+ * <p> The image is drawn over the bounds of the drawable. Regions are decoded without rotation,
+ * so images that need to be rotated are not supported.
+ */
+public class TiledImageDrawable extends Drawable {
+
+  private static final Class<?> TAG = TiledImageDrawable.class;
+
+  // size of the tiles, in decoded pixels
+  private static final int TILE_SIZE = 512;
+
+  private final ImagePipeline mImagePipeline;
+  private final PlatformDecoder mPlatformDecoder;
+  private final Uri mUri;
+  private final int mImageWidth;
+  private final int mImageHeight;
+  private final Map<Long, Tile> mTiles = new HashMap<>();
+  private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final RectF mTileBounds = new RectF();
+
+  // incremented on each viewport change, to find the tiles that are no longer visible
+  private int mGeneration;
+
+  /**
+   * @param imagePipeline the pipeline to fetch the tiles with
+   * @param platformDecoder the decoder of the pipeline, see
+   *     {@code ImagePipelineFactory#getPlatformDecoder}
+   * @param uri the uri of the image
+   * @param imageWidth the width of the encoded image, in pixels
+   * @param imageHeight the height of the encoded image, in pixels
+   */
+  public TiledImageDrawable(
+      ImagePipeline imagePipeline,
+      PlatformDecoder platformDecoder,
+      Uri uri,
+      int imageWidth,
+      int imageHeight) {
+    Preconditions.checkArgument(imageWidth > 0 && imageHeight > 0);
+    mImagePipeline = Preconditions.checkNotNull(imagePipeline);
+    mPlatformDecoder = Preconditions.checkNotNull(platformDecoder);
+    mUri = Preconditions.checkNotNull(uri);
+    mImageWidth = imageWidth;
+    mImageHeight = imageHeight;
+  }
+
+  public int getImageWidth() {
+    return mImageWidth;
+  }
+
+  public int getImageHeight() {
+    return mImageHeight;
+  }
+
+  /**
+   * Sets the visible part of the image. Requests the tiles that are missing, and releases the
+   * ones that are not visible anymore. Must be called on the UI thread.
+   *
+   * @param visibleRect the visible part of the image, in pixels of the encoded image
+   * @param scale the number of screen pixels per pixel of the encoded image
+   */
+  public void setViewport(RectF visibleRect, float scale) {
+    mGeneration++;
+    if (!visibleRect.isEmpty() && scale > 0) {
+      final int sampleSize = getSampleSize(scale);
+      final int tileSize = TILE_SIZE * sampleSize;
+      final int firstColumn = Math.max(0, (int) (visibleRect.left / tileSize));
+      final int lastColumn =
+          Math.min((mImageWidth - 1) / tileSize, (int) (visibleRect.right / tileSize));
+      final int firstRow = Math.max(0, (int) (visibleRect.top / tileSize));
+      final int lastRow =
+          Math.min((mImageHeight - 1) / tileSize, (int) (visibleRect.bottom / tileSize));
+      for (int row = firstRow; row <= lastRow; row++) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+          final long key = getTileKey(sampleSize, row, column);
+          Tile tile = mTiles.get(key);
+          if (tile == null) {
+            tile = new Tile(new RegionDecodeOptions(
+                column * tileSize,
+                row * tileSize,
+                Math.min(mImageWidth, (column + 1) * tileSize),
+                Math.min(mImageHeight, (row + 1) * tileSize),
+                sampleSize));
+            mTiles.put(key, tile);
+          }
+          tile.mVisibleGeneration = mGeneration;
+        }
+      }
+    }
+    for (Iterator<Tile> iterator = mTiles.values().iterator(); iterator.hasNext(); ) {
+      Tile tile = iterator.next();
+      if (tile.mVisibleGeneration != mGeneration) {
+        tile.release();
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Releases all the tiles and the region decoder of the image. Must be called on the UI thread.
+   */
+  public void release() {
+    for (Tile tile : mTiles.values()) {
+      tile.release();
+    }
+    mTiles.clear();
+    mPlatformDecoder.closeRegionDecoder(
+        mImagePipeline.getCacheKeyFactory().getEncodedCacheKey(ImageRequest.fromUri(mUri), null));
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    final Rect bounds = getBounds();
+    final float scaleX = (float) bounds.width() / mImageWidth;
+    final float scaleY = (float) bounds.height() / mImageHeight;
+    for (Tile tile : mTiles.values()) {
+      CloseableImage image = tile.mImageReference != null ? tile.mImageReference.get() : null;
+      if (!(image instanceof CloseableStaticBitmap)) {
+        continue;
+      }
+      RegionDecodeOptions region = tile.mRegion;
+      mTileBounds.set(
+          bounds.left + region.left * scaleX,
+          bounds.top + region.top * scaleY,
+          bounds.left + region.right * scaleX,
+          bounds.top + region.bottom * scaleY);
+      canvas.drawBitmap(
+          ((CloseableStaticBitmap) image).getUnderlyingBitmap(),
+          null,
+          mTileBounds,
+          mPaint);
+    }
+  }
+
+  @Override
+  public void setAlpha(int alpha) {
+    mPaint.setAlpha(alpha);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setColorFilter(@Nullable ColorFilter colorFilter) {
+    mPaint.setColorFilter(colorFilter);
+    invalidateSelf();
+  }
+
+  @Override
+  public int getOpacity() {
+    return PixelFormat.TRANSLUCENT;
+  }
+
+  /**
+   * Gets the largest power of 2 to downsample the image with that is not displayed upscaled.
+   */
+  private static int getSampleSize(float scale) {
+    int sampleSize = 1;
+    while (sampleSize * 2 * scale <= 1) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  private static long getTileKey(int sampleSize, int row, int column) {
+    return ((long) Integer.numberOfTrailingZeros(sampleSize) << 48) |
+        ((long) row << 24) |
+        column;
+  }
+
+  /**
+   * A tile of the image, from the request of its region until it is released.
+   */
+  private class Tile extends BaseDataSubscriber<CloseableReference<CloseableImage>> {
+
+    private final RegionDecodeOptions mRegion;
+    private final DataSource<CloseableReference<CloseableImage>> mDataSource;
+    private @Nullable CloseableReference<CloseableImage> mImageReference;
+    private int mVisibleGeneration;
+
+    private Tile(RegionDecodeOptions region) {
+      mRegion = region;
+      ImageRequest imageRequest = ImageRequestBuilder.newBuilderWithSource(mUri)
+          .setRotationOptions(RotationOptions.disableRotation())
+          .setImageDecodeOptions(
+              ImageDecodeOptions.newBuilder().setRegionDecodeOptions(region).build())
+          .build();
+      mDataSource = mImagePipeline.fetchDecodedImage(imageRequest, null);
+      mDataSource.subscribe(this, UiThreadImmediateExecutorService.getInstance());
+    }
+
+    @Override
+    protected void onNewResultImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+      if (!dataSource.isFinished()) {
+        return;
+      }
+      CloseableReference<CloseableImage> imageReference = dataSource.getResult();
+      if (imageReference != null) {
+        CloseableReference.closeSafely(mImageReference);
+        mImageReference = imageReference;
+        invalidateSelf();
+      }
+    }
+
+    @Override
+    protected void onFailureImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+      FLog.w(TAG, dataSource.getFailureCause(), "Failed to load tile %s of %s", mRegion, mUri);
+    }
+
+    private void release() {
+      mDataSource.close();
+      CloseableReference.closeSafely(mImageReference);
+      mImageReference = null;
+    }
+  }
+}
@@ -20,6 +20,7 @@ import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
 import android.support.v4.view.ScrollingView;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
@@ -51,9 +52,13 @@ public class ZoomableDraweeView extends DraweeView<GenericDraweeHierarchy>
 
   private final RectF mImageBounds = new RectF();
   private final RectF mViewBounds = new RectF();
+  private final RectF mTiledImageBounds = new RectF();
+  private final RectF mVisibleImageRect = new RectF();
+  private final Matrix mInverseTransform = new Matrix();
 
   private DraweeController mHugeImageController;
   private ZoomableController mZoomableController;
+  private @Nullable TiledImageDrawable mTiledImageDrawable;
   private GestureDetector mTapGestureDetector;
   private boolean mAllowTouchInterceptionWhileZoomed = true;
 
@@ -263,11 +268,40 @@ public class ZoomableDraweeView extends DraweeView<GenericDraweeHierarchy>
     }
   }
 
+  /**
+   * Sets a drawable that draws the tiles of the image that are visible over the image set by the
+   * controller, at the level of detail of the current zoom.
+   *
+   * <p> This lets very large images be zoomed into without decoding them in full: the controller
+   * shows a downsampled image, and the tiles are decoded for the viewport only. The previous
+   * drawable, if any, is released.
+   */
+  public void setTiledImageDrawable(@Nullable TiledImageDrawable tiledImageDrawable) {
+    if (mTiledImageDrawable != null) {
+      mTiledImageDrawable.setCallback(null);
+      mTiledImageDrawable.release();
+    }
+    mTiledImageDrawable = tiledImageDrawable;
+    if (mTiledImageDrawable != null) {
+      mTiledImageDrawable.setCallback(this);
+      updateTiledImageViewport();
+    }
+    invalidate();
+  }
+
+  @Override
+  protected boolean verifyDrawable(Drawable who) {
+    return who == mTiledImageDrawable || super.verifyDrawable(who);
+  }
+
   @Override
   protected void onDraw(Canvas canvas) {
     int saveCount = canvas.save();
     canvas.concat(mZoomableController.getTransform());
     super.onDraw(canvas);
+    if (mTiledImageDrawable != null) {
+      mTiledImageDrawable.draw(canvas);
+    }
     canvas.restoreToCount(saveCount);
   }
 
@@ -355,11 +389,15 @@ public class ZoomableDraweeView extends DraweeView<GenericDraweeHierarchy>
   private void onRelease() {
     FLog.v(getLogTag(), "onRelease: view %x", this.hashCode());
     mZoomableController.setEnabled(false);
+    if (mTiledImageDrawable != null) {
+      mTiledImageDrawable.release();
+    }
   }
 
   protected void onTransformChanged(Matrix transform) {
     FLog.v(getLogTag(), "onTransformChanged: view %x, transform: %s", this.hashCode(), transform);
     maybeSetHugeImageController();
+    updateTiledImageViewport();
     invalidate();
   }
 
@@ -368,6 +406,7 @@ public class ZoomableDraweeView extends DraweeView<GenericDraweeHierarchy>
     getLimitBounds(mViewBounds);
     mZoomableController.setImageBounds(mImageBounds);
     mZoomableController.setViewBounds(mViewBounds);
+    updateTiledImageViewport();
     FLog.v(
         getLogTag(),
         "updateZoomableControllerBounds: view %x, view bounds: %s, image bounds: %s",
@@ -376,6 +415,44 @@ public class ZoomableDraweeView extends DraweeView<GenericDraweeHierarchy>
         mImageBounds);
   }
 
+  /**
+   * Lays the tiled image out over the image bounds, and sets its viewport to the part of the
+   * image that is visible with the current transform.
+   */
+  private void updateTiledImageViewport() {
+    if (mTiledImageDrawable == null) {
+      return;
+    }
+    getImageBounds(mTiledImageBounds);
+    if (mTiledImageBounds.isEmpty()) {
+      return;
+    }
+    mTiledImageDrawable.setBounds(
+        Math.round(mTiledImageBounds.left),
+        Math.round(mTiledImageBounds.top),
+        Math.round(mTiledImageBounds.right),
+        Math.round(mTiledImageBounds.bottom));
+
+    Matrix transform = mZoomableController.getTransform();
+    transform.invert(mInverseTransform);
+    mVisibleImageRect.set(0, 0, getWidth(), getHeight());
+    mInverseTransform.mapRect(mVisibleImageRect);
+    if (!mVisibleImageRect.intersect(mTiledImageBounds)) {
+      mVisibleImageRect.setEmpty();
+    }
+    // from view coordinates to pixels of the image
+    float imagePixelsPerViewPixel = mTiledImageDrawable.getImageWidth() / mTiledImageBounds.width();
+    mVisibleImageRect.offset(-mTiledImageBounds.left, -mTiledImageBounds.top);
+    mVisibleImageRect.set(
+        mVisibleImageRect.left * imagePixelsPerViewPixel,
+        mVisibleImageRect.top * imagePixelsPerViewPixel,
+        mVisibleImageRect.right * imagePixelsPerViewPixel,
+        mVisibleImageRect.bottom * imagePixelsPerViewPixel);
+    mTiledImageDrawable.setViewport(
+        mVisibleImageRect,
+        transform.mapRadius(1) / imagePixelsPerViewPixel);
+  }
+
   protected Class<?> getLogTag() {
     return TAG;
   }
@@ -85,9 +85,9 @@ public class CountingMemoryCacheInspector<K, V> {
     }
   }
 
-  private final CountingMemoryCache<K, V> mCountingBitmapCache;
+  private final CountingCache<K, V> mCountingBitmapCache;
 
-  public CountingMemoryCacheInspector(CountingMemoryCache<K, V> countingBitmapCache) {
+  public CountingMemoryCacheInspector(CountingCache<K, V> countingBitmapCache) {
     mCountingBitmapCache = countingBitmapCache;
   }
 
@@ -102,10 +102,10 @@ public class CountingMemoryCacheInspector<K, V> {
       DumpInfo<K, V> dumpInfo = new DumpInfo<>(
           mCountingBitmapCache.getSizeInBytes(),
           mCountingBitmapCache.getEvictionQueueSizeInBytes(),
-          mCountingBitmapCache.mMemoryCacheParams);
+          mCountingBitmapCache.getMemoryCacheParams());
 
       final List<LinkedHashMap.Entry<K, CountingMemoryCache.Entry<K, V>>> cachedEntries =
-          mCountingBitmapCache.mCachedEntries.getMatchingEntries(null);
+          mCountingBitmapCache.getCachedEntries();
       for (LinkedHashMap.Entry<K, CountingMemoryCache.Entry<K, V>> cachedEntry : cachedEntries) {
         CountingMemoryCache.Entry<K, V> entry = cachedEntry.getValue();
         DumpInfoEntry<K, V> dumpEntry = new DumpInfoEntry<>(entry.key, entry.valueRef);
@@ -116,7 +116,7 @@ public class CountingMemoryCacheInspector<K, V> {
         }
       }
       for (Map.Entry<Bitmap, Object> entry
-          : mCountingBitmapCache.mOtherEntries.entrySet()) {
+          : mCountingBitmapCache.getOtherEntries().entrySet()) {
         if (entry != null && !entry.getKey().isRecycled()) {
           dumpInfo.otherEntries.put(entry.getKey(), entry.getValue());
         }
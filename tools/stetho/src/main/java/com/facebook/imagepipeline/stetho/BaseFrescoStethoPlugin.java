@@ -64,7 +64,7 @@ public abstract class BaseFrescoStethoPlugin implements DumperPlugin {
 
   protected void initialize(ImagePipelineFactory factory) {
     mBitmapMemoryCacheInspector = new CountingMemoryCacheInspector<>(
-        factory.getBitmapCountingMemoryCache());
+        factory.getBitmapCountingCache());
     mMainFileCache = factory.getMainFileCache();
     mSmallFileCache = factory.getSmallImageFileCache();
     mInitialized = true;